@@ -39,6 +39,15 @@ public class Const
   public static final String ARCHIVESYNC_PURGE_ARCHIVE_PROPERTY
       = "esa.mo.nanosatmoframework.archivesync.purgearchive";
   public static final String ARCHIVESYNC_PURGE_ARCHIVE_DEFAULT = "true";
+  public static final String ARCHIVESYNC_CHUNK_SIZE_PROPERTY
+      = "esa.mo.nanosatmoframework.archivesync.chunksize";
+  public static final String ARCHIVESYNC_CHUNK_SIZE_DEFAULT = "200";
+  public static final String ARCHIVESYNC_MEMORY_LIMIT_PROPERTY
+      = "esa.mo.nanosatmoframework.archivesync.memorylimit";
+  public static final String ARCHIVESYNC_MEMORY_LIMIT_DEFAULT = "1048576";
+  public static final String ARCHIVESYNC_DICTIONARY_PROPERTY
+      = "esa.mo.nanosatmoframework.archivesync.dictionary";
+  public static final String ARCHIVESYNC_DICTIONARY_DEFAULT = "comArchiveSync.dict";
   public static final String NANOSAT_MO_SUPERVISOR_NAME = "nanosat-mo-supervisor";
   public final static String NANOSAT_MO_GROUND_PROXY_NAME = "ground-mo-proxy";
   public final static String NMF_PACKAGE_SUFFIX = "nmfpack";
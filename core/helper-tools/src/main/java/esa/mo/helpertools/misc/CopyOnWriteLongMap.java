@@ -0,0 +1,193 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2021      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : ESA NanoSat MO Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.helpertools.misc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A map keyed by primitive longs for data that is read very often and changed
+ * rarely, such as the state of the identities of a service. The entries are
+ * kept in an open addressing table that is copied on every change, so the read
+ * operations never lock and never box the key. Null values are not allowed.
+ *
+ * @param <V> The type of the values
+ */
+public class CopyOnWriteLongMap<V> {
+
+  private static final Table EMPTY = new Table(new long[2], new Object[2], 0);
+
+  private volatile Table table = EMPTY;
+
+  @SuppressWarnings("unchecked")
+  public V get(final long key) {
+    final Table t = table;
+    final int mask = t.keys.length - 1;
+
+    for (int i = hash(key) & mask; t.values[i] != null; i = (i + 1) & mask) {
+      if (t.keys[i] == key) {
+        return (V) t.values[i];
+      }
+    }
+
+    return null;
+  }
+
+  public boolean containsKey(final long key) {
+    return this.get(key) != null;
+  }
+
+  public int size() {
+    return table.size;
+  }
+
+  public boolean isEmpty() {
+    return table.size == 0;
+  }
+
+  /**
+   * Associates the value with the key.
+   *
+   * @param key The key.
+   * @param value The value, must not be null.
+   * @return The previous value, or null if there was none.
+   */
+  public synchronized V put(final long key, final V value) {
+    if (value == null) {
+      throw new IllegalArgumentException("The value must not be null");
+    }
+
+    final V previous = this.get(key);
+    final Table t = table;
+    final Table copy = Table.allocate(previous == null ? t.size + 1 : t.size);
+    t.copyTo(copy, key);
+    copy.insert(key, value);
+    table = copy;
+
+    return previous;
+  }
+
+  /**
+   * Removes the value associated with the key.
+   *
+   * @param key The key.
+   * @return The removed value, or null if there was none.
+   */
+  public synchronized V remove(final long key) {
+    final V previous = this.get(key);
+
+    if (previous != null) {
+      final Table t = table;
+      final Table copy = Table.allocate(t.size - 1);
+      t.copyTo(copy, key);
+      table = copy;
+    }
+
+    return previous;
+  }
+
+  public synchronized void clear() {
+    table = EMPTY;
+  }
+
+  /**
+   * Returns a snapshot of the keys of the map.
+   *
+   * @return The keys.
+   */
+  public long[] keys() {
+    final Table t = table;
+    final long[] out = new long[t.size];
+    int j = 0;
+
+    for (int i = 0; i < t.keys.length; i++) {
+      if (t.values[i] != null) {
+        out[j++] = t.keys[i];
+      }
+    }
+
+    return out;
+  }
+
+  /**
+   * Returns a snapshot of the values of the map.
+   *
+   * @return The values.
+   */
+  @SuppressWarnings("unchecked")
+  public List<V> values() {
+    final Table t = table;
+    final List<V> out = new ArrayList<V>(t.size);
+
+    for (int i = 0; i < t.keys.length; i++) {
+      if (t.values[i] != null) {
+        out.add((V) t.values[i]);
+      }
+    }
+
+    return out;
+  }
+
+  private static int hash(final long key) {
+    final long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+
+  private static final class Table {
+
+    private final long[] keys;
+    private final Object[] values;
+    private int size;
+
+    private Table(final long[] keys, final Object[] values, final int size) {
+      this.keys = keys;
+      this.values = values;
+      this.size = size;
+    }
+
+    private static Table allocate(final int entries) {
+      // Keep the load factor at or below 0.5
+      final int capacity = Math.max(2, Integer.highestOneBit(Math.max(1, entries)) << 2);
+      return new Table(new long[capacity], new Object[capacity], 0);
+    }
+
+    private void copyTo(final Table other, final long excludedKey) {
+      for (int i = 0; i < keys.length; i++) {
+        if (values[i] != null && keys[i] != excludedKey) {
+          other.insert(keys[i], values[i]);
+        }
+      }
+    }
+
+    private void insert(final long key, final Object value) {
+      final int mask = keys.length - 1;
+      int i = hash(key) & mask;
+
+      while (values[i] != null) {
+        i = (i + 1) & mask;
+      }
+
+      keys[i] = key;
+      values[i] = value;
+      size++;
+    }
+  }
+}
@@ -0,0 +1,137 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2021      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : ESA NanoSat MO Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.helpertools.misc;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The timing metrics of the TimingWheelScheduler. The lateness is the time
+ * between the nominal time of an execution and the moment it actually starts.
+ * The jitter is the deviation of the time between two consecutive starts of a
+ * periodic task from its period. All the values are in microseconds.
+ */
+public class SchedulerMetrics {
+
+  private final AtomicLong executions = new AtomicLong(0);
+  private final AtomicLong overruns = new AtomicLong(0);
+  private final AtomicLong failures = new AtomicLong(0);
+  private final AtomicLong rejections = new AtomicLong(0);
+  private final AtomicLong totalLateness = new AtomicLong(0);
+  private final AtomicLong maxLateness = new AtomicLong(0);
+  private final AtomicLong jitterSamples = new AtomicLong(0);
+  private final AtomicLong totalJitter = new AtomicLong(0);
+  private final AtomicLong maxJitter = new AtomicLong(0);
+
+  void recordExecution(final long latenessMicros) {
+    final long lateness = Math.max(0, latenessMicros);
+    executions.incrementAndGet();
+    totalLateness.addAndGet(lateness);
+    updateMax(maxLateness, lateness);
+  }
+
+  void recordJitter(final long jitterMicros) {
+    final long jitter = Math.abs(jitterMicros);
+    jitterSamples.incrementAndGet();
+    totalJitter.addAndGet(jitter);
+    updateMax(maxJitter, jitter);
+  }
+
+  void recordOverrun() {
+    overruns.incrementAndGet();
+  }
+
+  void recordFailure() {
+    failures.incrementAndGet();
+  }
+
+  void recordRejection() {
+    rejections.incrementAndGet();
+  }
+
+  private static void updateMax(final AtomicLong max, final long value) {
+    long current = max.get();
+
+    while (value > current && !max.compareAndSet(current, value)) {
+      current = max.get();
+    }
+  }
+
+  /**
+   * @return The number of executions started.
+   */
+  public long getExecutions() {
+    return executions.get();
+  }
+
+  /**
+   * @return The number of periodic executions that were delayed because the
+   * previous execution of the same task was still running.
+   */
+  public long getOverruns() {
+    return overruns.get();
+  }
+
+  /**
+   * @return The number of executions that threw an exception.
+   */
+  public long getFailures() {
+    return failures.get();
+  }
+
+  /**
+   * @return The number of executions that were skipped because the queue of
+   * the scheduler was full.
+   */
+  public long getRejections() {
+    return rejections.get();
+  }
+
+  public double getAverageLatenessMicros() {
+    final long count = executions.get();
+    return (count == 0) ? 0 : ((double) totalLateness.get()) / count;
+  }
+
+  public long getMaxLatenessMicros() {
+    return maxLateness.get();
+  }
+
+  public double getAverageJitterMicros() {
+    final long count = jitterSamples.get();
+    return (count == 0) ? 0 : ((double) totalJitter.get()) / count;
+  }
+
+  public long getMaxJitterMicros() {
+    return maxJitter.get();
+  }
+
+  @Override
+  public String toString() {
+    return "executions=" + getExecutions()
+        + ", overruns=" + getOverruns()
+        + ", failures=" + getFailures()
+        + ", rejections=" + getRejections()
+        + ", avgLateness=" + String.format("%.1f", getAverageLatenessMicros()) + " us"
+        + ", maxLateness=" + getMaxLatenessMicros() + " us"
+        + ", avgJitter=" + String.format("%.1f", getAverageJitterMicros()) + " us"
+        + ", maxJitter=" + getMaxJitterMicros() + " us";
+  }
+
+}
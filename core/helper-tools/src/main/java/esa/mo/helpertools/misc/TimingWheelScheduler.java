@@ -0,0 +1,586 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2021      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : ESA NanoSat MO Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.helpertools.misc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A process-wide scheduler for periodic tasks, meant to replace the creation of
+ * one TaskScheduler, and therefore one thread, per scheduled item.
+ *
+ * A single ticker thread keeps the tasks in a hierarchical timing wheel and
+ * hands the expired ones to a pool of worker threads. The fixed rate tasks
+ * that share the same interval and phase are coalesced into a single entry of
+ * the wheel. The granularity of the scheduler is one tick, which can be set in
+ * milliseconds with the property esa.mo.helpertools.scheduler.tick.
+ *
+ * The pool has a fixed number of threads, set with the property
+ * esa.mo.helpertools.scheduler.workers. When all of them are busy, for example
+ * because a task is blocked on a device, the expired tasks wait in a bounded
+ * queue, whose capacity is set with esa.mo.helpertools.scheduler.queue. An
+ * execution that does not fit in the queue is skipped and counted in the
+ * metrics: a fixed rate task runs again at its next period, and a fixed delay
+ * task one delay later.
+ *
+ * The semantics of the scheduled tasks are the same as in the
+ * ScheduledThreadPoolExecutor: the executions of one task never overlap, a
+ * late execution of a fixed rate task starts as soon as the previous one ends,
+ * a task that throws an exception is not executed again, and stopping a task
+ * interrupts its running execution.
+ */
+public final class TimingWheelScheduler {
+
+  public static final String TICK_PROPERTY = "esa.mo.helpertools.scheduler.tick";
+  public static final String WORKERS_PROPERTY = "esa.mo.helpertools.scheduler.workers";
+  public static final String QUEUE_PROPERTY = "esa.mo.helpertools.scheduler.queue";
+
+  private static final long DEFAULT_TICK = 10; // milliseconds
+  private static final int DEFAULT_WORKERS = 2;
+  private static final int DEFAULT_QUEUE = 1024;
+
+  private static final int WHEEL_BITS = 6;
+  private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+  private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+  private static final int LEVELS = 7;
+
+  // The execution states of a task
+  private static final int IDLE = 0;
+  private static final int RUNNING = 1;
+  private static final int RUNNING_PENDING = 2; // Runs again as soon as it ends
+  private static final long MAX_TICKS = (1L << (WHEEL_BITS * LEVELS)) - 1;
+
+  private final long tickNanos;
+  private final long startNanos;
+  private final ThreadPoolExecutor workers;
+  private final Thread ticker;
+  private final SchedulerMetrics metrics = new SchedulerMetrics();
+  private final AtomicInteger nextId = new AtomicInteger(0);
+  private final ConcurrentHashMap<Integer, Task> tasks = new ConcurrentHashMap<Integer, Task>();
+  private final ConcurrentLinkedQueue<Task> additions = new ConcurrentLinkedQueue<Task>();
+
+  // Only accessed by the ticker thread
+  private final ArrayList<TimerEntry>[][] wheel;
+  private final ArrayList<TimerEntry> expired = new ArrayList<TimerEntry>();
+  private final HashMap<GroupKey, PeriodicGroup> groups = new HashMap<GroupKey, PeriodicGroup>();
+  private long currentTick = 0;
+  private int numberOfEntries = 0;
+
+  private static class InstanceHolder {
+
+    private static final TimingWheelScheduler INSTANCE = new TimingWheelScheduler(
+        Long.getLong(TICK_PROPERTY, DEFAULT_TICK),
+        Integer.getInteger(WORKERS_PROPERTY, DEFAULT_WORKERS),
+        Integer.getInteger(QUEUE_PROPERTY, DEFAULT_QUEUE));
+  }
+
+  /**
+   * Returns the process-wide scheduler.
+   *
+   * @return The scheduler.
+   */
+  public static TimingWheelScheduler getInstance() {
+    return InstanceHolder.INSTANCE;
+  }
+
+  @SuppressWarnings("unchecked")
+  private TimingWheelScheduler(final long tickMillis, final int numberOfWorkers,
+      final int queueCapacity) {
+    this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+    this.startNanos = System.nanoTime();
+    this.wheel = new ArrayList[LEVELS][WHEEL_SIZE];
+
+    for (int level = 0; level < LEVELS; level++) {
+      for (int slot = 0; slot < WHEEL_SIZE; slot++) {
+        wheel[level][slot] = new ArrayList<TimerEntry>();
+      }
+    }
+
+    final int poolSize = Math.max(1, numberOfWorkers);
+    this.workers = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<Runnable>(Math.max(1, queueCapacity)),
+        new SchedulerThreadFactory("TimingWheelScheduler_Worker"));
+    this.ticker = new SchedulerThreadFactory("TimingWheelScheduler_Ticker").newThread(new Runnable() {
+      @Override
+      public void run() {
+        tickerLoop();
+      }
+    });
+    this.ticker.start();
+  }
+
+  /**
+   * Schedules a periodic task.
+   *
+   * @param command The command to run.
+   * @param startDelay The delay until the task is executed for the first time.
+   * @param taskDelay The period between the starts of the executions for
+   * fixedRate == true, and the delay between the end of an execution and the
+   * start of the next one otherwise.
+   * @param unit The unit used for startDelay and taskDelay.
+   * @param fixedRate Determines if the task is executed at a fixed rate or
+   * with a fixed delay.
+   * @return The ID of the scheduled task.
+   * @throws java.lang.IllegalArgumentException If command == null OR unit ==
+   * null OR taskDelay &lt;= 0.
+   */
+  public int scheduleTask(final Runnable command, final long startDelay, final long taskDelay,
+      final TimeUnit unit, final boolean fixedRate) throws IllegalArgumentException {
+    if (command == null || unit == null) {
+      throw new IllegalArgumentException("The provided command must not be null.");
+    }
+
+    if (taskDelay <= 0) {
+      throw new IllegalArgumentException("The task delay must be positive.");
+    }
+
+    final int id = nextId.getAndIncrement();
+    final Task task = new Task(id, command, unit.toNanos(taskDelay), fixedRate);
+    task.deadlineNanos = System.nanoTime() + Math.max(0, unit.toNanos(startDelay));
+    tasks.put(id, task);
+    this.submit(task);
+
+    return id;
+  }
+
+  /**
+   * Stops the task with the provided ID. An execution that is already running
+   * is interrupted. If there is no scheduled task matching the id, nothing
+   * happens.
+   *
+   * @param id The ID of the task obtained when scheduleTask was called.
+   */
+  public void stopTask(final int id) {
+    final Task task = tasks.remove(id);
+
+    if (task != null) {
+      synchronized (task) {
+        task.cancelled = true;
+
+        if (task.runner != null) {
+          task.runner.interrupt();
+        }
+      }
+    }
+  }
+
+  /**
+   * @return The number of worker threads.
+   */
+  public int getNumberOfWorkers() {
+    return workers.getPoolSize();
+  }
+
+  /**
+   * @return The number of scheduled tasks.
+   */
+  public int getNumberOfTasks() {
+    return tasks.size();
+  }
+
+  /**
+   * @return The lateness and jitter metrics of the scheduler.
+   */
+  public SchedulerMetrics getMetrics() {
+    return metrics;
+  }
+
+  private void submit(final Task task) {
+    additions.add(task);
+    LockSupport.unpark(ticker);
+  }
+
+  private void tickerLoop() {
+    while (true) {
+      try {
+        this.tick();
+      } catch (RuntimeException ex) {
+        Logger.getLogger(TimingWheelScheduler.class.getName()).log(Level.SEVERE,
+            "Unexpected exception in the scheduler ticker!", ex);
+      }
+    }
+  }
+
+  private void tick() {
+    this.drainAdditions();
+    final long targetTick = (System.nanoTime() - startNanos) / tickNanos;
+
+    if (numberOfEntries == 0 && expired.isEmpty()) {
+      // Nothing to do, jump to the current time and sleep until a task comes
+      currentTick = Math.max(currentTick, targetTick);
+
+      if (additions.isEmpty()) {
+        LockSupport.park(this);
+      }
+
+      return;
+    }
+
+    while (currentTick < targetTick) {
+      currentTick++;
+      this.advance();
+    }
+
+    this.processExpired();
+
+    final long nextTickNanos = startNanos + (currentTick + 1) * tickNanos;
+    LockSupport.parkNanos(this, nextTickNanos - System.nanoTime());
+  }
+
+  private void drainAdditions() {
+    Task task;
+
+    while ((task = additions.poll()) != null) {
+      if (task.cancelled) {
+        continue;
+      }
+
+      if (task.fixedRate) {
+        this.joinGroup(task);
+      } else {
+        this.insert(task);
+      }
+    }
+  }
+
+  private void joinGroup(final Task task) {
+    final long firstTick = this.tickOf(task.deadlineNanos);
+    final GroupKey key;
+
+    if (task.periodNanos % tickNanos == 0) {
+      final long periodTicks = task.periodNanos / tickNanos;
+      key = new GroupKey(task.periodNanos, firstTick % periodTicks);
+    } else {
+      key = new GroupKey(task.periodNanos, -1 - task.id); // Cannot be aligned with others
+    }
+
+    task.firstTick = firstTick;
+    PeriodicGroup group = groups.get(key);
+
+    if (group == null) {
+      group = new PeriodicGroup(key);
+      group.deadlineNanos = task.deadlineNanos;
+      groups.put(key, group);
+      this.insert(group);
+    } else if (firstTick < this.tickOf(group.deadlineNanos)) {
+      // The group already went through this phase, so the first execution is due now
+      this.dispatch(task, task.deadlineNanos);
+    }
+
+    group.members.add(task);
+  }
+
+  private long tickOf(final long nanos) {
+    final long elapsed = nanos - startNanos;
+    return (elapsed <= 0) ? 0 : (elapsed + tickNanos - 1) / tickNanos;
+  }
+
+  private void insert(final TimerEntry entry) {
+    long deadlineTick = this.tickOf(entry.deadlineNanos);
+    final long delta = deadlineTick - currentTick;
+
+    if (delta <= 0) {
+      expired.add(entry);
+      return;
+    }
+
+    if (delta > MAX_TICKS) { // Will be reinserted when it gets there
+      deadlineTick = currentTick + MAX_TICKS;
+    }
+
+    int level = 0;
+
+    while (level < LEVELS - 1 && (deadlineTick - currentTick) >= (1L << (WHEEL_BITS * (level + 1)))) {
+      level++;
+    }
+
+    final int slot = (int) ((deadlineTick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+    wheel[level][slot].add(entry);
+    numberOfEntries++;
+  }
+
+  private void advance() {
+    // Cascade the entries of the upper levels that are now within range
+    for (int level = LEVELS - 1; level > 0; level--) {
+      if ((currentTick & ((1L << (WHEEL_BITS * level)) - 1)) == 0) {
+        final int slot = (int) ((currentTick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+        final ArrayList<TimerEntry> bucket = this.takeBucket(level, slot);
+
+        for (TimerEntry entry : bucket) {
+          this.insert(entry);
+        }
+      }
+    }
+
+    expired.addAll(this.takeBucket(0, (int) (currentTick & WHEEL_MASK)));
+    this.processExpired();
+  }
+
+  private ArrayList<TimerEntry> takeBucket(final int level, final int slot) {
+    final ArrayList<TimerEntry> bucket = wheel[level][slot];
+
+    if (bucket.isEmpty()) {
+      return bucket;
+    }
+
+    wheel[level][slot] = new ArrayList<TimerEntry>();
+    numberOfEntries -= bucket.size();
+    return bucket;
+  }
+
+  private void processExpired() {
+    while (!expired.isEmpty()) {
+      final ArrayList<TimerEntry> entries = new ArrayList<TimerEntry>(expired);
+      expired.clear();
+
+      for (TimerEntry entry : entries) {
+        entry.expire();
+      }
+    }
+  }
+
+  private void dispatch(final Task task, final long nominalNanos) {
+    if (task.cancelled) {
+      return;
+    }
+
+    while (true) {
+      final int state = task.state.get();
+
+      if (state == IDLE) {
+        if (task.state.compareAndSet(IDLE, RUNNING)) {
+          break;
+        }
+      } else if (state == RUNNING_PENDING || task.state.compareAndSet(RUNNING, RUNNING_PENDING)) {
+        metrics.recordOverrun(); // Starts as soon as the running execution ends
+        return;
+      }
+    }
+
+    this.run(task, nominalNanos);
+  }
+
+  private void run(final Task task, final long nominalNanos) {
+    try {
+      workers.execute(new Runnable() {
+        @Override
+        public void run() {
+          execute(task, nominalNanos);
+        }
+      });
+    } catch (RejectedExecutionException ex) {
+      metrics.recordRejection();
+      Logger.getLogger(TimingWheelScheduler.class.getName()).log(Level.WARNING,
+          "The queue of the scheduler is full, the execution of the task {0} was skipped.",
+          task.id);
+      task.state.set(IDLE);
+
+      if (!task.fixedRate && !task.cancelled) {
+        task.deadlineNanos = System.nanoTime() + task.periodNanos;
+        this.submit(task);
+      }
+    }
+  }
+
+  private void execute(final Task task, final long nominalNanos) {
+    final long start = System.nanoTime();
+    metrics.recordExecution(TimeUnit.NANOSECONDS.toMicros(start - nominalNanos));
+
+    if (task.fixedRate && task.lastStartNanos != 0) {
+      metrics.recordJitter(TimeUnit.NANOSECONDS.toMicros(start - task.lastStartNanos - task.periodNanos));
+    }
+
+    task.lastStartNanos = start;
+    boolean runCommand;
+
+    synchronized (task) {
+      runCommand = !task.cancelled;
+      task.runner = runCommand ? Thread.currentThread() : null;
+    }
+
+    if (runCommand) {
+      try {
+        task.command.run();
+      } catch (Throwable ex) {
+        metrics.recordFailure();
+        this.stopTask(task.id); // Same as the ScheduledThreadPoolExecutor
+        Logger.getLogger(TimingWheelScheduler.class.getName()).log(Level.WARNING,
+            "The scheduled task " + task.id + " threw an exception and was stopped.", ex);
+      } finally {
+        synchronized (task) {
+          task.runner = null;
+          Thread.interrupted(); // An interrupt from stopTask must not reach the next task
+        }
+      }
+    }
+
+    if (task.cancelled) {
+      task.state.set(IDLE);
+      return;
+    }
+
+    if (!task.fixedRate) {
+      task.state.set(IDLE);
+      task.deadlineNanos = System.nanoTime() + task.periodNanos;
+      this.submit(task);
+      return;
+    }
+
+    // Either the task goes back to idle, or a dispatch arrived while it was
+    // running and it keeps the RUNNING state for the late execution
+    if (!task.state.compareAndSet(RUNNING, IDLE)) {
+      task.state.set(RUNNING);
+      this.run(task, System.nanoTime());
+    }
+  }
+
+  /**
+   * An entry of the timing wheel.
+   */
+  private abstract static class TimerEntry {
+
+    long deadlineNanos;
+
+    abstract void expire();
+  }
+
+  /**
+   * A scheduled task. The fixed delay tasks are entries of the wheel on their
+   * own, the fixed rate ones are members of a PeriodicGroup.
+   */
+  private class Task extends TimerEntry {
+
+    final int id;
+    final Runnable command;
+    final long periodNanos;
+    final boolean fixedRate;
+    final AtomicInteger state = new AtomicInteger(IDLE);
+    volatile boolean cancelled = false;
+    Thread runner; // Guarded by the task itself
+    long firstTick;
+    long lastStartNanos = 0;
+
+    Task(final int id, final Runnable command, final long periodNanos, final boolean fixedRate) {
+      this.id = id;
+      this.command = command;
+      this.periodNanos = periodNanos;
+      this.fixedRate = fixedRate;
+    }
+
+    @Override
+    void expire() {
+      dispatch(this, deadlineNanos);
+    }
+  }
+
+  /**
+   * The fixed rate tasks that share the same period and phase.
+   */
+  private class PeriodicGroup extends TimerEntry {
+
+    final GroupKey key;
+    final ArrayList<Task> members = new ArrayList<Task>();
+
+    PeriodicGroup(final GroupKey key) {
+      this.key = key;
+    }
+
+    @Override
+    void expire() {
+      final long tick = tickOf(deadlineNanos);
+      final Iterator<Task> it = members.iterator();
+
+      while (it.hasNext()) {
+        final Task task = it.next();
+
+        if (task.cancelled) {
+          it.remove();
+        } else if (task.firstTick <= tick) {
+          dispatch(task, deadlineNanos);
+        }
+      }
+
+      if (members.isEmpty()) {
+        groups.remove(key);
+        return;
+      }
+
+      deadlineNanos += key.periodNanos;
+      insert(this);
+    }
+  }
+
+  private static final class GroupKey {
+
+    final long periodNanos;
+    final long phase;
+
+    GroupKey(final long periodNanos, final long phase) {
+      this.periodNanos = periodNanos;
+      this.phase = phase;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof GroupKey)) {
+        return false;
+      }
+
+      final GroupKey key = (GroupKey) other;
+      return periodNanos == key.periodNanos && phase == key.phase;
+    }
+
+    @Override
+    public int hashCode() {
+      return (int) (periodNanos ^ (periodNanos >>> 32)) * 31 + (int) (phase ^ (phase >>> 32));
+    }
+  }
+
+  private static class SchedulerThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger threadNumber = new AtomicInteger(1);
+    private final String namePrefix;
+
+    SchedulerThreadFactory(final String prefix) {
+      this.namePrefix = prefix + "-thread-";
+    }
+
+    @Override
+    public Thread newThread(final Runnable r) {
+      final Thread thread = new Thread(r, namePrefix + threadNumber.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+
+}
@@ -0,0 +1,71 @@
+package esa.mo.helpertools.test.misc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+import org.junit.Test;
+import esa.mo.helpertools.misc.CopyOnWriteLongMap;
+
+public class TestCopyOnWriteLongMap {
+
+  @Test
+  public void testPutGetRemove() {
+    final CopyOnWriteLongMap<String> map = new CopyOnWriteLongMap<String>();
+    assertTrue(map.isEmpty());
+    assertNull(map.put(1L, "one"));
+    assertNull(map.put(-5L, "minus five"));
+    assertEquals("one", map.put(1L, "uno"));
+    assertEquals(2, map.size());
+    assertEquals("uno", map.get(1L));
+    assertEquals("minus five", map.get(-5L));
+    assertNull(map.get(2L));
+    assertEquals("uno", map.remove(1L));
+    assertNull(map.remove(1L));
+    assertFalse(map.containsKey(1L));
+    assertEquals(1, map.size());
+    map.clear();
+    assertTrue(map.isEmpty());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNullValue() {
+    new CopyOnWriteLongMap<String>().put(1L, null);
+  }
+
+  @Test
+  public void testAgainstHashMap() {
+    final CopyOnWriteLongMap<Long> map = new CopyOnWriteLongMap<Long>();
+    final HashMap<Long, Long> reference = new HashMap<Long, Long>();
+    final Random random = new Random(42);
+
+    for (int i = 0; i < 5000; i++) {
+      final long key = random.nextInt(200);
+
+      if (random.nextInt(3) == 0) {
+        assertEquals(reference.remove(key), map.remove(key));
+      } else {
+        final long value = random.nextLong();
+        assertEquals(reference.put(key, value), map.put(key, value));
+      }
+
+      assertEquals(reference.size(), map.size());
+    }
+
+    for (long key = 0; key < 200; key++) {
+      assertEquals(reference.get(key), map.get(key));
+    }
+
+    final long[] keys = map.keys();
+    Arrays.sort(keys);
+    assertEquals(reference.size(), keys.length);
+    for (long key : keys) {
+      assertTrue(reference.containsKey(key));
+    }
+    assertEquals(reference.size(), map.values().size());
+  }
+}
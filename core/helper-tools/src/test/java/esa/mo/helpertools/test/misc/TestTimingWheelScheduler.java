@@ -0,0 +1,211 @@
+package esa.mo.helpertools.test.misc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import esa.mo.helpertools.misc.TimingWheelScheduler;
+
+public class TestTimingWheelScheduler {
+
+  private static final long TIMEOUT = 10; // seconds, only reached on failure
+
+  private final TimingWheelScheduler scheduler = TimingWheelScheduler.getInstance();
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testScheduleTaskNullCommand() {
+    scheduler.scheduleTask(null, 0, 100, TimeUnit.MILLISECONDS, true);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testScheduleTaskNullUnit() {
+    scheduler.scheduleTask(new CountingTask(), 0, 100, null, true);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testScheduleTaskZeroDelay() {
+    scheduler.scheduleTask(new CountingTask(), 0, 0, TimeUnit.MILLISECONDS, true);
+  }
+
+  @Test
+  public void testFixedRate() throws InterruptedException {
+    final CountingTask task = new CountingTask(5);
+    final int id = scheduler.scheduleTask(task, 0, 50, TimeUnit.MILLISECONDS, true);
+    assertTrue(task.latch.await(TIMEOUT, TimeUnit.SECONDS));
+    scheduler.stopTask(id);
+  }
+
+  @Test
+  public void testFixedDelay() throws InterruptedException {
+    final CountingTask task = new CountingTask(3);
+    final int id = scheduler.scheduleTask(task, 20, 50, TimeUnit.MILLISECONDS, false);
+    assertTrue(task.latch.await(TIMEOUT, TimeUnit.SECONDS));
+    scheduler.stopTask(id);
+  }
+
+  @Test
+  public void testCoalescedTasks() throws InterruptedException {
+    final CountingTask task1 = new CountingTask(4);
+    final CountingTask task2 = new CountingTask(4);
+    final int id1 = scheduler.scheduleTask(task1, 0, 100, TimeUnit.MILLISECONDS, true);
+    final int id2 = scheduler.scheduleTask(task2, 0, 100, TimeUnit.MILLISECONDS, true);
+    assertTrue(task1.latch.await(TIMEOUT, TimeUnit.SECONDS));
+    assertTrue(task2.latch.await(TIMEOUT, TimeUnit.SECONDS));
+    scheduler.stopTask(id1);
+    scheduler.stopTask(id2);
+  }
+
+  @Test
+  public void testStopTask() throws InterruptedException {
+    final CountingTask task = new CountingTask(1);
+    final int id = scheduler.scheduleTask(task, 0, 20, TimeUnit.MILLISECONDS, true);
+    assertTrue(task.latch.await(TIMEOUT, TimeUnit.SECONDS));
+    scheduler.stopTask(id);
+    final int count = task.counter.get();
+    assertNotRunAgain(task.counter, count);
+  }
+
+  @Test
+  public void testStopTaskInterruptsExecution() throws InterruptedException {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch interrupted = new CountDownLatch(1);
+    final int id = scheduler.scheduleTask(new Runnable() {
+      @Override
+      public void run() {
+        started.countDown();
+        try {
+          new CountDownLatch(1).await();
+        } catch (InterruptedException ex) {
+          interrupted.countDown();
+        }
+      }
+    }, 0, 20, TimeUnit.MILLISECONDS, true);
+    assertTrue(started.await(TIMEOUT, TimeUnit.SECONDS));
+    scheduler.stopTask(id);
+    assertTrue(interrupted.await(TIMEOUT, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testFailingTaskIsStopped() throws InterruptedException {
+    final AtomicInteger counter = new AtomicInteger(0);
+    final CountDownLatch failed = new CountDownLatch(1);
+    scheduler.scheduleTask(new Runnable() {
+      @Override
+      public void run() {
+        counter.incrementAndGet();
+        failed.countDown();
+        throw new IllegalStateException("Expected by the test");
+      }
+    }, 0, 20, TimeUnit.MILLISECONDS, true);
+    assertTrue(failed.await(TIMEOUT, TimeUnit.SECONDS));
+    assertNotRunAgain(counter, 1);
+  }
+
+  @Test
+  public void testExecutionsDoNotOverlap() throws InterruptedException {
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch ranAgain = new CountDownLatch(2);
+    final AtomicInteger running = new AtomicInteger(0);
+    final AtomicInteger overlaps = new AtomicInteger(0);
+    final int id = scheduler.scheduleTask(new Runnable() {
+      @Override
+      public void run() {
+        if (running.incrementAndGet() > 1) {
+          overlaps.incrementAndGet();
+        }
+        try {
+          release.await();
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+        running.decrementAndGet();
+        ranAgain.countDown();
+      }
+    }, 0, 10, TimeUnit.MILLISECONDS, true);
+    // Let several periods expire while the first execution is blocked
+    final CountingTask marker = new CountingTask(5);
+    final int markerId = scheduler.scheduleTask(marker, 0, 10, TimeUnit.MILLISECONDS, true);
+    assertTrue(marker.latch.await(TIMEOUT, TimeUnit.SECONDS));
+    release.countDown();
+    // The late execution runs once the blocked one ends
+    assertTrue(ranAgain.await(TIMEOUT, TimeUnit.SECONDS));
+    scheduler.stopTask(id);
+    scheduler.stopTask(markerId);
+    assertEquals(0, overlaps.get());
+  }
+
+  @Test
+  public void testBlockedTasksWaitForAWorker() throws InterruptedException {
+    final int workers = Integer.getInteger(TimingWheelScheduler.WORKERS_PROPERTY, 2);
+    final int blockedTasks = workers + 2;
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch started = new CountDownLatch(blockedTasks);
+    final int[] ids = new int[blockedTasks];
+
+    for (int i = 0; i < blockedTasks; i++) {
+      ids[i] = scheduler.scheduleTask(new Runnable() {
+        @Override
+        public void run() {
+          started.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      }, 0, 100, TimeUnit.MILLISECONDS, true);
+    }
+
+    try {
+      // No additional threads are started, the other tasks stay in the queue
+      assertFalse(started.await(500, TimeUnit.MILLISECONDS));
+      assertTrue(scheduler.getNumberOfWorkers() <= workers);
+      release.countDown();
+      assertTrue(started.await(TIMEOUT, TimeUnit.SECONDS));
+    } finally {
+      release.countDown();
+
+      for (int id : ids) {
+        scheduler.stopTask(id);
+      }
+    }
+  }
+
+  /**
+   * Checks that a stopped task is not executed again while a task with the
+   * same period goes through several executions.
+   */
+  private void assertNotRunAgain(final AtomicInteger counter, final int count)
+      throws InterruptedException {
+    final CountingTask marker = new CountingTask(5);
+    final int id = scheduler.scheduleTask(marker, 0, 20, TimeUnit.MILLISECONDS, true);
+    assertTrue(marker.latch.await(TIMEOUT, TimeUnit.SECONDS));
+    scheduler.stopTask(id);
+    assertEquals(count, counter.get());
+  }
+
+  private static class CountingTask implements Runnable {
+
+    private final AtomicInteger counter = new AtomicInteger(0);
+    private final CountDownLatch latch;
+
+    CountingTask() {
+      this(1);
+    }
+
+    CountingTask(int count) {
+      latch = new CountDownLatch(count);
+    }
+
+    @Override
+    public void run() {
+      counter.incrementAndGet();
+      latch.countDown();
+    }
+  }
+
+}
@@ -0,0 +1,311 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2021      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : ESA NanoSat MO Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.com.impl.archive.db;
+
+import esa.mo.com.impl.archive.entities.COMObjectFieldEntity;
+import esa.mo.com.impl.util.HelperCOM;
+import esa.mo.helpertools.helpers.HelperAttributes;
+import esa.mo.helpertools.helpers.HelperMisc;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.ccsds.moims.mo.com.archive.structures.CompositeFilter;
+import org.ccsds.moims.mo.com.archive.structures.ExpressionOperator;
+import org.ccsds.moims.mo.com.structures.ObjectType;
+import org.ccsds.moims.mo.mal.structures.Attribute;
+import org.ccsds.moims.mo.mal.structures.Blob;
+import org.ccsds.moims.mo.mal.structures.Element;
+import org.ccsds.moims.mo.mal.structures.Enumeration;
+import org.ccsds.moims.mo.mal.structures.UInteger;
+import org.ccsds.moims.mo.mal.structures.UOctet;
+import org.ccsds.moims.mo.mal.structures.UShort;
+
+/**
+ * The field index extracts selected fields of the object bodies into the
+ * COMObjectFieldEntity table when the objects are stored. The Composite
+ * Filters on these fields can then be evaluated by the database instead of
+ * decoding every object of the queried time range.
+ *
+ * The indexed fields are configured per object type with the property
+ * esa.nmf.archive.fieldindex, for example: "4.2.1.1:name,description;4.1.1.2:rawValue"
+ * where each object type is written as area.service.version.number and the
+ * fields follow the dotted notation of the Composite Filters.
+ *
+ * The objects that were stored before their fields were configured are
+ * indexed in the background when the archive starts. The filters of an object
+ * type are only evaluated by the database once its index is complete, and
+ * never for object types whose bodies are Enumerations or Blobs, because the
+ * Composite Filters on these bodies are validated against the body itself.
+ */
+public class ArchiveFieldIndex {
+
+    public static final String FIELD_INDEX_PROPERTY = "esa.nmf.archive.fieldindex";
+
+    private final HashMap<Long, String[]> indexedFields = new HashMap<Long, String[]>();
+    private final HashMap<Long, ObjectType> indexedTypes = new HashMap<Long, ObjectType>();
+    private final Set<Long> builtTypes = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+    private final Set<Long> unindexableTypes = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+
+    public ArchiveFieldIndex() {
+        this(System.getProperty(FIELD_INDEX_PROPERTY));
+    }
+
+    public ArchiveFieldIndex(final String configuration) {
+        if (configuration == null || configuration.trim().isEmpty()) {
+            return;
+        }
+
+        for (String entry : configuration.split(";")) {
+            final String[] parts = entry.split(":");
+
+            if (parts.length != 2) {
+                Logger.getLogger(ArchiveFieldIndex.class.getName()).log(Level.WARNING,
+                        "Invalid field index entry: {0}", entry);
+                continue;
+            }
+
+            try {
+                final String[] numbers = parts[0].trim().split("\\.");
+                final ObjectType objType = new ObjectType(
+                        new UShort(Integer.parseInt(numbers[0])),
+                        new UShort(Integer.parseInt(numbers[1])),
+                        new UOctet(Short.parseShort(numbers[2])),
+                        new UShort(Integer.parseInt(numbers[3])));
+
+                final String[] fields = parts[1].split(",");
+
+                for (int i = 0; i < fields.length; i++) {
+                    fields[i] = fields[i].trim();
+                }
+
+                indexedFields.put(HelperCOM.generateSubKey(objType), fields);
+                indexedTypes.put(HelperCOM.generateSubKey(objType), objType);
+            } catch (RuntimeException ex) {
+                Logger.getLogger(ArchiveFieldIndex.class.getName()).log(Level.WARNING,
+                        "Invalid field index entry: " + entry, ex);
+            }
+        }
+
+        Logger.getLogger(ArchiveFieldIndex.class.getName()).log(Level.INFO,
+                "The field index is enabled for {0} object types.", indexedFields.size());
+    }
+
+    /**
+     * Checks if there is any field to be indexed.
+     *
+     * @return True if no field is indexed.
+     */
+    public boolean isEmpty() {
+        return indexedFields.isEmpty();
+    }
+
+    /**
+     * Returns the object types that have indexed fields.
+     *
+     * @return The object types.
+     */
+    public List<ObjectType> getObjectTypes() {
+        return new ArrayList<ObjectType>(indexedTypes.values());
+    }
+
+    /**
+     * Returns the indexed fields of an object type.
+     *
+     * @param objType The object type.
+     * @return The names of the fields, or null if none is indexed.
+     */
+    public String[] getFields(final ObjectType objType) {
+        return indexedFields.get(HelperCOM.generateSubKey(objType));
+    }
+
+    /**
+     * Marks the index of an object type as complete, once all the objects
+     * stored before the fields were configured are indexed.
+     *
+     * @param objType The object type.
+     */
+    public void markBuilt(final ObjectType objType) {
+        builtTypes.add(HelperCOM.generateSubKey(objType));
+    }
+
+    /**
+     * Checks if a field of a certain object type is indexed and can be
+     * filtered by the database. The index of the object type must be complete.
+     *
+     * @param objType The object type.
+     * @param fieldName The name of the field.
+     * @return True if the field is indexed.
+     */
+    public boolean isIndexed(final ObjectType objType, final String fieldName) {
+        final Long key = HelperCOM.generateSubKey(objType);
+        final String[] fields = indexedFields.get(key);
+        return (fields != null) && builtTypes.contains(key) && !unindexableTypes.contains(key)
+                && Arrays.asList(fields).contains(fieldName);
+    }
+
+    /**
+     * Extracts the indexed fields of an object body.
+     *
+     * @param objType The object type of the object.
+     * @param objTypeId The object type id of the object.
+     * @param domainId The domain id of the object.
+     * @param objId The object instance identifier of the object.
+     * @param body The object body.
+     * @return The list of indexed fields, empty if there is nothing to index.
+     */
+    public ArrayList<COMObjectFieldEntity> extractFields(final ObjectType objType,
+            final Integer objTypeId, final Integer domainId, final Long objId, final Object body) {
+        final ArrayList<COMObjectFieldEntity> out = new ArrayList<COMObjectFieldEntity>();
+        final Long key = HelperCOM.generateSubKey(objType);
+        final String[] fields = indexedFields.get(key);
+
+        if (fields == null || body == null) {
+            return out;
+        }
+
+        if (body instanceof Enumeration || body instanceof Blob) {
+            unindexableTypes.add(key);
+            return out;
+        }
+
+        for (String fieldName : fields) {
+            final Object obj;
+
+            try {
+                obj = HelperCOM.getNestedObject(body, fieldName);
+            } catch (NoSuchFieldException ex) {
+                continue; // The filter evaluates to false for objects without the field
+            }
+
+            Element value = (Element) HelperAttributes.javaType2Attribute(obj);
+
+            if (value == null || value instanceof Blob) {
+                continue; // Can only be matched in memory
+            }
+
+            final boolean enumeration = (value instanceof Enumeration);
+
+            if (enumeration) {
+                value = new UInteger(((Enumeration) value).getOrdinal());
+            }
+
+            if (!(value instanceof Attribute)) {
+                continue;
+            }
+
+            out.add(new COMObjectFieldEntity(objTypeId, domainId, objId, fieldName,
+                    HelperAttributes.attribute2double((Attribute) value),
+                    HelperAttributes.attribute2string(value),
+                    enumeration));
+        }
+
+        return out;
+    }
+
+    /**
+     * Checks if a Composite Filter can be evaluated by the database with the
+     * same result as HelperCOM.evaluateExpression. The field must also be
+     * indexed for every queried object type.
+     *
+     * @param filter The Composite Filter.
+     * @return True if the filter can be evaluated by the database.
+     */
+    public static boolean isSupported(final CompositeFilter filter) {
+        final Attribute value = filter.getFieldValue();
+        final ExpressionOperator operator = filter.getType();
+
+        if (value == null || operator == null || value instanceof Blob) {
+            return false;
+        }
+
+        if (HelperMisc.isStringAttribute(value)) {
+            // The CONTAINS operator is only valid for Strings
+            return operator.equals(ExpressionOperator.EQUAL)
+                    || (operator.equals(ExpressionOperator.CONTAINS)
+                    && value.getTypeShortForm() == Attribute._STRING_TYPE_SHORT_FORM);
+        }
+
+        if (HelperAttributes.attribute2double(value) == null) {
+            return false;
+        }
+
+        return operator.equals(ExpressionOperator.EQUAL)
+                || operator.equals(ExpressionOperator.GREATER)
+                || operator.equals(ExpressionOperator.GREATER_OR_EQUAL)
+                || operator.equals(ExpressionOperator.LESS)
+                || operator.equals(ExpressionOperator.LESS_OR_EQUAL);
+    }
+
+    /**
+     * Generates the SQL condition of a supported Composite Filter on the
+     * COMObjectFieldEntity table aliased as F. The values to be bound are added
+     * to the params list.
+     *
+     * @param filter The Composite Filter.
+     * @param params The list of values to be bound.
+     * @return The SQL condition.
+     */
+    static String generateCondition(final CompositeFilter filter, final ArrayList<Object> params) {
+        final Attribute value = filter.getFieldValue();
+        final ExpressionOperator operator = filter.getType();
+        params.add(filter.getFieldName());
+
+        if (HelperMisc.isStringAttribute(value)) {
+            params.add(HelperAttributes.attribute2string(value));
+
+            return operator.equals(ExpressionOperator.EQUAL)
+                    ? "F.fieldName=? AND F.strValue=?"
+                    : "F.fieldName=? AND instr(F.strValue, ?)>0";
+        }
+
+        // The Enumerations are indexed with their ordinal, which is compared
+        // with the value like HelperCOM.evaluateExpression does
+        params.add(HelperAttributes.attribute2double(value));
+        return "F.fieldName=? AND F.numValue" + sqlOperator(operator) + "?";
+    }
+
+    private static String sqlOperator(final ExpressionOperator operator) {
+        if (operator.equals(ExpressionOperator.GREATER)) {
+            return ">";
+        }
+
+        if (operator.equals(ExpressionOperator.GREATER_OR_EQUAL)) {
+            return ">=";
+        }
+
+        if (operator.equals(ExpressionOperator.LESS)) {
+            return "<";
+        }
+
+        if (operator.equals(ExpressionOperator.LESS_OR_EQUAL)) {
+            return "<=";
+        }
+
+        return "=";
+    }
+
+}
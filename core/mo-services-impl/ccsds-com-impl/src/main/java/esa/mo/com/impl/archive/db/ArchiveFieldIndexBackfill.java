@@ -0,0 +1,201 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2021      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : ESA NanoSat MO Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.com.impl.archive.db;
+
+import esa.mo.com.impl.archive.entities.COMObjectEntity;
+import esa.mo.com.impl.archive.entities.COMObjectFieldEntity;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.ccsds.moims.mo.com.structures.ObjectType;
+
+/**
+ * Indexes the fields of the objects of one object type that were stored
+ * before the fields were configured. The objects are read in steps of a few
+ * hundred, in the order of their keys, from the COMObjectEntity table and from
+ * every partition, and only the objects that miss one of the indexed fields
+ * are decoded.
+ *
+ * Must only be used from the thread of the Transactions Processor, which
+ * executes one step at a time between the other interactions with the
+ * database.
+ */
+class ArchiveFieldIndexBackfill {
+
+    private final ArchiveFieldIndex fieldIndex;
+    private final ArchivePartitions partitions;
+    private final ObjectType objType;
+    private final Integer objTypeId;
+    private final String[] fields;
+    private List<String[]> tables;
+    private int generation;
+    private int table;
+    private int lastDomainId;
+    private long lastObjId;
+    private long numberOfObjects = 0;
+
+    ArchiveFieldIndexBackfill(final ArchiveFieldIndex fieldIndex, final ArchivePartitions partitions,
+            final ObjectType objType, final Integer objTypeId) {
+        this.fieldIndex = fieldIndex;
+        this.partitions = partitions;
+        this.objType = objType;
+        this.objTypeId = objTypeId;
+        this.fields = fieldIndex.getFields(objType);
+    }
+
+    /**
+     * Indexes the next objects that miss indexed fields.
+     *
+     * @param c The connection to the database.
+     * @param limit The maximum number of objects read in this step.
+     * @return True if there are still objects to be read.
+     * @throws SQLException If the objects could not be read or indexed.
+     */
+    boolean step(final Connection c, final int limit) throws SQLException {
+        if (tables == null || generation != partitions.getGeneration()) {
+            // Objects might have been moved to a partition that was already read
+            generation = partitions.getGeneration();
+            tables = partitions.getTables(c);
+            table = 0;
+            lastDomainId = Integer.MIN_VALUE;
+            lastObjId = Long.MIN_VALUE;
+        }
+
+        if (table >= tables.size()) {
+            return false;
+        }
+
+        final ArrayList<COMObjectEntity> perObjs = this.selectUnindexed(c, tables.get(table), limit);
+
+        if (!perObjs.isEmpty()) {
+            final COMObjectEntity last = perObjs.get(perObjs.size() - 1);
+            lastDomainId = last.getDomainId();
+            lastObjId = last.getObjectId();
+            this.insertFields(c, tables.get(table)[1], perObjs);
+            numberOfObjects += perObjs.size();
+        }
+
+        if (perObjs.size() < limit) {
+            table++;
+            lastDomainId = Integer.MIN_VALUE;
+            lastObjId = Long.MIN_VALUE;
+        }
+
+        if (table < tables.size()) {
+            return true;
+        }
+
+        fieldIndex.markBuilt(objType);
+        Logger.getLogger(ArchiveFieldIndexBackfill.class.getName()).log(Level.INFO,
+                "The field index of the object type {0} is complete, {1} objects were read.",
+                new Object[]{objType, numberOfObjects});
+        return false;
+    }
+
+    private ArrayList<COMObjectEntity> selectUnindexed(final Connection c, final String[] pair,
+            final int limit) throws SQLException {
+        final StringBuilder sql = new StringBuilder(ArchiveQueryEngine.SELECT_COLUMNS)
+                .append(" FROM ").append(pair[0]).append(" PU WHERE PU.objectTypeId=?")
+                .append(" AND (PU.domainId>? OR (PU.domainId=? AND PU.objId>?)) AND (");
+
+        for (int i = 0; i < fields.length; i++) {
+            sql.append((i == 0) ? "" : " OR ").append("NOT EXISTS (SELECT 1 FROM ").append(pair[1])
+                    .append(" F WHERE F.objectTypeId=PU.objectTypeId AND F.domainId=PU.domainId")
+                    .append(" AND F.objId=PU.objId AND F.fieldName=?)");
+        }
+
+        sql.append(") ORDER BY PU.domainId, PU.objId LIMIT ?");
+        final ArrayList<COMObjectEntity> perObjs = new ArrayList<COMObjectEntity>();
+        final PreparedStatement stmt = c.prepareStatement(sql.toString());
+
+        try {
+            int index = 1;
+            stmt.setInt(index++, objTypeId);
+            stmt.setInt(index++, lastDomainId);
+            stmt.setInt(index++, lastDomainId);
+            stmt.setLong(index++, lastObjId);
+
+            for (String field : fields) {
+                stmt.setString(index++, field);
+            }
+
+            stmt.setInt(index, limit);
+            final ResultSet rs = stmt.executeQuery();
+
+            try {
+                while (rs.next()) {
+                    perObjs.add(ArchiveQueryEngine.toEntity(rs));
+                }
+            } finally {
+                rs.close();
+            }
+        } finally {
+            stmt.close();
+        }
+
+        return perObjs;
+    }
+
+    private void insertFields(final Connection c, final String fieldsTable,
+            final ArrayList<COMObjectEntity> perObjs) throws SQLException {
+        final boolean autoCommit = c.getAutoCommit();
+        c.setAutoCommit(false);
+
+        try {
+            final PreparedStatement stmt = c.prepareStatement("INSERT OR REPLACE INTO " + fieldsTable
+                    + " (objectTypeId, domainId, objId, fieldName, numValue, strValue, enumeration)"
+                    + " VALUES (?, ?, ?, ?, ?, ?, ?)");
+
+            try {
+                for (COMObjectEntity perObj : perObjs) {
+                    for (COMObjectFieldEntity field : fieldIndex.extractFields(objType, objTypeId,
+                            perObj.getDomainId(), perObj.getObjectId(), perObj.getObject())) {
+                        stmt.setInt(1, field.getObjectTypeId());
+                        stmt.setInt(2, field.getDomainId());
+                        stmt.setLong(3, field.getObjectId());
+                        stmt.setString(4, field.getFieldName());
+                        stmt.setObject(5, field.getNumValue());
+                        stmt.setString(6, field.getStrValue());
+                        stmt.setBoolean(7, field.isEnumeration());
+                        stmt.addBatch();
+                    }
+                }
+
+                stmt.executeBatch();
+            } finally {
+                stmt.close();
+            }
+
+            c.commit();
+        } catch (SQLException ex) {
+            c.rollback();
+            throw ex;
+        } finally {
+            c.setAutoCommit(autoCommit);
+        }
+    }
+
+}
@@ -0,0 +1,661 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2021      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : ESA NanoSat MO Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.com.impl.archive.db;
+
+import esa.mo.com.impl.archive.entities.COMObjectEntity;
+import esa.mo.helpertools.helpers.HelperTime;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.ccsds.moims.mo.mal.structures.LongList;
+
+/**
+ * The optional time-partitioned layout of the archive. The new objects are
+ * always stored in the COMObjectEntity table, and once the time bucket of
+ * their timestamp is over they are moved, together with their indexed fields,
+ * to a pair of tables dedicated to that bucket. The queries only read the
+ * partitions that overlap their time range and the expired data is released
+ * by dropping whole partitions instead of deleting row by row.
+ *
+ * The layout is enabled by setting the length of the time buckets in hours
+ * with the esa.nmf.archive.partition.period property. The number of past
+ * partitions that are kept is set with esa.nmf.archive.partition.retention,
+ * 0 keeps all of them.
+ *
+ * The partitions are only changed from the thread of the Transactions
+ * Processor. The methods that read them take the connection to be used, so
+ * they can also be called from the readers of the archive.
+ */
+public class ArchivePartitions {
+
+    /**
+     * Notified when the rolling of the partitions removes objects from the
+     * archive, either by deleting expired rows or by dropping a partition.
+     */
+    public interface RemovalListener {
+
+        /**
+         * Called after objects of a type and domain were removed.
+         *
+         * @param objTypeId The object type id of the removed objects.
+         * @param domainId The domain id of the removed objects.
+         */
+        void onObjectsRemoved(int objTypeId, int domainId);
+    }
+
+    public static final String PERIOD_PROPERTY = "esa.nmf.archive.partition.period";
+    public static final String RETENTION_PROPERTY = "esa.nmf.archive.partition.retention";
+
+    private static final String OBJECTS_TABLE = "COMObjectEntity";
+    private static final String FIELDS_TABLE = "COMObjectFieldEntity";
+    private static final String PARTITION_SUFFIX = "_P";
+    private static final long NANOSECONDS_PER_HOUR = 3600L * 1000L * 1000L * 1000L;
+
+    private final DatabaseBackend dbBackend;
+    private final long period; // in nanoseconds, the unit of the timestamps
+    private final int retention;
+    private final ConcurrentSkipListSet<Long> buckets = new ConcurrentSkipListSet<Long>();
+    private final AtomicInteger generation = new AtomicInteger(0);
+    private volatile boolean loaded = false;
+    private volatile RemovalListener removalListener;
+
+    public ArchivePartitions(final DatabaseBackend dbBackend) {
+        this.dbBackend = dbBackend;
+        this.period = Math.max(0, Long.getLong(PERIOD_PROPERTY, 0)) * NANOSECONDS_PER_HOUR;
+        this.retention = Math.max(0, Integer.getInteger(RETENTION_PROPERTY, 0));
+    }
+
+    /**
+     * Returns true if the objects are moved to partitions. The partitions that
+     * already exist are always read, even if the layout was disabled later.
+     *
+     * @return True if enabled.
+     */
+    public boolean isEnabled() {
+        return period != 0 && dbBackend.isSQLite();
+    }
+
+    /**
+     * Sets the listener notified when the rolling removes objects.
+     *
+     * @param listener The listener, or null.
+     */
+    public void setRemovalListener(final RemovalListener listener) {
+        this.removalListener = listener;
+    }
+
+    /**
+     * Returns the period in milliseconds at which the partitions should be
+     * rolled.
+     *
+     * @return The period.
+     */
+    public long getRollInterval() {
+        return Math.max(60 * 1000L, Math.min(period / 1000000L / 4, 3600 * 1000L));
+    }
+
+    private NavigableSet<Long> getBuckets(final Connection c, final Long startTime,
+            final Long endTime) throws SQLException {
+        this.load(c);
+
+        if (period == 0 || buckets.isEmpty()) {
+            return new TreeSet<Long>(buckets);
+        }
+
+        final long from = (startTime == null) ? Long.MIN_VALUE : Math.floorDiv(startTime, period);
+        final long to = (endTime == null) ? Long.MAX_VALUE : Math.floorDiv(endTime, period);
+
+        return (from > to) ? new TreeSet<Long>() : new TreeSet<Long>(buckets.subSet(from, true, to, true));
+    }
+
+    /**
+     * Returns a number that changes every time a partition is created or
+     * dropped. A reader that fails while the partitions change can retry.
+     *
+     * @return The generation of the partitions.
+     */
+    public int getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Moves the objects of the time buckets that are already over into their
+     * partitions and drops the partitions that are older than the retention.
+     *
+     * @return The number of dropped partitions.
+     * @throws SQLException If the partitions could not be updated.
+     */
+    public int roll() throws SQLException {
+        if (!isEnabled()) {
+            return 0;
+        }
+
+        final Connection c = this.getConnection();
+        this.load(c);
+        final LinkedHashSet<List<Integer>> removed = new LinkedHashSet<List<Integer>>();
+        final long currentBucket = Math.floorDiv(HelperTime.getTimestamp().getValue(), period);
+        final long oldestKept = (retention == 0) ? Long.MIN_VALUE : currentBucket - retention;
+
+        Long oldest = this.queryLong("SELECT MIN(timestampArchiveDetails) FROM " + OBJECTS_TABLE);
+
+        while (oldest != null && Math.floorDiv(oldest, period) < currentBucket) {
+            final long bucket = Math.floorDiv(oldest, period);
+            final boolean autoCommit = c.getAutoCommit();
+            c.setAutoCommit(false);
+
+            try {
+                if (bucket < oldestKept) {
+                    // Already expired, there is no point in moving it
+                    this.deleteRange(bucket, removed);
+                } else {
+                    this.moveRange(bucket);
+                }
+
+                c.commit();
+            } catch (SQLException ex) {
+                c.rollback();
+                throw ex;
+            } finally {
+                c.setAutoCommit(autoCommit);
+            }
+
+            oldest = this.queryLong("SELECT MIN(timestampArchiveDetails) FROM " + OBJECTS_TABLE);
+        }
+
+        int dropped = 0;
+
+        while (!buckets.isEmpty() && buckets.first() < oldestKept) {
+            final long bucket = buckets.pollFirst();
+            this.addTypesAndDomains(partitionName(OBJECTS_TABLE, bucket), "", removed);
+            generation.incrementAndGet();
+            this.execute("DROP TABLE IF EXISTS " + partitionName(OBJECTS_TABLE, bucket));
+            this.execute("DROP TABLE IF EXISTS " + partitionName(FIELDS_TABLE, bucket));
+            dropped++;
+            Logger.getLogger(ArchivePartitions.class.getName()).log(Level.INFO,
+                    "Dropped the archive partition {0}", bucket);
+        }
+
+        this.notifyRemoved(removed);
+        return dropped;
+    }
+
+    private void notifyRemoved(final LinkedHashSet<List<Integer>> removed) {
+        final RemovalListener listener = this.removalListener;
+
+        if (listener == null) {
+            return;
+        }
+
+        for (List<Integer> key : removed) {
+            try {
+                listener.onObjectsRemoved(key.get(0), key.get(1));
+            } catch (RuntimeException ex) {
+                Logger.getLogger(ArchivePartitions.class.getName()).log(Level.WARNING,
+                        "The removal listener failed!", ex);
+            }
+        }
+    }
+
+    /**
+     * Adds the distinct pairs of object type id and domain id of the rows of
+     * a table that match a condition.
+     */
+    private void addTypesAndDomains(final String table, final String condition,
+            final LinkedHashSet<List<Integer>> keys) throws SQLException {
+        final Statement stmt = this.getConnection().createStatement();
+
+        try {
+            final ResultSet rs = stmt.executeQuery("SELECT DISTINCT objectTypeId, domainId FROM "
+                    + table + condition);
+
+            try {
+                while (rs.next()) {
+                    final List<Integer> key = new ArrayList<Integer>(2);
+                    key.add(rs.getInt(1));
+                    key.add(rs.getInt(2));
+                    keys.add(key);
+                }
+            } finally {
+                rs.close();
+            }
+        } finally {
+            stmt.close();
+        }
+    }
+
+    private void moveRange(final long bucket) throws SQLException {
+        this.createPartition(bucket);
+        final String inRange = " WHERE timestampArchiveDetails>=" + (bucket * period)
+                + " AND timestampArchiveDetails<" + ((bucket + 1) * period);
+        final String objectInRange = " WHERE EXISTS (SELECT 1 FROM " + OBJECTS_TABLE + " PU"
+                + " WHERE PU.objectTypeId=F.objectTypeId AND PU.domainId=F.domainId"
+                + " AND PU.objId=F.objId AND PU.timestampArchiveDetails>=" + (bucket * period)
+                + " AND PU.timestampArchiveDetails<" + ((bucket + 1) * period) + ")";
+
+        this.execute("INSERT OR REPLACE INTO " + partitionName(FIELDS_TABLE, bucket)
+                + " SELECT F.* FROM " + FIELDS_TABLE + " F" + objectInRange);
+        this.execute("DELETE FROM " + FIELDS_TABLE + " AS F" + objectInRange);
+        final int moved = this.execute("INSERT OR REPLACE INTO " + partitionName(OBJECTS_TABLE, bucket)
+                + " SELECT * FROM " + OBJECTS_TABLE + inRange);
+        this.execute("DELETE FROM " + OBJECTS_TABLE + inRange);
+
+        Logger.getLogger(ArchivePartitions.class.getName()).log(Level.FINE,
+                "Moved {0} objects to the archive partition {1}", new Object[]{moved, bucket});
+    }
+
+    private void deleteRange(final long bucket, final LinkedHashSet<List<Integer>> removed)
+            throws SQLException {
+        final String inRange = " WHERE timestampArchiveDetails>=" + (bucket * period)
+                + " AND timestampArchiveDetails<" + ((bucket + 1) * period);
+
+        this.addTypesAndDomains(OBJECTS_TABLE, inRange, removed);
+
+        this.execute("DELETE FROM " + FIELDS_TABLE + " AS F WHERE EXISTS (SELECT 1 FROM "
+                + OBJECTS_TABLE + " PU WHERE PU.objectTypeId=F.objectTypeId"
+                + " AND PU.domainId=F.domainId AND PU.objId=F.objId AND PU."
+                + inRange.substring(" WHERE ".length()).replace(" AND ", " AND PU.") + ")");
+        this.execute("DELETE FROM " + OBJECTS_TABLE + inRange);
+    }
+
+    private void createPartition(final long bucket) throws SQLException {
+        if (buckets.contains(bucket)) {
+            return;
+        }
+
+        final String objects = partitionName(OBJECTS_TABLE, bucket);
+        final String fields = partitionName(FIELDS_TABLE, bucket);
+        final String prefix = OBJECTS_TABLE + PARTITION_SUFFIX + bucket;
+
+        this.execute("CREATE TABLE IF NOT EXISTS " + objects
+                + " AS SELECT * FROM " + OBJECTS_TABLE + " WHERE 0");
+        this.execute("CREATE UNIQUE INDEX IF NOT EXISTS \"" + prefix + "_pk\" ON " + objects
+                + " (objectTypeId, domainId, objId)");
+        this.execute("CREATE INDEX IF NOT EXISTS \"" + prefix + "_keyset\" ON " + objects
+                + " (timestampArchiveDetails, objectTypeId, domainId, objId)");
+        this.execute("CREATE INDEX IF NOT EXISTS \"" + prefix + "_keysetByType\" ON " + objects
+                + " (objectTypeId, domainId, timestampArchiveDetails, objId)");
+        this.execute("CREATE TABLE IF NOT EXISTS " + fields
+                + " AS SELECT * FROM " + FIELDS_TABLE + " WHERE 0");
+        this.execute("CREATE UNIQUE INDEX IF NOT EXISTS \"" + prefix + "_fields_pk\" ON " + fields
+                + " (objectTypeId, domainId, objId, fieldName)");
+        buckets.add(bucket);
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Finds a COM object that was moved to a partition.
+     *
+     * @param c The connection to the database.
+     * @param objTypeId The object type id.
+     * @param domainId The domain id.
+     * @param objId The object id.
+     * @return The COM object or null if it is not in any partition.
+     * @throws SQLException If the partitions could not be read.
+     */
+    public COMObjectEntity find(final Connection c, final Integer objTypeId, final Integer domainId,
+            final Long objId) throws SQLException {
+        if (!dbBackend.isSQLite()) {
+            return null;
+        }
+
+        this.load(c);
+
+        for (Long bucket : buckets.descendingSet()) {
+            final PreparedStatement stmt = c.prepareStatement(
+                    ArchiveQueryEngine.SELECT_COLUMNS + " FROM " + partitionName(OBJECTS_TABLE, bucket)
+                    + " PU WHERE PU.objectTypeId=? AND PU.domainId=? AND PU.objId=?");
+
+            try {
+                stmt.setInt(1, objTypeId);
+                stmt.setInt(2, domainId);
+                stmt.setLong(3, objId);
+                final ResultSet rs = stmt.executeQuery();
+
+                try {
+                    if (rs.next()) {
+                        return ArchiveQueryEngine.toEntity(rs);
+                    }
+                } finally {
+                    rs.close();
+                }
+            } finally {
+                stmt.close();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Adds the ids of the COM objects of a type and domain that were moved to
+     * the partitions.
+     *
+     * @param c The connection to the database.
+     * @param objTypeId The object type id.
+     * @param domainId The domain id.
+     * @param objIds The list where the ids are added.
+     * @throws SQLException If the partitions could not be read.
+     */
+    public void addAllIds(final Connection c, final Integer objTypeId, final Integer domainId,
+            final LongList objIds) throws SQLException {
+        if (!dbBackend.isSQLite()) {
+            return;
+        }
+
+        this.load(c);
+
+        for (Long bucket : buckets) {
+            final PreparedStatement stmt = c.prepareStatement(
+                    "SELECT objId FROM " + partitionName(OBJECTS_TABLE, bucket)
+                    + " WHERE objectTypeId=? AND domainId=?");
+
+            try {
+                stmt.setInt(1, objTypeId);
+                stmt.setInt(2, domainId);
+                final ResultSet rs = stmt.executeQuery();
+
+                try {
+                    while (rs.next()) {
+                        objIds.add(rs.getLong(1));
+                    }
+                } finally {
+                    rs.close();
+                }
+            } finally {
+                stmt.close();
+            }
+        }
+    }
+
+    /**
+     * Deletes COM objects and their indexed fields from all the partitions.
+     *
+     * @param objTypeId The object type id.
+     * @param domainId The domain id.
+     * @param objIds The ids of the objects.
+     * @throws SQLException If the partitions could not be updated.
+     */
+    public void delete(final Integer objTypeId, final Integer domainId, final List<Long> objIds)
+            throws SQLException {
+        if (!dbBackend.isSQLite() || objIds.isEmpty()) {
+            return;
+        }
+
+        final Connection c = this.getConnection();
+        this.load(c);
+
+        if (buckets.isEmpty()) {
+            return;
+        }
+
+        final boolean autoCommit = c.getAutoCommit();
+        c.setAutoCommit(false);
+
+        try {
+            for (Long bucket : buckets) {
+                this.deleteIds(partitionName(FIELDS_TABLE, bucket), objTypeId, domainId, objIds);
+                this.deleteIds(partitionName(OBJECTS_TABLE, bucket), objTypeId, domainId, objIds);
+            }
+
+            c.commit();
+        } catch (SQLException ex) {
+            c.rollback();
+            throw ex;
+        } finally {
+            c.setAutoCommit(autoCommit);
+        }
+    }
+
+    private void deleteIds(final String table, final Integer objTypeId, final Integer domainId,
+            final List<Long> objIds) throws SQLException {
+        final PreparedStatement stmt = this.getConnection().prepareStatement("DELETE FROM " + table
+                + " WHERE objectTypeId=? AND domainId=? AND objId=?");
+
+        try {
+            for (Long objId : objIds) {
+                stmt.setInt(1, objTypeId);
+                stmt.setInt(2, domainId);
+                stmt.setLong(3, objId);
+                stmt.addBatch();
+            }
+
+            stmt.executeBatch();
+        } finally {
+            stmt.close();
+        }
+    }
+
+    /**
+     * Returns the pairs of objects and indexed fields tables of the archive,
+     * starting with the COMObjectEntity and COMObjectFieldEntity tables and
+     * followed by the partitions in ascending order.
+     *
+     * @param c The connection to the database.
+     * @return The pairs of table names, quoted if needed.
+     * @throws SQLException If the partitions could not be listed.
+     */
+    public List<String[]> getTables(final Connection c) throws SQLException {
+        return this.getTables(c, null, null);
+    }
+
+    /**
+     * Returns the pairs of objects and indexed fields tables that might hold
+     * COM objects of the time range, starting with the COMObjectEntity and
+     * COMObjectFieldEntity tables and followed by the partitions overlapping
+     * the range in ascending order.
+     *
+     * @param c The connection to the database.
+     * @param startTime The start of the range or null if it is open.
+     * @param endTime The end of the range or null if it is open.
+     * @return The pairs of table names, quoted if needed.
+     * @throws SQLException If the partitions could not be listed.
+     */
+    public List<String[]> getTables(final Connection c, final Long startTime, final Long endTime)
+            throws SQLException {
+        final List<String[]> tables = new ArrayList<String[]>();
+        tables.add(new String[]{OBJECTS_TABLE, FIELDS_TABLE});
+
+        if (!dbBackend.isSQLite()) {
+            return tables;
+        }
+
+        for (Long bucket : this.getBuckets(c, startTime, endTime)) {
+            tables.add(new String[]{partitionName(OBJECTS_TABLE, bucket), partitionName(FIELDS_TABLE, bucket)});
+        }
+
+        return tables;
+    }
+
+    /**
+     * Returns the time buckets that have a partition.
+     *
+     * @return The buckets, in ascending order.
+     * @throws SQLException If the partitions could not be listed.
+     */
+    public List<Long> getPartitions() throws SQLException {
+        this.load(this.getConnection());
+        return new ArrayList<Long>(buckets);
+    }
+
+    /**
+     * Drops all the partitions. Used when the archive is reset.
+     *
+     * @throws SQLException If the partitions could not be dropped.
+     */
+    public void dropAll() throws SQLException {
+        if (!dbBackend.isSQLite()) {
+            return;
+        }
+
+        this.load(this.getConnection());
+
+        while (!buckets.isEmpty()) {
+            final long bucket = buckets.pollFirst();
+            generation.incrementAndGet();
+            this.execute("DROP TABLE IF EXISTS " + partitionName(OBJECTS_TABLE, bucket));
+            this.execute("DROP TABLE IF EXISTS " + partitionName(FIELDS_TABLE, bucket));
+        }
+    }
+
+    /**
+     * Returns the highest object id of a type and domain that was moved to a
+     * partition.
+     *
+     * @param c The connection to the database.
+     * @param objTypeId The object type id.
+     * @param domainId The domain id.
+     * @return The highest object id or null if there are none.
+     * @throws SQLException If the partitions could not be read.
+     */
+    public Long getMaxObjId(final Connection c, final Integer objTypeId, final Integer domainId)
+            throws SQLException {
+        if (!dbBackend.isSQLite()) {
+            return null;
+        }
+
+        this.load(c);
+        Long max = null;
+
+        for (Long bucket : buckets) {
+            final PreparedStatement stmt;
+
+            try {
+                stmt = c.prepareStatement("SELECT MAX(objId) FROM "
+                        + partitionName(OBJECTS_TABLE, bucket) + " WHERE objectTypeId=? AND domainId=?");
+            } catch (SQLException ex) {
+                if (buckets.contains(bucket)) {
+                    throw ex;
+                }
+
+                continue; // Dropped meanwhile by a roll, so its objects are gone
+            }
+
+            try {
+                stmt.setInt(1, objTypeId);
+                stmt.setInt(2, domainId);
+                final ResultSet rs = stmt.executeQuery();
+
+                try {
+                    if (rs.next()) {
+                        final long value = rs.getLong(1);
+
+                        if (!rs.wasNull() && (max == null || value > max)) {
+                            max = value;
+                        }
+                    }
+                } finally {
+                    rs.close();
+                }
+            } finally {
+                stmt.close();
+            }
+        }
+
+        return max;
+    }
+
+    private synchronized void load(final Connection c) throws SQLException {
+        if (loaded) {
+            return;
+        }
+
+        final String prefix = OBJECTS_TABLE + PARTITION_SUFFIX;
+        final Statement stmt = c.createStatement();
+
+        try {
+            final ResultSet rs = stmt.executeQuery(
+                    "SELECT name FROM sqlite_master WHERE type='table' AND name LIKE '" + prefix + "%'");
+
+            try {
+                while (rs.next()) {
+                    try {
+                        buckets.add(Long.parseLong(rs.getString(1).substring(prefix.length())));
+                    } catch (NumberFormatException ex) {
+                        // Not a partition
+                    }
+                }
+            } finally {
+                rs.close();
+            }
+        } finally {
+            stmt.close();
+        }
+
+        loaded = true;
+    }
+
+    private int execute(final String sql) throws SQLException {
+        final Statement stmt = this.getConnection().createStatement();
+
+        try {
+            return stmt.executeUpdate(sql);
+        } finally {
+            stmt.close();
+        }
+    }
+
+    private Long queryLong(final String sql) throws SQLException {
+        final Statement stmt = this.getConnection().createStatement();
+
+        try {
+            final ResultSet rs = stmt.executeQuery(sql);
+
+            try {
+                if (rs.next()) {
+                    final long value = rs.getLong(1);
+                    return rs.wasNull() ? null : value;
+                }
+
+                return null;
+            } finally {
+                rs.close();
+            }
+        } finally {
+            stmt.close();
+        }
+    }
+
+    private Connection getConnection() throws SQLException {
+        final Connection connection = dbBackend.getConnection();
+
+        if (connection == null) {
+            throw new SQLException("The connection to the database is not available!");
+        }
+
+        return connection;
+    }
+
+    private static String partitionName(final String table, final long bucket) {
+        return "\"" + table + PARTITION_SUFFIX + bucket + "\"";
+    }
+
+}
@@ -0,0 +1,126 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2021      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : ESA NanoSat MO Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.com.impl.archive.db;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import org.ccsds.moims.mo.mal.MALException;
+import org.ccsds.moims.mo.mal.structures.Blob;
+
+/**
+ * The position of a keyset paginated query. It holds the key of the last
+ * object of the previous page, using the ids of the database.
+ *
+ * The provider hands the position to the consumer as an opaque continuation
+ * token, which the consumer sends back unchanged to get the next page. The
+ * format of the token is private to the provider.
+ */
+public class ArchiveQueryCursor {
+
+    private static final byte TOKEN_VERSION = 2;
+
+    private final long timestamp;
+    private final int objectTypeId;
+    private final int domainId;
+    private final long objId;
+
+    public ArchiveQueryCursor(final long timestamp, final int objectTypeId,
+            final int domainId, final long objId) {
+        this.timestamp = timestamp;
+        this.objectTypeId = objectTypeId;
+        this.domainId = domainId;
+        this.objId = objId;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public int getObjectTypeId() {
+        return objectTypeId;
+    }
+
+    public int getDomainId() {
+        return domainId;
+    }
+
+    public long getObjId() {
+        return objId;
+    }
+
+    /**
+     * Encodes the cursor into a continuation token.
+     *
+     * @return The continuation token.
+     */
+    public Blob toToken() {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final DataOutputStream dos = new DataOutputStream(baos);
+
+        try {
+            dos.writeByte(TOKEN_VERSION);
+            dos.writeLong(timestamp);
+            dos.writeInt(objectTypeId);
+            dos.writeInt(domainId);
+            dos.writeLong(objId);
+            dos.close();
+        } catch (IOException ex) {
+            // Not possible with a ByteArrayOutputStream
+            throw new IllegalStateException(ex);
+        }
+
+        return new Blob(baos.toByteArray());
+    }
+
+    /**
+     * Decodes a continuation token that was generated with toToken.
+     *
+     * @param token The continuation token.
+     * @return The cursor.
+     * @throws IllegalArgumentException If the token is not valid.
+     */
+    public static ArchiveQueryCursor fromToken(final Blob token) throws IllegalArgumentException {
+        try {
+            final DataInputStream dis = new DataInputStream(new ByteArrayInputStream(token.getValue()));
+
+            if (dis.readByte() != TOKEN_VERSION) {
+                throw new IllegalArgumentException("Unsupported continuation token version!");
+            }
+
+            final ArchiveQueryCursor cursor = new ArchiveQueryCursor(dis.readLong(),
+                    dis.readInt(), dis.readInt(), dis.readLong());
+
+            if (dis.read() != -1) {
+                throw new IllegalArgumentException("The continuation token is too long!");
+            }
+
+            return cursor;
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("The continuation token could not be decoded!", ex);
+        } catch (MALException ex) {
+            throw new IllegalArgumentException("The continuation token could not be decoded!", ex);
+        }
+    }
+
+}
@@ -0,0 +1,645 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2021      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : ESA NanoSat MO Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.com.impl.archive.db;
+
+import esa.mo.com.impl.archive.entities.COMObjectEntity;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.ccsds.moims.mo.com.archive.structures.ArchiveQuery;
+import org.ccsds.moims.mo.com.archive.structures.CompositeFilter;
+import org.ccsds.moims.mo.com.archive.structures.KeysetPaginationFilter;
+import org.ccsds.moims.mo.com.archive.structures.PaginationFilter;
+import org.ccsds.moims.mo.com.archive.structures.QueryFilter;
+import org.ccsds.moims.mo.mal.structures.IntegerList;
+import org.ccsds.moims.mo.mal.structures.LongList;
+
+/**
+ * The query engine compiles the shape of an archive query into a parameterized
+ * SQL statement and keeps the prepared statements cached, so that queries with
+ * the same shape reuse the already prepared plan and only bind new values.
+ *
+ * The lists of ids are bound with an IN clause padded to the next power of two,
+ * which keeps the number of different shapes small. With SQLite, lists that are
+ * too long to be bound as parameters are loaded into a temporary table and
+ * joined instead.
+ *
+ * Queries with a KeysetPaginationFilter seek directly to the position after
+ * the cursor instead of skipping the rows of the previous pages. SQLite
+ * compares the key as a row value, other databases compare it column by
+ * column. A query of a single object type and domain reads the rows in the
+ * order of the (objectTypeId, domainId, timestamp, objId) index, so the page
+ * is not sorted, and the (timestamp, objectTypeId, domainId, objId) index
+ * serves the queries with wildcards.
+ *
+ * The Composite Filters supported by the field index are evaluated with a
+ * subquery on the COMObjectFieldEntity table. When the archive is partitioned
+ * by time, only the partitions overlapping the time range of the query are
+ * read: the query is run on each of their tables, so each one uses its own
+ * indexes, and the results are merged with UNION ALL. The statement is cached
+ * like any other shape, once for each set of partitions.
+ *
+ * Must only be used from a single thread, either the thread of the
+ * Transactions Processor or the thread of one of the archive readers.
+ */
+public class ArchiveQueryEngine {
+
+    static final String SELECT_COLUMNS
+            = "SELECT objectTypeId, objId, domainId, network, OBJ, providerURI, relatedLink, "
+            + "sourceLinkDomainId, sourceLinkObjId, sourceLinkObjectTypeId, timestampArchiveDetails";
+
+    private static final String TEMP_TABLE = "ArchiveQueryIdList";
+    private static final String CREATE_TEMP_TABLE
+            = "CREATE TEMP TABLE IF NOT EXISTS " + TEMP_TABLE + " (listId INTEGER, id INTEGER)";
+    private static final String INSERT_TEMP_TABLE
+            = "INSERT INTO " + TEMP_TABLE + " (listId, id) VALUES (?, ?)";
+    private static final String CLEAR_TEMP_TABLE = "DELETE FROM " + TEMP_TABLE;
+
+    private static final String OBJECTS_TABLE = "COMObjectEntity";
+    private static final String FIELDS_TABLE = "COMObjectFieldEntity";
+    private static final String FIELDS_SOURCE = " FROM " + FIELDS_TABLE + " F WHERE ";
+
+    private static final String[] TIME_ORDER = new String[]{"timestampArchiveDetails"};
+    private static final String[] KEYSET_ORDER = new String[]{"timestampArchiveDetails",
+        "objectTypeId", "domainId", "objId"};
+
+    private static final int MAX_BOUND_LIST_SIZE = 64;
+    private static final int MAX_CACHED_STATEMENTS = 64;
+
+    private final DatabaseBackend dbBackend;
+    private final boolean sqlite;
+    private final Connection connection;
+    private final ArchivePartitions partitions;
+    private final LinkedHashMap<String, PreparedStatement> statements;
+    private PreparedStatement insertTempList;
+    private int tempListCounter = 0;
+    private long numberOfQueries = 0;
+    private long numberOfPreparations = 0;
+
+    public ArchiveQueryEngine(final DatabaseBackend dbBackend) {
+        this(dbBackend, null);
+    }
+
+    public ArchiveQueryEngine(final DatabaseBackend dbBackend, final ArchivePartitions partitions) {
+        this(dbBackend, null, partitions);
+    }
+
+    /**
+     * Creates a query engine that uses its own connection instead of the
+     * connection of the database backend, as done by the readers of the
+     * archive.
+     *
+     * @param dbBackend The database backend.
+     * @param connection The connection to be used, or null for the connection
+     * of the database backend.
+     * @param partitions The time partitions of the archive, or null.
+     */
+    public ArchiveQueryEngine(final DatabaseBackend dbBackend, final Connection connection,
+            final ArchivePartitions partitions) {
+        this.dbBackend = dbBackend;
+        this.sqlite = dbBackend.isSQLite();
+        this.connection = connection;
+        this.partitions = partitions;
+        this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > MAX_CACHED_STATEMENTS) {
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Executes an archive query.
+     *
+     * @param objTypeIds The object type ids to be matched.
+     * @param archiveQuery The archive query.
+     * @param domainIds The domain ids to be matched.
+     * @param providerURIId The provider URI id, or null if it is a wildcard.
+     * @param networkId The network id, or null if it is a wildcard.
+     * @param sourceLink The source link to be matched.
+     * @param filter The query filter.
+     * @param cursor The position after which a keyset paginated query
+     * continues, or null for the first page.
+     * @param fieldFilters The Composite Filters to be evaluated on the field
+     * index, or null if there are none.
+     * @return The matched COM objects.
+     * @throws SQLException If the query could not be executed.
+     */
+    public ArrayList<COMObjectEntity> query(final IntegerList objTypeIds,
+            final ArchiveQuery archiveQuery, final IntegerList domainIds,
+            final Integer providerURIId, final Integer networkId,
+            final SourceLinkContainer sourceLink, final QueryFilter filter,
+            final ArchiveQueryCursor cursor, final ArrayList<CompositeFilter> fieldFilters)
+            throws SQLException {
+        final Long startTime = (archiveQuery.getStartTime() == null) ? null : archiveQuery.getStartTime().getValue();
+        final Long endTime = (archiveQuery.getEndTime() == null) ? null : archiveQuery.getEndTime().getValue();
+        final StringBuilder conditions = new StringBuilder();
+        final ArrayList<Object> conditionParams = new ArrayList<Object>();
+        final Conditions where = new Conditions(conditions);
+
+        this.appendListCondition(where, conditionParams, "PU.domainId", domainIds);
+        this.appendListCondition(where, conditionParams, "PU.objectTypeId", objTypeIds);
+
+        if (!archiveQuery.getRelated().equals((long) 0)) {
+            where.next().append("PU.relatedLink=?");
+            conditionParams.add(archiveQuery.getRelated());
+        }
+
+        if (archiveQuery.getStartTime() != null) {
+            where.next().append("PU.timestampArchiveDetails>=?");
+            conditionParams.add(archiveQuery.getStartTime().getValue());
+        }
+
+        if (archiveQuery.getEndTime() != null) {
+            where.next().append("PU.timestampArchiveDetails<=?");
+            conditionParams.add(archiveQuery.getEndTime().getValue());
+        }
+
+        if (archiveQuery.getProvider() != null) {
+            where.next().append("PU.providerURI=?");
+            conditionParams.add(providerURIId);
+        }
+
+        if (archiveQuery.getNetwork() != null) {
+            where.next().append("PU.network=?");
+            conditionParams.add(networkId);
+        }
+
+        if (archiveQuery.getSource() != null) {
+            this.appendListCondition(where, conditionParams, "PU.sourceLinkObjectTypeId",
+                    sourceLink.getObjectTypeIds());
+            this.appendListCondition(where, conditionParams, "PU.sourceLinkDomainId",
+                    sourceLink.getDomainIds());
+
+            final Long sourceObjId = archiveQuery.getSource().getKey().getInstId();
+
+            if (sourceObjId != null && sourceObjId != 0) {
+                where.next().append("PU.sourceLinkObjId=?");
+                conditionParams.add(sourceLink.getObjId());
+            }
+        }
+
+        if (fieldFilters != null) {
+            for (CompositeFilter fieldFilter : fieldFilters) {
+                where.next().append("EXISTS (SELECT 1").append(FIELDS_SOURCE)
+                        .append("F.objectTypeId=PU.objectTypeId AND F.domainId=PU.domainId")
+                        .append(" AND F.objId=PU.objId AND ")
+                        .append(ArchiveFieldIndex.generateCondition(fieldFilter, conditionParams))
+                        .append(")");
+            }
+        }
+
+        // The order and the number of rows of each page
+        String[] orderColumns = null;
+        String direction = null;
+        final ArrayList<Object> limitParams = new ArrayList<Object>();
+        long rowsPerTable = -1; // Needed from each table to fill the page, -1 for all
+
+        // A dedicated PaginationFilter for this particular COM Archive implementation was created and implemented
+        if (filter instanceof PaginationFilter) {
+            final PaginationFilter pfilter = (PaginationFilter) filter;
+
+            // Double check if the filter fields are really not null
+            if (pfilter.getLimit() != null && pfilter.getOffset() != null) {
+                final boolean ascending = (archiveQuery.getSortOrder() == null) || archiveQuery.getSortOrder();
+                orderColumns = TIME_ORDER;
+                direction = ascending ? "ASC" : "DESC";
+                limitParams.add(pfilter.getLimit().getValue());
+                limitParams.add(pfilter.getOffset().getValue());
+                rowsPerTable = pfilter.getLimit().getValue() + pfilter.getOffset().getValue();
+            }
+        }
+
+        if (filter instanceof KeysetPaginationFilter) {
+            final KeysetPaginationFilter kfilter = (KeysetPaginationFilter) filter;
+            final boolean ascending = (archiveQuery.getSortOrder() == null) || archiveQuery.getSortOrder();
+            orderColumns = KEYSET_ORDER;
+            direction = ascending ? "ASC" : "DESC";
+
+            if (cursor != null) {
+                this.appendCursorCondition(where, conditionParams, cursor, ascending ? " > " : " < ");
+            }
+
+            if (kfilter.getLimit() != null) {
+                limitParams.add(kfilter.getLimit().getValue());
+                rowsPerTable = kfilter.getLimit().getValue();
+            }
+        }
+
+        final List<String[]> tables = (partitions == null)
+                ? Collections.singletonList(new String[]{OBJECTS_TABLE, FIELDS_TABLE})
+                : partitions.getTables(this.getConnection(), startTime, endTime);
+        final StringBuilder sql = new StringBuilder();
+        final ArrayList<Object> params = new ArrayList<Object>();
+
+        if (tables.size() == 1) {
+            sql.append(SELECT_COLUMNS).append(" FROM ").append(OBJECTS_TABLE).append(" PU")
+                    .append(conditions);
+            params.addAll(conditionParams);
+        } else {
+            for (String[] table : tables) {
+                final String tableConditions = conditions.toString()
+                        .replace(FIELDS_SOURCE, " FROM " + table[1] + " F WHERE ");
+
+                if (sql.length() != 0) {
+                    sql.append(" UNION ALL ");
+                }
+
+                if (rowsPerTable == -1) {
+                    sql.append(SELECT_COLUMNS).append(" FROM ").append(table[0]).append(" PU")
+                            .append(tableConditions);
+                    params.addAll(conditionParams);
+                } else {
+                    // Each table only contributes the rows that could be in the page
+                    sql.append("SELECT * FROM (").append(SELECT_COLUMNS).append(" FROM ")
+                            .append(table[0]).append(" PU").append(tableConditions);
+                    appendOrderBy(sql, orderColumns, direction, "PU.");
+                    sql.append(" LIMIT ?)");
+                    params.addAll(conditionParams);
+                    params.add(rowsPerTable);
+                }
+            }
+        }
+
+        if (orderColumns != null) {
+            // The merged rows of the partitions are ordered by the result columns
+            appendOrderBy(sql, orderColumns, direction, (tables.size() == 1) ? "PU." : "");
+
+            if (!limitParams.isEmpty()) {
+                sql.append((limitParams.size() == 1) ? " LIMIT ?" : " LIMIT ? OFFSET ?");
+                params.addAll(limitParams);
+            }
+        }
+
+        try {
+            return this.execute(sql.toString(), params);
+        } finally {
+            if (tempListCounter != 0) {
+                this.clearTemporaryLists();
+            }
+        }
+    }
+
+    private static void appendOrderBy(final StringBuilder sql, final String[] columns,
+            final String direction, final String prefix) {
+        for (int i = 0; i < columns.length; i++) {
+            sql.append((i == 0) ? " ORDER BY " : ", ").append(prefix).append(columns[i])
+                    .append(" ").append(direction);
+        }
+    }
+
+    /**
+     * Finds a COM object by its key.
+     *
+     * @param objTypeId The object type id.
+     * @param domainId The domain id.
+     * @param objId The object id.
+     * @return The COM object or null if it does not exist.
+     * @throws SQLException If the query could not be executed.
+     */
+    public COMObjectEntity find(final Integer objTypeId, final Integer domainId, final Long objId)
+            throws SQLException {
+        final ArrayList<Object> params = new ArrayList<Object>();
+        params.add(objTypeId);
+        params.add(domainId);
+        params.add(objId);
+        final ArrayList<COMObjectEntity> perObjs = this.execute(SELECT_COLUMNS
+                + " FROM COMObjectEntity PU WHERE PU.objectTypeId=? AND PU.domainId=? AND PU.objId=?",
+                params);
+
+        if (!perObjs.isEmpty()) {
+            return perObjs.get(0);
+        }
+
+        return (partitions == null) ? null : partitions.find(this.getConnection(), objTypeId, domainId, objId);
+    }
+
+    /**
+     * Returns the ids of all the COM objects of a type and domain.
+     *
+     * @param objTypeId The object type id.
+     * @param domainId The domain id.
+     * @return The object ids.
+     * @throws SQLException If the query could not be executed.
+     */
+    public LongList findAllIds(final Integer objTypeId, final Integer domainId) throws SQLException {
+        final PreparedStatement stmt = this.getStatement(
+                "SELECT PU.objId FROM COMObjectEntity PU WHERE PU.objectTypeId=? AND PU.domainId=?");
+        numberOfQueries++;
+        final LongList objIds = new LongList();
+
+        try {
+            stmt.setInt(1, objTypeId);
+            stmt.setInt(2, domainId);
+            final ResultSet rs = stmt.executeQuery();
+
+            try {
+                while (rs.next()) {
+                    objIds.add(rs.getLong(1));
+                }
+            } finally {
+                rs.close();
+            }
+        } finally {
+            stmt.clearParameters();
+        }
+
+        if (partitions != null) {
+            partitions.addAllIds(this.getConnection(), objTypeId, domainId, objIds);
+        }
+
+        return objIds;
+    }
+
+    /**
+     * Returns the highest object id of a type and domain that was moved to a
+     * partition of the archive.
+     *
+     * @param objTypeId The object type id.
+     * @param domainId The domain id.
+     * @return The highest object id or null if there are none.
+     * @throws SQLException If the partitions could not be read.
+     */
+    public Long findMaxPartitionedObjId(final Integer objTypeId, final Integer domainId)
+            throws SQLException {
+        return (partitions == null) ? null : partitions.getMaxObjId(this.getConnection(), objTypeId, domainId);
+    }
+
+    private ArrayList<COMObjectEntity> execute(final String sql, final ArrayList<Object> params) throws SQLException {
+        final PreparedStatement stmt = this.getStatement(sql);
+        numberOfQueries++;
+
+        for (int i = 0; i < params.size(); i++) {
+            stmt.setObject(i + 1, params.get(i));
+        }
+
+        final ArrayList<COMObjectEntity> perObjs = new ArrayList<COMObjectEntity>();
+        final ResultSet rs = stmt.executeQuery();
+
+        try {
+            // Conversion from the raw SQL response into a COMObjectEntity
+            while (rs.next()) {
+                perObjs.add(toEntity(rs));
+            }
+        } finally {
+            rs.close();
+            stmt.clearParameters();
+        }
+
+        return perObjs;
+    }
+
+    /**
+     * Converts the current row of a result set selected with SELECT_COLUMNS
+     * into a COMObjectEntity.
+     *
+     * @param rs The result set.
+     * @return The COM object.
+     * @throws SQLException If the row could not be read.
+     */
+    static COMObjectEntity toEntity(final ResultSet rs) throws SQLException {
+        final SourceLinkContainer source = new SourceLinkContainer(
+                getNullableInteger(rs, 10),
+                getNullableInteger(rs, 8),
+                getNullableLong(rs, 9)
+        );
+
+        return new COMObjectEntity(
+                getNullableInteger(rs, 1),
+                getNullableInteger(rs, 3),
+                getNullableLong(rs, 2),
+                getNullableLong(rs, 11),
+                getNullableInteger(rs, 6),
+                getNullableInteger(rs, 4),
+                source,
+                getNullableLong(rs, 7),
+                rs.getBytes(5)
+        );
+    }
+
+    private PreparedStatement getStatement(final String sql) throws SQLException {
+        PreparedStatement stmt = statements.get(sql);
+
+        if (stmt == null) {
+            stmt = this.getConnection().prepareStatement(sql);
+            statements.put(sql, stmt);
+            numberOfPreparations++;
+            Logger.getLogger(ArchiveQueryEngine.class.getName()).log(Level.FINE,
+                    "Prepared a new archive query shape: {0}", sql);
+        }
+
+        return stmt;
+    }
+
+    private void appendListCondition(final Conditions where, final ArrayList<Object> params,
+            final String field, final IntegerList list) throws SQLException {
+        if (list == null || list.isEmpty()) {
+            return;
+        }
+
+        if (list.size() == 1) {
+            where.next().append(field).append("=?");
+            params.add(list.get(0));
+            return;
+        }
+
+        if (sqlite && list.size() > MAX_BOUND_LIST_SIZE) {
+            where.next().append(field).append(" IN (SELECT id FROM ").append(TEMP_TABLE)
+                    .append(" WHERE listId=?)");
+            params.add(this.fillTemporaryList(list));
+            return;
+        }
+
+        // Pad the list to the next power of two to reuse the same statement
+        final int paddedSize = (list.size() > MAX_BOUND_LIST_SIZE) ? list.size()
+                : Integer.highestOneBit(list.size() - 1) << 1;
+        final StringBuilder str = where.next().append(field).append(" IN (");
+
+        for (int i = 0; i < paddedSize; i++) {
+            str.append((i == 0) ? "?" : ",?");
+            params.add(list.get(Math.min(i, list.size() - 1)));
+        }
+
+        str.append(")");
+    }
+
+    /**
+     * Appends the condition that selects the rows after the cursor in the
+     * order of the (timestamp, objectTypeId, domainId, objId) key.
+     */
+    private void appendCursorCondition(final Conditions where, final ArrayList<Object> params,
+            final ArchiveQueryCursor cursor, final String operator) {
+        if (sqlite) {
+            where.next().append("(PU.timestampArchiveDetails, PU.objectTypeId, PU.domainId, PU.objId)")
+                    .append(operator).append("(?, ?, ?, ?)");
+            params.add(cursor.getTimestamp());
+            params.add(cursor.getObjectTypeId());
+            params.add(cursor.getDomainId());
+            params.add(cursor.getObjId());
+            return;
+        }
+
+        // The row value comparison expanded into: a>? OR (a=? AND (b>? OR (b=? AND ...)))
+        where.next().append("(PU.timestampArchiveDetails").append(operator).append("?")
+                .append(" OR (PU.timestampArchiveDetails=? AND (PU.objectTypeId").append(operator).append("?")
+                .append(" OR (PU.objectTypeId=? AND (PU.domainId").append(operator).append("?")
+                .append(" OR (PU.domainId=? AND PU.objId").append(operator).append("?))))))");
+        params.add(cursor.getTimestamp());
+        params.add(cursor.getTimestamp());
+        params.add(cursor.getObjectTypeId());
+        params.add(cursor.getObjectTypeId());
+        params.add(cursor.getDomainId());
+        params.add(cursor.getDomainId());
+        params.add(cursor.getObjId());
+    }
+
+    private int fillTemporaryList(final IntegerList list) throws SQLException {
+        if (insertTempList == null) {
+            final Statement stmt = this.getConnection().createStatement();
+
+            try {
+                stmt.executeUpdate(CREATE_TEMP_TABLE);
+            } finally {
+                stmt.close();
+            }
+
+            insertTempList = this.getConnection().prepareStatement(INSERT_TEMP_TABLE);
+        }
+
+        final int listId = ++tempListCounter;
+
+        for (Integer id : list) {
+            insertTempList.setInt(1, listId);
+            insertTempList.setObject(2, id);
+            insertTempList.addBatch();
+        }
+
+        insertTempList.executeBatch();
+        return listId;
+    }
+
+    private void clearTemporaryLists() {
+        tempListCounter = 0;
+
+        try {
+            final Statement stmt = this.getConnection().createStatement();
+
+            try {
+                stmt.executeUpdate(CLEAR_TEMP_TABLE);
+            } finally {
+                stmt.close();
+            }
+        } catch (SQLException ex) {
+            Logger.getLogger(ArchiveQueryEngine.class.getName()).log(Level.WARNING,
+                    "The temporary id lists could not be cleared!", ex);
+        }
+    }
+
+    private Connection getConnection() throws SQLException {
+        final Connection connection = (this.connection != null) ? this.connection : dbBackend.getConnection();
+
+        if (connection == null) {
+            throw new SQLException("The connection to the database is not available!");
+        }
+
+        return connection;
+    }
+
+    /**
+     * Closes all the cached prepared statements.
+     */
+    public void close() {
+        final Iterator<PreparedStatement> it = statements.values().iterator();
+
+        while (it.hasNext()) {
+            closeQuietly(it.next());
+            it.remove();
+        }
+
+        closeQuietly(insertTempList);
+        insertTempList = null;
+    }
+
+    public long getNumberOfQueries() {
+        return numberOfQueries;
+    }
+
+    public long getNumberOfPreparations() {
+        return numberOfPreparations;
+    }
+
+    private static void closeQuietly(final Statement stmt) {
+        if (stmt == null) {
+            return;
+        }
+
+        try {
+            stmt.close();
+        } catch (SQLException ex) {
+            Logger.getLogger(ArchiveQueryEngine.class.getName()).log(Level.FINE, null, ex);
+        }
+    }
+
+    private static Integer getNullableInteger(final ResultSet rs, final int column) throws SQLException {
+        final int value = rs.getInt(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static Long getNullableLong(final ResultSet rs, final int column) throws SQLException {
+        final long value = rs.getLong(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    /**
+     * Appends the WHERE and AND keywords between the conditions of the query.
+     */
+    private static class Conditions {
+
+        private final StringBuilder sql;
+        private boolean first = true;
+
+        Conditions(final StringBuilder sql) {
+            this.sql = sql;
+        }
+
+        StringBuilder next() {
+            sql.append(first ? " WHERE " : " AND ");
+            first = false;
+            return sql;
+        }
+    }
+
+}
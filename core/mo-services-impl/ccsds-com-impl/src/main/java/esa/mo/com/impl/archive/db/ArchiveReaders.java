@@ -0,0 +1,187 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2021      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : ESA NanoSat MO Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.com.impl.archive.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A pool of readers of the archive. Each reader is a thread with its own
+ * read-only connection to the database and its own query engine, so the
+ * queries run in parallel with each other and with the writer thread of the
+ * Transactions Processor. It relies on the WAL journal mode of SQLite, where
+ * the readers see the last committed state without blocking the writer.
+ *
+ * The number of readers is set with the esa.nmf.archive.readers property.
+ */
+public class ArchiveReaders {
+
+    public static final String READERS_PROPERTY = "esa.nmf.archive.readers";
+    private static final int DEFAULT_READERS = 2;
+
+    private final DatabaseBackend dbBackend;
+    private final ArchivePartitions partitions;
+    private final ExecutorService executor;
+    private final ArrayList<Reader> readers = new ArrayList<Reader>();
+    private final ThreadLocal<Reader> reader = new ThreadLocal<Reader>();
+
+    public ArchiveReaders(final DatabaseBackend dbBackend, final ArchivePartitions partitions) {
+        this.dbBackend = dbBackend;
+        this.partitions = partitions;
+        this.executor = Executors.newFixedThreadPool(
+                Math.max(1, Integer.getInteger(READERS_PROPERTY, DEFAULT_READERS)),
+                new TransactionsProcessor.DBThreadFactory("Archive_Reader"));
+    }
+
+    /**
+     * Returns true if the archive can be read in parallel with the writer,
+     * which is only the case for SQLite.
+     *
+     * @param dbBackend The database backend.
+     * @return True if the readers are supported.
+     */
+    public static boolean isSupported(final DatabaseBackend dbBackend) {
+        return dbBackend.isSQLite() && Integer.getInteger(READERS_PROPERTY, DEFAULT_READERS) > 0;
+    }
+
+    /**
+     * Submits a read task to one of the readers.
+     *
+     * @param <T> The type of the result.
+     * @param task The read task.
+     * @return The future result.
+     */
+    public <T> Future<T> submit(final ReadTask<T> task) {
+        return executor.submit(new Callable<T>() {
+            @Override
+            public T call() throws SQLException {
+                final ArchiveQueryEngine engine = getReader().engine;
+                final int generation = partitions.getGeneration();
+
+                try {
+                    return task.call(engine);
+                } catch (SQLException ex) {
+                    if (generation == partitions.getGeneration()) {
+                        throw ex;
+                    }
+
+                    // The partitions changed while reading, the query can be retried
+                    engine.close();
+                    return task.call(engine);
+                }
+            }
+        });
+    }
+
+    /**
+     * Executes a read task in one of the readers and waits for the result.
+     *
+     * @param <T> The type of the result.
+     * @param task The read task.
+     * @return The result, or null if the task failed.
+     */
+    public <T> T read(final ReadTask<T> task) {
+        try {
+            return this.submit(task).get();
+        } catch (InterruptedException ex) {
+            Logger.getLogger(ArchiveReaders.class.getName()).log(Level.SEVERE, null, ex);
+        } catch (ExecutionException ex) {
+            Logger.getLogger(ArchiveReaders.class.getName()).log(Level.SEVERE, null, ex);
+        }
+
+        return null;
+    }
+
+    private Reader getReader() throws SQLException {
+        Reader current = reader.get();
+
+        if (current == null) {
+            final Connection connection = dbBackend.createReadOnlyConnection();
+            current = new Reader(connection,
+                    new ArchiveQueryEngine(dbBackend, connection, partitions));
+            reader.set(current);
+
+            synchronized (readers) {
+                readers.add(current);
+            }
+        }
+
+        return current;
+    }
+
+    /**
+     * Stops the readers and closes their connections.
+     */
+    public void close() {
+        executor.shutdown();
+
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Logger.getLogger(ArchiveReaders.class.getName()).log(Level.SEVERE, null, ex);
+        }
+
+        synchronized (readers) {
+            for (Reader current : readers) {
+                current.engine.close();
+
+                try {
+                    current.connection.close();
+                } catch (SQLException ex) {
+                    Logger.getLogger(ArchiveReaders.class.getName()).log(Level.FINE, null, ex);
+                }
+            }
+
+            readers.clear();
+        }
+    }
+
+    /**
+     * A task that reads the archive with the query engine of a reader.
+     *
+     * @param <T> The type of the result.
+     */
+    public interface ReadTask<T> {
+
+        T call(ArchiveQueryEngine engine) throws SQLException;
+    }
+
+    private static class Reader {
+
+        private final Connection connection;
+        private final ArchiveQueryEngine engine;
+
+        Reader(final Connection connection, final ArchiveQueryEngine engine) {
+            this.connection = connection;
+            this.engine = engine;
+        }
+    }
+
+}
@@ -24,8 +24,10 @@ import esa.mo.com.impl.provider.ArchiveManager;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Properties;
 import java.util.concurrent.Semaphore;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -114,6 +116,15 @@ public class DatabaseBackend {
         return serverConnection;
     }
 
+    /**
+     * Returns true if the backend is the default SQLite database.
+     *
+     * @return True for SQLite.
+     */
+    public boolean isSQLite() {
+        return jdbcDriver.equals(DRIVER_CLASS_NAME);
+    }
+
     /**
      * Starts the database backend by creates the Entity Manager Factory.
      *
@@ -136,6 +147,62 @@ public class DatabaseBackend {
         }
 
         startDatabaseDriver(this.url, this.user, this.password);
+
+        if (this.isSQLite() && serverConnection != null) {
+            this.enableIncrementalVacuum();
+            this.enableWriteAheadLog();
+        }
+    }
+
+    /**
+     * Switches the SQLite database to incremental vacuum, so the free pages
+     * can later be reclaimed in steps. It is done here, before the archive is
+     * used, because the conversion of a database with objects needs a full
+     * VACUUM.
+     */
+    private void enableIncrementalVacuum() {
+        try {
+            IncrementalVacuum.enable(serverConnection,
+                    Boolean.getBoolean(IncrementalVacuum.CONVERT_PROPERTY));
+        } catch (SQLException ex) {
+            Logger.getLogger(DatabaseBackend.class.getName()).log(Level.WARNING,
+                    "The database could not be switched to incremental vacuum!", ex);
+        }
+    }
+
+    /**
+     * Switches the SQLite database to the Write-Ahead Log journal, which lets
+     * the readers of the archive query it while the writer is committing.
+     */
+    private void enableWriteAheadLog() {
+        try {
+            final Statement stmt = serverConnection.createStatement();
+
+            try {
+                stmt.execute("PRAGMA journal_mode=WAL");
+            } finally {
+                stmt.close();
+            }
+        } catch (SQLException ex) {
+            Logger.getLogger(DatabaseBackend.class.getName()).log(Level.WARNING,
+                    "The database could not be switched to the WAL journal mode!", ex);
+        }
+    }
+
+    /**
+     * Opens a new read-only connection to the SQLite database. It is used by
+     * the readers of the archive, which query the database in parallel with
+     * the writer.
+     *
+     * @return The connection.
+     * @throws SQLException If the connection could not be opened.
+     */
+    public Connection createReadOnlyConnection() throws SQLException {
+        final Properties properties = new Properties();
+        properties.setProperty("open_mode", "1"); // SQLITE_OPEN_READONLY
+        properties.setProperty("busy_timeout", "5000");
+
+        return DriverManager.getConnection(this.url, properties);
     }
 
     private void startDatabaseDriver(String url2, String user, String password) {
@@ -250,9 +317,16 @@ public class DatabaseBackend {
         this.emAvailability.release();
     }
 
-    public void safeCommit() {
+    /**
+     * Commits the current transaction, trying a second time if the first
+     * commit failed.
+     *
+     * @return True if the transaction was committed.
+     */
+    public boolean safeCommit() {
         try { // This is where the db takes longer!!
             this.em.getTransaction().commit(); // 1.220 ms
+            return true;
         } catch (Exception ex) {
             if (ex instanceof java.lang.IllegalStateException) {
                 Logger.getLogger(ArchiveManager.class.getName())
@@ -271,9 +345,11 @@ public class DatabaseBackend {
 
             try {
                 this.em.getTransaction().commit(); // 1.220 ms
+                return true;
             } catch (Exception ex2) {
                 Logger.getLogger(ArchiveManager.class.getName())
                         .log(Level.SEVERE, "The objects could not be commited on the second try!", ex2);
+                return false;
             }
         }
     }
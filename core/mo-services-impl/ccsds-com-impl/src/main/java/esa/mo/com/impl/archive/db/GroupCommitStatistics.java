@@ -0,0 +1,149 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2021      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : ESA NanoSat MO Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.com.impl.archive.db;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps the histograms of the batches committed by the group-commit writer of
+ * the Transactions Processor. Both histograms use power-of-two buckets, the
+ * bucket i holds the values in the range [2^(i-1), 2^i[ and the last bucket
+ * holds everything above.
+ */
+public class GroupCommitStatistics {
+
+    private static final int NUMBER_OF_BUCKETS = 24;
+
+    private final AtomicLongArray batchSizes = new AtomicLongArray(NUMBER_OF_BUCKETS);
+    private final AtomicLongArray batchLatencies = new AtomicLongArray(NUMBER_OF_BUCKETS);
+    private final AtomicLong numberOfBatches = new AtomicLong(0);
+    private final AtomicLong numberOfObjects = new AtomicLong(0);
+    private final AtomicLong totalLatency = new AtomicLong(0);
+    private final AtomicLong maxLatency = new AtomicLong(0);
+
+    /**
+     * Records a committed batch.
+     *
+     * @param size The number of COM objects stored in the batch.
+     * @param latencyMicros The time it took to persist and commit the batch in
+     * microseconds.
+     */
+    public void record(final int size, final long latencyMicros) {
+        batchSizes.incrementAndGet(bucketOf(size));
+        batchLatencies.incrementAndGet(bucketOf(latencyMicros));
+        numberOfBatches.incrementAndGet();
+        numberOfObjects.addAndGet(size);
+        totalLatency.addAndGet(latencyMicros);
+
+        long max = maxLatency.get();
+        while (latencyMicros > max && !maxLatency.compareAndSet(max, latencyMicros)) {
+            max = maxLatency.get();
+        }
+    }
+
+    public long getNumberOfBatches() {
+        return numberOfBatches.get();
+    }
+
+    public long getNumberOfObjects() {
+        return numberOfObjects.get();
+    }
+
+    public long getMaxLatencyMicros() {
+        return maxLatency.get();
+    }
+
+    public double getAverageBatchSize() {
+        final long batches = numberOfBatches.get();
+        return (batches == 0) ? 0 : ((double) numberOfObjects.get()) / batches;
+    }
+
+    public double getAverageLatencyMicros() {
+        final long batches = numberOfBatches.get();
+        return (batches == 0) ? 0 : ((double) totalLatency.get()) / batches;
+    }
+
+    /**
+     * Returns a snapshot of the batch size histogram.
+     *
+     * @return The number of batches per power-of-two bucket.
+     */
+    public long[] getBatchSizeHistogram() {
+        return snapshot(batchSizes);
+    }
+
+    /**
+     * Returns a snapshot of the batch latency histogram.
+     *
+     * @return The number of batches per power-of-two bucket, in microseconds.
+     */
+    public long[] getBatchLatencyHistogram() {
+        return snapshot(batchLatencies);
+    }
+
+    private static long[] snapshot(final AtomicLongArray histogram) {
+        final long[] out = new long[histogram.length()];
+
+        for (int i = 0; i < out.length; i++) {
+            out[i] = histogram.get(i);
+        }
+
+        return out;
+    }
+
+    private static int bucketOf(final long value) {
+        if (value <= 0) {
+            return 0;
+        }
+
+        final int bucket = 64 - Long.numberOfLeadingZeros(value);
+        return Math.min(bucket, NUMBER_OF_BUCKETS - 1);
+    }
+
+    private static String histogramToString(final long[] histogram) {
+        final StringBuilder str = new StringBuilder("{");
+
+        for (int i = 0; i < histogram.length; i++) {
+            if (histogram[i] != 0) {
+                if (str.length() != 1) {
+                    str.append(", ");
+                }
+
+                str.append("<").append(1L << i).append(": ").append(histogram[i]);
+            }
+        }
+
+        return str.append("}").toString();
+    }
+
+    @Override
+    public String toString() {
+        return "batches=" + getNumberOfBatches()
+                + ", objects=" + getNumberOfObjects()
+                + ", avgSize=" + String.format("%.1f", getAverageBatchSize())
+                + ", avgLatency=" + String.format("%.1f", getAverageLatencyMicros()) + " us"
+                + ", maxLatency=" + getMaxLatencyMicros() + " us"
+                + ", sizes=" + histogramToString(getBatchSizeHistogram())
+                + ", latencies=" + histogramToString(getBatchLatencyHistogram());
+    }
+
+}
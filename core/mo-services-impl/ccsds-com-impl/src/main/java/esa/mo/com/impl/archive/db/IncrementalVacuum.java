@@ -0,0 +1,143 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2021      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : ESA NanoSat MO Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.com.impl.archive.db;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reclaims the free pages of the SQLite database in small steps, so a large
+ * purge of the archive does not block it with a full VACUUM.
+ *
+ * It requires the database to be in auto_vacuum=INCREMENTAL mode. An empty
+ * database is switched to it when it is opened. Switching a database that
+ * already holds objects needs one full VACUUM, so it is only done when the
+ * esa.nmf.archive.vacuum.convert property is true, at open time, before the
+ * archive serves any request. Otherwise the free pages are left to be reused
+ * by SQLite and the steps do nothing.
+ */
+public final class IncrementalVacuum {
+
+    public static final String CONVERT_PROPERTY = "esa.nmf.archive.vacuum.convert";
+
+    private static final int INCREMENTAL = 2; // Value of PRAGMA auto_vacuum
+
+    private IncrementalVacuum() {
+    }
+
+    /**
+     * Switches the database to auto_vacuum=INCREMENTAL if it is empty, or if
+     * convertExisting is true. Must be called when the database is opened.
+     *
+     * @param c The connection to the database.
+     * @param convertExisting True to also convert a database that holds rows,
+     * which costs one full VACUUM.
+     * @return True if the database is in incremental mode.
+     * @throws SQLException If the pragmas failed.
+     */
+    public static boolean enable(final Connection c, final boolean convertExisting)
+            throws SQLException {
+        if (isEnabled(c)) {
+            return true;
+        }
+
+        final boolean empty = isEmpty(c);
+
+        if (!empty && !convertExisting) {
+            Logger.getLogger(IncrementalVacuum.class.getName()).log(Level.INFO,
+                    "The database is not in incremental vacuum mode. Set {0}=true to convert it "
+                    + "with one full VACUUM when it is opened.", CONVERT_PROPERTY);
+            return false;
+        }
+
+        try (Statement stmt = c.createStatement()) {
+            Logger.getLogger(IncrementalVacuum.class.getName()).log(Level.INFO,
+                    "Switching the database to incremental vacuum");
+            stmt.executeUpdate("PRAGMA auto_vacuum = INCREMENTAL");
+            stmt.executeUpdate("VACUUM"); // Applies the new mode, cheap for an empty database
+        }
+
+        return isEnabled(c);
+    }
+
+    /**
+     * Checks if the database is in auto_vacuum=INCREMENTAL mode.
+     *
+     * @param c The connection to the database.
+     * @return True if it is.
+     * @throws SQLException If the pragma failed.
+     */
+    public static boolean isEnabled(final Connection c) throws SQLException {
+        try (Statement stmt = c.createStatement();
+                ResultSet rs = stmt.executeQuery("PRAGMA auto_vacuum")) {
+            return rs.next() && rs.getInt(1) == INCREMENTAL;
+        }
+    }
+
+    /**
+     * Releases up to the given number of free pages.
+     *
+     * @param c The connection to the database, in incremental mode.
+     * @param pages The maximum number of pages to release.
+     * @return True if there are still free pages to be released.
+     * @throws SQLException If the pragmas failed.
+     */
+    public static boolean step(final Connection c, final int pages) throws SQLException {
+        try (Statement stmt = c.createStatement()) {
+            // The pragma releases one page per step of the statement, execute()
+            // would only run the first one
+            stmt.executeUpdate("PRAGMA incremental_vacuum(" + pages + ")");
+
+            try (ResultSet rs = stmt.executeQuery("PRAGMA freelist_count")) {
+                return rs.next() && rs.getInt(1) > 0;
+            }
+        }
+    }
+
+    private static boolean isEmpty(final Connection c) throws SQLException {
+        final ArrayList<String> tables = new ArrayList<String>();
+
+        try (Statement stmt = c.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery(
+                    "SELECT name FROM sqlite_master WHERE type='table' AND name NOT LIKE 'sqlite_%'")) {
+                while (rs.next()) {
+                    tables.add(rs.getString(1));
+                }
+            }
+
+            for (String table : tables) {
+                try (ResultSet rs = stmt.executeQuery(
+                        "SELECT 1 FROM \"" + table.replace("\"", "\"\"") + "\" LIMIT 1")) {
+                    if (rs.next()) {
+                        return false;
+                    }
+                }
+            }
+        }
+
+        return true;
+    }
+}
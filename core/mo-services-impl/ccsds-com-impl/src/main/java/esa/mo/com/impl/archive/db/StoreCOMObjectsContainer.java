@@ -21,28 +21,58 @@
 package esa.mo.com.impl.archive.db;
 
 import esa.mo.com.impl.archive.entities.COMObjectEntity;
+import esa.mo.com.impl.archive.entities.COMObjectFieldEntity;
 import java.util.ArrayList;
 
 /**
  * This class holds a set of COM Objects before they are committed to the
- * database.
+ * database, together with their indexed fields and the task that publishes the respective events once
+ * the objects are committed.
  */
 public class StoreCOMObjectsContainer {
 
     private final ArrayList<COMObjectEntity> perObjs;
-    private final boolean continuous;
+    private final ArrayList<COMObjectFieldEntity> fields;
+    private final Runnable publishEvents;
+    private final long sequence;
 
     public StoreCOMObjectsContainer(final ArrayList<COMObjectEntity> perObjs,
-            final boolean continuous) {
+            final Runnable publishEvents) {
+        this(perObjs, null, publishEvents);
+    }
+
+    public StoreCOMObjectsContainer(final ArrayList<COMObjectEntity> perObjs,
+            final ArrayList<COMObjectFieldEntity> fields, final Runnable publishEvents) {
+        this(perObjs, fields, publishEvents, 0);
+    }
+
+    public StoreCOMObjectsContainer(final ArrayList<COMObjectEntity> perObjs,
+            final ArrayList<COMObjectFieldEntity> fields, final Runnable publishEvents,
+            final long sequence) {
         this.perObjs = perObjs;
-        this.continuous = continuous;
+        this.fields = fields;
+        this.publishEvents = publishEvents;
+        this.sequence = sequence;
     }
 
     public ArrayList<COMObjectEntity> getPerObjs() {
         return perObjs;
     }
 
-    public boolean isContinuous() {
-        return continuous;
+    public ArrayList<COMObjectFieldEntity> getFields() {
+        return fields;
+    }
+
+    public Runnable getPublishEvents() {
+        return publishEvents;
+    }
+
+    /**
+     * Returns the number of the write in the WriteSequence of the archive.
+     *
+     * @return The number of the write.
+     */
+    public long getSequence() {
+        return sequence;
     }
 }
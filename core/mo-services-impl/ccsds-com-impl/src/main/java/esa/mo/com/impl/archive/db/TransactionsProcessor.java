@@ -21,42 +21,77 @@
 package esa.mo.com.impl.archive.db;
 
 import esa.mo.com.impl.archive.entities.COMObjectEntity;
+import esa.mo.com.impl.archive.entities.COMObjectFieldEntity;
 import esa.mo.com.impl.provider.ArchiveManager;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.persistence.Query;
 import org.ccsds.moims.mo.com.archive.structures.ArchiveQuery;
-import org.ccsds.moims.mo.com.archive.structures.PaginationFilter;
+import org.ccsds.moims.mo.com.archive.structures.CompositeFilter;
 import org.ccsds.moims.mo.com.archive.structures.QueryFilter;
+import org.ccsds.moims.mo.com.structures.ObjectType;
 import org.ccsds.moims.mo.mal.structures.IntegerList;
 import org.ccsds.moims.mo.mal.structures.LongList;
 
 /**
  * The Transactions Processor is responsible for executing the transactions with the database. It
  * has one general executor with 2 threads for flushing the generated COM Events and a single thread
- * executor for orderly executing the interactions with the database. It includes an optimization
- * for batch stores, basically, if many stores are received sequentially, they will be consolidated
- * and executed in one single transaction.
+ * executor for orderly executing the interactions with the database. Stores are handled by a
+ * group-commit writer: they are placed in a bounded buffer and committed in batches, either when
+ * the batch size is reached or when the maximum delay expires. Any other write flushes the pending
+ * stores first, so the order of the interactions is kept without breaking the batching.
+ *
+ * With SQLite, the reads are executed by a pool of ArchiveReaders in parallel with the writer. A
+ * read does not flush the pending stores, it waits until the writes submitted before it are
+ * committed, which are tracked by a WriteSequence. Other databases read from the single thread.
  */
 public class TransactionsProcessor {
 
   private static final String QUERY_SELECT_ALL
       = "SELECT PU.objId FROM COMObjectEntity PU WHERE PU.objectTypeId=:objectTypeId AND PU.domainId=:domainId";
 
+  private static final String QUERY_DELETE_OBJECTS
+      = "DELETE FROM COMObjectEntity PU WHERE PU.objectTypeId=:objectTypeId AND PU.domainId=:domainId AND PU.objId IN :objIds";
+
+  private static final String QUERY_DELETE_FIELDS
+      = "DELETE FROM COMObjectFieldEntity F WHERE F.objectTypeId=:objectTypeId AND F.domainId=:domainId AND F.objId IN :objIds";
+
+  private static final String GROUP_COMMIT_BATCH_SIZE_PROPERTY
+      = "esa.nmf.archive.groupcommit.batchsize";
+  private static final String GROUP_COMMIT_MAX_DELAY_PROPERTY
+      = "esa.nmf.archive.groupcommit.maxdelay";
+  private static final String GROUP_COMMIT_CAPACITY_PROPERTY
+      = "esa.nmf.archive.groupcommit.capacity";
+  private static final int DEFAULT_BATCH_SIZE = 1000; // objects per transaction
+  private static final long DEFAULT_MAX_DELAY = 0; // milliseconds, 0 flushes as soon as possible
+  private static final int DEFAULT_CAPACITY = 4096; // store requests waiting to be committed
+  private static final String VACUUM_PAGES_PROPERTY
+      = "esa.nmf.archive.vacuum.pages";
+  private static final int DEFAULT_VACUUM_PAGES = 256; // pages reclaimed per incremental step
+  // SQLite allows at most 999 host parameters per statement
+  private static final int DELETE_CHUNK_SIZE = 500;
+  private static final int BACKFILL_STEP_SIZE = 500; // objects read per field index step
+
   private static final Boolean SAFE_MODE = false;
   private static final Class<COMObjectEntity> CLASS_ENTITY = COMObjectEntity.class;
   private final DatabaseBackend dbBackend;
@@ -70,26 +105,131 @@ public class TransactionsProcessor {
   // 2 Threads minimum because we need to acquire the lock from 2 different tasks during startup
   private final ExecutorService generalExecutor = Executors.newFixedThreadPool(2,
       new DBThreadFactory("Archive_GeneralProcessor"));
-  private final AtomicBoolean sequencialStoring;
-
-  private final LinkedBlockingQueue<StoreCOMObjectsContainer> storeQueue;
+  // Only used when the group-commit writer is configured with a maximum delay
+  private final ScheduledExecutorService flushTimer;
+
+  private final ArrayBlockingQueue<StoreCOMObjectsContainer> storeQueue;
+  private final AtomicInteger pendingObjects = new AtomicInteger(0);
+  private final AtomicBoolean flushSubmitted = new AtomicBoolean(false);
+  private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+  // Readers waiting for pending writes, the stores are then flushed without waiting for the timer
+  private final AtomicInteger waitingReaders = new AtomicInteger(0);
+  private final GroupCommitStatistics groupCommitStatistics = new GroupCommitStatistics();
+  private final ArchiveQueryEngine queryEngine;
+  private final ArchivePartitions partitions;
+  // Only used with SQLite, otherwise the reads are executed by the dbTransactionsExecutor
+  private final ArchiveReaders readers;
+  private final WriteSequence writes = new WriteSequence();
+  // Only used when the archive is partitioned by time
+  private final ScheduledExecutorService partitionsTimer;
+  private final int batchSize;
+  private final long maxDelay;
+  private final int vacuumPages;
+  private final AtomicBoolean reclaimSubmitted = new AtomicBoolean(false);
+  private volatile boolean stopped = false; // No more background steps once stopped
+  private Boolean incrementalVacuum = null; // Checked on the first reclaim
 
   public TransactionsProcessor(DatabaseBackend dbBackend) {
     this.dbBackend = dbBackend;
-    this.storeQueue = new LinkedBlockingQueue<StoreCOMObjectsContainer>();
-    this.sequencialStoring = new AtomicBoolean(false);
+    this.partitions = new ArchivePartitions(dbBackend);
+    this.queryEngine = new ArchiveQueryEngine(dbBackend, partitions);
+    this.readers = ArchiveReaders.isSupported(dbBackend) ? new ArchiveReaders(dbBackend, partitions) : null;
+    this.batchSize = Math.max(1, Integer.getInteger(GROUP_COMMIT_BATCH_SIZE_PROPERTY,
+        DEFAULT_BATCH_SIZE));
+    this.maxDelay = Math.max(0, Long.getLong(GROUP_COMMIT_MAX_DELAY_PROPERTY, DEFAULT_MAX_DELAY));
+    this.storeQueue = new ArrayBlockingQueue<StoreCOMObjectsContainer>(
+        Math.max(1, Integer.getInteger(GROUP_COMMIT_CAPACITY_PROPERTY, DEFAULT_CAPACITY)));
+    this.vacuumPages = Math.max(1, Integer.getInteger(VACUUM_PAGES_PROPERTY, DEFAULT_VACUUM_PAGES));
+    this.flushTimer = (maxDelay == 0) ? null
+        : Executors.newSingleThreadScheduledExecutor(new DBThreadFactory("Archive_GroupCommitTimer"));
+
+    if (partitions.isEnabled()) {
+      final long interval = partitions.getRollInterval();
+      this.partitionsTimer = Executors.newSingleThreadScheduledExecutor(
+          new DBThreadFactory("Archive_PartitionsTimer"));
+      this.partitionsTimer.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          executeWrite(new Runnable() {
+            @Override
+            public void run() {
+              rollPartitions();
+            }
+          });
+        }
+      }, interval, interval, TimeUnit.MILLISECONDS);
+    } else {
+      this.partitionsTimer = null;
+    }
   }
 
-  public void submitExternalTask(final Runnable task) {
-    this.sequencialStoring.set(false); // Sequential stores can no longer happen otherwise we break order
+  /**
+   * Rolls the partitions now instead of waiting for the timer, and waits until it is done. It does
+   * nothing if the archive is not partitioned.
+   */
+  public void rollPartitionsNow() {
+    if (!partitions.isEnabled()) {
+      return;
+    }
+
+    final FutureTask<Void> task = new FutureTask<Void>(new Runnable() {
+      @Override
+      public void run() {
+        rollPartitions();
+      }
+    }, null);
+
+    executeWrite(task);
+
+    try {
+      task.get();
+    } catch (InterruptedException ex) {
+      Logger.getLogger(TransactionsProcessor.class.getName()).log(Level.SEVERE, null, ex);
+    } catch (ExecutionException ex) {
+      Logger.getLogger(TransactionsProcessor.class.getName()).log(Level.SEVERE, null, ex);
+    }
+  }
+
+  /**
+   * Moves the objects of the time buckets that are over into their partitions and drops the
+   * expired partitions. Must only be called from the dbTransactionsExecutor thread.
+   */
+  private void rollPartitions() {
+    flushPendingStores();
+    // The cached statements might refer to the tables that are going to be dropped
+    queryEngine.close();
 
+    try {
+      if (partitions.roll() != 0) {
+        submitReclaimSpace();
+      }
+    } catch (SQLException ex) {
+      Logger.getLogger(TransactionsProcessor.class.getName()).log(Level.SEVERE,
+          "Failed to roll the archive partitions", ex);
+    }
+  }
+
+  public void submitExternalTask(final Runnable task) {
     generalExecutor.execute(task);
   }
 
   public void submitExternalTask2(final Runnable task) {
-    this.sequencialStoring.set(false); // Sequential stores can no longer happen otherwise we break order
+    this.executeWrite(new Runnable() {
+      @Override
+      public void run() {
+        flushPendingStores();
+        task.run();
+      }
+    });
+  }
 
-    dbTransactionsExecutor.execute(task);
+  /**
+   * Returns the batch size and latency histograms of the group-commit writer.
+   *
+   * @return The group-commit statistics.
+   */
+  public GroupCommitStatistics getGroupCommitStatistics() {
+    return groupCommitStatistics;
   }
 
   /**
@@ -108,18 +248,162 @@ public class TransactionsProcessor {
     }
   }
 
+  /**
+   * Reclaims the free pages of the database in the background. Each step releases up to
+   * vacuumPages pages with an incremental vacuum and then yields to the other interactions with
+   * the database, so a large purge does not block the archive. Nothing is done if the database
+   * was not switched to auto_vacuum=INCREMENTAL when it was opened.
+   */
+  private void submitReclaimSpace() {
+    if (!dbBackend.isSQLite() || stopped || !reclaimSubmitted.compareAndSet(false, true)) {
+      return;
+    }
+
+    dbTransactionsExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        reclaimSubmitted.set(false);
+
+        if (stopped) {
+          return;
+        }
+
+        try {
+          if (reclaimSpaceStep()) {
+            submitReclaimSpace();
+          }
+        } catch (SQLException ex) {
+          Logger.getLogger(TransactionsProcessor.class.getName()).log(Level.SEVERE,
+              "Failed to reclaim the free pages of the database", ex);
+        }
+      }
+    });
+  }
+
+  /**
+   * Releases up to vacuumPages free pages. Must only be called from the dbTransactionsExecutor
+   * thread.
+   *
+   * @return True if there are still free pages to be released.
+   * @throws SQLException if the pragmas failed.
+   */
+  private boolean reclaimSpaceStep() throws SQLException {
+    final Connection c = dbBackend.getConnection();
+
+    if (incrementalVacuum == null) {
+      incrementalVacuum = IncrementalVacuum.isEnabled(c);
+    }
+
+    return incrementalVacuum && IncrementalVacuum.step(c, vacuumPages);
+  }
+
+  /**
+   * Indexes in the background the fields of the objects of an object type that were stored before
+   * the fields were configured. Each step reads a few hundred objects and then yields to the
+   * other interactions with the database. The object type is marked as built in the field index
+   * once all the objects are indexed.
+   *
+   * @param fieldIndex The field index.
+   * @param objType The object type.
+   * @param objTypeId The object type id of the object type.
+   */
+  public void backfillFieldIndex(final ArchiveFieldIndex fieldIndex, final ObjectType objType,
+      final Integer objTypeId) {
+    this.submitBackfillStep(new ArchiveFieldIndexBackfill(fieldIndex, partitions, objType, objTypeId));
+  }
+
+  private void submitBackfillStep(final ArchiveFieldIndexBackfill backfill) {
+    this.executeWrite(new Runnable() {
+      @Override
+      public void run() {
+        if (stopped) {
+          return;
+        }
+
+        flushPendingStores();
+
+        try {
+          if (backfill.step(dbBackend.getConnection(), BACKFILL_STEP_SIZE)) {
+            submitBackfillStep(backfill);
+          }
+        } catch (SQLException ex) {
+          Logger.getLogger(TransactionsProcessor.class.getName()).log(Level.SEVERE,
+              "Failed to index the fields of the stored objects", ex);
+        }
+      }
+    });
+  }
+
+  /**
+   * Executes a read task in one of the readers, once all the writes submitted before it are
+   * committed. The pending stores are flushed right away instead of after the group-commit delay.
+   *
+   * @param task The read task.
+   * @return The result, or null if the task failed.
+   */
+  private <T> T read(final ArchiveReaders.ReadTask<T> task) {
+    final long last = writes.getLast();
+
+    if (!writes.isCommitted(last)) {
+      // Don't wait for the group-commit timer, the reader needs the pending stores now
+      waitingReaders.incrementAndGet();
+
+      try {
+        this.submitFlush();
+        writes.awaitCommitted(last);
+      } catch (InterruptedException ex) {
+        Logger.getLogger(TransactionsProcessor.class.getName()).log(Level.SEVERE, null, ex);
+        return null;
+      } finally {
+        waitingReaders.decrementAndGet();
+      }
+    }
+
+    return readers.read(task);
+  }
+
+  /**
+   * Submits a write task to the dbTransactionsExecutor, numbered in the WriteSequence so the reads
+   * submitted after it wait for it.
+   *
+   * @param task The write task.
+   */
+  private void executeWrite(final Runnable task) {
+    final long sequence = writes.next();
+
+    dbTransactionsExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          task.run();
+        } finally {
+          writes.markCommitted(sequence);
+        }
+      }
+    });
+  }
+
   public COMObjectEntity getCOMObject(final Integer objTypeId, final Integer domain,
       final Long objId) {
-    this.sequencialStoring.set(false); // Sequential stores can no longer happen otherwise we break order
+    if (readers != null) {
+      return this.read(new ArchiveReaders.ReadTask<COMObjectEntity>() {
+        @Override
+        public COMObjectEntity call(final ArchiveQueryEngine engine) throws SQLException {
+          return engine.find(objTypeId, domain, objId);
+        }
+      });
+    }
 
     Future<COMObjectEntity> future = dbTransactionsExecutor.submit(new Callable() {
       @Override
-      public COMObjectEntity call() {
+      public COMObjectEntity call() throws SQLException {
+        flushPendingStores();
         dbBackend.createEntityManager();
         final COMObjectEntity perObj = dbBackend.getEM().find(CLASS_ENTITY,
             COMObjectEntity.generatePK(objTypeId, domain, objId));
         dbBackend.closeEntityManager();
-        return perObj;
+        return (perObj != null) ? perObj
+            : partitions.find(dbBackend.getConnection(), objTypeId, domain, objId);
       }
     });
 
@@ -135,14 +419,27 @@ public class TransactionsProcessor {
   }
 
   public boolean existsCOMObject(final Integer objTypeId, final Integer domain, final Long objId) {
+    if (readers != null) {
+      final Boolean exists = this.read(new ArchiveReaders.ReadTask<Boolean>() {
+        @Override
+        public Boolean call(final ArchiveQueryEngine engine) throws SQLException {
+          return engine.find(objTypeId, domain, objId) != null;
+        }
+      });
+
+      return Boolean.TRUE.equals(exists);
+    }
+
     Future<Boolean> future = dbTransactionsExecutor.submit(new Callable() {
       @Override
-      public Boolean call() {
+      public Boolean call() throws SQLException {
+        flushPendingStores();
         dbBackend.createEntityManager();
         final COMObjectEntity perObj = dbBackend.getEM().find(CLASS_ENTITY,
             COMObjectEntity.generatePK(objTypeId, domain, objId));
         dbBackend.closeEntityManager();
-        return (perObj != null);
+        return (perObj != null)
+            || (partitions.find(dbBackend.getConnection(), objTypeId, domain, objId) != null);
       }
     });
 
@@ -157,12 +454,72 @@ public class TransactionsProcessor {
     return false;
   }
 
+  /**
+   * Returns the highest object id of a type and domain that was moved to a partition of the
+   * archive. The partitions are read with a read-only connection, by an archive reader when they
+   * are enabled, and never on the shared connection.
+   *
+   * It does not wait for the pending writes, because it is called while the ids of a store are
+   * being generated, and those writes might be waiting for the same store. The caller reads the
+   * main table first, so an object moved meanwhile by a roll is still found in its partition.
+   *
+   * @param objTypeId The object type id.
+   * @param domainId The domain id.
+   * @return The highest object id or null if there are none.
+   */
+  public Long getMaxPartitionedObjId(final Integer objTypeId, final Integer domainId) {
+    if (!dbBackend.isSQLite()) {
+      return null;
+    }
+
+    if (readers != null) {
+      return readers.read(new ArchiveReaders.ReadTask<Long>() {
+        @Override
+        public Long call(final ArchiveQueryEngine engine) throws SQLException {
+          return engine.findMaxPartitionedObjId(objTypeId, domainId);
+        }
+      });
+    }
+
+    try {
+      final Connection c = dbBackend.createReadOnlyConnection();
+
+      try {
+        return partitions.getMaxObjId(c, objTypeId, domainId);
+      } finally {
+        c.close();
+      }
+    } catch (SQLException ex) {
+      Logger.getLogger(TransactionsProcessor.class.getName()).log(Level.SEVERE, null, ex);
+    }
+
+    return null;
+  }
+
+  /**
+   * Sets the listener notified when the rolling of the partitions removes objects from the
+   * archive, so the caches of archived objects can be invalidated.
+   *
+   * @param listener The listener.
+   */
+  public void setPartitionsRemovalListener(final ArchivePartitions.RemovalListener listener) {
+    partitions.setRemovalListener(listener);
+  }
+
   public LongList getAllCOMObjects(final Integer objTypeId, final Integer domainId) {
-    this.sequencialStoring.set(false); // Sequential stores can no longer happen otherwise we break order
+    if (readers != null) {
+      return this.read(new ArchiveReaders.ReadTask<LongList>() {
+        @Override
+        public LongList call(final ArchiveQueryEngine engine) throws SQLException {
+          return engine.findAllIds(objTypeId, domainId);
+        }
+      });
+    }
 
     Future<LongList> future = dbTransactionsExecutor.submit(new Callable() {
       @Override
-      public LongList call() {
+      public LongList call() throws SQLException {
+        flushPendingStores();
         dbBackend.createEntityManager();
         Query query = dbBackend.getEM().createQuery(QUERY_SELECT_ALL);
         query.setParameter("objectTypeId", objTypeId);
@@ -170,6 +527,7 @@ public class TransactionsProcessor {
         LongList objIds = new LongList();
         objIds.addAll(query.getResultList());
         dbBackend.closeEntityManager();
+        partitions.addAllIds(dbBackend.getConnection(), objTypeId, domainId, objIds);
 
         return objIds;
       }
@@ -216,103 +574,274 @@ public class TransactionsProcessor {
     }
   }
 
+  private void persistFields(final ArrayList<COMObjectFieldEntity> fields) {
+    if (fields == null) {
+      return;
+    }
+
+    for (COMObjectFieldEntity field : fields) {
+      dbBackend.getEM().merge(field);
+    }
+  }
+
+  /**
+   * Deletes a set of COM Objects of the same type and domain together with their indexed fields,
+   * with one bulk delete per chunk of ids. Must be called inside a transaction.
+   */
+  private void removeObjects(final Integer objTypeId, final Integer domainId,
+      final List<Long> objIds) {
+    for (int i = 0; i < objIds.size(); i += DELETE_CHUNK_SIZE) {
+      final List<Long> chunk = objIds.subList(i, Math.min(i + DELETE_CHUNK_SIZE, objIds.size()));
+
+      executeDelete(QUERY_DELETE_FIELDS, objTypeId, domainId, chunk);
+      executeDelete(QUERY_DELETE_OBJECTS, objTypeId, domainId, chunk);
+    }
+  }
+
+  private void executeDelete(final String jpql, final Integer objTypeId, final Integer domainId,
+      final List<Long> objIds) {
+    final Query query = dbBackend.getEM().createQuery(jpql);
+    query.setParameter("objectTypeId", objTypeId);
+    query.setParameter("domainId", domainId);
+    query.setParameter("objIds", objIds);
+    query.executeUpdate();
+  }
+
   public void insert(final ArrayList<COMObjectEntity> perObjs, final Runnable publishEvents) {
-    final boolean isSequential = this.sequencialStoring.get();
-    final StoreCOMObjectsContainer container = new StoreCOMObjectsContainer(perObjs, isSequential);
+    this.insert(perObjs, null, publishEvents);
+  }
 
-    this.sequencialStoring.set(true);
+  /**
+   * Stores a set of COM Objects together with their indexed fields.
+   *
+   * @param perObjs The COM Objects to be stored.
+   * @param fields The indexed fields of the COM Objects, or null if there are none.
+   * @param publishEvents The task that publishes the events once the objects are committed.
+   */
+  public void insert(final ArrayList<COMObjectEntity> perObjs,
+      final ArrayList<COMObjectFieldEntity> fields, final Runnable publishEvents) {
+    final StoreCOMObjectsContainer container
+        = new StoreCOMObjectsContainer(perObjs, fields, publishEvents, writes.next());
 
-    try { // Insert into queue
+    try { // Insert into the buffer, blocks if the writer is not keeping up
       storeQueue.put(container);
     } catch (InterruptedException ex) {
+      writes.markCommitted(container.getSequence());
       Logger.getLogger(ArchiveManager.class.getName()).log(Level.SEVERE, null, ex);
+      return;
+    }
+
+    final int pending = pendingObjects.addAndGet(perObjs.size());
+
+    if (flushTimer == null || pending >= batchSize || storeQueue.remainingCapacity() == 0
+        || waitingReaders.get() != 0) {
+      this.submitFlush();
+      return;
+    }
+
+    if (flushScheduled.compareAndSet(false, true)) {
+      flushTimer.schedule(new Runnable() {
+        @Override
+        public void run() {
+          flushScheduled.set(false);
+          submitFlush();
+        }
+      }, maxDelay, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void submitFlush() {
+    if (!flushSubmitted.compareAndSet(false, true)) {
+      return; // There is already one flush waiting to be executed
     }
 
     dbTransactionsExecutor.execute(new Runnable() {
       @Override
       public void run() {
-        StoreCOMObjectsContainer container = storeQueue.poll();
-
-        if (container != null) {
-          dbBackend.createEntityManager();  // 0.166 ms
-          dbBackend.getEM().getTransaction().begin(); // 0.480 ms
-          persistObjects(container.getPerObjs()); // store
-
-          while (true) {
-            container = storeQueue.peek(); // get next if there is one available
-            if (container != null && container.isContinuous()) {
-              container = storeQueue.poll();
-              persistObjects(container.getPerObjs()); // store
+        flushSubmitted.set(false);
+        flushPendingStores();
+      }
+    });
+  }
+
+  /**
+   * Commits all the pending stores in batches of up to batchSize objects. If a batch fails, its
+   * stores are committed again one at a time, so only the stores that cannot be persisted are
+   * lost. Must only be called from the dbTransactionsExecutor thread.
+   */
+  private void flushPendingStores() {
+    while (!storeQueue.isEmpty()) {
+      final long startTime = System.nanoTime();
+      final ArrayList<StoreCOMObjectsContainer> batch = new ArrayList<StoreCOMObjectsContainer>();
+      final ArrayList<Runnable> publishers = new ArrayList<Runnable>();
+      int count = 0;
+
+      try {
+        while (count < batchSize) {
+          final StoreCOMObjectsContainer container = storeQueue.poll();
+
+          if (container == null) {
+            break;
+          }
+
+          batch.add(container);
+          count += container.getPerObjs().size();
+        }
+
+        if (commitStores(batch)) {
+          for (StoreCOMObjectsContainer container : batch) {
+            publishers.add(container.getPublishEvents());
+          }
+        } else {
+          if (batch.size() > 1) {
+            Logger.getLogger(TransactionsProcessor.class.getName()).log(Level.WARNING,
+                "The batch of {0} stores could not be committed, committing them one at a time...",
+                batch.size());
+          }
+
+          for (StoreCOMObjectsContainer container : batch) {
+            if (batch.size() > 1 && commitStores(Collections.singletonList(container))) {
+              publishers.add(container.getPublishEvents());
             } else {
-              break;
+              Logger.getLogger(TransactionsProcessor.class.getName()).log(Level.SEVERE,
+                  "The Archive could not store the objects: {0}", container.getPerObjs());
             }
           }
-
-          dbBackend.safeCommit();
-          dbBackend.closeEntityManager(); // 0.410 ms
         }
+      } finally {
+        for (StoreCOMObjectsContainer container : batch) {
+          writes.markCommitted(container.getSequence());
+        }
+      }
 
+      pendingObjects.addAndGet(-count);
+      groupCommitStatistics.record(count, (System.nanoTime() - startTime) / 1000);
+
+      for (Runnable publishEvents : publishers) {
         generalExecutor.submit(publishEvents);
       }
-    });
+    }
+  }
+
+  /**
+   * Stores a set of pending stores in a single transaction. Must only be called from the
+   * dbTransactionsExecutor thread.
+   *
+   * @param stores The pending stores.
+   * @return True if the transaction was committed, false if it was rolled back.
+   */
+  private boolean commitStores(final List<StoreCOMObjectsContainer> stores) {
+    dbBackend.createEntityManager();  // 0.166 ms
+
+    try {
+      dbBackend.getEM().getTransaction().begin(); // 0.480 ms
+
+      for (StoreCOMObjectsContainer container : stores) {
+        persistObjects(container.getPerObjs()); // store
+        persistFields(container.getFields());
+      }
+
+      return dbBackend.safeCommit();
+    } catch (RuntimeException ex) {
+      Logger.getLogger(TransactionsProcessor.class.getName()).log(Level.WARNING,
+          "The objects could not be persisted!", ex);
+      return false;
+    } finally {
+      if (dbBackend.getEM().getTransaction().isActive()) {
+        dbBackend.getEM().getTransaction().rollback();
+      }
+
+      dbBackend.closeEntityManager(); // 0.410 ms
+    }
   }
 
   public void remove(final Integer objTypeId, final Integer domainId,
       final LongList objIds, final Runnable publishEvents) {
-    this.sequencialStoring.set(false); // Sequential stores can no longer happen otherwise we break order
-
-    dbTransactionsExecutor.execute(new Runnable() {
+    this.executeWrite(new Runnable() {
       @Override
       public void run() {
+        flushPendingStores();
         dbBackend.createEntityManager();  // 0.166 ms
-
-        // Generate the object Ids if needed and the persistence objects to be removed
-        for (int i = 0; i < objIds.size(); i++) {
-          final COMObjectEntityPK id
-              = COMObjectEntity.generatePK(objTypeId, domainId, objIds.get(i));
-          COMObjectEntity perObj = dbBackend.getEM().find(CLASS_ENTITY, id);
-          dbBackend.getEM().getTransaction().begin();
-          dbBackend.getEM().remove(perObj);
-          dbBackend.getEM().getTransaction().commit();
-        }
-
+        dbBackend.getEM().getTransaction().begin();
+        removeObjects(objTypeId, domainId, objIds);
+        dbBackend.safeCommit();
         dbBackend.closeEntityManager(); // 0.410 ms
+        deleteFromPartitions(objTypeId, domainId, objIds);
 
         generalExecutor.submit(publishEvents);
-        vacuum();
+        submitReclaimSpace();
       }
     });
   }
 
   public void update(final ArrayList<COMObjectEntity> newObjs, final Runnable publishEvents) {
-    this.sequencialStoring.set(false); // Sequential stores can no longer happen otherwise we break order
+    this.update(newObjs, null, publishEvents);
+  }
 
-    dbTransactionsExecutor.execute(new Runnable() {
+  /**
+   * Updates a set of COM Objects together with their indexed fields. The previous objects are
+   * deleted in bulk and the new ones are stored, all in a single transaction.
+   *
+   * @param newObjs The new COM Objects.
+   * @param fields The indexed fields of the new COM Objects, or null if there are none.
+   * @param publishEvents The task that publishes the events once the objects are committed.
+   */
+  public void update(final ArrayList<COMObjectEntity> newObjs,
+      final ArrayList<COMObjectFieldEntity> fields, final Runnable publishEvents) {
+    this.executeWrite(new Runnable() {
       @Override
       public void run() {
-        dbBackend.createEntityManager();  // 0.166 ms
+        flushPendingStores();
+
+        // Group the ids by object type and domain, usually there is a single group
+        final LinkedHashMap<Long, ArrayList<Long>> groups = new LinkedHashMap<Long, ArrayList<Long>>();
+
+        for (COMObjectEntity newObj : newObjs) {
+          final Long group = (((long) newObj.getObjectTypeId()) << 32)
+              | (newObj.getDomainId() & 0xFFFFFFFFL);
+          ArrayList<Long> ids = groups.get(group);
+
+          if (ids == null) {
+            ids = new ArrayList<Long>();
+            groups.put(group, ids);
+          }
 
-        for (int i = 0; i < newObjs.size(); i++) {
-          final COMObjectEntityPK id = newObjs.get(i).getPrimaryKey();
-          COMObjectEntity previousObj = dbBackend.getEM().find(CLASS_ENTITY, id);
+          ids.add(newObj.getObjectId());
+        }
 
-          dbBackend.getEM().getTransaction().begin();
-          dbBackend.getEM().remove(previousObj);
-          dbBackend.getEM().getTransaction().commit();
+        dbBackend.createEntityManager();  // 0.166 ms
+        dbBackend.getEM().getTransaction().begin();
 
-          // Maybe we can replace the 3 lines below with a persistObjects(newObjs) after the for loop
-          dbBackend.getEM().getTransaction().begin();
-          dbBackend.getEM().persist(newObjs.get(i));
-          dbBackend.getEM().getTransaction().commit();
+        for (Map.Entry<Long, ArrayList<Long>> group : groups.entrySet()) {
+          removeObjects((int) (group.getKey() >> 32), group.getKey().intValue(),
+              group.getValue());
         }
 
+        persistObjects(newObjs);
+        persistFields(fields);
+        dbBackend.safeCommit();
         dbBackend.closeEntityManager(); // 0.410 ms
 
+        for (Map.Entry<Long, ArrayList<Long>> group : groups.entrySet()) {
+          deleteFromPartitions((int) (group.getKey() >> 32), group.getKey().intValue(),
+              group.getValue());
+        }
+
         generalExecutor.submit(publishEvents);
       }
     });
   }
 
+  private void deleteFromPartitions(final Integer objTypeId, final Integer domainId,
+      final List<Long> objIds) {
+    try {
+      partitions.delete(objTypeId, domainId, objIds);
+    } catch (SQLException ex) {
+      Logger.getLogger(TransactionsProcessor.class.getName()).log(Level.SEVERE,
+          "Failed to delete the objects from the archive partitions", ex);
+    }
+  }
+
   private class QueryCallable implements Callable {
 
     private final IntegerList objTypeIds;
@@ -322,11 +851,14 @@ public class TransactionsProcessor {
     private final Integer networkId;
     private final SourceLinkContainer sourceLink;
     private final QueryFilter filter;
+    private final ArchiveQueryCursor cursor;
+    private final ArrayList<CompositeFilter> fieldFilters;
 
     public QueryCallable(final IntegerList objTypeIds,
         final ArchiveQuery archiveQuery, final IntegerList domainIds,
         final Integer providerURIId, final Integer networkId,
-        final SourceLinkContainer sourceLink, final QueryFilter filter) {
+        final SourceLinkContainer sourceLink, final QueryFilter filter,
+        final ArchiveQueryCursor cursor, final ArrayList<CompositeFilter> fieldFilters) {
       this.objTypeIds = objTypeIds;
       this.archiveQuery = archiveQuery;
       this.domainIds = domainIds;
@@ -334,113 +866,30 @@ public class TransactionsProcessor {
       this.networkId = networkId;
       this.sourceLink = sourceLink;
       this.filter = filter;
+      this.cursor = cursor;
+      this.fieldFilters = fieldFilters;
     }
 
     @Override
-    public ArrayList<COMObjectEntity> call() {
-      final boolean relatedContainsWildcard = (archiveQuery.getRelated().equals((long) 0));
-      final boolean startTimeContainsWildcard = (archiveQuery.getStartTime() == null);
-      final boolean endTimeContainsWildcard = (archiveQuery.getEndTime() == null);
-      final boolean providerURIContainsWildcard = (archiveQuery.getProvider() == null);
-      final boolean networkContainsWildcard = (archiveQuery.getNetwork() == null);
-
-      final boolean sourceContainsWildcard = (archiveQuery.getSource() == null);
-      boolean sourceObjIdContainsWildcard = true;
-
-      if (!sourceContainsWildcard) {
-        sourceObjIdContainsWildcard
-            = (archiveQuery.getSource().getKey().getInstId() == null || archiveQuery.getSource().getKey().getInstId() == 0);
-      }
-
-      // Generate the query string
-      String strPU = "objectTypeId, objId, domainId, network, OBJ, providerURI, "
-          + "relatedLink, sourceLinkDomainId, sourceLinkObjId, sourceLinkObjectTypeId, timestampArchiveDetails";
-      String queryString = "SELECT " + strPU + " FROM COMObjectEntity PU ";
-
-      queryString += "WHERE ";
-
-      queryString += generateQueryStringFromLists("PU.domainId", domainIds);
-      queryString += generateQueryStringFromLists("PU.objectTypeId", objTypeIds);
-
-      queryString += (relatedContainsWildcard) ? ""
-          : "PU.relatedLink=" + archiveQuery.getRelated() + " AND ";
-      queryString += (startTimeContainsWildcard) ? ""
-          : "PU.timestampArchiveDetails>=" + archiveQuery.getStartTime().getValue() + " AND ";
-      queryString += (endTimeContainsWildcard) ? ""
-          : "PU.timestampArchiveDetails<=" + archiveQuery.getEndTime().getValue() + " AND ";
-      queryString += (providerURIContainsWildcard) ? ""
-          : "PU.providerURI=" + providerURIId + " AND ";
-      queryString += (networkContainsWildcard) ? "" : "PU.network=" + networkId + " AND ";
-
-      if (!sourceContainsWildcard) {
-        queryString += generateQueryStringFromLists("PU.sourceLinkObjectTypeId",
-            sourceLink.getObjectTypeIds());
-        queryString += generateQueryStringFromLists("PU.sourceLinkDomainId",
-            sourceLink.getDomainIds());
-        queryString += (sourceObjIdContainsWildcard) ? ""
-            : "PU.sourceLinkObjId=" + sourceLink.getObjId() + " AND ";
-      }
-
-      queryString = queryString.substring(0, queryString.length() - 4);
+    public ArrayList<COMObjectEntity> call() throws SQLException {
+      flushPendingStores();
 
-      // A dedicated PaginationFilter for this particular COM Archive implementation was created and implemented
-      if (filter != null) {
-        if (filter instanceof PaginationFilter) {
-          PaginationFilter pfilter = (PaginationFilter) filter;
-
-          // Double check if the filter fields are really not null
-          if (pfilter.getLimit() != null && pfilter.getOffset() != null) {
-            String sortOrder = "ASC ";
-            if (archiveQuery.getSortOrder() != null) {
-              sortOrder = (archiveQuery.getSortOrder()) ? "ASC " : "DESC ";
-            }
-
-            queryString += "ORDER BY PU.timestampArchiveDetails "
-                + sortOrder
-                + "LIMIT "
-                + pfilter.getLimit().getValue()
-                + " OFFSET "
-                + pfilter.getOffset().getValue();
-          }
-        }
-      }
-
-      dbBackend.createEntityManager();
-      final Query query = dbBackend.getEM().createNativeQuery(queryString);
-      final List resultList = query.getResultList();
-      dbBackend.closeEntityManager();
-
-      // FYI: SELECT objectTypeId, objId, domainId, network, OBJ, providerURI, relatedLink,
-      // sourceLinkDomainId, sourceLinkObjId, sourceLinkObjectTypeId, timestampArchiveDetails FROM COMObjectEntity
-      final ArrayList<COMObjectEntity> perObjs = new ArrayList<COMObjectEntity>(resultList.size());
-
-      // Conversion from the raw SQL response into a COMObjectEntity
-      for (Object obj : resultList) {
-        // (final Integer objectTypeId, final Integer domainId, final Long objId)
-        final SourceLinkContainer source = new SourceLinkContainer(
-            (Integer) ((Object[]) obj)[9],
-            (Integer) ((Object[]) obj)[7],
-            convert2Long(((Object[]) obj)[8])
-        );
-
-        perObjs.add(new COMObjectEntity(
-            (Integer) ((Object[]) obj)[0],
-            (Integer) ((Object[]) obj)[2],
-            convert2Long(((Object[]) obj)[1]),
-            convert2Long(((Object[]) obj)[10]),
-            (Integer) ((Object[]) obj)[5],
-            (Integer) ((Object[]) obj)[3],
-            source,
-            convert2Long(((Object[]) obj)[6]),
-            (byte[]) ((Object[]) obj)[4]
-        ));
-      }
-
-      return perObjs;
+      return queryEngine.query(objTypeIds, archiveQuery, domainIds,
+          providerURIId, networkId, sourceLink, filter, cursor, fieldFilters);
     }
 
   }
 
+  /**
+   * Generates the condition that matches a field against a list of ids.
+   *
+   * @param field The field.
+   * @param list The list of ids.
+   * @return The condition followed by " AND ", or an empty string if the list is empty.
+   * @deprecated The archive queries are now executed by the ArchiveQueryEngine with bound
+   * parameters.
+   */
+  @Deprecated
   public static String generateQueryStringFromLists(final String field, final IntegerList list) {
     if (list.isEmpty()) {
       return "";
@@ -466,9 +915,27 @@ public class TransactionsProcessor {
       final ArchiveQuery archiveQuery, final IntegerList domainIds,
       final Integer providerURIId, final Integer networkId,
       final SourceLinkContainer sourceLink, final QueryFilter filter) {
-    this.sequencialStoring.set(false); // Sequential stores can no longer happen otherwise we break order
+    return this.query(objTypeIds, archiveQuery, domainIds, providerURIId,
+        networkId, sourceLink, filter, null, null);
+  }
+
+  public ArrayList<COMObjectEntity> query(final IntegerList objTypeIds,
+      final ArchiveQuery archiveQuery, final IntegerList domainIds,
+      final Integer providerURIId, final Integer networkId,
+      final SourceLinkContainer sourceLink, final QueryFilter filter,
+      final ArchiveQueryCursor cursor, final ArrayList<CompositeFilter> fieldFilters) {
+    if (readers != null) {
+      return this.read(new ArchiveReaders.ReadTask<ArrayList<COMObjectEntity>>() {
+        @Override
+        public ArrayList<COMObjectEntity> call(final ArchiveQueryEngine engine) throws SQLException {
+          return engine.query(objTypeIds, archiveQuery, domainIds,
+              providerURIId, networkId, sourceLink, filter, cursor, fieldFilters);
+        }
+      });
+    }
+
     final QueryCallable task = new QueryCallable(objTypeIds, archiveQuery,
-        domainIds, providerURIId, networkId, sourceLink, filter);
+        domainIds, providerURIId, networkId, sourceLink, filter, cursor, fieldFilters);
 
     Future<ArrayList<COMObjectEntity>> future = dbTransactionsExecutor.submit(task);
 
@@ -484,8 +951,19 @@ public class TransactionsProcessor {
   }
 
   public void resetMainTable(final Callable task) {
-    this.sequencialStoring.set(false); // Sequential stores can no longer happen otherwise we break order
-    Future<Integer> nullValue = dbTransactionsExecutor.submit(task);
+    final long sequence = writes.next();
+    Future<Integer> nullValue = dbTransactionsExecutor.submit(new FlushFirstCallable(new Callable() {
+      @Override
+      public Object call() throws Exception {
+        try {
+          queryEngine.close();
+          partitions.dropAll();
+          return task.call();
+        } finally {
+          writes.markCommitted(sequence);
+        }
+      }
+    }));
     Logger.getLogger(TransactionsProcessor.class.getName()).info("Reset table submitted!");
 
     try {
@@ -499,8 +977,28 @@ public class TransactionsProcessor {
   }
 
   public void stopInteractions(final Callable task) {
-    this.sequencialStoring.set(false); // Sequential stores can no longer happen otherwise we break order
-    Future<Integer> nullValue = dbTransactionsExecutor.submit(task);
+    Future<Integer> nullValue = dbTransactionsExecutor.submit(new FlushFirstCallable(new Callable() {
+      @Override
+      public Object call() throws Exception {
+        stopped = true;
+
+        // The pending stores were flushed, no more delayed flushes are needed
+        if (flushTimer != null) {
+          flushTimer.shutdownNow();
+        }
+
+        if (partitionsTimer != null) {
+          partitionsTimer.shutdown();
+        }
+
+        if (readers != null) {
+          readers.close();
+        }
+
+        queryEngine.close();
+        return task.call();
+      }
+    }));
 
     try {
       nullValue.get(); // Dummy code to Force a wait until the actual restart is done!
@@ -511,6 +1009,24 @@ public class TransactionsProcessor {
     }
   }
 
+  /**
+   * Wraps a task so that the pending stores are committed before it is executed.
+   */
+  private class FlushFirstCallable implements Callable {
+
+    private final Callable task;
+
+    FlushFirstCallable(final Callable task) {
+      this.task = task;
+    }
+
+    @Override
+    public Object call() throws Exception {
+      flushPendingStores();
+      return task.call();
+    }
+  }
+
   /**
    * The database backend thread factory
    */
@@ -542,20 +1058,4 @@ public class TransactionsProcessor {
     }
   }
 
-  private static Long convert2Long(final Object obj) {
-    if (obj == null) {
-      return null;
-    }
-
-    if (obj instanceof Long) {
-      return (Long) obj;
-    }
-
-    if (obj instanceof Integer) {
-      return ((Integer) obj).longValue();
-    }
-
-    return null;
-  }
-
 }
@@ -0,0 +1,99 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2021      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : ESA NanoSat MO Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.com.impl.archive.db;
+
+import java.util.TreeSet;
+
+/**
+ * Numbers the writes of the archive in the order they are submitted and
+ * tracks the ones that were already committed. A reader waits until all the
+ * writes submitted before it are committed, so it sees them without running
+ * on the writer thread.
+ */
+public class WriteSequence {
+
+    private final TreeSet<Long> committedOutOfOrder = new TreeSet<Long>();
+    private long last = 0;
+    private long committed = 0; // All the writes up to this one were committed
+
+    /**
+     * Returns the number of a new write.
+     *
+     * @return The number of the write.
+     */
+    public synchronized long next() {
+        return ++last;
+    }
+
+    /**
+     * Returns the number of the last submitted write.
+     *
+     * @return The number of the write.
+     */
+    public synchronized long getLast() {
+        return last;
+    }
+
+    /**
+     * Marks a write as committed. Writes that failed must also be marked, or
+     * the readers waiting for them would never continue.
+     *
+     * @param sequence The number of the write.
+     */
+    public synchronized void markCommitted(final long sequence) {
+        if (sequence != committed + 1) {
+            committedOutOfOrder.add(sequence);
+            return;
+        }
+
+        committed = sequence;
+
+        while (!committedOutOfOrder.isEmpty() && committedOutOfOrder.first() == committed + 1) {
+            committed = committedOutOfOrder.pollFirst();
+        }
+
+        this.notifyAll();
+    }
+
+    /**
+     * Checks if all the writes up to the given one are committed.
+     *
+     * @param sequence The number of the write.
+     * @return True if they are committed.
+     */
+    public synchronized boolean isCommitted(final long sequence) {
+        return committed >= sequence;
+    }
+
+    /**
+     * Waits until all the writes up to the given one are committed.
+     *
+     * @param sequence The number of the write.
+     * @throws InterruptedException If the thread was interrupted while
+     * waiting.
+     */
+    public synchronized void awaitCommitted(final long sequence) throws InterruptedException {
+        while (committed < sequence) {
+            this.wait();
+        }
+    }
+
+}
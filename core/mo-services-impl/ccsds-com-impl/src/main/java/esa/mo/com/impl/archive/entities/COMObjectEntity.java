@@ -47,7 +47,9 @@ import org.ccsds.moims.mo.mal.structures.FineTime;
         indexes = {
             @Index(name = "index_related2", columnList = "relatedLink", unique = false),
 //            @Index(name = "index_network2", columnList = "network", unique = false),
-            @Index(name = "index_timestampArchiveDetails2", columnList = "timestampArchiveDetails", unique = false)
+            @Index(name = "index_timestampArchiveDetails2", columnList = "timestampArchiveDetails", unique = false),
+            @Index(name = "index_keyset2", columnList = "timestampArchiveDetails,objectTypeId,domainId,objId", unique = false),
+            @Index(name = "index_keysetByType2", columnList = "objectTypeId,domainId,timestampArchiveDetails,objId", unique = false)
 //            @Index(name = "index_providerURI2", columnList = "providerURI", unique = false)
         })
 public class COMObjectEntity implements Serializable {
@@ -0,0 +1,127 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2021      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : ESA NanoSat MO Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.com.impl.archive.entities;
+
+import esa.mo.com.impl.archive.db.COMObjectFieldEntityPK;
+import java.io.Serializable;
+import javax.persistence.*;
+
+/**
+ * The entity class that holds the value of an indexed field of the body of a
+ * COM object. It allows the Composite Filters of the archive queries to be
+ * evaluated in the database instead of decoding the object bodies.
+ */
+@Entity
+@IdClass(COMObjectFieldEntityPK.class)
+@Table(name = "COMObjectFieldEntity",
+        indexes = {
+            @Index(name = "index_fieldNumValue", columnList = "objectTypeId,fieldName,numValue", unique = false),
+            @Index(name = "index_fieldStrValue", columnList = "objectTypeId,fieldName,strValue", unique = false)
+        })
+public class COMObjectFieldEntity implements Serializable {
+
+    // ---------------------
+    @Id
+    @Column(name = "objectTypeId")
+    private Integer objectTypeId;
+
+    @Id
+    @Column(name = "domainId")
+    private Integer domainId;
+
+    @Id
+    @Column(name = "objId")
+    private Long objId;
+
+    @Id
+    @Column(name = "fieldName")
+    private String fieldName;
+    // ---------------------
+
+    @Column(name = "numValue")
+    private Double numValue;
+
+    @Column(name = "strValue")
+    private String strValue;
+
+    @Column(name = "enumeration")
+    private Boolean enumeration;
+
+    /**
+     * This method only exists because Eclipse Link needs the constructor
+     * without parameters
+     */
+    protected COMObjectFieldEntity() {
+    }
+
+    public COMObjectFieldEntity(
+            Integer objectTypeId,
+            Integer domain,
+            Long objId,
+            String fieldName,
+            Double numValue,
+            String strValue,
+            Boolean enumeration) {
+        this.objectTypeId = objectTypeId;
+        this.domainId = domain;
+        this.objId = objId;
+        this.fieldName = fieldName;
+        this.numValue = numValue;
+        this.strValue = strValue;
+        this.enumeration = enumeration;
+    }
+
+    public Integer getObjectTypeId() {
+        return this.objectTypeId;
+    }
+
+    public Integer getDomainId() {
+        return this.domainId;
+    }
+
+    public Long getObjectId() {
+        return this.objId;
+    }
+
+    public String getFieldName() {
+        return this.fieldName;
+    }
+
+    public Double getNumValue() {
+        return this.numValue;
+    }
+
+    public String getStrValue() {
+        return this.strValue;
+    }
+
+    public Boolean isEnumeration() {
+        return this.enumeration;
+    }
+
+    @Override
+    public String toString() {
+        return "COM Object Field: this.objectTypeId=" + this.objectTypeId
+                + ", this.domainId=" + this.domainId + ", this.objId=" + this.objId
+                + ", this.fieldName=" + this.fieldName;
+    }
+
+}
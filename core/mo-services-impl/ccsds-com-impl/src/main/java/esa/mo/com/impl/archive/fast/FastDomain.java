@@ -25,10 +25,8 @@ import esa.mo.com.impl.archive.entities.DomainHolderEntity;
 import esa.mo.com.impl.util.HelperCOM;
 import esa.mo.helpertools.helpers.HelperMisc;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.persistence.Query;
@@ -37,27 +35,24 @@ import org.ccsds.moims.mo.mal.structures.IntegerList;
 
 /**
  * Holds the set of domains that the database contains in its dedicated table
- * and avoids constant checking on it which makes things go much faster.
+ * and avoids constant checking on it which makes things go much faster. The
+ * lookups do not lock, only the creation of a new domain id does.
  */
 public class FastDomain {
 
     private final static String QUERY_DELETE_DOMAIN = "DELETE FROM DomainHolderEntity";
     private final static String QUERY_SELECT_DOMAIN = "SELECT PU FROM DomainHolderEntity PU";
     private final DatabaseBackend dbBackend;
-    private AtomicInteger uniqueId = new AtomicInteger(0);
-    private HashMap<IdentifierList, Integer> fastID;
-    private HashMap<Integer, IdentifierList> fastIDreverse;
+    private final FastIdMap<IdentifierList> fastID;
 
     public FastDomain(final DatabaseBackend dbBackend) {
-        this.fastID = new HashMap<IdentifierList, Integer>();
-        this.fastIDreverse = new HashMap<Integer, IdentifierList>();
         this.dbBackend = dbBackend;
+        this.fastID = new FastIdMap<IdentifierList>(dbBackend,
+                (id, domain) -> new DomainHolderEntity(id, HelperMisc.domain2domainId(domain)));
     }
 
     public synchronized void resetFastDomain() {
-        this.fastID = new HashMap<IdentifierList, Integer>();
-        this.fastIDreverse = new HashMap<Integer, IdentifierList>();
-        uniqueId = new AtomicInteger(0);
+        this.fastID.clear();
 
         dbBackend.getEM().getTransaction().begin();
         dbBackend.getEM().createQuery(QUERY_DELETE_DOMAIN).executeUpdate();
@@ -74,56 +69,36 @@ public class FastDomain {
         ArrayList<DomainHolderEntity> domainHolderEntities = new ArrayList<DomainHolderEntity>(resultList);
         dbBackend.closeEntityManager();
 
-        int max = 0;
-
         // Populate the variables on this class
         for (int i = 0; i < domainHolderEntities.size(); i++) {
             final IdentifierList domain = HelperMisc.domainId2domain(domainHolderEntities.get(i).getDomainString());
-            final Integer id = domainHolderEntities.get(i).getId();
-            this.fastID.put(domain, id);
-            this.fastIDreverse.put(id, domain);
-
-            if (id > max) {
-                max = id; // Get the maximum value
-            }
+            this.fastID.load(domain, domainHolderEntities.get(i).getId());
         }
-
-        uniqueId = new AtomicInteger(max);
     }
 
-    public synchronized boolean exists(final IdentifierList domain) {
-        return (this.fastID.get(domain) != null);
+    public boolean exists(final IdentifierList domain) {
+        return (this.fastID.getId(domain) != null);
     }
 
-    public synchronized boolean exists(final Integer domainId) {
-        return (this.fastIDreverse.get(domainId) != null);
+    public boolean exists(final Integer domainId) {
+        return (this.fastID.getValue(domainId) != null);
     }
 
-    private Integer addNewDomain(final IdentifierList domain) {
-        final int domainId = uniqueId.incrementAndGet();
-        this.fastID.put(domain, domainId);
-        this.fastIDreverse.put(domainId, domain);
-
-        dbBackend.createEntityManager();
-
-        // Create Entity
-        final DomainHolderEntity domainEntity = new DomainHolderEntity(domainId, HelperMisc.domain2domainId(domain));
-
-        // Add it to the table
-        dbBackend.getEM().getTransaction().begin();
-        dbBackend.getEM().persist(domainEntity);
-        dbBackend.getEM().getTransaction().commit();
-        dbBackend.closeEntityManager();
-
-        return domainId;
+    public Integer getDomainId(final IdentifierList domain) {
+        return this.fastID.getOrCreateId(domain);
     }
 
-    public synchronized Integer getDomainId(final IdentifierList domain) {
-        final Integer id = this.fastID.get(domain);
-        return (id == null) ? this.addNewDomain(domain) : id;
+    /**
+     * Returns the id of a domain without creating a new one.
+     *
+     * @param domain The domain.
+     * @return The id, or null if the domain is not known.
+     */
+    public Integer findDomainId(final IdentifierList domain) {
+        return this.fastID.getId(domain);
     }
 
-    public synchronized IntegerList getDomainIds(final IdentifierList inputDomain) {
+    public IntegerList getDomainIds(final IdentifierList inputDomain) {
         final IntegerList ids = new IntegerList();
 
         if (inputDomain == null) {
@@ -141,20 +116,14 @@ public class FastDomain {
                 }
             }
         } else {
-            final Integer id = this.fastID.get(inputDomain);
-
-            if (id == null) {
-                ids.add(this.addNewDomain(inputDomain));
-            } else {
-                ids.add(id);
-            }
+            ids.add(this.fastID.getOrCreateId(inputDomain));
         }
 
         return ids;
     }
 
-    public synchronized IdentifierList getDomain(final Integer id) throws Exception {
-        final IdentifierList domain = this.fastIDreverse.get(id);
+    public IdentifierList getDomain(final Integer id) throws Exception {
+        final IdentifierList domain = this.fastID.getValue(id);
 
         if (domain == null) {
             throw new Exception();
@@ -0,0 +1,250 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2021      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : ESA NanoSat MO Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.com.impl.archive.fast;
+
+import esa.mo.com.impl.archive.db.DatabaseBackend;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The two-way map between the values of a holder table and their ids, used by
+ * the Fast classes. The lookups of the known values are lock-free reads of
+ * concurrent maps. A value that is not known yet gets a new id that is
+ * persisted before it is published, and the ids created at the same time by
+ * different threads are persisted together in a single transaction.
+ *
+ * @param <V> The type of the values.
+ */
+class FastIdMap<V> {
+
+    private final DatabaseBackend dbBackend;
+    private final BiFunction<Integer, V, Object> entityFactory;
+    private final ConcurrentHashMap<V, Integer> ids = new ConcurrentHashMap<V, Integer>();
+    private final ConcurrentHashMap<Integer, V> values = new ConcurrentHashMap<Integer, V>();
+    private final ConcurrentHashMap<V, CompletableFuture<Integer>> creating
+            = new ConcurrentHashMap<V, CompletableFuture<Integer>>();
+    private final AtomicInteger uniqueId = new AtomicInteger(0);
+
+    // The group commit of the new ids
+    private final Object commitLock = new Object();
+    private final ArrayList<Pending> pendingEntities = new ArrayList<Pending>();
+    private long queuedEntities = 0;
+    private long persistedEntities = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param dbBackend The database backend.
+     * @param entityFactory Creates the holder entity of a new id and value.
+     */
+    FastIdMap(final DatabaseBackend dbBackend, final BiFunction<Integer, V, Object> entityFactory) {
+        this.dbBackend = dbBackend;
+        this.entityFactory = entityFactory;
+    }
+
+    /**
+     * Adds an id that is already persisted, used when the ids are loaded.
+     *
+     * @param value The value.
+     * @param id The id.
+     */
+    void load(final V value, final Integer id) {
+        ids.put(value, id);
+        values.put(id, value);
+
+        int max = uniqueId.get();
+
+        while (id > max && !uniqueId.compareAndSet(max, id)) {
+            max = uniqueId.get();
+        }
+    }
+
+    /**
+     * Forgets all the ids. The holder table must be cleared by the caller.
+     */
+    void clear() {
+        ids.clear();
+        values.clear();
+        uniqueId.set(0);
+    }
+
+    Integer getId(final V value) {
+        return ids.get(value);
+    }
+
+    V getValue(final Integer id) {
+        return values.get(id);
+    }
+
+    Set<Map.Entry<V, Integer>> entrySet() {
+        return ids.entrySet();
+    }
+
+    /**
+     * Returns the id of a value, and creates and persists a new one if the
+     * value is not known yet. A new id that cannot be persisted is not
+     * published.
+     *
+     * @param value The value.
+     * @return The id.
+     * @throws IllegalStateException If the new id could not be persisted.
+     */
+    Integer getOrCreateId(final V value) {
+        final Integer id = ids.get(value);
+
+        if (id != null) {
+            return id;
+        }
+
+        final CompletableFuture<Integer> future = new CompletableFuture<Integer>();
+        final CompletableFuture<Integer> other = creating.putIfAbsent(value, future);
+
+        if (other != null) { // Another thread is already creating it
+            return other.join();
+        }
+
+        try {
+            // It might have been published after the first check
+            Integer newId = ids.get(value);
+
+            if (newId == null) {
+                newId = uniqueId.incrementAndGet();
+                this.persist(entityFactory.apply(newId, value));
+                values.put(newId, value);
+                ids.put(value, newId);
+                this.onCreated(value, newId);
+            }
+
+            future.complete(newId);
+            return newId;
+        } catch (RuntimeException ex) {
+            future.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            creating.remove(value);
+        }
+    }
+
+    /**
+     * Called after a new id is published.
+     *
+     * @param value The value.
+     * @param id The new id.
+     */
+    protected void onCreated(final V value, final Integer id) {
+    }
+
+    /**
+     * Persists the holder entity of a new id, together with the entities
+     * queued meanwhile by other threads.
+     *
+     * @param entity The holder entity.
+     * @throws IllegalStateException If the batch of the entity could not be
+     * persisted.
+     */
+    private void persist(final Object entity) {
+        final Pending pending = new Pending(entity);
+
+        synchronized (pendingEntities) {
+            pendingEntities.add(pending);
+            pending.ticket = ++queuedEntities;
+        }
+
+        synchronized (commitLock) {
+            final ArrayList<Pending> batch;
+            final long lastTicket;
+
+            synchronized (pendingEntities) {
+                if (persistedEntities >= pending.ticket) {
+                    // Committed by the batch of another thread
+                    pending.checkPersisted();
+                    return;
+                }
+
+                batch = new ArrayList<Pending>(pendingEntities);
+                pendingEntities.clear();
+                lastTicket = queuedEntities;
+            }
+
+            RuntimeException failure = null;
+            dbBackend.createEntityManager();
+
+            try {
+                dbBackend.getEM().getTransaction().begin();
+
+                for (Pending queued : batch) {
+                    dbBackend.getEM().persist(queued.entity);
+                }
+
+                dbBackend.getEM().getTransaction().commit();
+            } catch (RuntimeException ex) {
+                Logger.getLogger(FastIdMap.class.getName()).log(Level.SEVERE,
+                        "The new ids could not be persisted!", ex);
+                failure = ex;
+
+                if (dbBackend.getEM().getTransaction().isActive()) {
+                    dbBackend.getEM().getTransaction().rollback();
+                }
+            } finally {
+                dbBackend.closeEntityManager();
+            }
+
+            synchronized (pendingEntities) {
+                // All the ids of the batch fail together, none is published
+                for (Pending queued : batch) {
+                    queued.failure = failure;
+                }
+
+                persistedEntities = lastTicket;
+            }
+
+            pending.checkPersisted();
+        }
+    }
+
+    /**
+     * A holder entity waiting for the group commit.
+     */
+    private static class Pending {
+
+        private final Object entity;
+        private long ticket;
+        private RuntimeException failure;
+
+        private Pending(final Object entity) {
+            this.entity = entity;
+        }
+
+        private void checkPersisted() {
+            if (failure != null) {
+                throw new IllegalStateException("The new id could not be persisted!", failure);
+            }
+        }
+    }
+
+}
@@ -23,35 +23,30 @@ package esa.mo.com.impl.archive.fast;
 import esa.mo.com.impl.archive.db.DatabaseBackend;
 import esa.mo.com.impl.archive.entities.NetworkHolderEntity;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
 import javax.persistence.Query;
 import org.ccsds.moims.mo.mal.structures.Identifier;
 
 /**
  * Holds the set of networks that the database contains in its dedicated table
- * and avoids constant checking on it which makes things go much faster.
+ * and avoids constant checking on it which makes things go much faster. The
+ * lookups do not lock, only the creation of a new network id does.
  */
 public class FastNetwork {
 
     private final static String QUERY_DELETE_NETWORK = "DELETE FROM NetworkHolderEntity";
     private final static String QUERY_SELECT_NETWORK = "SELECT PU FROM NetworkHolderEntity PU";
     private final DatabaseBackend dbBackend;
-    private AtomicInteger uniqueId = new AtomicInteger(0);
-    private HashMap<String, Integer> fastID;
-    private HashMap<Integer, String> fastIDreverse;
+    private final FastIdMap<String> fastID;
 
     public FastNetwork(final DatabaseBackend dbBackend) {
-        this.fastID = new HashMap<String, Integer>();
-        this.fastIDreverse = new HashMap<Integer, String>();
         this.dbBackend = dbBackend;
+        this.fastID = new FastIdMap<String>(dbBackend,
+                (id, network) -> new NetworkHolderEntity(id, network));
     }
 
     public synchronized void resetFastNetwork() {
-        this.fastID = new HashMap<String, Integer>();
-        this.fastIDreverse = new HashMap<Integer, String>();
-        uniqueId = new AtomicInteger(0);
+        this.fastID.clear();
 
         dbBackend.getEM().getTransaction().begin();
         dbBackend.getEM().createQuery(QUERY_DELETE_NETWORK).executeUpdate();
@@ -69,55 +64,26 @@ public class FastNetwork {
 
         dbBackend.closeEntityManager();
 
-        int max = 0;
-
         // Populate the variables on this class
         for (int i = 0; i < networksHolderEntities.size(); i++) {
-            this.fastID.put(networksHolderEntities.get(i).getNetworkString(), networksHolderEntities.get(i).getId());
-            this.fastIDreverse.put(networksHolderEntities.get(i).getId(), networksHolderEntities.get(i).getNetworkString());
-
-            if (networksHolderEntities.get(i).getId() > max) {
-                max = networksHolderEntities.get(i).getId(); // Get the maximum value
-            }
+            this.fastID.load(networksHolderEntities.get(i).getNetworkString(), networksHolderEntities.get(i).getId());
         }
-
-        uniqueId = new AtomicInteger(max);
     }
 
-    public synchronized boolean exists(final String network) {
-        return (this.fastID.get(network) != null);
+    public boolean exists(final String network) {
+        return (this.fastID.getId(network) != null);
     }
 
-    public synchronized boolean exists(final Integer networkId) {
-        return (this.fastIDreverse.get(networkId) != null);
-    }
-
-    private Integer addNewNetwork(final String network) {
-        final int networkId = uniqueId.incrementAndGet();
-        dbBackend.createEntityManager();
-
-        // Create Entity
-        NetworkHolderEntity networkEntity = new NetworkHolderEntity(networkId, network);
-
-        // Add it to the table
-        dbBackend.getEM().getTransaction().begin();
-        dbBackend.getEM().persist(networkEntity);
-        dbBackend.getEM().getTransaction().commit();
-        dbBackend.closeEntityManager();
-
-        this.fastID.put(network, networkId);
-        this.fastIDreverse.put(networkId, network);
-
-        return networkId;
+    public boolean exists(final Integer networkId) {
+        return (this.fastID.getValue(networkId) != null);
     }
 
-    public synchronized Integer getNetworkId(final Identifier network) {
-        final Integer id = this.fastID.get(network.getValue());
-        return (id == null) ? this.addNewNetwork(network.getValue()) : id;
+    public Integer getNetworkId(final Identifier network) {
+        return this.fastID.getOrCreateId(network.getValue());
     }
 
-    public synchronized Identifier getNetwork(final Integer id) throws Exception {
-        final String network = this.fastIDreverse.get(id);
+    public Identifier getNetwork(final Integer id) throws Exception {
+        final String network = this.fastID.getValue(id);
 
         if (network == null) {
             throw new Exception();
@@ -21,6 +21,7 @@
 package esa.mo.com.impl.archive.fast;
 
 import esa.mo.com.impl.archive.db.DatabaseBackend;
+import esa.mo.com.impl.archive.db.TransactionsProcessor;
 import java.util.HashMap;
 import javax.persistence.Query;
 
@@ -34,10 +35,23 @@ public class FastObjId {
     private final static String FIELD_OBJTYPEID = "objectTypeId";
     private final static String FIELD_DOMAINID = "domainId";
     private final DatabaseBackend dbBackend;
+    private final TransactionsProcessor dbProcessor;
     private HashMap<Key, Long> fastID;
 
     public FastObjId(final DatabaseBackend dbBackend) {
+        this(dbBackend, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param dbBackend The database backend.
+     * @param dbProcessor The transactions processor, used to read the object
+     * ids that were moved to the time partitions, or null.
+     */
+    public FastObjId(final DatabaseBackend dbBackend, final TransactionsProcessor dbProcessor) {
         this.dbBackend = dbBackend;
+        this.dbProcessor = dbProcessor;
         this.fastID = new HashMap<Key, Long>();
     }
 
@@ -103,6 +117,14 @@ public class FastObjId {
         Long maxValue = (Long) query.getSingleResult();
         dbBackend.closeEntityManager();
 
+        // The older objects might have been moved to the time partitions
+        final Long partitionsMax = (dbProcessor == null) ? null
+                : dbProcessor.getMaxPartitionedObjId(objectTypeId, domain);
+
+        if (partitionsMax != null && (maxValue == null || partitionsMax > maxValue)) {
+            maxValue = partitionsMax;
+        }
+
         // If the object does not exist in PU, set as 0
         long value = (maxValue == null) ? (long) 0 : maxValue;
         this.setUniqueID(objectTypeId, domain, value);
@@ -28,9 +28,6 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 import javax.persistence.Query;
 import org.ccsds.moims.mo.com.structures.ObjectType;
 import org.ccsds.moims.mo.mal.structures.IntegerList;
@@ -38,27 +35,37 @@ import org.ccsds.moims.mo.mal.structures.LongList;
 
 /**
  * Holds the set of object types that the database contains in its dedicated table
- * and avoids constant checking on it which makes things go much faster.
+ * and avoids constant checking on it which makes things go much faster. The
+ * lookups do not lock, only the creation of a new object type id does.
+ *
+ * The wildcard lookups use an index per wildcard mask, from the masked object
+ * type to the ids that match it. There are at most 16 masks and the indexes are
+ * built on first use and kept up to date when new object types are added.
  */
 public class FastObjectType {
 
     private final static String QUERY_DELETE_OBJECTTYPE = "DELETE FROM ObjectTypeHolderEntity";
     private final static String QUERY_SELECT_OBJECTTYPE = "SELECT PU FROM ObjectTypeHolderEntity PU";
     private final DatabaseBackend dbBackend;
-    private AtomicInteger uniqueId = new AtomicInteger(0);
-    private HashMap<Long, Integer> fastID;
-    private HashMap<Integer, Long> fastIDreverse;
+    private final FastIdMap<Long> fastID;
+    // Copy-on-write: mask -> (object type AND mask) -> ids
+    private volatile HashMap<Long, HashMap<Long, IntegerList>> wildcardIndex
+            = new HashMap<Long, HashMap<Long, IntegerList>>();
 
     public FastObjectType(final DatabaseBackend dbBackend) {
-        this.fastID = new HashMap<Long, Integer>();
-        this.fastIDreverse = new HashMap<Integer, Long>();
         this.dbBackend = dbBackend;
+        this.fastID = new FastIdMap<Long>(dbBackend,
+                (id, objectType) -> new ObjectTypeHolderEntity(id, objectType)) {
+            @Override
+            protected void onCreated(final Long objectType, final Integer id) {
+                addToWildcardIndex(objectType, id);
+            }
+        };
     }
 
     public synchronized void resetFastObjectType() {
-        this.fastID = new HashMap<Long, Integer>();
-        this.fastIDreverse = new HashMap<Integer, Long>();
-        uniqueId = new AtomicInteger(0);
+        this.fastID.clear();
+        this.wildcardIndex = new HashMap<Long, HashMap<Long, IntegerList>>();
 
         // To Do: Erase it from the table
         dbBackend.getEM().getTransaction().begin();
@@ -86,85 +93,117 @@ public class FastObjectType {
             objectTypes.add(objectTypeHolderEntities.get(i).getObjectType());
         }
 
-        int max = 0;
-
         // Populate the variables on this class
         for (int i = 0; i < ids.size(); i++) {
-            this.fastID.put(objectTypes.get(i), ids.get(i));
-            this.fastIDreverse.put(ids.get(i), objectTypes.get(i));
-
-            if (ids.get(i) > max) { // Get the maximum value
-                max = ids.get(i);
-            }
+            this.fastID.load(objectTypes.get(i), ids.get(i));
         }
 
-        uniqueId = new AtomicInteger(max);
+        this.wildcardIndex = new HashMap<Long, HashMap<Long, IntegerList>>();
     }
 
-    public synchronized boolean exists(final Long objectType) {
-        return (this.fastID.get(objectType) != null);
+    public boolean exists(final Long objectType) {
+        return (this.fastID.getId(objectType) != null);
     }
 
-    public synchronized boolean exists(final Integer id) {
-        return (this.fastIDreverse.get(id) != null);
+    public boolean exists(final Integer id) {
+        return (this.fastID.getValue(id) != null);
     }
 
-    private Integer addNew(final Long objectType) {
-        final int id = uniqueId.incrementAndGet();
-        dbBackend.createEntityManager();
-
-        // Create Entity
-        ObjectTypeHolderEntity objectTypeEntity = new ObjectTypeHolderEntity(id, objectType);
-
-        // Add it to the table
-        dbBackend.getEM().getTransaction().begin();
-        dbBackend.getEM().persist(objectTypeEntity);
-        dbBackend.getEM().getTransaction().commit();
-        dbBackend.closeEntityManager();
-
-        this.fastID.put(objectType, id);
-        this.fastIDreverse.put(id, objectType);
-
-        return id;
+    public Integer getObjectTypeId(final ObjectType objectType) {
+        return this.fastID.getOrCreateId(HelperCOM.generateSubKey(objectType));
     }
 
-    public synchronized Integer getObjectTypeId(final ObjectType objectType) {
-        final Long longObjType = HelperCOM.generateSubKey(objectType);
-        final Integer id = this.fastID.get(longObjType);
-        return (id == null) ? this.addNew(longObjType) : id;
+    /**
+     * Returns the id of an object type without creating a new one.
+     *
+     * @param objectType The object type.
+     * @return The id, or null if the object type is not known.
+     */
+    public Integer findObjectTypeId(final ObjectType objectType) {
+        return this.fastID.getId(HelperCOM.generateSubKey(objectType));
     }
 
-    public synchronized IntegerList getObjectTypeIds(final ObjectType objectType) {
+    public IntegerList getObjectTypeIds(final ObjectType objectType) {
         final IntegerList ids = new IntegerList();
 
         if (ArchiveManager.objectTypeContainsWildcard(objectType)) {
             final long bitMask = objectType2Mask(objectType);
             final long objTypeId = HelperCOM.generateSubKey(objectType);
+            HashMap<Long, IntegerList> index = this.wildcardIndex.get(bitMask);
+
+            if (index == null) {
+                index = this.buildWildcardIndex(bitMask);
+            }
 
-            long tmpObjectTypeId;
-            long objTypeANDed;
-            for (Map.Entry<Long, Integer> entry : this.fastID.entrySet()) {
-                try {
-                    tmpObjectTypeId = HelperCOM.generateSubKey(this.getObjectType(entry.getValue()));
-                    objTypeANDed = (tmpObjectTypeId & bitMask);
-                    if (objTypeANDed == objTypeId) { // Comparison
-                        ids.add(entry.getValue());
-                    }
-                } catch (Exception ex) {
-                    Logger.getLogger(FastObjectType.class.getName()).log(Level.SEVERE, null, ex);
-                }
+            final IntegerList matches = index.get(objTypeId);
+
+            if (matches != null) {
+                ids.addAll(matches);
             }
         } else {
-            final Long longObjType = HelperCOM.generateSubKey(objectType);
-            final Integer id = this.fastID.get(longObjType);
-            ids.add((id == null) ? this.addNew(longObjType) : id);
+            ids.add(this.getObjectTypeId(objectType));
         }
         
         return ids;
     }
 
-    public synchronized ObjectType getObjectType(final Integer id) throws Exception {
-        final Long objectType = this.fastIDreverse.get(id);
+    private synchronized HashMap<Long, IntegerList> buildWildcardIndex(final long bitMask) {
+        HashMap<Long, IntegerList> index = this.wildcardIndex.get(bitMask);
+
+        if (index != null) { // Built by another thread in the meantime
+            return index;
+        }
+
+        index = new HashMap<Long, IntegerList>();
+
+        for (Map.Entry<Long, Integer> entry : this.fastID.entrySet()) {
+            addToIndex(index, entry.getKey() & bitMask, entry.getValue());
+        }
+
+        final HashMap<Long, HashMap<Long, IntegerList>> newIndex
+                = new HashMap<Long, HashMap<Long, IntegerList>>(this.wildcardIndex);
+        newIndex.put(bitMask, index);
+        this.wildcardIndex = newIndex;
+
+        return index;
+    }
+
+    private synchronized void addToWildcardIndex(final Long objectType, final Integer id) {
+        final HashMap<Long, HashMap<Long, IntegerList>> newIndex
+                = new HashMap<Long, HashMap<Long, IntegerList>>();
+
+        for (Map.Entry<Long, HashMap<Long, IntegerList>> entry : this.wildcardIndex.entrySet()) {
+            final HashMap<Long, IntegerList> index = new HashMap<Long, IntegerList>();
+
+            for (Map.Entry<Long, IntegerList> matches : entry.getValue().entrySet()) {
+                final IntegerList copy = new IntegerList(matches.getValue().size() + 1);
+                copy.addAll(matches.getValue());
+                index.put(matches.getKey(), copy);
+            }
+
+            addToIndex(index, objectType & entry.getKey(), id);
+            newIndex.put(entry.getKey(), index);
+        }
+
+        this.wildcardIndex = newIndex;
+    }
+
+    private static void addToIndex(final HashMap<Long, IntegerList> index, final Long key,
+            final Integer id) {
+        IntegerList ids = index.get(key);
+
+        if (ids == null) {
+            ids = new IntegerList();
+            index.put(key, ids);
+        }
+
+        if (!ids.contains(id)) {
+            ids.add(id);
+        }
+    }
+
+    public ObjectType getObjectType(final Integer id) throws Exception {
+        final Long objectType = this.fastID.getValue(id);
 
         if (objectType == null) {
             throw new Exception();
@@ -23,37 +23,30 @@ package esa.mo.com.impl.archive.fast;
 import esa.mo.com.impl.archive.db.DatabaseBackend;
 import esa.mo.com.impl.archive.entities.ProviderURIHolderEntity;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
 import javax.persistence.Query;
-import org.ccsds.moims.mo.mal.structures.IntegerList;
-import org.ccsds.moims.mo.mal.structures.StringList;
 import org.ccsds.moims.mo.mal.structures.URI;
 
 /**
  * Holds the set of providerURIs that the database contains in its dedicated table
- * and avoids constant checking on it which makes things go much faster.
+ * and avoids constant checking on it which makes things go much faster. The
+ * lookups do not lock, only the creation of a new providerURI id does.
  */
 public class FastProviderURI {
 
     private final static String QUERY_DELETE_PROVIDERURI = "DELETE FROM ProviderURIHolderEntity";
     private final static String QUERY_SELECT_PROVIDERURI = "SELECT PU FROM ProviderURIHolderEntity PU";
     private final DatabaseBackend dbBackend;
-    private AtomicInteger uniqueId = new AtomicInteger(0);
-    private HashMap<String, Integer> fastID;
-    private HashMap<Integer, String> fastIDreverse;
+    private final FastIdMap<String> fastID;
 
     public FastProviderURI(final DatabaseBackend dbBackend) {
-        this.fastID = new HashMap<String, Integer>();
-        this.fastIDreverse = new HashMap<Integer, String>();
         this.dbBackend = dbBackend;
+        this.fastID = new FastIdMap<String>(dbBackend,
+                (id, providerURI) -> new ProviderURIHolderEntity(id, providerURI));
     }
 
     public synchronized void resetFastProviderURI() {
-        this.fastID = new HashMap<String, Integer>();
-        this.fastIDreverse = new HashMap<Integer, String>();
-        uniqueId = new AtomicInteger(0);
+        this.fastID.clear();
         
         // To Do: Erase it from the table
         dbBackend.getEM().getTransaction().begin();
@@ -72,64 +65,27 @@ public class FastProviderURI {
 
         dbBackend.closeEntityManager();
 
-        final IntegerList ids = new IntegerList();
-        final StringList providerURIs = new StringList();
-
-        // From the list of Entities to separate lists of ids and providerURIs
-        for (int i = 0; i < providerURIHolderEntities.size(); i++) {
-            ids.add(providerURIHolderEntities.get(i).getId());
-            providerURIs.add(providerURIHolderEntities.get(i).getProviderURIString());
-        }
-
-        int max = 0;
-
         // Populate the variables on this class
-        for (int i = 0; i < ids.size(); i++) {
-            this.fastID.put(providerURIs.get(i), ids.get(i));
-            this.fastIDreverse.put(ids.get(i), providerURIs.get(i));
-
-            if (ids.get(i) > max) { // Get the maximum value
-                max = ids.get(i);
-            }
+        for (int i = 0; i < providerURIHolderEntities.size(); i++) {
+            this.fastID.load(providerURIHolderEntities.get(i).getProviderURIString(),
+                    providerURIHolderEntities.get(i).getId());
         }
-
-        uniqueId = new AtomicInteger(max);
-    }
-
-    public synchronized boolean exists(final String providerURI) {
-        return (this.fastID.get(providerURI) != null);
     }
 
-    public synchronized boolean exists(final Integer providerURIId) {
-        return (this.fastIDreverse.get(providerURIId) != null);
+    public boolean exists(final String providerURI) {
+        return (this.fastID.getId(providerURI) != null);
     }
 
-    private Integer addNewProviderURI(final String providerURI) {
-        final int providerURIId = uniqueId.incrementAndGet();
-        dbBackend.createEntityManager();
-
-        // Create Entity
-        ProviderURIHolderEntity providerURIEntity = new ProviderURIHolderEntity(providerURIId, providerURI);
-
-        // Add it to the table
-        dbBackend.getEM().getTransaction().begin();
-        dbBackend.getEM().persist(providerURIEntity);
-        dbBackend.getEM().getTransaction().commit();
-        dbBackend.closeEntityManager();
-
-        this.fastID.put(providerURI, providerURIId);
-        this.fastIDreverse.put(providerURIId, providerURI);
-
-        return providerURIId;
+    public boolean exists(final Integer providerURIId) {
+        return (this.fastID.getValue(providerURIId) != null);
     }
 
-    public synchronized Integer getProviderURIId(final URI providerURI) {
-        final Integer id = this.fastID.get(providerURI.getValue());
-        return (id == null) ? this.addNewProviderURI(providerURI.getValue()) : id;
+    public Integer getProviderURIId(final URI providerURI) {
+        return this.fastID.getOrCreateId(providerURI.getValue());
     }
     
-    public synchronized URI getProviderURI(final Integer id) throws Exception {
-        final URI providerURI = new URI(this.fastIDreverse.get(id));
+    public URI getProviderURI(final Integer id) throws Exception {
+        final URI providerURI = new URI(this.fastID.getValue(id));
 
         if (providerURI == null) {
             throw new Exception();
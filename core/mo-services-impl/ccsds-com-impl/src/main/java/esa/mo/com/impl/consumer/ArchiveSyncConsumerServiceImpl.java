@@ -20,13 +20,18 @@
  */
 package esa.mo.com.impl.consumer;
 
+import esa.mo.com.impl.sync.ChunksInputStream;
 import esa.mo.com.impl.sync.Dictionary;
-import esa.mo.com.impl.sync.EncodeDecode;
+import esa.mo.com.impl.sync.SyncCompression;
+import esa.mo.com.impl.sync.SyncDecoder;
 import esa.mo.com.impl.util.COMObjectStructure;
 import esa.mo.helpertools.misc.ConsumerServiceImpl;
 import esa.mo.helpertools.connections.SingleConnectionDetails;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.ccsds.moims.mo.com.COMHelper;
@@ -50,6 +55,8 @@ import org.ccsds.moims.mo.mal.structures.UIntegerList;
  */
 public class ArchiveSyncConsumerServiceImpl extends ConsumerServiceImpl {
 
+    private static final int MAX_RETRIEVE_AGAIN_ATTEMPTS = 3;
+
     private ArchiveSyncStub archiveSyncService = null;
     private Dictionary dictionary = new Dictionary();
 
@@ -67,6 +74,18 @@ public class ArchiveSyncConsumerServiceImpl extends ConsumerServiceImpl {
         return archiveSyncService;
     }
 
+    /**
+     * Creates the consumer on top of an existing stub, without opening a
+     * connection.
+     *
+     * @param connectionDetails The details of the connection of the stub.
+     * @param stub The stub of the ArchiveSync service.
+     */
+    ArchiveSyncConsumerServiceImpl(SingleConnectionDetails connectionDetails, ArchiveSyncStub stub) {
+        this.connectionDetails = connectionDetails;
+        this.archiveSyncService = stub;
+    }
+
     public ArchiveSyncConsumerServiceImpl(SingleConnectionDetails connectionDetails) throws MALException, MalformedURLException {
         this(connectionDetails, null, null);
     }
@@ -108,17 +127,60 @@ public class ArchiveSyncConsumerServiceImpl extends ConsumerServiceImpl {
     }
 
     public ArrayList<COMObjectStructure> retrieveCOMObjects(FineTime from, FineTime until, ObjectTypeList objTypes) {
+        return retrieveCOMObjects(from, until, objTypes, SyncCompression.NONE);
+    }
+
+    public ArrayList<COMObjectStructure> retrieveCOMObjects(FineTime from, FineTime until,
+            ObjectTypeList objTypes, SyncCompression compression) {
+        ArrayList<COMObjectStructure> objs = new ArrayList<>();
+        int decoded = retrieveCOMObjects(from, until, objTypes, compression, objs::add);
+        return (decoded < 0) ? null : objs;
+    }
+
+    /**
+     * Retrieves the COM objects of a time range and streams them to the
+     * listener as soon as they are decoded.
+     *
+     * @param from The start of the time range.
+     * @param until The end of the time range.
+     * @param objTypes The object types to be retrieved.
+     * @param compression The compression to be applied by the provider.
+     * @param listener Receives the objects in the order they were sent.
+     * @return The number of objects or -1 if the retrieval failed.
+     */
+    public int retrieveCOMObjects(FineTime from, FineTime until, ObjectTypeList objTypes,
+            SyncCompression compression, Consumer<COMObjectStructure> listener) {
+        return retrieveCOMObjects(from, until, objTypes, compression, listener, null);
+    }
+
+    /**
+     * Retrieves the COM objects of a time range and streams them to the
+     * listener as soon as they are decoded.
+     *
+     * @param from The start of the time range.
+     * @param until The end of the time range.
+     * @param objTypes The object types to be retrieved.
+     * @param compression The compression to be applied by the provider.
+     * @param listener Receives the objects in the order they were sent.
+     * @param failureListener Receives the objects that could not be decoded.
+     * Can be null.
+     * @return The number of decoded objects or -1 if the retrieval failed.
+     */
+    public int retrieveCOMObjects(FineTime from, FineTime until, ObjectTypeList objTypes,
+            SyncCompression compression, Consumer<COMObjectStructure> listener,
+            SyncDecoder.FailureListener failureListener) {
         ArchiveSyncGenAdapter adapter = new ArchiveSyncGenAdapter();
         Long iTicket;
 
         try { // Do a retrieve with the correct times
-            iTicket = archiveSyncService.retrieveRange(from, until, objTypes, new Identifier(""), adapter);
+            iTicket = archiveSyncService.retrieveRange(from, until, objTypes,
+                    new Identifier(compression.getName()), adapter);
         } catch (MALInteractionException ex) {
             Logger.getLogger(ArchiveSyncConsumerServiceImpl.class.getName()).log(Level.SEVERE, null, ex);
-            return null;
+            return -1;
         } catch (MALException ex) {
             Logger.getLogger(ArchiveSyncConsumerServiceImpl.class.getName()).log(Level.SEVERE, null, ex);
-            return null;
+            return -1;
         }
 
         // Wait until it is finished...
@@ -126,42 +188,59 @@ public class ArchiveSyncConsumerServiceImpl extends ConsumerServiceImpl {
         long timeout = 1000;
         while (unfinished) {
             try {
-                if (adapter.waitUntilResponseReceived(timeout)) {
-                    unfinished = false;
-                    Logger.getLogger(ArchiveSyncConsumerServiceImpl.class.getName()).log(
-                            Level.INFO, "Retrieved the range of objects");
-                }
+                unfinished = !adapter.waitUntilResponseReceived(timeout);
             } catch (InterruptedException ex) {
-                // Still not complete...
+                Thread.currentThread().interrupt();
+                Logger.getLogger(ArchiveSyncConsumerServiceImpl.class.getName()).log(
+                        Level.SEVERE, "Interrupted while retrieving the range of objects.", ex);
+                this.free(iTicket);
+                return -1;
+            }
+
+            // If the last piece was not received in less than x seconds,
+            // then we need to do something about it
+            // Ask to retransmit
+            if (unfinished && adapter.noUpdatesReceivedForThisDuration() > timeout * 4) {
                 Logger.getLogger(ArchiveSyncConsumerServiceImpl.class.getName()).log(
-                        Level.INFO, "Still unfinished...");
-
-                // If the last piece was not received in less than x seconds,
-                // then we need to do something about it
-                // Ask to retransmit
-                if (adapter.noUpdatesReceivedForThisDuration() > timeout * 4) {
-                    Logger.getLogger(ArchiveSyncConsumerServiceImpl.class.getName()).log(
-                            Level.INFO, "Asking to retransmit the missing part.", ex);
-                    UIntegerList missingIndexes = new UIntegerList();
-                    missingIndexes.add(adapter.getLastKnownIndex());
-                    missingIndexes.add(new UInteger(0));
-
-                    try {
-                        archiveSyncService.retrieveRangeAgain(iTicket, missingIndexes, adapter);
-                    } catch (MALInteractionException ex1) {
-                        Logger.getLogger(ArchiveSyncConsumerServiceImpl.class.getName()).log(Level.SEVERE, null, ex1);
-                    } catch (MALException ex1) {
-                        Logger.getLogger(ArchiveSyncConsumerServiceImpl.class.getName()).log(Level.SEVERE, null, ex1);
-                    }
+                        Level.INFO, "Asking to retransmit the missing part.");
+                UIntegerList missingIndexes = new UIntegerList();
+                missingIndexes.add(adapter.getLastKnownIndex());
+                missingIndexes.add(new UInteger(0));
+
+                try {
+                    archiveSyncService.retrieveRangeAgain(iTicket, missingIndexes, adapter);
+                } catch (MALInteractionException ex1) {
+                    Logger.getLogger(ArchiveSyncConsumerServiceImpl.class.getName()).log(Level.SEVERE, null, ex1);
+                } catch (MALException ex1) {
+                    Logger.getLogger(ArchiveSyncConsumerServiceImpl.class.getName()).log(Level.SEVERE, null, ex1);
                 }
             }
         }
 
+        if (adapter.getError() != null) {
+            Logger.getLogger(ArchiveSyncConsumerServiceImpl.class.getName()).log(Level.SEVERE,
+                    "The provider could not retrieve the range of objects: {0}", adapter.getError());
+            this.free(iTicket);
+            return -1;
+        }
+
+        Logger.getLogger(ArchiveSyncConsumerServiceImpl.class.getName()).log(
+                Level.INFO, "Retrieved the range of objects");
+
         // Reretrieve the missing pieces
         boolean complete = false;
+        int attempts = 0;
 
         while (!complete) {
             if (!adapter.receivedAllChunks()) {
+                if (attempts++ == MAX_RETRIEVE_AGAIN_ATTEMPTS) {
+                    Logger.getLogger(ArchiveSyncConsumerServiceImpl.class.getName()).log(Level.SEVERE,
+                            "The missing chunks could not be retrieved after {0} attempts.", attempts - 1);
+                    this.free(iTicket);
+                    return -1;
+                }
+
+
                 // Then we will have to retrieve the missing ones...
                 UIntegerList missingIndexes = adapter.getMissingIndexes();
                 Logger.getLogger(ArchiveSyncConsumerServiceImpl.class.getName()).log(
@@ -181,21 +260,32 @@ public class ArchiveSyncConsumerServiceImpl extends ConsumerServiceImpl {
 
         // Convert the byte arrays into COM Objects
         ArrayList<byte[]> chunks = adapter.getReceivedChunks();
+        SyncDecoder decoder = new SyncDecoder(dictionary, archiveSyncService,
+                this.connectionDetails.getDomain());
+        int decoded = 0;
+
+        try (InputStream stream = compression.decompress(new ChunksInputStream(chunks))) {
+            decoded = decoder.decode(stream, listener, failureListener);
+        } catch (IOException ex) {
+            // Only closing the stream can fail, the objects were already decoded
+            Logger.getLogger(ArchiveSyncConsumerServiceImpl.class.getName()).log(Level.WARNING, null, ex);
+        }
+
+        // Free the data from the provider!
+        this.free(iTicket);
 
-        ArrayList<COMObjectStructure> objs = EncodeDecode.decodeFromByteArrayList(chunks,
-                dictionary, archiveSyncService, this.connectionDetails.getDomain());
+        // Profit!
+        return decoded;
+    }
 
+    private void free(Long iTicket) {
         try {
-            // Free the data from the provider!
             archiveSyncService.free(iTicket);
         } catch (MALInteractionException ex) {
             Logger.getLogger(ArchiveSyncConsumerServiceImpl.class.getName()).log(Level.SEVERE, null, ex);
         } catch (MALException ex) {
             Logger.getLogger(ArchiveSyncConsumerServiceImpl.class.getName()).log(Level.SEVERE, null, ex);
         }
-
-        // Profit!
-        return objs;
     }
 
 }
@@ -28,6 +28,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.ccsds.moims.mo.mal.MALException;
+import org.ccsds.moims.mo.mal.MALStandardError;
 import org.ccsds.moims.mo.mal.structures.Blob;
 import org.ccsds.moims.mo.mal.structures.UInteger;
 import org.ccsds.moims.mo.mal.structures.UIntegerList;
@@ -44,15 +45,18 @@ public class ArchiveSyncGenAdapter extends org.ccsds.moims.mo.com.archivesync.co
     private UInteger numberOfChunks = null;
     private long lastTimeReceived = 0;
     private long lastknowIndex = 0;
+    private volatile MALStandardError error = null;
 
     public ArchiveSyncGenAdapter() {
         this.receivedChunks = new HashMap<>();
         this.completed = new Semaphore(0);
+        this.lastTimeReceived = System.currentTimeMillis();
     }
 
     public ArchiveSyncGenAdapter(int estimatedNumberOfChunks) {
         this.receivedChunks = new HashMap<>(estimatedNumberOfChunks);
         this.completed = new Semaphore(0);
+        this.lastTimeReceived = System.currentTimeMillis();
     }
 
     @Override
@@ -97,8 +101,30 @@ public class ArchiveSyncGenAdapter extends org.ccsds.moims.mo.com.archivesync.co
     @Override
     public void retrieveRangeAckErrorReceived(org.ccsds.moims.mo.mal.transport.MALMessageHeader msgHeader,
             org.ccsds.moims.mo.mal.MALStandardError error, java.util.Map qosProperties) {
+        this.failed(error);
+    }
+
+    @Override
+    public void retrieveRangeUpdateErrorReceived(org.ccsds.moims.mo.mal.transport.MALMessageHeader msgHeader,
+            org.ccsds.moims.mo.mal.MALStandardError error, java.util.Map qosProperties) {
+        this.failed(error);
+    }
+
+    @Override
+    public void retrieveRangeResponseErrorReceived(org.ccsds.moims.mo.mal.transport.MALMessageHeader msgHeader,
+            org.ccsds.moims.mo.mal.MALStandardError error, java.util.Map qosProperties) {
+        this.failed(error);
+    }
+
+    /**
+     * The provider could not complete the retrieval, the waiting consumer is
+     * released and finds the error.
+     */
+    private void failed(final MALStandardError error) {
         Logger.getLogger(ArchiveSyncGenAdapter.class.getName()).log(Level.SEVERE,
-                "retrieveRangeAckErrorReceived: No idea on how this should be handled...", error);
+                "The retrieval of the range failed: {0}", error);
+        this.error = error;
+        completed.release();
     }
 
     @Override
@@ -153,6 +179,14 @@ public class ArchiveSyncGenAdapter extends org.ccsds.moims.mo.com.archivesync.co
         return (numberOfChunks != null);
     }
 
+    /**
+     * @return The error received from the provider, or null if the retrieval
+     * did not fail.
+     */
+    public MALStandardError getError() {
+        return error;
+    }
+
     public boolean receivedAllChunks() {
         long nOfChunks = numberOfChunks.getValue();
 
@@ -183,7 +217,18 @@ public class ArchiveSyncGenAdapter extends org.ccsds.moims.mo.com.archivesync.co
     }
 
     public ArrayList<byte[]> getReceivedChunks() {
-        return new ArrayList<byte[]>(receivedChunks.values());
+        int nOfChunks = (numberOfChunks == null) ? receivedChunks.size() : (int) numberOfChunks.getValue();
+        ArrayList<byte[]> chunks = new ArrayList<byte[]>(nOfChunks);
+
+        for (int i = 0; i < nOfChunks; i++) {
+            byte[] chunk = receivedChunks.get(i);
+
+            if (chunk != null) {
+                chunks.add(chunk);
+            }
+        }
+
+        return chunks;
     }
 
 }
@@ -0,0 +1,45 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2021      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : ESA NanoSat MO Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.com.impl.provider;
+
+import org.ccsds.moims.mo.com.structures.ObjectType;
+import org.ccsds.moims.mo.mal.structures.IdentifierList;
+
+/**
+ * Receives a notification whenever the content of the Archive changes. It
+ * allows caches of archived objects to be invalidated.
+ */
+public interface ArchiveChangeListener {
+
+    /**
+     * Called when objects are stored, updated or removed. It is called once
+     * when the change is submitted and once more after it is committed. It is
+     * also called, only once, when expired objects are dropped with their time
+     * partition.
+     *
+     * @param objType The object type of the changed objects, or null if the
+     * whole Archive was reset.
+     * @param domain The domain of the changed objects, or null if the whole
+     * Archive was reset.
+     */
+    void onObjectsChanged(ObjectType objType, IdentifierList domain);
+
+}
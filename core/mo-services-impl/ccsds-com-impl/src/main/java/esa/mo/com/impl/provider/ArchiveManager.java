@@ -20,9 +20,13 @@
  */
 package esa.mo.com.impl.provider;
 
+import esa.mo.com.impl.archive.db.ArchiveFieldIndex;
+import esa.mo.com.impl.archive.db.ArchivePartitions;
+import esa.mo.com.impl.archive.db.ArchiveQueryCursor;
 import esa.mo.com.impl.archive.db.TransactionsProcessor;
 import esa.mo.com.impl.archive.fast.FastObjId;
 import esa.mo.com.impl.archive.fast.FastDomain;
+import esa.mo.com.impl.util.CompiledExpression;
 import esa.mo.com.impl.util.HelperCOM;
 import esa.mo.helpertools.connections.ConfigurationProviderSingleton;
 import esa.mo.helpertools.helpers.HelperAttributes;
@@ -31,12 +35,15 @@ import esa.mo.com.impl.archive.fast.FastNetwork;
 import esa.mo.com.impl.archive.fast.FastProviderURI;
 import esa.mo.com.impl.archive.db.SourceLinkContainer;
 import esa.mo.com.impl.archive.entities.COMObjectEntity;
+import esa.mo.com.impl.archive.entities.COMObjectFieldEntity;
 import esa.mo.com.impl.archive.fast.FastObjectType;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.ccsds.moims.mo.com.COMHelper;
 import org.ccsds.moims.mo.com.archive.ArchiveHelper;
 import org.ccsds.moims.mo.com.archive.structures.ArchiveDetails;
 import org.ccsds.moims.mo.com.archive.structures.ArchiveDetailsList;
@@ -45,6 +52,7 @@ import org.ccsds.moims.mo.com.archive.structures.CompositeFilter;
 import org.ccsds.moims.mo.com.archive.structures.CompositeFilterList;
 import org.ccsds.moims.mo.com.archive.structures.CompositeFilterSet;
 import org.ccsds.moims.mo.com.archive.structures.ExpressionOperator;
+import org.ccsds.moims.mo.com.archive.structures.KeysetPaginationFilter;
 import org.ccsds.moims.mo.com.archive.structures.QueryFilter;
 import org.ccsds.moims.mo.com.structures.ObjectDetails;
 import org.ccsds.moims.mo.com.structures.ObjectId;
@@ -54,6 +62,7 @@ import org.ccsds.moims.mo.com.structures.ObjectType;
 import org.ccsds.moims.mo.mal.MALContextFactory;
 import org.ccsds.moims.mo.mal.MALException;
 import org.ccsds.moims.mo.mal.MALInteractionException;
+import org.ccsds.moims.mo.mal.MALStandardError;
 import org.ccsds.moims.mo.mal.provider.MALInteraction;
 import org.ccsds.moims.mo.mal.structures.Attribute;
 import org.ccsds.moims.mo.mal.structures.Blob;
@@ -83,6 +92,10 @@ public class ArchiveManager {
     private final FastProviderURI fastProviderURI;
     private final FastObjId fastObjId;
     private final FastObjectType fastObjectType;
+    private final ArchiveFieldIndex fieldIndex;
+
+    private final CopyOnWriteArrayList<ArchiveChangeListener> changeListeners
+            = new CopyOnWriteArrayList<ArchiveChangeListener>();
 
     private EventProviderServiceImpl eventService;
 
@@ -106,8 +119,23 @@ public class ArchiveManager {
         this.fastDomain = new FastDomain(dbBackend);
         this.fastNetwork = new FastNetwork(dbBackend);
         this.fastProviderURI = new FastProviderURI(dbBackend);
-        this.fastObjId = new FastObjId(dbBackend);
+        this.fastObjId = new FastObjId(dbBackend, dbProcessor);
         this.fastObjectType = new FastObjectType(dbBackend);
+        this.fieldIndex = new ArchiveFieldIndex();
+
+        // The expired objects are removed by the partitions without a remove request
+        this.dbProcessor.setPartitionsRemovalListener(new ArchivePartitions.RemovalListener() {
+            @Override
+            public void onObjectsRemoved(final int objTypeId, final int domainId) {
+                try {
+                    notifyChangeListeners(fastObjectType.getObjectType(objTypeId),
+                            fastDomain.getDomain(domainId));
+                } catch (Exception ex) {
+                    // Unknown ids, so everything is invalidated
+                    notifyChangeListeners(null, null);
+                }
+            }
+        });
     }
 
     public synchronized void init() {
@@ -127,11 +155,33 @@ public class ArchiveManager {
                     fastProviderURI.init();
                     Logger.getLogger(ArchiveManager.class.getName()).log(Level.FINE,
                             "The Fast classes are initialized!");
+                    initFieldIndex();
                 }
             }
         });
     }
 
+    /**
+     * Completes the field index with the objects that were stored before
+     * their fields were configured. The object types without stored objects
+     * are complete already. The field index is only used with SQLite.
+     */
+    private void initFieldIndex() {
+        if (this.fieldIndex.isEmpty() || !this.dbBackend.isSQLite()) {
+            return;
+        }
+
+        for (ObjectType objType : this.fieldIndex.getObjectTypes()) {
+            final Integer objTypeId = this.fastObjectType.findObjectTypeId(objType);
+
+            if (objTypeId == null) {
+                this.fieldIndex.markBuilt(objType);
+            } else {
+                this.dbProcessor.backfillFieldIndex(this.fieldIndex, objType, objTypeId);
+            }
+        }
+    }
+
     /**
      * Sets the Event service provider.
      *
@@ -141,6 +191,36 @@ public class ArchiveManager {
         this.eventService = eventService;
     }
 
+    /**
+     * Adds a listener that is notified whenever objects are stored, updated or
+     * removed from the Archive.
+     *
+     * @param listener The listener.
+     */
+    public void addChangeListener(final ArchiveChangeListener listener) {
+        this.changeListeners.addIfAbsent(listener);
+    }
+
+    /**
+     * Removes a previously added change listener.
+     *
+     * @param listener The listener.
+     */
+    public void removeChangeListener(final ArchiveChangeListener listener) {
+        this.changeListeners.remove(listener);
+    }
+
+    private void notifyChangeListeners(final ObjectType objType, final IdentifierList domain) {
+        for (ArchiveChangeListener listener : this.changeListeners) {
+            try {
+                listener.onObjectsChanged(objType, domain);
+            } catch (RuntimeException ex) {
+                Logger.getLogger(ArchiveManager.class.getName()).log(Level.WARNING,
+                        "The change listener failed!", ex);
+            }
+        }
+    }
+
     void close() {
         // Forces the code to wait until all the stores are flushed
         this.dbProcessor.stopInteractions(new Callable() {
@@ -152,9 +232,22 @@ public class ArchiveManager {
             }
         });
 
+        Logger.getLogger(ArchiveManager.class.getName()).log(Level.FINE,
+                "Group-commit statistics: {0}", this.dbProcessor.getGroupCommitStatistics());
+
         this.eventService = null; // Remove the pointer to avoid publishing more stuff
     }
 
+    /**
+     * Moves the objects of the time buckets that are over into their
+     * partitions and drops the expired partitions now, instead of waiting for
+     * the periodic roll. The change listeners are notified of the removed
+     * objects. It does nothing if the archive is not partitioned.
+     */
+    public void rollPartitions() {
+        this.dbProcessor.rollPartitionsNow();
+    }
+
     /**
      * Needs to be synchronized with the insertEntries method because the fast
      * objects are being called simultaneously. The Testbeds don't pass without
@@ -170,6 +263,7 @@ public class ArchiveManager {
                 dbBackend.createEntityManager();
                 dbBackend.getEM().getTransaction().begin();
                 dbBackend.getEM().createQuery("DELETE FROM COMObjectEntity").executeUpdate();
+                dbBackend.getEM().createQuery("DELETE FROM COMObjectFieldEntity").executeUpdate();
                 dbBackend.getEM().getTransaction().commit();
 
                 fastObjId.resetFastIDs();
@@ -180,9 +274,12 @@ public class ArchiveManager {
                 dbBackend.getEM().close();
                 dbBackend.restartEMF();
 
+                notifyChangeListeners(null, null);
                 return null;
             }
         });
+
+        this.notifyChangeListeners(null, null);
     }
 
     public synchronized ArchivePersistenceObject getPersistenceObject(final ObjectType objType,
@@ -286,6 +383,8 @@ public class ArchiveManager {
         final ArrayList<COMObjectEntity> perObjsEntities = new ArrayList<COMObjectEntity>(lArchiveDetails.size());
         final int domainId = this.fastDomain.getDomainId(domain);
         final int objTypeId = this.fastObjectType.getObjectTypeId(objType);
+        final ArrayList<COMObjectFieldEntity> fields = this.fieldIndex.isEmpty() ? null
+                : new ArrayList<COMObjectFieldEntity>();
 
         // Generate the object Ids if needed and the persistence objects to be stored
         for (int i = 0; i < lArchiveDetails.size(); i++) {
@@ -309,12 +408,17 @@ public class ArchiveManager {
                     objBody)
             );
             objIds.add(objId);
+
+            if (fields != null) {
+                fields.addAll(this.fieldIndex.extractFields(objType, objTypeId, domainId, objId, objBody));
+            }
         }
 
         final Runnable publishEvents = this.generatePublishEventsThread(ArchiveHelper.OBJECTSTORED_OBJECT_TYPE,
                 objType, domain, objIds, interaction);
 
-        this.dbProcessor.insert(perObjsEntities, publishEvents);
+        this.dbProcessor.insert(perObjsEntities, fields, publishEvents);
+        this.notifyChangeListeners(objType, domain);
 
         return objIds;
     }
@@ -324,6 +428,8 @@ public class ArchiveManager {
         final int domainId = this.fastDomain.getDomainId(domain);
         final Integer objTypeId = this.fastObjectType.getObjectTypeId(objType);
         final ArrayList<COMObjectEntity> newObjs = new ArrayList<COMObjectEntity>();
+        final ArrayList<COMObjectFieldEntity> fields = this.fieldIndex.isEmpty() ? null
+                : new ArrayList<COMObjectFieldEntity>();
         final LongList objIds = new LongList();
 
         // Generate the object Ids if needed and the persistence objects to be stored
@@ -349,12 +455,18 @@ public class ArchiveManager {
 
             newObjs.add(newObj);
             objIds.add(lArchiveDetails.get(i).getInstId());
+
+            if (fields != null) {
+                fields.addAll(this.fieldIndex.extractFields(objType, objTypeId, domainId,
+                        lArchiveDetails.get(i).getInstId(), objBody));
+            }
         }
 
         Runnable publishEvents = this.generatePublishEventsThread(ArchiveHelper.OBJECTUPDATED_OBJECT_TYPE,
                 objType, domain, objIds, interaction);
 
-        this.dbProcessor.update(newObjs, publishEvents);
+        this.dbProcessor.update(newObjs, fields, publishEvents);
+        this.notifyChangeListeners(objType, domain);
     }
 
     public LongList removeEntries(final ObjectType objType, final IdentifierList domain,
@@ -366,12 +478,34 @@ public class ArchiveManager {
                 objType, domain, objIds, interaction);
         this.dbProcessor.remove(objTypeId, domainId, objIds, publishEvents);
         this.fastObjId.delete(objTypeId, domainId);
+        this.notifyChangeListeners(objType, domain);
         return objIds;
     }
 
+    /**
+     * Queries the archive. The Composite Filters of a CompositeFilterSet that
+     * can be evaluated on the field index are evaluated by the database, and
+     * the remaining ones are evaluated in memory with the filterQuery method.
+     * The filters are split once, so each one is evaluated exactly once.
+     *
+     * @param objType The object type of the query.
+     * @param archiveQuery The archive query.
+     * @param filter The query filter.
+     * @return The matched COM objects.
+     * @throws MALInteractionException with an INVALID error if the
+     * continuation token of a KeysetPaginationFilter is not valid.
+     * @throws IllegalArgumentException If a Composite Filter is not valid.
+     * @throws SecurityException If a field of a Composite Filter could not be
+     * accessed.
+     */
     public ArrayList<ArchivePersistenceObject> query(final ObjectType objType,
-            final ArchiveQuery archiveQuery, final QueryFilter filter) {
-        final ArrayList<COMObjectEntity> perObjs = this.queryCOMObjectEntity(objType, archiveQuery, filter);
+            final ArchiveQuery archiveQuery, final QueryFilter filter) throws MALInteractionException {
+        final IntegerList objTypeIds = this.fastObjectType.getObjectTypeIds(objType);
+        final ArrayList<CompositeFilter> fieldFilters = (filter instanceof CompositeFilterSet)
+                ? this.getIndexedFilters(objTypeIds, (CompositeFilterSet) filter)
+                : null;
+        final ArrayList<COMObjectEntity> perObjs = this.queryCOMObjectEntity(objTypeIds,
+                archiveQuery, filter, fieldFilters);
 
         // Convert COMObjectEntity to ArchivePersistenceObject
         final ArrayList<ArchivePersistenceObject> outs = new ArrayList<ArchivePersistenceObject>(perObjs.size());
@@ -386,13 +520,27 @@ public class ArchiveManager {
             }
         }
 
+        if (filter instanceof CompositeFilterSet) {
+            return ArchiveManager.filterQuery(outs,
+                    ArchiveManager.getResidualFilterSet((CompositeFilterSet) filter, fieldFilters));
+        }
+
         return outs;
     }
 
     public ArrayList<COMObjectEntity> queryCOMObjectEntity(final ObjectType objType,
-            final ArchiveQuery archiveQuery, final QueryFilter filter) {
+            final ArchiveQuery archiveQuery, final QueryFilter filter) throws MALInteractionException {
         final IntegerList objTypeIds = this.fastObjectType.getObjectTypeIds(objType);
+        final ArrayList<CompositeFilter> fieldFilters = (filter instanceof CompositeFilterSet)
+                ? this.getIndexedFilters(objTypeIds, (CompositeFilterSet) filter)
+                : null;
 
+        return this.queryCOMObjectEntity(objTypeIds, archiveQuery, filter, fieldFilters);
+    }
+
+    private ArrayList<COMObjectEntity> queryCOMObjectEntity(final IntegerList objTypeIds,
+            final ArchiveQuery archiveQuery, final QueryFilter filter,
+            final ArrayList<CompositeFilter> fieldFilters) throws MALInteractionException {
         if(null != objTypeIds && !objTypeIds.isEmpty()) {
 
             final IntegerList domainIds = this.fastDomain.getDomainIds(archiveQuery.getDomain());
@@ -410,13 +558,138 @@ public class ArchiveManager {
                 }
             }
 
+            final ArchiveQueryCursor cursor = (filter instanceof KeysetPaginationFilter)
+                    ? this.generateQueryCursor(((KeysetPaginationFilter) filter).getContinuationToken())
+                    : null;
+
             return this.dbProcessor.query(objTypeIds, archiveQuery, domainIds,
-                    providerURIId, networkId, sourceLink, filter);
+                    providerURIId, networkId, sourceLink, filter, cursor, fieldFilters);
         } else {
             return new ArrayList<>();
         }
     }
 
+    /**
+     * Selects the Composite Filters that can be evaluated on the field index.
+     * A filter is only selected if its field is indexed for all the object
+     * types of the query and its index is complete. The conditions on the
+     * field index use the SQLite syntax, so other databases evaluate all the
+     * filters in memory.
+     *
+     * @param objTypeIds The object type ids of the query.
+     * @param filterSet The Composite Filter Set.
+     * @return The filters to be evaluated by the database.
+     */
+    private ArrayList<CompositeFilter> getIndexedFilters(final IntegerList objTypeIds,
+            final CompositeFilterSet filterSet) {
+        final ArrayList<CompositeFilter> out = new ArrayList<CompositeFilter>();
+
+        if (this.fieldIndex.isEmpty() || !this.dbBackend.isSQLite()
+                || objTypeIds == null || objTypeIds.isEmpty() || filterSet.getFilters() == null) {
+            return out;
+        }
+
+        for (CompositeFilter compositeFilter : filterSet.getFilters()) {
+            // The invalid filters are left to filterQuery, which rejects them
+            if (compositeFilter == null || !ArchiveFieldIndex.isSupported(compositeFilter)
+                    || !ArchiveManager.isCompositeFilterValid(compositeFilter, null)) {
+                continue;
+            }
+
+            boolean indexed = true;
+
+            for (Integer objTypeId : objTypeIds) {
+                try {
+                    final ObjectType objType = this.fastObjectType.getObjectType(objTypeId);
+
+                    if (!this.fieldIndex.isIndexed(objType, compositeFilter.getFieldName())) {
+                        indexed = false;
+                        break;
+                    }
+                } catch (Exception ex) {
+                    indexed = false;
+                    break;
+                }
+            }
+
+            if (indexed) {
+                out.add(compositeFilter);
+            }
+        }
+
+        return out;
+    }
+
+    /**
+     * Returns the Composite Filters of a query that still need to be evaluated
+     * in memory with the filterQuery method, because they are not evaluated on
+     * the field index.
+     *
+     * @param filterSet The Composite Filter Set of the query.
+     * @param indexedFilters The filters evaluated on the field index.
+     * @return The remaining Composite Filter Set.
+     */
+    private static CompositeFilterSet getResidualFilterSet(final CompositeFilterSet filterSet,
+            final ArrayList<CompositeFilter> indexedFilters) {
+        if (indexedFilters == null || indexedFilters.isEmpty()) {
+            return filterSet;
+        }
+
+        final CompositeFilterList residual = new CompositeFilterList();
+
+        for (CompositeFilter compositeFilter : filterSet.getFilters()) {
+            if (!indexedFilters.contains(compositeFilter)) {
+                residual.add(compositeFilter);
+            }
+        }
+
+        return new CompositeFilterSet(residual);
+    }
+
+    /**
+     * Converts the continuation token of a KeysetPaginationFilter into the
+     * position of the query in the database.
+     *
+     * @param token The continuation token.
+     * @return The cursor or null if the token is null, meaning the first page.
+     * @throws MALInteractionException with an INVALID error if the token
+     * could not be decoded.
+     */
+    private ArchiveQueryCursor generateQueryCursor(final Blob token) throws MALInteractionException {
+        if (token == null) {
+            return null;
+        }
+
+        try {
+            return ArchiveQueryCursor.fromToken(token);
+        } catch (IllegalArgumentException ex) {
+            Logger.getLogger(ArchiveManager.class.getName()).log(Level.FINE,
+                    "The continuation token could not be decoded!", ex);
+            throw new MALInteractionException(new MALStandardError(COMHelper.INVALID_ERROR_NUMBER, null));
+        }
+    }
+
+    /**
+     * Generates the continuation token that the provider returns with a page
+     * of a keyset paginated query. The next page starts right after the last
+     * object of the page.
+     *
+     * @param last The last COM object of the page.
+     * @return The continuation token, or null if the object is not in the
+     * archive.
+     */
+    public Blob generateContinuationToken(final ArchivePersistenceObject last) {
+        final Integer objTypeId = this.fastObjectType.findObjectTypeId(last.getObjectType());
+        final Integer domainId = this.fastDomain.findDomainId(last.getDomain());
+
+        if (objTypeId == null || domainId == null) {
+            return null;
+        }
+
+        return new ArchiveQueryCursor(last.getArchiveDetails().getTimestamp().getValue(),
+                objTypeId, domainId, last.getObjectId()).toToken();
+    }
+
     public static ArrayList<ArchivePersistenceObject> filterQuery(
             final ArrayList<ArchivePersistenceObject> perObjs,
             final CompositeFilterSet filterSet) throws MALInteractionException {
@@ -437,6 +710,9 @@ public class ArchiveManager {
                 continue;
             }
 
+            final CompiledExpression expression = HelperCOM.compileExpression(
+                    compositeFilter.getType(), compositeFilter.getFieldValue());
+
             // Cycle the objects
             for (ArchivePersistenceObject outPerObj : outPerObjs) {
                 obj = outPerObj.getObject();
@@ -457,7 +733,7 @@ public class ArchiveManager {
                 }
 
                 Element leftHandSide = (Element) HelperAttributes.javaType2Attribute(obj);
-                Boolean evaluation = HelperCOM.evaluateExpression(leftHandSide, compositeFilter.getType(), compositeFilter.getFieldValue());
+                Boolean evaluation = expression.evaluate(leftHandSide);
 
                 if (evaluation == null) {
                     continue;
@@ -613,6 +889,9 @@ public class ArchiveManager {
         return new Runnable() {
             @Override
             public void run() {
+                // Notify again once committed, so that no stale read is kept
+                notifyChangeListeners(objType, domain);
+
                 // Generate and Publish the Events - requirement: 3.4.2.1
                 generateAndPublishEvents(comObject,
                         ArchiveManager.generateSources(objType, domain, objIds),
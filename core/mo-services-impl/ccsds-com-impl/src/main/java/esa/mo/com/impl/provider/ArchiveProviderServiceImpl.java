@@ -38,7 +38,7 @@ import org.ccsds.moims.mo.com.archive.structures.ArchiveDetails;
 import org.ccsds.moims.mo.com.archive.structures.ArchiveDetailsList;
 import org.ccsds.moims.mo.com.archive.structures.ArchiveQuery;
 import org.ccsds.moims.mo.com.archive.structures.ArchiveQueryList;
-import org.ccsds.moims.mo.com.archive.structures.CompositeFilterSet;
+import org.ccsds.moims.mo.com.archive.structures.KeysetPaginationFilter;
 import org.ccsds.moims.mo.com.archive.structures.QueryFilter;
 import org.ccsds.moims.mo.com.archive.structures.QueryFilterList;
 import org.ccsds.moims.mo.com.structures.ObjectType;
@@ -49,6 +49,7 @@ import org.ccsds.moims.mo.mal.MALInteractionException;
 import org.ccsds.moims.mo.mal.MALStandardError;
 import org.ccsds.moims.mo.mal.provider.MALInteraction;
 import org.ccsds.moims.mo.mal.provider.MALProvider;
+import org.ccsds.moims.mo.mal.structures.Blob;
 import org.ccsds.moims.mo.mal.structures.ElementList;
 import org.ccsds.moims.mo.mal.structures.IdentifierList;
 import org.ccsds.moims.mo.mal.structures.LongList;
@@ -246,7 +247,7 @@ public class ArchiveProviderServiceImpl extends ArchiveInheritanceSkeleton {
 
         // Is the list empty?
         if (lArchiveQueryList.isEmpty()) {
-            interaction.sendResponse(null, null, null, null);  // requirement: 3.4.4.2.29
+            interaction.sendResponse(null, null, null, null, null);  // requirement: 3.4.4.2.29
             return;
         }
 
@@ -281,22 +282,37 @@ public class ArchiveProviderServiceImpl extends ArchiveInheritanceSkeleton {
                 tmpQueryFilter = (QueryFilter) queryFilterList.get(index);
             }
 
-            // Query the objects
+            // The continuation token only fits in the response of a single
+            // query, and the pages are only stable in the order of the key
+            final boolean keyset = (tmpQueryFilter instanceof KeysetPaginationFilter);
+
+            if (keyset && (sizeArchiveQueryList != 1 || tmpArchiveQuery.getSortFieldName() != null)) {
+                final UIntegerList invalid = new UIntegerList();
+                invalid.add(new UInteger(index));
+                throw new MALInteractionException(new MALStandardError(COMHelper.INVALID_ERROR_NUMBER, invalid));
+            }
+
+            // Query the objects, the manager evaluates the Composite Filters
             // requirement: 3.4.4.2.11 (taken care internally)
-            perObjs = manager.query(lObjectType, tmpArchiveQuery, tmpQueryFilter); // requirement: 3.4.4.2.10
+            try {
+                perObjs = manager.query(lObjectType, tmpArchiveQuery, tmpQueryFilter); // requirement: 3.4.4.2.10
+            } catch (SecurityException ex) {
+                invIndexList.add(new UInteger(index));
+                perObjs = new ArrayList<ArchivePersistenceObject>();
+            } catch (IllegalArgumentException ex) {
+                invIndexList.add(new UInteger(index));
+                perObjs = new ArrayList<ArchivePersistenceObject>();
+            }
             // requirement: 3.4.4.2.15
 
-            if (queryFilterList != null) { // requirement: 3.4.4.2.8
-                if (tmpQueryFilter instanceof CompositeFilterSet) {
-                    try {
-                        if (tmpQueryFilter != null) { // requirement: 3.4.4.2.7
-                            perObjs = ArchiveManager.filterQuery(perObjs, (CompositeFilterSet) tmpQueryFilter);  // requirement: 3.4.4.2.10
-                        }
-                    } catch (SecurityException ex) {
-                        invIndexList.add(new UInteger(index));
-                    } catch (IllegalArgumentException ex) {
-                        invIndexList.add(new UInteger(index));
-                    }
+            // A full page might be followed by more objects
+            Blob continuationToken = null;
+
+            if (keyset) {
+                final UInteger limit = ((KeysetPaginationFilter) tmpQueryFilter).getLimit();
+
+                if (limit != null && !perObjs.isEmpty() && perObjs.size() >= limit.getValue()) {
+                    continuationToken = manager.generateContinuationToken(perObjs.get(perObjs.size() - 1));
                 }
             }
 
@@ -313,8 +329,8 @@ public class ArchiveProviderServiceImpl extends ArchiveInheritanceSkeleton {
                 perObjs.add(latestPerObj);
             }
 
-            // Sort the objects
-            if (tmpArchiveQuery.getSortOrder() != null) {
+            // Sort the objects, the keyset pages are already sorted by the database
+            if (tmpArchiveQuery.getSortOrder() != null && !keyset) {
                 try { // requirement: 3.4.4.2.26
                     perObjs = SortByField.sortPersistenceObjects(perObjs, tmpArchiveQuery.getSortFieldName(), tmpArchiveQuery.getSortOrder());
                 } catch (NoSuchFieldException ex) {
@@ -338,7 +354,7 @@ public class ArchiveProviderServiceImpl extends ArchiveInheritanceSkeleton {
 
             // Is the list empty? and it is the last query?
             if (perObjs.isEmpty() && index == (sizeArchiveQueryList - 1)) {
-                interaction.sendResponse(null, null, null, null);  // requirement: 3.4.4.2.29
+                interaction.sendResponse(null, null, null, null, null);  // requirement: 3.4.4.2.29
                 return;
             }
 
@@ -378,7 +394,7 @@ public class ArchiveProviderServiceImpl extends ArchiveInheritanceSkeleton {
                                 outArchDetLst, outObjectList); // requirement: 3.4.4.2.17 and 3.4.4.2.23
                     } else {
                         interaction.sendResponse(objType, perObjs.get(j).getDomain(),
-                                outArchDetLst, outObjectList); // requirement: 3.4.4.2.17 and 3.4.4.2.23
+                                outArchDetLst, outObjectList, continuationToken); // requirement: 3.4.4.2.17 and 3.4.4.2.23
                     }
                 }
 
@@ -410,7 +426,7 @@ public class ArchiveProviderServiceImpl extends ArchiveInheritanceSkeleton {
                     interaction.sendUpdate(null, lArchiveQueryList.get(index).getDomain(), outArchiveDetailsList, outObjectList); // requirement: 3.4.4.2.17
                 } else {
                     // requirement: 3.4.4.2.19
-                    interaction.sendResponse(null, lArchiveQueryList.get(index).getDomain(), outArchiveDetailsList, outObjectList); // requirement: 3.4.4.2.17
+                    interaction.sendResponse(null, lArchiveQueryList.get(index).getDomain(), outArchiveDetailsList, outObjectList, continuationToken); // requirement: 3.4.4.2.17
                 }
             }
         }
@@ -458,21 +474,15 @@ public class ArchiveProviderServiceImpl extends ArchiveInheritanceSkeleton {
                 tmpQueryFilter = (QueryFilter) queryFilterList.get(index);
             }
 
-            // Query the objects
-            perObjs = manager.query(lObjectType, tmpArchiveQuery, tmpQueryFilter);
-
-            if (queryFilterList != null) {
-                if (tmpQueryFilter instanceof CompositeFilterSet) {
-                    try {
-                        if (tmpQueryFilter != null) { // requirement: 3.4.4.2.7
-                            perObjs = ArchiveManager.filterQuery(perObjs, (CompositeFilterSet) tmpQueryFilter);  // requirement: 3.4.4.2.10
-                        }
-                    } catch (SecurityException ex) {
-                        invIndexList.add(new UInteger(index));
-                    } catch (IllegalArgumentException ex) {
-                        invIndexList.add(new UInteger(index));
-                    }
-                }
+            // Query the objects, the manager evaluates the Composite Filters
+            try {
+                perObjs = manager.query(lObjectType, tmpArchiveQuery, tmpQueryFilter);
+            } catch (SecurityException ex) {
+                invIndexList.add(new UInteger(index));
+                perObjs = new ArrayList<ArchivePersistenceObject>();
+            } catch (IllegalArgumentException ex) {
+                invIndexList.add(new UInteger(index));
+                perObjs = new ArrayList<ArchivePersistenceObject>();
             }
 
             // requirement: 3.4.4.2.12  ("Gimme only the latest!")
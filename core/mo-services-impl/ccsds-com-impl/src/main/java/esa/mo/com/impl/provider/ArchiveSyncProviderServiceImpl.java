@@ -22,15 +22,21 @@ package esa.mo.com.impl.provider;
 
 import esa.mo.com.impl.archive.entities.COMObjectEntity;
 import esa.mo.com.impl.consumer.ArchiveConsumerServiceImpl;
+import esa.mo.com.impl.sync.ChunkStore;
+import esa.mo.com.impl.sync.ChunkingOutputStream;
 import esa.mo.com.impl.sync.Dictionary;
 import esa.mo.com.impl.sync.EncodeDecode;
+import esa.mo.com.impl.sync.SyncCompression;
 import esa.mo.com.impl.sync.ToDelete;
 import esa.mo.com.impl.util.Quota;
 import esa.mo.helpertools.connections.ConnectionProvider;
 import esa.mo.helpertools.connections.SingleConnectionDetails;
 import esa.mo.helpertools.helpers.HelperTime;
 import esa.mo.helpertools.misc.Const;
+import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -40,7 +46,6 @@ import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -74,6 +79,7 @@ import org.ccsds.moims.mo.mal.structures.LongList;
 import org.ccsds.moims.mo.mal.structures.StringList;
 import org.ccsds.moims.mo.mal.structures.UInteger;
 import org.ccsds.moims.mo.mal.structures.UIntegerList;
+import org.ccsds.moims.mo.mal.structures.Union;
 import org.ccsds.moims.mo.mal.transport.MALMessageHeader;
 
 /**
@@ -87,7 +93,8 @@ public class ArchiveSyncProviderServiceImpl extends ArchiveSyncInheritanceSkelet
   private boolean running = false;
   private final ConnectionProvider connection = new ConnectionProvider();
   private final AtomicLong lastSync = new AtomicLong(0);
-  private final Dictionary dictionary = new Dictionary();
+  private final Dictionary dictionary = new Dictionary(new File(System.getProperty(
+      Const.ARCHIVESYNC_DICTIONARY_PROPERTY, Const.ARCHIVESYNC_DICTIONARY_DEFAULT)));
   private final HashMap<Long, Dispatcher> dispatchers = new HashMap<Long, Dispatcher>();
   private final ExecutorService executor = Executors.newCachedThreadPool();
   private ArchiveConsumerServiceImpl archive;
@@ -167,6 +174,7 @@ public class ArchiveSyncProviderServiceImpl extends ArchiveSyncInheritanceSkelet
       }
 
       manager.close();
+      dictionary.close();
 
       connection.closeAll();
       running = false;
@@ -188,7 +196,19 @@ public class ArchiveSyncProviderServiceImpl extends ArchiveSyncInheritanceSkelet
   public void retrieveRange(FineTime from, FineTime until, ObjectTypeList objectTypes,
       Identifier compression, RetrieveRangeInteraction interaction) throws MALInteractionException,
       MALException {
-    final Dispatcher dispatcher = new Dispatcher(interaction, archive);
+    final SyncCompression syncCompression = SyncCompression.fromIdentifier(compression);
+
+    if (syncCompression == null) {
+      throw new MALInteractionException(new MALStandardError(COMHelper.INVALID_ERROR_NUMBER,
+          compression));
+    }
+
+    final int chunkSize = (int) getPositiveProperty(Const.ARCHIVESYNC_CHUNK_SIZE_PROPERTY,
+        Const.ARCHIVESYNC_CHUNK_SIZE_DEFAULT, Integer.MAX_VALUE);
+    final long memoryLimit = getPositiveProperty(Const.ARCHIVESYNC_MEMORY_LIMIT_PROPERTY,
+        Const.ARCHIVESYNC_MEMORY_LIMIT_DEFAULT, Long.MAX_VALUE);
+    final Dispatcher dispatcher = new Dispatcher(interaction, archive, syncCompression,
+        chunkSize, memoryLimit);
     long interactionTicket = interaction.getInteraction().getMessageHeader().getTransactionId();
     dispatchers.put(interactionTicket, dispatcher);
     lastSync.set(HelperTime.getTimestamp().getValue());
@@ -202,26 +222,61 @@ public class ArchiveSyncProviderServiceImpl extends ArchiveSyncInheritanceSkelet
 
     ArrayList<COMObjectEntity> perObjs;
 
-    for (int i = 0; i < objectTypes.size(); i++) {
-      ArchiveQuery archiveQuery = new ArchiveQuery();
-      archiveQuery.setStartTime(from);
-      archiveQuery.setEndTime(until);
-      archiveQuery.setDomain(null);
-      archiveQuery.setNetwork(null);
-      archiveQuery.setProvider(null);
-      archiveQuery.setRelated(new Long(0));
-      archiveQuery.setSource(null);
-      archiveQuery.setSortFieldName(null);
-
-      perObjs = manager.queryCOMObjectEntity(objectTypes.get(i), archiveQuery, null);
-      latestSync = until;
-      dispatcher.addObjects(perObjs);
+    try {
+      for (int i = 0; i < objectTypes.size(); i++) {
+        ArchiveQuery archiveQuery = new ArchiveQuery();
+        archiveQuery.setStartTime(from);
+        archiveQuery.setEndTime(until);
+        archiveQuery.setDomain(null);
+        archiveQuery.setNetwork(null);
+        archiveQuery.setProvider(null);
+        archiveQuery.setRelated(new Long(0));
+        archiveQuery.setSource(null);
+        archiveQuery.setSortFieldName(null);
+
+        perObjs = manager.queryCOMObjectEntity(objectTypes.get(i), archiveQuery, null);
+        latestSync = until;
+        dispatcher.addObjects(perObjs);
+      }
+
+      Logger.getLogger(ArchiveSyncProviderServiceImpl.class.getName()).log(Level.INFO,
+          "Stage 1: The objects were queried and are now being sent back to the consumer!");
+    } catch (RuntimeException ex) {
+      dispatcher.fail("Stage 1: The objects could not be queried! " + ex.getMessage(), ex);
+    } finally {
+      // The other stages always end, the consumer then receives the error
+      dispatcher.setQueriesAreDone(true);
     }
+  }
+
+  /**
+   * Reads a configuration property that must be a positive number.
+   *
+   * @param property The name of the property.
+   * @param defaultValue The value used if the property is not set.
+   * @param max The maximum accepted value.
+   * @return The value of the property.
+   * @throws MALInteractionException If the value is not a positive number.
+   */
+  private static long getPositiveProperty(final String property, final String defaultValue,
+      final long max) throws MALInteractionException {
+    final String value = System.getProperty(property, defaultValue);
 
-    dispatcher.setQueriesAreDone(true);
+    try {
+      final long number = Long.parseLong(value.trim());
 
-    Logger.getLogger(ArchiveSyncProviderServiceImpl.class.getName()).log(Level.INFO,
-        "Stage 1: The objects were queried and are now being sent back to the consumer!");
+      if (number > 0 && number <= max) {
+        return number;
+      }
+    } catch (NumberFormatException ex) {
+      // Reported below
+    }
+
+    final String message = "The property " + property + " must be a positive number, but it is: "
+        + value;
+    Logger.getLogger(ArchiveSyncProviderServiceImpl.class.getName()).log(Level.SEVERE, message);
+    throw new MALInteractionException(new MALStandardError(MALHelper.INTERNAL_ERROR_NUMBER,
+        new Union(message)));
   }
 
   @Override
@@ -251,8 +306,12 @@ public class ArchiveSyncProviderServiceImpl extends ArchiveSyncInheritanceSkelet
       }
     } else {
       for (UInteger missingIndex : missingIndexes) {
-        byte[] chunk = dispatcher.getFlushedChunk((short) missingIndex.getValue());
-        interaction.sendUpdate(new Blob(chunk), missingIndex);
+        try {
+          byte[] chunk = dispatcher.getFlushedChunk((int) missingIndex.getValue());
+          interaction.sendUpdate(new Blob(chunk), missingIndex);
+        } catch (IOException ex) {
+          Logger.getLogger(ArchiveSyncProviderServiceImpl.class.getName()).log(Level.SEVERE, null, ex);
+        }
       }
     }
 
@@ -276,6 +335,9 @@ public class ArchiveSyncProviderServiceImpl extends ArchiveSyncInheritanceSkelet
       output.add(word);
     }
 
+    // The version of the dictionary follows the words, consumers that do not
+    // know about it only read as many strings as they asked for
+    output.add(dictionary.getVersion());
     return output;
   }
 
@@ -294,36 +356,58 @@ public class ArchiveSyncProviderServiceImpl extends ArchiveSyncInheritanceSkelet
 
   private class Dispatcher {
 
-    private final static int CHUNK_SIZE = 200;
+    // The maximum number of chunks waiting to be sent to the consumer
+    private final static int MAX_PENDING_CHUNKS = 1024;
+
+    // Marks the end of the queried objects and of the chunks, compared by reference
+    private final List<COMObjectEntity> endOfQueries = new ArrayList<COMObjectEntity>(0);
+    private final byte[] endOfChunks = new byte[0];
+
+    // Set by the stage that fails, the consumer then receives an error
+    private volatile String failure = null;
 
     // A temporary queue to hold the objects that were queried
-    private final LinkedBlockingQueue<COMObjectEntity> tempQueue
-        = new LinkedBlockingQueue<COMObjectEntity>();
+    private final LinkedBlockingQueue<List<COMObjectEntity>> tempQueue
+        = new LinkedBlockingQueue<List<COMObjectEntity>>();
 
     private final RetrieveRangeInteraction interaction;
 
     // These chunks are already compressed!
-    private final ArrayList<byte[]> chunksFlushed = new ArrayList<byte[]>();
+    private final ChunkStore chunksFlushed;
 
-    private final LinkedBlockingQueue<byte[]> dataToFlush = new LinkedBlockingQueue<byte[]>();
+    private final LinkedBlockingQueue<byte[]> dataToFlush
+        = new LinkedBlockingQueue<byte[]>(MAX_PENDING_CHUNKS);
 
-    private boolean queriesAreDone = false;
-    private boolean processingIsDone = false;
-    private int numberOfChunks = 0;
+    private final SyncCompression compression;
+    private final int chunkSize;
+    private volatile int numberOfChunks = 0;
     private ArchiveConsumerServiceImpl archive;
 
-    Dispatcher(final RetrieveRangeInteraction interaction, ArchiveConsumerServiceImpl archive) {
+    Dispatcher(final RetrieveRangeInteraction interaction, ArchiveConsumerServiceImpl archive,
+        final SyncCompression compression, final int chunkSize, final long memoryLimit) {
       this.interaction = interaction;
       this.archive = archive;
+      this.compression = compression;
+      this.chunkSize = chunkSize;
+      this.chunksFlushed = new ChunkStore(memoryLimit);
+    }
+
+    private void fail(final String message, final Throwable cause) {
+      if (failure == null) {
+        failure = message;
+      }
+
+      Logger.getLogger(ArchiveSyncProviderServiceImpl.class.getName()).log(Level.SEVERE, message,
+          cause);
     }
 
     private void clear() {
       tempQueue.clear();
-      chunksFlushed.clear();
       dataToFlush.clear();
+      chunksFlushed.close();
     }
 
-    public byte[] getFlushedChunk(int index) {
+    public byte[] getFlushedChunk(int index) throws IOException {
       return chunksFlushed.get(index);
     }
 
@@ -336,12 +420,15 @@ public class ArchiveSyncProviderServiceImpl extends ArchiveSyncInheritanceSkelet
     }
 
     public void addObjects(final ArrayList<COMObjectEntity> list) {
-      // "addAll()" might not be thread-safe. "add" is for sure!
-        tempQueue.addAll(list);
+      if (list != null && !list.isEmpty()) {
+        tempQueue.add(list);
+      }
     }
 
     public void setQueriesAreDone(final boolean done) {
-      this.queriesAreDone = done;
+      if (done) {
+        tempQueue.add(endOfQueries);
+      }
     }
 
     public Runnable getProcessingRunnable() {
@@ -350,40 +437,65 @@ public class ArchiveSyncProviderServiceImpl extends ArchiveSyncInheritanceSkelet
         public void run() {
           int counter = 0;
 
-          try {
-            boolean exit = false;
+          // The objects are encoded, compressed and cut into chunks as a stream
+          final ChunkingOutputStream chunker = new ChunkingOutputStream(chunkSize,
+              new ChunkingOutputStream.ChunkSink() {
+            @Override
+            public void onChunk(byte[] chunk) throws IOException {
+              if (failure != null) { // No point in producing more chunks
+                throw new IOException("The synchronization failed: " + failure);
+              }
+
+              try {
+                dataToFlush.put(chunk);
+              } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+              }
+            }
+          });
 
-            while (!exit) {
-              boolean done = queriesAreDone;
-              COMObjectEntity entity = tempQueue.poll(1, TimeUnit.SECONDS);
+          try (OutputStream out = compression.compress(chunker)) {
+            List<COMObjectEntity> entities;
 
-              if (entity != null) {
-                byte[] objAsByteArray = EncodeDecode.encodeToByteArray(entity, manager, dictionary);
-                // Compress here?
-                // compression algorithm can go here!
-                dataToFlush.add(objAsByteArray);
+            while ((entities = tempQueue.take()) != endOfQueries) {
+              for (COMObjectEntity entity : entities) {
+                out.write(EncodeDecode.encodeToByteArray(entity, manager, dictionary));
                 counter++;
-              } else {
-                if (done) {
-                  exit = true;
-                }
               }
             }
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            fail("Stage 2: The processing of the objects was interrupted!", ex);
+          } catch (IOException | RuntimeException ex) {
+            fail("Stage 2: The objects could not be encoded! " + ex.getMessage(), ex);
+          }
+
+          try {
+            dataToFlush.put(endOfChunks);
           } catch (InterruptedException ex) {
             Logger.getLogger(ArchiveSyncProviderServiceImpl.class.getName()).log(Level.SEVERE, null,
                 ex);
           }
 
-          processingIsDone = true;
-          Logger.getLogger(ArchiveSyncProviderServiceImpl.class.getName()).log(Level.INFO,
-              "Stage 2: The objects were all successfully processed! "
-              + counter + " objects in total!");
+          if (failure == null) {
+            Logger.getLogger(ArchiveSyncProviderServiceImpl.class.getName()).log(Level.INFO,
+                "Stage 2: The objects were all successfully processed! "
+                + counter + " objects in total!");
+          }
         }
       };
     }
 
-    public void sendUpdateToConsumer(int index, byte[] aChunk) {
-      chunksFlushed.add(index, aChunk);
+    public void sendUpdateToConsumer(int index, byte[] aChunk) throws IOException {
+      // The chunk must be stored with the index sent to the consumer, or
+      // the retransmissions would serve the wrong chunks
+      final int storedIndex = chunksFlushed.append(aChunk);
+
+      if (storedIndex != index) {
+        throw new IOException("The chunk " + index + " was stored with the index " + storedIndex);
+      }
+
       try {
         interaction.sendUpdate(new Blob(aChunk), new UInteger(index));
       } catch (MALInteractionException ex) {
@@ -398,41 +510,29 @@ public class ArchiveSyncProviderServiceImpl extends ArchiveSyncInheritanceSkelet
         @Override
         public void run() {
           try {
-            boolean exit = false;
             int index = 0;
-            byte[] aChunk = new byte[CHUNK_SIZE];
-            int pos = 0;
-
-            while (!exit) {
-              boolean done = processingIsDone;
-              byte[] data = dataToFlush.poll(1, TimeUnit.SECONDS);
-
-              if (data != null) {
-                for (int i = 0; i < data.length; i++) {
-                  aChunk[pos] = data[i];
-                  pos++;
-
-                  if (pos == CHUNK_SIZE) {
-                    sendUpdateToConsumer(index, aChunk);
-                    index++;
-                    pos = 0;
-                  }
-                }
-              } else {
-                if (done) {
-                  exit = true;
-
-                  // Flush the last byte array!
-                  byte[] lastChunk = new byte[pos]; // We need to trim to fit!
-                  System.arraycopy(aChunk, 0, lastChunk, 0, pos);
-
-                  sendUpdateToConsumer(index, lastChunk);
-                  index++;
-                }
+            byte[] chunk;
+
+            while ((chunk = dataToFlush.take()) != endOfChunks) {
+              if (failure != null) {
+                continue; // Drain the queue so that the processing stage can end
+              }
+
+              try {
+                sendUpdateToConsumer(index, chunk);
+                index++;
+              } catch (IOException ex) {
+                fail("Stage 3: The chunk " + index + " could not be stored! " + ex.getMessage(), ex);
               }
             }
 
             try {
+              if (failure != null) {
+                interaction.sendError(new MALStandardError(MALHelper.INTERNAL_ERROR_NUMBER,
+                    new Union(failure)));
+                return;
+              }
+
               interaction.sendResponse(new UInteger(index));
               numberOfChunks = index;
             } catch (MALInteractionException ex) {
@@ -488,8 +588,9 @@ public class ArchiveSyncProviderServiceImpl extends ArchiveSyncInheritanceSkelet
       @Override
       public void queryResponseReceived(MALMessageHeader msgHeader, ObjectType objType,
           IdentifierList domain, ArchiveDetailsList objDetails, ElementList objBodies,
-          Map qosProperties) {
-        super.queryResponseReceived(msgHeader, objType, domain, objDetails, objBodies, qosProperties);
+          Blob continuationToken, Map qosProperties) {
+        super.queryResponseReceived(msgHeader, objType, domain, objDetails, objBodies,
+            continuationToken, qosProperties);
         if (objType == null || domain == null || objDetails == null || objBodies == null) {
           return;
         }
@@ -26,6 +26,8 @@ import esa.mo.helpertools.connections.ConnectionProvider;
 import esa.mo.helpertools.helpers.HelperMisc;
 import esa.mo.helpertools.helpers.HelperTime;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -79,6 +81,12 @@ public class EventProviderServiceImpl extends EventInheritanceSkeleton {
     private MonitorEventPublisher publisher;
     private final ConnectionProvider connection = new ConnectionProvider();
     private ArchiveProviderServiceImpl archiveService;
+    private final EventPublishBatcher batcher = new EventPublishBatcher(new EventPublishBatcher.Sink() {
+        @Override
+        public void publish(List<EventPublishBatcher.PendingEvent> events) {
+            publishBatch(events);
+        }
+    });
 
     /**
      * Initializes the Event service provider
@@ -259,6 +267,17 @@ public class EventProviderServiceImpl extends EventInheritanceSkeleton {
             throw new IOException("The Event service is not running.");
         }
 
+        final EventPublishBatcher.PendingEvent event = new EventPublishBatcher.PendingEvent(sourceURI,
+                objId, objType, related, source, eventBodies, HelperTime.getTimestampMillis());
+
+        if (!batcher.accept(event)) {
+            return; // Coalesced or rate limited, it is only stored in the Archive
+        }
+
+        if (batcher.offer(event)) {
+            return; // Published with its batch
+        }
+
         try {
             synchronized (lock) {
                 if (!isRegistered) {
@@ -284,7 +303,7 @@ public class EventProviderServiceImpl extends EventInheritanceSkeleton {
                     objId,
                     subKey);
 
-            final Time timestamp = HelperTime.getTimestampMillis(); //  requirement: 3.3.4.2.7
+            final Time timestamp = event.timestamp; //  requirement: 3.3.4.2.7
 
             final UpdateHeaderList hdrlst = new UpdateHeaderList();
             final ObjectDetailsList objectDetailsList = new ObjectDetailsList();
@@ -398,6 +417,92 @@ public class EventProviderServiceImpl extends EventInheritanceSkeleton {
         }
     }
 
+    /**
+     * Publishes a batch of Events collected by the batcher. The consecutive
+     * Events with the same object type and body type are published together
+     * as a single multi-element update, so the Events keep their order.
+     *
+     * @param events The Events to be published
+     */
+    private void publishBatch(final List<EventPublishBatcher.PendingEvent> events) {
+        final List<List<EventPublishBatcher.PendingEvent>> groups
+                = new ArrayList<List<EventPublishBatcher.PendingEvent>>();
+        List<EventPublishBatcher.PendingEvent> current = null;
+
+        for (EventPublishBatcher.PendingEvent event : events) {
+            if (current == null || !isSameGroup(current.get(0), event)) {
+                current = new ArrayList<EventPublishBatcher.PendingEvent>();
+                groups.add(current);
+            }
+
+            current.add(event);
+        }
+
+        for (List<EventPublishBatcher.PendingEvent> group : groups) {
+            final UpdateHeaderList hdrlst = new UpdateHeaderList(group.size());
+            final ObjectDetailsList objectDetailsList = new ObjectDetailsList(group.size());
+            final ElementList first = group.get(0).eventBodies;
+            final ElementList eventBodies = (first == null) ? new UIntegerList(group.size())
+                    : (ElementList) first.createElement();
+
+            for (EventPublishBatcher.PendingEvent event : group) {
+                // 0xFFFF FFFF FF00 0000
+                final Long secondEntityKey = 0xFFFFFFFFFF000000L & HelperCOM.generateSubKey(event.objType);
+                final Long subKey = (event.source != null) ? HelperCOM.generateSubKey(event.source.getType()) : null;
+                // requirements: 3.3.4.2.1 , 3.3.4.2.2 , 3.3.4.2.3 , 3.3.4.2.4
+                final EntityKey ekey = new EntityKey(
+                        new Identifier(event.objType.getNumber().toString()),
+                        secondEntityKey,
+                        event.objId,
+                        subKey);
+
+                hdrlst.add(new UpdateHeader(event.timestamp, event.sourceURI, UpdateType.DELETION, ekey));
+                objectDetailsList.add(new ObjectDetails(event.related, event.source)); // requirement: 3.3.4.2.5
+
+                if (event.eventBodies == null) {
+                    eventBodies.add(new UInteger());
+                } else {
+                    eventBodies.addAll(event.eventBodies);
+                }
+            }
+
+            try {
+                synchronized (lock) {
+                    if (!isRegistered) {
+                        final EntityKeyList lst = new EntityKeyList();
+                        lst.add(new EntityKey(new Identifier("*"), 0L, 0L, 0L));
+                        publisher.register(lst, new PublishInteractionListener());
+                        isRegistered = true;
+                    }
+                }
+
+                publisher.publish(hdrlst, objectDetailsList, eventBodies); // requirement: 3.7.2.15
+            } catch (IllegalArgumentException ex) {
+                Logger.getLogger(EventProviderServiceImpl.class.getName()).log(Level.WARNING,
+                        "Exception during publishing process on the provider (0)", ex);
+            } catch (MALException ex) {
+                Logger.getLogger(EventProviderServiceImpl.class.getName()).log(Level.WARNING,
+                        "Exception during publishing process on the provider (1)", ex);
+            } catch (MALInteractionException ex) {
+                Logger.getLogger(EventProviderServiceImpl.class.getName()).log(Level.WARNING,
+                        "Exception during publishing process on the provider (2)", ex);
+            }
+        }
+    }
+
+    private static boolean isSameGroup(final EventPublishBatcher.PendingEvent first,
+            final EventPublishBatcher.PendingEvent event) {
+        if (!first.objType.equals(event.objType)) {
+            return false;
+        }
+
+        if (first.eventBodies == null || event.eventBodies == null) {
+            return first.eventBodies == event.eventBodies;
+        }
+
+        return first.eventBodies.getClass().equals(event.eventBodies.getClass());
+    }
+
     public LongList generateAndStoreEvents(final ObjectType objType, final IdentifierList domain,
             final LongList relateds, final ObjectIdList sourceList, final MALInteraction interaction) {
         ObjectDetailsList objectDetailsList = new ObjectDetailsList(sourceList.size());
@@ -546,6 +651,8 @@ public class EventProviderServiceImpl extends EventInheritanceSkeleton {
      * Closes all running threads and releases the MAL resources.
      */
     public void close() {
+        batcher.close();
+
         try {
             if (null != eventServiceProvider) {
                 eventServiceProvider.close();
@@ -0,0 +1,364 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2021      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : ESA NanoSat MO Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.com.impl.provider;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.ccsds.moims.mo.com.structures.ObjectId;
+import org.ccsds.moims.mo.com.structures.ObjectType;
+import org.ccsds.moims.mo.mal.structures.ElementList;
+import org.ccsds.moims.mo.mal.structures.Time;
+import org.ccsds.moims.mo.mal.structures.URI;
+
+/**
+ * Collects the Events to be published by the Event service, so that the
+ * Events raised within a short window are published together as a single
+ * multi-element update. It also drops the identical Events that repeat within
+ * the coalescing window and the Events of a source that exceed its rate
+ * limit. The dropped Events are still stored in the Archive.
+ *
+ * All the features are disabled by default.
+ */
+class EventPublishBatcher {
+
+    /**
+     * The time window in milliseconds during which the Events are collected
+     * before being published together. 0 publishes every Event immediately.
+     */
+    public static final String WINDOW_PROPERTY = "esa.nmf.event.publish.window";
+
+    /**
+     * The maximum number of Events published in a single update.
+     */
+    public static final String MAX_BATCH_PROPERTY = "esa.nmf.event.publish.maxbatch";
+
+    /**
+     * The time window in milliseconds during which an Event identical to a
+     * previously published one is not published again. 0 disables it.
+     */
+    public static final String COALESCE_WINDOW_PROPERTY = "esa.nmf.event.publish.coalesce";
+
+    /**
+     * The maximum number of Events per second published for each source
+     * object. 0 disables it.
+     */
+    public static final String RATE_LIMIT_PROPERTY = "esa.nmf.event.publish.ratelimit";
+
+    private static final int DEFAULT_MAX_BATCH = 64;
+    private static final int MAX_TRACKED_KEYS = 1024;
+
+    /**
+     * Publishes a batch of Events.
+     */
+    interface Sink {
+
+        void publish(List<PendingEvent> events);
+    }
+
+    /**
+     * An Event waiting to be published.
+     */
+    static final class PendingEvent {
+
+        final URI sourceURI;
+        final Long objId;
+        final ObjectType objType;
+        final Long related;
+        final ObjectId source;
+        final ElementList eventBodies;
+        final Time timestamp;
+
+        PendingEvent(final URI sourceURI, final Long objId, final ObjectType objType,
+                final Long related, final ObjectId source, final ElementList eventBodies,
+                final Time timestamp) {
+            this.sourceURI = sourceURI;
+            this.objId = objId;
+            this.objType = objType;
+            this.related = related;
+            this.source = source;
+            this.eventBodies = eventBodies;
+            this.timestamp = timestamp;
+        }
+    }
+
+    private final Sink sink;
+    private final long window;
+    private final int maxBatch;
+    private final long coalesceWindow;
+    private final double rateLimit;
+    private final ScheduledExecutorService timer;
+    private final Map<List<Object>, Long> lastPublished = new BoundedMap<List<Object>, Long>();
+    private final Map<Object, double[]> buckets = new BoundedMap<Object, double[]>();
+    private ArrayList<PendingEvent> pending = new ArrayList<PendingEvent>();
+
+    /**
+     * The batches taken from pending, in order, waiting to be published.
+     */
+    private final ArrayDeque<List<PendingEvent>> ready = new ArrayDeque<List<PendingEvent>>();
+
+    /**
+     * Held while publishing, so that the batches are published one at a time
+     * and in the order they were taken.
+     */
+    private final Object publishLock = new Object();
+    private long dropped = 0;
+
+    EventPublishBatcher(final Sink sink) {
+        this.sink = sink;
+        this.window = Math.max(0, Long.getLong(WINDOW_PROPERTY, 0));
+        this.maxBatch = Math.max(1, Integer.getInteger(MAX_BATCH_PROPERTY, DEFAULT_MAX_BATCH));
+        this.coalesceWindow = TimeUnit.MILLISECONDS.toNanos(Math.max(0, Long.getLong(COALESCE_WINDOW_PROPERTY, 0)));
+        this.rateLimit = Math.max(0, Integer.getInteger(RATE_LIMIT_PROPERTY, 0));
+        this.timer = (window == 0) ? null
+                : Executors.newSingleThreadScheduledExecutor(new EventPublisherThreadFactory());
+    }
+
+    /**
+     * @return True if the Events are collected before being published.
+     */
+    boolean isBatching() {
+        return timer != null;
+    }
+
+    /**
+     * Checks the coalescing window and the rate limit of the source of the
+     * Event.
+     *
+     * @param event The Event.
+     * @return True if the Event shall be published.
+     */
+    synchronized boolean accept(final PendingEvent event) {
+        if (coalesceWindow == 0 && rateLimit == 0) {
+            return true;
+        }
+
+        final long now = System.nanoTime();
+
+        if (coalesceWindow != 0) {
+            final List<Object> key = Arrays.<Object>asList(event.objType, event.related,
+                    event.source, event.eventBodies);
+            final Long last = lastPublished.get(key);
+
+            if (last != null && now - last < coalesceWindow) {
+                return this.drop(event, "repeated");
+            }
+
+            lastPublished.put(key, now);
+        }
+
+        if (rateLimit != 0) {
+            final Object key = (event.source != null) ? event.source : event.objType;
+            double[] bucket = buckets.get(key);
+
+            if (bucket == null) {
+                bucket = new double[]{rateLimit, now};
+                buckets.put(key, bucket);
+            }
+
+            // Token bucket: refilled at the rate limit, with a burst of one second
+            bucket[0] = Math.min(rateLimit, bucket[0] + (now - bucket[1]) * rateLimit / 1e9);
+            bucket[1] = now;
+
+            if (bucket[0] < 1) {
+                return this.drop(event, "rate limited");
+            }
+
+            bucket[0]--;
+        }
+
+        return true;
+    }
+
+    private boolean drop(final PendingEvent event, final String reason) {
+        dropped++;
+        Logger.getLogger(EventPublishBatcher.class.getName()).log(Level.FINE,
+                "The Event objId: {0} was not published ({1}). Total dropped: {2}",
+                new Object[]{event.objId, reason, dropped});
+        return false;
+    }
+
+    /**
+     * Takes an Event with a single body into the current batch. An Event with
+     * several bodies is published on its own, so the current batch is
+     * published first to keep the order of the Events.
+     *
+     * @param event The Event.
+     * @return True if the Event was taken, false if the caller shall publish
+     * it.
+     */
+    boolean offer(final PendingEvent event) {
+        if (!this.isBatching()) {
+            return false;
+        }
+
+        if (event.eventBodies == null || event.eventBodies.size() == 1) {
+            this.submit(event);
+            return true;
+        }
+
+        this.flush();
+        return false;
+    }
+
+    /**
+     * Adds an Event to the current batch. The batch is published when the
+     * window expires or when it reaches the maximum size.
+     *
+     * @param event The Event.
+     */
+    void submit(final PendingEvent event) {
+        synchronized (this) {
+            pending.add(event);
+
+            if (pending.size() == 1) {
+                try {
+                    timer.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            flush();
+                        }
+                    }, window, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException ex) {
+                    // Closed, then publish it right away
+                }
+            }
+
+            if (pending.size() < maxBatch && !timer.isShutdown()) {
+                return;
+            }
+
+            this.takePending();
+        }
+
+        this.publishReady();
+    }
+
+    /**
+     * Publishes the Events of the current batch.
+     */
+    void flush() {
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+
+            this.takePending();
+        }
+
+        this.publishReady();
+    }
+
+    private void takePending() {
+        ready.add(pending);
+        pending = new ArrayList<PendingEvent>();
+    }
+
+    /**
+     * Publishes the taken batches in the order they were taken. The batch of
+     * this thread may have been published already by another thread.
+     */
+    private void publishReady() {
+        synchronized (publishLock) {
+            while (true) {
+                final List<PendingEvent> batch;
+
+                synchronized (this) {
+                    batch = ready.poll();
+                }
+
+                if (batch == null) {
+                    return;
+                }
+
+                sink.publish(batch);
+            }
+        }
+    }
+
+    /**
+     * Publishes the pending Events and stops the timer.
+     */
+    void close() {
+        if (timer != null) {
+            timer.shutdownNow();
+            this.flush();
+        }
+    }
+
+    /**
+     * Keeps only the most recently used keys.
+     */
+    private static final class BoundedMap<K, V> extends LinkedHashMap<K, V> {
+
+        private static final long serialVersionUID = 1L;
+
+        BoundedMap() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<K, V> eldest) {
+            return size() > MAX_TRACKED_KEYS;
+        }
+    }
+
+    /**
+     * The thread factory of the batch timer.
+     */
+    static class EventPublisherThreadFactory implements ThreadFactory {
+
+        private final ThreadGroup group;
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+        private final String namePrefix;
+
+        EventPublisherThreadFactory() {
+            SecurityManager s = System.getSecurityManager();
+            group = (s != null) ? s.getThreadGroup()
+                    : Thread.currentThread().getThreadGroup();
+            namePrefix = "EventPublisher-thread-";
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(group, r,
+                    namePrefix + threadNumber.getAndIncrement(),
+                    0);
+            t.setDaemon(true); // Pending Events are flushed on close
+            if (t.getPriority() != Thread.NORM_PRIORITY) {
+                t.setPriority(Thread.NORM_PRIORITY);
+            }
+            return t;
+        }
+    }
+
+}
@@ -0,0 +1,165 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2021      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : ESA NanoSat MO Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.com.impl.sync;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the chunks that were already sent to the consumer so that they can be
+ * retransmitted. The chunks are kept in memory until the memory limit is
+ * reached and all the following chunks are appended to a temporary file, so a
+ * big synchronization does not have to be held on the heap until it is freed.
+ */
+public class ChunkStore {
+
+  private static final String SPILL_FILE_PREFIX = "nmf-archivesync-";
+
+  private final long memoryLimit;
+  private final ArrayList<byte[]> inMemory = new ArrayList<>();
+  private long bytesInMemory = 0;
+
+  // The chunks that went to the spill file, in order
+  private long[] offsets = new long[64];
+  private int[] lengths = new int[64];
+  private int spilledChunks = 0;
+  private File spillFile;
+  private RandomAccessFile spill;
+  private boolean closed = false;
+
+  /**
+   * Constructor.
+   *
+   * @param memoryLimit The maximum number of bytes kept in memory.
+   */
+  public ChunkStore(final long memoryLimit) {
+    this.memoryLimit = memoryLimit;
+  }
+
+  /**
+   * Stores a chunk with the next index.
+   *
+   * @param chunk The chunk. It must not be changed after being stored.
+   * @return The index of the chunk.
+   * @throws IOException If the chunk could not be written to the spill file.
+   */
+  public synchronized int append(final byte[] chunk) throws IOException {
+    if (closed) {
+      throw new IOException("The chunk store was already closed!");
+    }
+
+    if (spill == null && bytesInMemory + chunk.length <= memoryLimit) {
+      inMemory.add(chunk);
+      bytesInMemory += chunk.length;
+      return inMemory.size() - 1;
+    }
+
+    if (spill == null) {
+      spillFile = File.createTempFile(SPILL_FILE_PREFIX, ".chunks");
+      spillFile.deleteOnExit();
+      spill = new RandomAccessFile(spillFile, "rw");
+      Logger.getLogger(ChunkStore.class.getName()).log(Level.FINE,
+          "Spilling the chunks to: {0}", spillFile.getAbsolutePath());
+    }
+
+    if (spilledChunks == offsets.length) {
+      offsets = Arrays.copyOf(offsets, offsets.length * 2);
+      lengths = Arrays.copyOf(lengths, lengths.length * 2);
+    }
+
+    final long offset = spill.length();
+    spill.seek(offset);
+    spill.write(chunk);
+    offsets[spilledChunks] = offset;
+    lengths[spilledChunks] = chunk.length;
+    spilledChunks++;
+
+    return inMemory.size() + spilledChunks - 1;
+  }
+
+  /**
+   * Returns a stored chunk.
+   *
+   * @param index The index of the chunk.
+   * @return The chunk.
+   * @throws IOException If the chunk does not exist or could not be read.
+   */
+  public synchronized byte[] get(final int index) throws IOException {
+    if (closed) {
+      throw new IOException("The chunk store was already closed!");
+    }
+
+    if (index < 0 || index >= size()) {
+      throw new IOException("The chunk with index " + index + " does not exist!");
+    }
+
+    if (index < inMemory.size()) {
+      return inMemory.get(index);
+    }
+
+    final int i = index - inMemory.size();
+    final byte[] chunk = new byte[lengths[i]];
+    spill.seek(offsets[i]);
+    spill.readFully(chunk);
+    return chunk;
+  }
+
+  /**
+   * Returns the number of stored chunks.
+   *
+   * @return The number of chunks.
+   */
+  public synchronized int size() {
+    return inMemory.size() + spilledChunks;
+  }
+
+  /**
+   * Releases the chunks and deletes the spill file.
+   */
+  public synchronized void close() {
+    closed = true;
+    inMemory.clear();
+    bytesInMemory = 0;
+    spilledChunks = 0;
+
+    if (spill != null) {
+      try {
+        spill.close();
+      } catch (IOException ex) {
+        Logger.getLogger(ChunkStore.class.getName()).log(Level.WARNING, null, ex);
+      }
+
+      if (!spillFile.delete()) {
+        Logger.getLogger(ChunkStore.class.getName()).log(Level.WARNING,
+            "The spill file could not be deleted: {0}", spillFile.getAbsolutePath());
+      }
+
+      spill = null;
+      spillFile = null;
+    }
+  }
+
+}
@@ -0,0 +1,115 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2021      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : ESA NanoSat MO Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.com.impl.sync;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An OutputStream that splits everything written into it in chunks of a fixed
+ * size. Each chunk is a new array that is handed over to the sink once it is
+ * full, so it can be sent and stored without being copied again. The last
+ * chunk is trimmed to fit and handed over when the stream is closed.
+ */
+public class ChunkingOutputStream extends OutputStream {
+
+  /**
+   * Receives the chunks of a ChunkingOutputStream.
+   */
+  public interface ChunkSink {
+
+    /**
+     * Called for every chunk, in order.
+     *
+     * @param chunk The chunk. It is not reused by the stream.
+     * @throws IOException If the chunk could not be handled.
+     */
+    void onChunk(byte[] chunk) throws IOException;
+  }
+
+  private final int chunkSize;
+  private final ChunkSink sink;
+  private byte[] chunk;
+  private int pos = 0;
+  private boolean closed = false;
+
+  public ChunkingOutputStream(final int chunkSize, final ChunkSink sink) {
+    if (chunkSize <= 0) {
+      throw new IllegalArgumentException("The chunk size must be positive: " + chunkSize);
+    }
+
+    this.chunkSize = chunkSize;
+    this.sink = sink;
+    this.chunk = new byte[chunkSize];
+  }
+
+  @Override
+  public void write(final int b) throws IOException {
+    chunk[pos++] = (byte) b;
+
+    if (pos == chunkSize) {
+      emitFullChunk();
+    }
+  }
+
+  @Override
+  public void write(final byte[] b, int off, int len) throws IOException {
+    while (len > 0) {
+      final int n = Math.min(len, chunkSize - pos);
+      System.arraycopy(b, off, chunk, pos, n);
+      pos += n;
+      off += n;
+      len -= n;
+
+      if (pos == chunkSize) {
+        emitFullChunk();
+      }
+    }
+  }
+
+  /**
+   * Hands over the last chunk, trimmed to fit. It is handed over even when it
+   * is empty, so that the consumer always receives at least one chunk.
+   *
+   * @throws IOException If the sink failed.
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+
+    closed = true;
+
+    final byte[] lastChunk = new byte[pos];
+    System.arraycopy(chunk, 0, lastChunk, 0, pos);
+    chunk = null;
+    sink.onChunk(lastChunk);
+  }
+
+  private void emitFullChunk() throws IOException {
+    final byte[] full = chunk;
+    chunk = new byte[chunkSize];
+    pos = 0;
+    sink.onChunk(full);
+  }
+
+}
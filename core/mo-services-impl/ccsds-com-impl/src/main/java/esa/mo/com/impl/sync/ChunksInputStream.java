@@ -0,0 +1,93 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2021      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : ESA NanoSat MO Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.com.impl.sync;
+
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * An InputStream that reads a list of chunks in order, as if they were a
+ * single array. The chunks are not copied into one buffer, and every read
+ * fills the destination completely unless the end of the last chunk is
+ * reached.
+ */
+public class ChunksInputStream extends InputStream {
+
+    private final List<byte[]> chunks;
+    private int chunkIndex = 0;
+    private int pos = 0;
+
+    public ChunksInputStream(final List<byte[]> chunks) {
+        this.chunks = chunks;
+    }
+
+    @Override
+    public int read() {
+        while (chunkIndex < chunks.size()) {
+            final byte[] chunk = chunks.get(chunkIndex);
+
+            if (pos < chunk.length) {
+                return chunk[pos++] & 0xFF;
+            }
+
+            chunkIndex++;
+            pos = 0;
+        }
+
+        return -1;
+    }
+
+    @Override
+    public int read(final byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+
+        int read = 0;
+
+        while (len > 0 && chunkIndex < chunks.size()) {
+            final byte[] chunk = chunks.get(chunkIndex);
+            final int n = Math.min(len, chunk.length - pos);
+            System.arraycopy(chunk, pos, b, off, n);
+            pos += n;
+            off += n;
+            len -= n;
+            read += n;
+
+            if (pos == chunk.length) {
+                chunkIndex++;
+                pos = 0;
+            }
+        }
+
+        return (read == 0) ? -1 : read;
+    }
+
+    @Override
+    public int available() {
+        if (chunkIndex >= chunks.size()) {
+            return 0;
+        }
+
+        return chunks.get(chunkIndex).length - pos;
+    }
+
+}
@@ -20,56 +20,146 @@
  */
 package esa.mo.com.impl.sync;
 
-import java.util.HashMap;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
+ * The dictionary of the Archive Sync service. It maps the strings that repeat
+ * in every object, such as the network, the provider URI and the domain, to
+ * integer ids.
  *
- *
+ * The lookups do not take any lock. New words are appended to the backing
+ * file when the dictionary is persistent, so the ids stay the same across
+ * restarts. The dictionary also has a version, which is not part of the words:
+ * a consumer can keep its copy as long as the version does not change.
  */
 public class Dictionary {
 
-    private AtomicInteger uniqueId = new AtomicInteger(0);
-    private HashMap<String, Integer> fastID;
-    private HashMap<Integer, String> fastIDreverse;
+    private static final int FILE_MAGIC = 0x4E4D4644; // "NMFD"
+
+    private final File file;
+    private final ConcurrentHashMap<String, Integer> fastID = new ConcurrentHashMap<String, Integer>();
+    private final ConcurrentHashMap<Integer, String> fastIDreverse = new ConcurrentHashMap<Integer, String>();
+    private final AtomicInteger uniqueId = new AtomicInteger(0);
+    private volatile String version;
+    private DataOutputStream out;
 
+    /**
+     * Creates a dictionary that only lives in memory.
+     */
     public Dictionary() {
-        this.fastID = new HashMap<String, Integer>();
-        this.fastIDreverse = new HashMap<Integer, String>();
+        this.file = null;
+        this.version = newVersion();
+    }
+
+    /**
+     * Creates a dictionary that is persisted in a file. The existing words are
+     * loaded from it, or it is created if it does not exist.
+     *
+     * @param file The file holding the string table.
+     */
+    public Dictionary(final File file) {
+        this.file = file;
+
+        try {
+            if (file.exists()) {
+                load();
+            } else {
+                create(newVersion());
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(Dictionary.class.getName()).log(Level.SEVERE,
+                    "The dictionary file could not be loaded: " + file.getAbsolutePath()
+                    + " A new one will be created.", ex);
+            clearMaps();
+            createQuietly(newVersion());
+        }
+    }
+
+    /**
+     * Returns the version of the dictionary. It changes every time the ids are
+     * reassigned.
+     *
+     * @return The version.
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * Keeps the words only if they belong to the given version of the
+     * dictionary. Used by consumers to mirror the dictionary of a provider.
+     *
+     * @param providerVersion The version of the dictionary of the provider.
+     * @return True if the words were kept, false if they were cleared.
+     */
+    public synchronized boolean mirror(final String providerVersion) {
+        if (providerVersion == null || providerVersion.equals(version)) {
+            return true;
+        }
+
+        clearMaps();
+        version = providerVersion;
+        createQuietly(providerVersion);
+        return false;
     }
 
     public synchronized void resetFastNetwork() {
-        this.fastID = new HashMap<String, Integer>();
-        this.fastIDreverse = new HashMap<Integer, String>();
-        uniqueId = new AtomicInteger(0);
+        clearMaps();
+        version = newVersion();
+        createQuietly(version);
     }
 
-    public synchronized boolean exists(final String word) {
-        return (this.fastID.get(word) != null);
+    public boolean exists(final String word) {
+        return this.fastID.containsKey(word);
     }
 
-    public synchronized boolean exists(final Integer wordId) {
-        return (this.fastIDreverse.get(wordId) != null);
+    public boolean exists(final Integer wordId) {
+        return this.fastIDreverse.containsKey(wordId);
     }
 
     public synchronized void defineWord(final Integer wordId, final String word) {
+        if (word == null) {
+            return;
+        }
+
         this.fastID.put(word, wordId);
         this.fastIDreverse.put(wordId, word);
+        uniqueId.accumulateAndGet(wordId, Math::max);
+        append(wordId, word);
     }
 
-    private Integer addNewWord(final String word) {
+    private synchronized Integer addNewWord(final String word) {
+        final Integer existing = this.fastID.get(word);
+
+        if (existing != null) {
+            return existing;
+        }
+
         final int wordId = uniqueId.incrementAndGet();
-        this.fastID.put(word, wordId);
         this.fastIDreverse.put(wordId, word);
+        this.fastID.put(word, wordId);
+        append(wordId, word);
         return wordId;
     }
 
-    public synchronized Integer getWordId(final String word) {
+    public Integer getWordId(final String word) {
         final Integer id = this.fastID.get(word);
         return (id == null) ? this.addNewWord(word) : id;
     }
 
-    public synchronized String getWord(final Integer id) throws Exception {
+    public String getWord(final Integer id) throws Exception {
         final String word = this.fastIDreverse.get(id);
 
         if (word == null) {
@@ -78,4 +168,143 @@ public class Dictionary {
 
         return word;
     }
+
+    /**
+     * Closes the backing file. The words are still available in memory.
+     */
+    public synchronized void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ex) {
+                Logger.getLogger(Dictionary.class.getName()).log(Level.WARNING, null, ex);
+            }
+
+            out = null;
+        }
+    }
+
+    private void clearMaps() {
+        this.fastID.clear();
+        this.fastIDreverse.clear();
+        uniqueId.set(0);
+    }
+
+    private void load() throws IOException {
+        final byte[] content = Files.readAllBytes(file.toPath());
+        final ByteArrayInputStream bytes = new ByteArrayInputStream(content);
+        final DataInputStream in = new DataInputStream(bytes);
+
+        if (in.readInt() != FILE_MAGIC) {
+            throw new IOException("The file is not a dictionary!");
+        }
+
+        version = in.readUTF();
+        int validLength = content.length - bytes.available();
+
+        // The process may have died in the middle of an append, so the words
+        // are kept up to the last complete record and the rest is dropped
+        while (bytes.available() > 0) {
+            final int wordId;
+            final String word;
+
+            try {
+                wordId = readVarInt(in);
+                word = in.readUTF();
+            } catch (IOException ex) {
+                break;
+            }
+
+            this.fastID.put(word, wordId);
+            this.fastIDreverse.put(wordId, word);
+            uniqueId.accumulateAndGet(wordId, Math::max);
+            validLength = content.length - bytes.available();
+        }
+
+        if (validLength < content.length) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(validLength);
+            }
+
+            Logger.getLogger(Dictionary.class.getName()).log(Level.WARNING,
+                    "The dictionary file ends with an incomplete record of {0} bytes, probably "
+                    + "from an interrupted write. 1 word was lost and {1} words were kept.",
+                    new Object[]{content.length - validLength, fastIDreverse.size()});
+        }
+
+        out = new DataOutputStream(new FileOutputStream(file, true));
+        Logger.getLogger(Dictionary.class.getName()).log(Level.FINE,
+                "Loaded {0} words of the dictionary", fastIDreverse.size());
+    }
+
+    private void create(final String newVersion) throws IOException {
+        close();
+
+        if (file == null) {
+            return;
+        }
+
+        out = new DataOutputStream(new FileOutputStream(file, false));
+        out.writeInt(FILE_MAGIC);
+        out.writeUTF(newVersion);
+        out.flush();
+        version = newVersion;
+    }
+
+    private void createQuietly(final String newVersion) {
+        try {
+            create(newVersion);
+        } catch (IOException ex) {
+            Logger.getLogger(Dictionary.class.getName()).log(Level.SEVERE,
+                    "The dictionary will not be persisted!", ex);
+            out = null;
+            version = newVersion;
+        }
+    }
+
+    private void append(final int wordId, final String word) {
+        if (out == null) {
+            return;
+        }
+
+        try {
+            writeVarInt(out, wordId);
+            out.writeUTF(word);
+            out.flush();
+        } catch (IOException ex) {
+            Logger.getLogger(Dictionary.class.getName()).log(Level.SEVERE,
+                    "The word could not be persisted: " + word, ex);
+        }
+    }
+
+    private static String newVersion() {
+        return Long.toHexString(System.currentTimeMillis()) + "-"
+                + Integer.toHexString(new Random().nextInt() & 0x7FFFFFFF);
+    }
+
+    private static void writeVarInt(final DataOutputStream out, int value) throws IOException {
+        while ((value & -128) != 0) {
+            out.writeByte((value & 127) | 128);
+            value >>>= 7;
+        }
+
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(final DataInputStream in) throws IOException {
+        int value = 0;
+        int i = 0;
+        int b;
+
+        while (((b = in.readUnsignedByte()) & 0x80) != 0) {
+            value |= (b & 0x7F) << i;
+            i += 7;
+
+            if (i > 28) {
+                throw new IOException("The word id is not a valid varint!");
+            }
+        }
+
+        return value | (b << i);
+    }
 }
@@ -0,0 +1,139 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2021      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : ESA NanoSat MO Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.com.impl.sync;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import org.ccsds.moims.mo.mal.structures.Identifier;
+
+/**
+ * The compression algorithms that can be applied to the Archive Sync stream.
+ * The consumer selects one with the compression field of the retrieveRange
+ * operation. The whole stream of encoded objects is compressed before it is
+ * split into chunks, therefore the consumer must decompress the chunks in
+ * order as a single stream.
+ */
+public enum SyncCompression {
+
+  /**
+   * The stream is sent as it is. Selected by an empty or null identifier.
+   */
+  NONE("") {
+    @Override
+    public OutputStream compress(final OutputStream out) {
+      return out;
+    }
+
+    @Override
+    public InputStream decompress(final InputStream in) {
+      return in;
+    }
+  },
+  /**
+   * The stream is compressed with the zlib Deflate algorithm. The speed level
+   * is used because the provider is running on the spacecraft.
+   */
+  DEFLATE("DEFLATE") {
+    @Override
+    public OutputStream compress(final OutputStream out) {
+      return new DeflaterOutputStream(out, new Deflater(Deflater.BEST_SPEED), BUFFER_SIZE) {
+        @Override
+        public void close() throws IOException {
+          super.close();
+          def.end();
+        }
+      };
+    }
+
+    @Override
+    public InputStream decompress(final InputStream in) {
+      return new InflaterInputStream(in, new Inflater(), BUFFER_SIZE) {
+        @Override
+        public void close() throws IOException {
+          super.close();
+          inf.end();
+        }
+      };
+    }
+  };
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private final String name;
+
+  SyncCompression(final String name) {
+    this.name = name;
+  }
+
+  /**
+   * Returns the name used on the compression field of the retrieveRange
+   * operation.
+   *
+   * @return The name of the algorithm.
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Wraps a stream so that everything written into it is compressed.
+   *
+   * @param out The stream that receives the compressed data.
+   * @return The compressing stream. It must be closed to flush the last block.
+   */
+  public abstract OutputStream compress(OutputStream out);
+
+  /**
+   * Wraps a stream so that everything read from it is decompressed.
+   *
+   * @param in The stream holding the compressed data.
+   * @return The decompressing stream. It must be closed to release the
+   * decompressor.
+   */
+  public abstract InputStream decompress(InputStream in);
+
+  /**
+   * Returns the algorithm selected by the compression field of the
+   * retrieveRange operation.
+   *
+   * @param compression The compression field.
+   * @return The algorithm or null if it is not supported.
+   */
+  public static SyncCompression fromIdentifier(final Identifier compression) {
+    if (compression == null || compression.getValue() == null) {
+      return NONE;
+    }
+
+    for (SyncCompression algorithm : values()) {
+      if (algorithm.name.equalsIgnoreCase(compression.getValue().trim())) {
+        return algorithm;
+      }
+    }
+
+    return null;
+  }
+
+}
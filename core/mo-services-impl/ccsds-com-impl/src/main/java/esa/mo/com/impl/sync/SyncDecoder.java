@@ -0,0 +1,443 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2021      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : ESA NanoSat MO Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.com.impl.sync;
+
+import esa.mo.com.impl.archive.encoding.BinaryDecoder;
+import esa.mo.com.impl.util.COMObjectStructure;
+import esa.mo.helpertools.helpers.HelperMisc;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.ccsds.moims.mo.com.archive.structures.ArchiveDetails;
+import org.ccsds.moims.mo.com.archivesync.consumer.ArchiveSyncStub;
+import org.ccsds.moims.mo.com.structures.ObjectDetails;
+import org.ccsds.moims.mo.com.structures.ObjectId;
+import org.ccsds.moims.mo.com.structures.ObjectKey;
+import org.ccsds.moims.mo.com.structures.ObjectType;
+import org.ccsds.moims.mo.mal.MALContextFactory;
+import org.ccsds.moims.mo.mal.MALElementFactory;
+import org.ccsds.moims.mo.mal.MALException;
+import org.ccsds.moims.mo.mal.structures.Blob;
+import org.ccsds.moims.mo.mal.structures.Element;
+import org.ccsds.moims.mo.mal.structures.FineTime;
+import org.ccsds.moims.mo.mal.structures.Identifier;
+import org.ccsds.moims.mo.mal.structures.IdentifierList;
+import org.ccsds.moims.mo.mal.structures.IntegerList;
+import org.ccsds.moims.mo.mal.structures.StringList;
+import org.ccsds.moims.mo.mal.structures.URI;
+
+/**
+ * Decodes the stream of objects received with the Archive Sync service on the
+ * ground side. The stream is decoded in batches: the headers of a batch are
+ * read sequentially from the stream, its unknown dictionary words are
+ * requested from the provider with a single getDictionary call, and its
+ * bodies are decoded in parallel with the following batches. The objects are
+ * handed over to the listener in the order of the stream as soon as their
+ * batch is decoded, and only a few batches are held in memory at a time.
+ */
+public class SyncDecoder {
+
+    private static final int BATCH_SIZE = 64;
+    private static final int MAX_PENDING_BATCHES = 8;
+
+    /**
+     * Receives the objects of the stream that could not be decoded.
+     */
+    public interface FailureListener {
+
+        /**
+         * Called on the decoding thread, in the order of the stream.
+         *
+         * @param objId The id of the object, or null if the rest of the stream
+         * could not be read.
+         * @param cause The cause of the failure.
+         */
+        void onFailure(Long objId, Exception cause);
+    }
+
+    private final Dictionary dictionary;
+    private final ArchiveSyncStub archiveSyncService;
+    private final IdentifierList domain;
+    private final Executor executor;
+
+    public SyncDecoder(Dictionary dictionary, ArchiveSyncStub archiveSyncService,
+            IdentifierList domain) {
+        this(dictionary, archiveSyncService, domain, ForkJoinPool.commonPool());
+    }
+
+    public SyncDecoder(Dictionary dictionary, ArchiveSyncStub archiveSyncService,
+            IdentifierList domain, Executor executor) {
+        this.dictionary = dictionary;
+        this.archiveSyncService = archiveSyncService;
+        this.domain = domain;
+        this.executor = executor;
+    }
+
+    /**
+     * Decodes all the objects of the stream.
+     *
+     * @param stream The stream of encoded objects, already decompressed.
+     * @return The decoded objects, in the order of the stream.
+     */
+    public ArrayList<COMObjectStructure> decode(final InputStream stream) {
+        final ArrayList<COMObjectStructure> objs = new ArrayList<>();
+        decode(stream, objs::add);
+        return objs;
+    }
+
+    /**
+     * Decodes all the objects of the stream and hands them over to the
+     * listener, in the order of the stream.
+     *
+     * @param stream The stream of encoded objects, already decompressed.
+     * @param listener Receives the decoded objects on the calling thread.
+     * @return The number of decoded objects.
+     */
+    public int decode(final InputStream stream, final Consumer<COMObjectStructure> listener) {
+        return decode(stream, listener, null);
+    }
+
+    /**
+     * Decodes all the objects of the stream and hands them over to the
+     * listener, in the order of the stream.
+     *
+     * @param stream The stream of encoded objects, already decompressed.
+     * @param listener Receives the decoded objects on the calling thread.
+     * @param failureListener Receives the objects that could not be decoded on
+     * the calling thread. Can be null.
+     * @return The number of decoded objects.
+     */
+    public int decode(final InputStream stream, final Consumer<COMObjectStructure> listener,
+            final FailureListener failureListener) {
+        final StreamDecoder bd = new StreamDecoder(new FullReadInputStream(stream));
+        final ArrayDeque<PendingBatch> pending = new ArrayDeque<>();
+        boolean firstBatch = true;
+        int counter = 0;
+
+        try {
+            List<EncodedObject> batch;
+
+            while (!(batch = readHeaders(bd, failureListener)).isEmpty()) {
+                prefetchDictionary(batch, firstBatch);
+                firstBatch = false;
+
+                final List<EncodedObject> toDecode = batch;
+                pending.add(new PendingBatch(toDecode,
+                        CompletableFuture.runAsync(() -> decodeBatch(toDecode), executor)));
+
+                if (pending.size() == MAX_PENDING_BATCHES) {
+                    counter += emit(pending.poll(), listener, failureListener);
+                }
+            }
+
+            while (!pending.isEmpty()) {
+                counter += emit(pending.poll(), listener, failureListener);
+            }
+        } catch (InterruptedException ex) {
+            Logger.getLogger(SyncDecoder.class.getName()).log(Level.SEVERE, null, ex);
+            Thread.currentThread().interrupt();
+        }
+
+        return counter;
+    }
+
+    private int emit(final PendingBatch pending, final Consumer<COMObjectStructure> listener,
+            final FailureListener failureListener) throws InterruptedException {
+        try {
+            pending.decoding.get();
+        } catch (ExecutionException ex) {
+            Logger.getLogger(SyncDecoder.class.getName()).log(Level.SEVERE, null, ex);
+        }
+
+        int counter = 0;
+
+        for (EncodedObject obj : pending.batch) {
+            if (obj.decoded != null) {
+                listener.accept(obj.decoded);
+                counter++;
+            } else if (failureListener != null) {
+                failureListener.onFailure(obj.objId, obj.error);
+            }
+        }
+
+        return counter;
+    }
+
+    private List<EncodedObject> readHeaders(final StreamDecoder bd,
+            final FailureListener failureListener) {
+        final ArrayList<EncodedObject> encoded = new ArrayList<>(BATCH_SIZE);
+
+        while (encoded.size() < BATCH_SIZE && bd.hasRemaining()) {
+            try {
+                final EncodedObject obj = new EncodedObject();
+                obj.wordIdNet = bd.decodeInteger();
+                obj.wordIdProv = bd.decodeInteger();
+                obj.objType = (ObjectType) bd.decodeElement(new ObjectType());
+
+                // --- Source Link ---
+                obj.sourceDomainId = bd.decodeNullableInteger();
+                obj.sourceObjType = (ObjectType) bd.decodeNullableElement(new ObjectType());
+                obj.sourceObjId = bd.decodeNullableLong();
+                // -------------------
+
+                obj.relatedLink = bd.decodeNullableLong();
+                obj.blob = bd.decodeNullableBlob();
+                obj.objId = bd.decodeLong();
+                obj.timestamp = bd.decodeFineTime();
+                encoded.add(obj);
+            } catch (MALException ex) {
+                Logger.getLogger(SyncDecoder.class.getName()).log(Level.SEVERE,
+                        "The stream is truncated!", ex);
+                bd.truncated = true;
+
+                if (failureListener != null) {
+                    failureListener.onFailure(null, ex);
+                }
+            }
+        }
+
+        return encoded;
+    }
+
+    private void prefetchDictionary(final List<EncodedObject> encoded, final boolean checkVersion) {
+        LinkedHashSet<Integer> unknown = unknownWords(encoded);
+
+        if (unknown.isEmpty() && !checkVersion) {
+            return;
+        }
+
+        IntegerList ids = new IntegerList(unknown.size());
+        ids.addAll(unknown);
+
+        // The version of the dictionary of the provider comes after the words,
+        // so it is also requested for the first batch when all the words are known
+        StringList strings = requestWords(ids);
+
+        if (strings == null) {
+            return;
+        }
+
+        final String providerVersion = (strings.size() > ids.size()) ? strings.get(ids.size()) : null;
+
+        if (!dictionary.mirror(providerVersion)) {
+            // The ids of the provider changed, the words that we had are stale
+            Logger.getLogger(SyncDecoder.class.getName()).log(Level.INFO,
+                    "The dictionary of the provider changed to version {0}", providerVersion);
+        }
+
+        defineWords(ids, strings);
+        unknown = unknownWords(encoded);
+
+        if (!unknown.isEmpty()) {
+            // Only after a version change, for the words that were cached
+            ids = new IntegerList(unknown.size());
+            ids.addAll(unknown);
+            strings = requestWords(ids);
+
+            if (strings != null) {
+                defineWords(ids, strings);
+            }
+        }
+    }
+
+    private void defineWords(final IntegerList ids, final StringList strings) {
+        for (int j = 0; j < ids.size(); j++) {
+            dictionary.defineWord(ids.get(j), strings.get(j));
+        }
+
+        Logger.getLogger(SyncDecoder.class.getName()).log(Level.FINE,
+                "Defined {0} words of the dictionary", ids.size());
+    }
+
+    private LinkedHashSet<Integer> unknownWords(final List<EncodedObject> encoded) {
+        final LinkedHashSet<Integer> unknown = new LinkedHashSet<>();
+
+        for (EncodedObject obj : encoded) {
+            addIfUnknown(unknown, obj.wordIdNet);
+            addIfUnknown(unknown, obj.wordIdProv);
+            addIfUnknown(unknown, obj.sourceDomainId);
+        }
+
+        return unknown;
+    }
+
+    private StringList requestWords(final IntegerList ids) {
+        try {
+            return archiveSyncService.getDictionary(ids);
+        } catch (Exception ex) {
+            Logger.getLogger(SyncDecoder.class.getName()).log(Level.SEVERE,
+                    "The dictionary could not be retrieved from the provider!", ex);
+            return null;
+        }
+    }
+
+    private void addIfUnknown(final LinkedHashSet<Integer> unknown, final Integer wordId) {
+        if (wordId != null && !dictionary.exists(wordId)) {
+            unknown.add(wordId);
+        }
+    }
+
+    private void decodeBatch(final List<EncodedObject> batch) {
+        for (EncodedObject obj : batch) {
+            try {
+                obj.decoded = obj.toCOMObject();
+            } catch (Exception ex) {
+                obj.error = ex;
+                Logger.getLogger(SyncDecoder.class.getName()).log(Level.SEVERE,
+                        "The object with id " + obj.objId + " could not be decoded!", ex);
+            }
+        }
+    }
+
+    private static Element decodeBody(final Blob blob) {
+        try {
+            final BinaryDecoder binDec = new BinaryDecoder(blob.getValue());
+            final MALElementFactory eleFact = MALContextFactory.getElementFactoryRegistry().lookupElementFactory(binDec.decodeLong());
+            return binDec.decodeNullableElement((Element) eleFact.createElement());
+        } catch (Exception ex) {
+            Logger.getLogger(SyncDecoder.class.getName()).log(Level.SEVERE,
+                    "The object body could not be decoded! Usually happens when there's "
+                    + "an update in the APIs.", ex);
+        }
+
+        return null;
+    }
+
+    /**
+     * An object of the stream with its header already read and its body still
+     * encoded.
+     */
+    private class EncodedObject {
+
+        private Integer wordIdNet;
+        private Integer wordIdProv;
+        private ObjectType objType;
+        private Integer sourceDomainId;
+        private ObjectType sourceObjType;
+        private Long sourceObjId;
+        private Long relatedLink;
+        private Blob blob;
+        private Long objId;
+        private FineTime timestamp;
+        // Set by the decoding thread, read after its batch is completed
+        private COMObjectStructure decoded;
+        private Exception error;
+
+        private COMObjectStructure toCOMObject() throws Exception {
+            final Element elem = (blob == null) ? null : decodeBody(blob);
+
+            final Identifier network = new Identifier(dictionary.getWord(wordIdNet));
+            final URI providerURI = new URI(dictionary.getWord(wordIdProv));
+            final IdentifierList sourceDomain = (sourceDomainId == null) ? null
+                    : HelperMisc.domainId2domain(dictionary.getWord(sourceDomainId));
+
+            final ObjectId objectId = (sourceObjType == null)
+                    ? null
+                    : new ObjectId(sourceObjType, new ObjectKey(sourceDomain, sourceObjId));
+
+            final ObjectDetails objDetails = new ObjectDetails(relatedLink, objectId);
+            final ArchiveDetails archDetails = new ArchiveDetails(objId, objDetails,
+                    network, timestamp, providerURI);
+
+            return new COMObjectStructure(domain, objType, archDetails, elem);
+        }
+    }
+
+    /**
+     * The objects of a batch and their decoding.
+     */
+    private static class PendingBatch {
+
+        private final List<EncodedObject> batch;
+        private final CompletableFuture<Void> decoding;
+
+        PendingBatch(final List<EncodedObject> batch, final CompletableFuture<Void> decoding) {
+            this.batch = batch;
+            this.decoding = decoding;
+        }
+    }
+
+    /**
+     * A BinaryDecoder over a stream that can tell if the stream still has data
+     * before decoding the next object.
+     */
+    private static class StreamDecoder extends BinaryDecoder {
+
+        private boolean truncated = false;
+
+        StreamDecoder(final InputStream is) {
+            super(is);
+        }
+
+        boolean hasRemaining() {
+            if (truncated) {
+                return false;
+            }
+
+            try {
+                ((BinaryBufferHolder) sourceBuffer).getBuf().checkBuffer(1);
+                return true;
+            } catch (MALException ex) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * The BinaryDecoder reads the stream only once per field, so every read
+     * must fill the buffer unless the end of the stream is reached.
+     */
+    private static class FullReadInputStream extends FilterInputStream {
+
+        FullReadInputStream(final InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            int read = 0;
+
+            while (read < len) {
+                final int n = in.read(b, off + read, len - read);
+
+                if (n < 0) {
+                    break;
+                }
+
+                read += n;
+            }
+
+            return (read == 0 && len != 0) ? -1 : read;
+        }
+    }
+
+}
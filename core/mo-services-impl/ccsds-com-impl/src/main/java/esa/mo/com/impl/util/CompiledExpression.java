@@ -0,0 +1,209 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2021      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : ESA NanoSat MO Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.com.impl.util;
+
+import esa.mo.helpertools.helpers.HelperAttributes;
+import esa.mo.helpertools.helpers.HelperMisc;
+import org.ccsds.moims.mo.com.archive.structures.ExpressionOperator;
+import org.ccsds.moims.mo.mal.structures.Attribute;
+import org.ccsds.moims.mo.mal.structures.Blob;
+import org.ccsds.moims.mo.mal.structures.Element;
+import org.ccsds.moims.mo.mal.structures.Enumeration;
+import org.ccsds.moims.mo.mal.structures.UInteger;
+
+/**
+ * An expression with a fixed operator and right hand side value, compiled
+ * once to be evaluated against many left hand side values. The right hand side
+ * is converted only once and the evaluation goes directly to the comparison of
+ * the respective operator and type (numeric or string).
+ *
+ * The result is always the same as the one of HelperCOM.evaluateExpression
+ * with the same arguments.
+ */
+public abstract class CompiledExpression {
+
+    protected final int operator;
+    protected final Attribute rightHandSide;
+
+    private CompiledExpression(final ExpressionOperator operator, final Attribute rightHandSide) {
+        this.operator = (operator == null) ? -1 : operator.getOrdinal();
+        this.rightHandSide = rightHandSide;
+    }
+
+    /**
+     * Compiles an expression.
+     *
+     * @param operator The operator of the expression
+     * @param rightHandSide The right hand side value of the expression
+     * @return The compiled expression.
+     */
+    public static CompiledExpression compile(final ExpressionOperator operator,
+            final Attribute rightHandSide) {
+        if (operator == null || rightHandSide == null || rightHandSide instanceof Blob) {
+            return new GenericExpression(operator, rightHandSide);
+        }
+
+        if (HelperMisc.isStringAttribute(rightHandSide)) {
+            return new StringExpression(operator, rightHandSide);
+        }
+
+        return new NumericExpression(operator, rightHandSide);
+    }
+
+    /**
+     * Evaluates the expression.
+     *
+     * @param leftHandSide The left hand side value of the expression
+     * @return The boolean value of the evaluation. Null if not evaluated.
+     */
+    public Boolean evaluate(final Element leftHandSide) {
+        if (leftHandSide == null) { // The right hand side is not null
+            switch (operator) {
+                case ExpressionOperator._EQUAL_INDEX:
+                    return false;
+                case ExpressionOperator._DIFFER_INDEX:
+                    return true;
+                default:
+                    return null;
+            }
+        }
+
+        if (leftHandSide instanceof Enumeration) {
+            return this.evaluateNotNull(new UInteger(((Enumeration) leftHandSide).getOrdinal()));
+        }
+
+        return this.evaluateNotNull(leftHandSide);
+    }
+
+    protected abstract Boolean evaluateNotNull(final Element leftHandSide);
+
+    /**
+     * The cases that don't have a specialized comparison: null operators,
+     * null right hand sides and Blobs.
+     */
+    private static final class GenericExpression extends CompiledExpression {
+
+        private final ExpressionOperator expressionOperator;
+
+        private GenericExpression(final ExpressionOperator operator, final Attribute rightHandSide) {
+            super(operator, rightHandSide);
+            this.expressionOperator = operator;
+        }
+
+        @Override
+        public Boolean evaluate(final Element leftHandSide) {
+            return HelperCOM.evaluateExpression(leftHandSide, expressionOperator, rightHandSide);
+        }
+
+        @Override
+        protected Boolean evaluateNotNull(final Element leftHandSide) {
+            return this.evaluate(leftHandSide);
+        }
+    }
+
+    private static final class NumericExpression extends CompiledExpression {
+
+        private final Double rightHandSideDouble;
+
+        private NumericExpression(final ExpressionOperator operator, final Attribute rightHandSide) {
+            super(operator, rightHandSide);
+            this.rightHandSideDouble = HelperAttributes.attribute2double(rightHandSide);
+        }
+
+        @Override
+        protected Boolean evaluateNotNull(final Element leftHandSide) {
+            final Double leftHandSideDouble = HelperAttributes.attribute2double((Attribute) leftHandSide);
+
+            switch (operator) {
+                case ExpressionOperator._EQUAL_INDEX:
+                    return (rightHandSideDouble == null) ? (leftHandSideDouble == null)
+                            : rightHandSideDouble.equals(leftHandSideDouble);
+                case ExpressionOperator._DIFFER_INDEX:
+                    return (rightHandSideDouble == null) ? (leftHandSideDouble != null)
+                            : !rightHandSideDouble.equals(leftHandSideDouble);
+                case ExpressionOperator._GREATER_INDEX:
+                    return leftHandSideDouble > rightHandSideDouble;
+                case ExpressionOperator._GREATER_OR_EQUAL_INDEX:
+                    return leftHandSideDouble >= rightHandSideDouble;
+                case ExpressionOperator._LESS_INDEX:
+                    return leftHandSideDouble < rightHandSideDouble;
+                case ExpressionOperator._LESS_OR_EQUAL_INDEX:
+                    return leftHandSideDouble <= rightHandSideDouble;
+                default:
+                    return null; // CONTAINS and ICONTAINS are only evaluated for strings
+            }
+        }
+    }
+
+    private static final class StringExpression extends CompiledExpression {
+
+        private final String rightHandSideString;
+        private final String rightHandSideLowerCase;
+        private final Double rightHandSideNumber;
+
+        private StringExpression(final ExpressionOperator operator, final Attribute rightHandSide) {
+            super(operator, rightHandSide);
+            this.rightHandSideString = HelperAttributes.attribute2string(rightHandSide);
+            this.rightHandSideLowerCase = (rightHandSideString == null) ? null : rightHandSideString.toLowerCase();
+
+            Double number;
+
+            try {
+                number = Double.parseDouble(rightHandSideString);
+            } catch (RuntimeException ex) {
+                number = null; // Fails on evaluation, after the left hand side is parsed
+            }
+
+            this.rightHandSideNumber = number;
+        }
+
+        private double rightHandSideNumber() {
+            return (rightHandSideNumber != null) ? rightHandSideNumber : Double.parseDouble(rightHandSideString);
+        }
+
+        @Override
+        protected Boolean evaluateNotNull(final Element leftHandSide) {
+            final String leftHandSideString = HelperAttributes.attribute2string(leftHandSide);
+
+            switch (operator) {
+                case ExpressionOperator._EQUAL_INDEX:
+                    return rightHandSideString.equals(leftHandSideString);
+                case ExpressionOperator._DIFFER_INDEX:
+                    return !rightHandSideString.equals(leftHandSideString);
+                case ExpressionOperator._GREATER_INDEX:
+                    return Double.parseDouble(leftHandSideString) > rightHandSideNumber();
+                case ExpressionOperator._GREATER_OR_EQUAL_INDEX:
+                    return Double.parseDouble(leftHandSideString) >= rightHandSideNumber();
+                case ExpressionOperator._LESS_INDEX:
+                    return Double.parseDouble(leftHandSideString) < rightHandSideNumber();
+                case ExpressionOperator._LESS_OR_EQUAL_INDEX:
+                    return Double.parseDouble(leftHandSideString) <= rightHandSideNumber();
+                case ExpressionOperator._CONTAINS_INDEX:
+                    return leftHandSideString.contains(rightHandSideString);
+                case ExpressionOperator._ICONTAINS_INDEX:
+                    return leftHandSideString.toLowerCase().contains(rightHandSideLowerCase);
+                default:
+                    return null;
+            }
+        }
+    }
+
+}
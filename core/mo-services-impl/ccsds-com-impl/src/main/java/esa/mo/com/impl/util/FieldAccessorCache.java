@@ -0,0 +1,150 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2021      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : ESA NanoSat MO Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.com.impl.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache of compiled field accessors used to read the fields of the COM object
+ * bodies by name. The fields are resolved once per class and field name into
+ * a MethodHandle, and the dotted field paths are split only once, so that the
+ * archive filters don't go through the reflection lookups for every object.
+ *
+ * The fields are resolved with the runtime class of each object in the path,
+ * the same way as with getDeclaredField, because the declared type of a
+ * nested field can be abstract.
+ */
+public final class FieldAccessorCache {
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    // Marks the fields that do not exist in a certain class
+    private static final MethodHandle NO_SUCH_FIELD = MethodHandles.constant(Object.class, null);
+
+    private static final ClassValue<ConcurrentHashMap<String, MethodHandle>> ACCESSORS
+            = new ClassValue<ConcurrentHashMap<String, MethodHandle>>() {
+        @Override
+        protected ConcurrentHashMap<String, MethodHandle> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<String, MethodHandle>();
+        }
+    };
+
+    private static final ConcurrentHashMap<String, String[]> PATHS
+            = new ConcurrentHashMap<String, String[]>();
+
+    private FieldAccessorCache() {
+    }
+
+    /**
+     * Returns the value of a field of an object. Nested fields are separated
+     * by dots and the empty parts of the path are skipped.
+     *
+     * @param in The object.
+     * @param fieldName The name of the field.
+     * @return The value of the field.
+     * @throws NoSuchFieldException If the field does not exist or one of the
+     * objects in the path is null.
+     */
+    public static Object getNestedObject(final Object in, final String fieldName)
+            throws NoSuchFieldException {
+        Object obj = in;
+
+        for (String part : getPath(fieldName)) {
+            if (obj == null) {
+                throw new NoSuchFieldException();
+            }
+
+            final MethodHandle getter = getAccessor(obj.getClass(), part);
+
+            if (getter == NO_SUCH_FIELD) {
+                throw new NoSuchFieldException(part);
+            }
+
+            try {
+                obj = getter.invokeExact(obj);
+            } catch (RuntimeException ex) {
+                throw ex;
+            } catch (Error ex) {
+                throw ex;
+            } catch (Throwable ex) {
+                throw new NoSuchFieldException(part);
+            }
+        }
+
+        return obj;
+    }
+
+    private static String[] getPath(final String fieldName) {
+        String[] path = PATHS.get(fieldName);
+
+        if (path == null) {
+            final ArrayList<String> parts = new ArrayList<String>();
+
+            for (String part : fieldName.split("\\.")) {
+                if (!part.isEmpty()) {
+                    parts.add(part);
+                }
+            }
+
+            path = parts.toArray(new String[parts.size()]);
+            PATHS.putIfAbsent(fieldName, path);
+        }
+
+        return path;
+    }
+
+    private static MethodHandle getAccessor(final Class<?> type, final String fieldName) {
+        final ConcurrentHashMap<String, MethodHandle> accessors = ACCESSORS.get(type);
+        MethodHandle getter = accessors.get(fieldName);
+
+        if (getter == null) {
+            getter = compileAccessor(type, fieldName);
+            accessors.putIfAbsent(fieldName, getter);
+        }
+
+        return getter;
+    }
+
+    private static MethodHandle compileAccessor(final Class<?> type, final String fieldName) {
+        try {
+            final Field field = type.getDeclaredField(fieldName);
+            field.setAccessible(true);
+            MethodHandle getter = MethodHandles.lookup().unreflectGetter(field);
+
+            if (Modifier.isStatic(field.getModifiers())) {
+                getter = MethodHandles.dropArguments(getter, 0, Object.class);
+            }
+
+            return getter.asType(GETTER_TYPE);
+        } catch (NoSuchFieldException ex) {
+            return NO_SUCH_FIELD;
+        } catch (IllegalAccessException ex) {
+            return NO_SUCH_FIELD;
+        }
+    }
+
+}
@@ -23,7 +23,6 @@ package esa.mo.com.impl.util;
 import esa.mo.helpertools.connections.ConnectionConsumer;
 import esa.mo.helpertools.helpers.HelperAttributes;
 import esa.mo.helpertools.helpers.HelperMisc;
-import java.lang.reflect.Field;
 import java.util.Random;
 import org.ccsds.moims.mo.com.COMObject;
 import org.ccsds.moims.mo.com.COMService;
@@ -48,6 +47,18 @@ import org.ccsds.moims.mo.mal.structures.UShort;
  */
 public class HelperCOM {
 
+    /**
+     * Compiles an expression with a fixed operator and right hand side value,
+     * to be evaluated against many left hand side values.
+     *
+     * @param operator The operator of the expression
+     * @param rightHandSide The right hand side value of the expression
+     * @return The compiled expression.
+     */
+    public static CompiledExpression compileExpression(ExpressionOperator operator, Attribute rightHandSide) {
+        return CompiledExpression.compile(operator, rightHandSide);
+    }
+
     /**
      * Evaluates an expression from 2 attribute values.
      *
@@ -394,41 +405,17 @@ public class HelperCOM {
         return a.equals(b);
     }
 
+    /**
+     * Returns the value of a field of an object. Nested fields are separated
+     * by dots. The accessors of the fields are compiled once and cached.
+     *
+     * @param in The object.
+     * @param fieldName The name of the field.
+     * @return The value of the field.
+     * @throws NoSuchFieldException If the field does not exist.
+     */
     public static Object getNestedObject(Object in, String fieldName) throws NoSuchFieldException {
-        Object obj = in;
-        String[] parts = fieldName.split("\\.");
-
-        try {
-            for (String part : parts) {
-                if (!part.equals("")) {
-                    obj = HelperCOM.getObjectInsideObject(part, obj);
-                } else {
-                    // Then it is a Enumeration
-//                            obj = ((Enumeration) obj).getNumericValue();
-                }
-            }
-        } catch (IllegalArgumentException ex) {
-            throw new NoSuchFieldException();
-        } catch (IllegalAccessException ex) {
-            throw new NoSuchFieldException();
-        }
-
-        return obj;
-    }
-
-    private static Object getObjectInsideObject(final String fieldName, final Object obj)
-            throws NoSuchFieldException, IllegalArgumentException, IllegalAccessException {
-        if (obj == null) {
-            throw new NoSuchFieldException();
-        }
-
-        if ("".equals(fieldName) && !(obj instanceof Enumeration)) {
-            throw new NoSuchFieldException();
-        }
-
-        Field field = obj.getClass().getDeclaredField(fieldName);
-        field.setAccessible(true);
-        return field.get(obj);
+        return FieldAccessorCache.getNestedObject(in, fieldName);
     }
 
     /**
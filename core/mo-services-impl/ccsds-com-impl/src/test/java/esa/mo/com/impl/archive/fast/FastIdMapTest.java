@@ -0,0 +1,218 @@
+package esa.mo.com.impl.archive.fast;
+
+import esa.mo.com.impl.archive.db.DatabaseBackend;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import javax.persistence.PersistenceException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks that the new ids of the FastIdMap are only published once they are
+ * persisted, and that a failed group commit fails all the ids of its batch.
+ */
+public class FastIdMapTest {
+
+    private static final long TIMEOUT = 10; // s
+
+    private final FakeBackend backend = new FakeBackend();
+    private final AtomicInteger created = new AtomicInteger();
+    private final FastIdMap<String> map = new FastIdMap<String>(backend, (id, value) -> {
+        created.incrementAndGet();
+        return value + "=" + id;
+    });
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testNewIdIsPersistedAndPublished() {
+        final Integer id = map.getOrCreateId("a");
+
+        Assert.assertEquals(id, map.getOrCreateId("a"));
+        Assert.assertEquals("a", map.getValue(id));
+        Assert.assertEquals(1, backend.commits.size());
+        Assert.assertEquals("a=" + id, backend.commits.get(0).get(0));
+    }
+
+    @Test
+    public void testFailedCommitDoesNotPublish() {
+        backend.failures = 1;
+
+        try {
+            map.getOrCreateId("a");
+            Assert.fail("The id was created");
+        } catch (IllegalStateException ex) {
+            Assert.assertTrue(ex.getCause() instanceof PersistenceException);
+        }
+
+        Assert.assertNull(map.getId("a"));
+        Assert.assertNull(map.getValue(1));
+        Assert.assertTrue(backend.rolledBack);
+
+        // The next attempt gets an id that was never handed out
+        final Integer id = map.getOrCreateId("a");
+        Assert.assertEquals(Integer.valueOf(2), id);
+        Assert.assertEquals("a", map.getValue(id));
+    }
+
+    @Test
+    public void testFailedBatchFailsAllItsIds() throws Exception {
+        // The first commit is held, so the next ids are queued in one batch
+        backend.hold = new CountDownLatch(1);
+        final Future<Integer> first = executor.submit(create("a"));
+        Assert.assertTrue(backend.holding.await(TIMEOUT, TimeUnit.SECONDS));
+
+        final List<Future<Integer>> batched = new ArrayList<Future<Integer>>();
+
+        for (String value : new String[]{"b", "c", "d"}) {
+            batched.add(executor.submit(create(value)));
+        }
+
+        waitForQueued(4);
+        backend.failures = 1;
+        backend.failFrom = 1; // Only the second commit fails
+        backend.hold.countDown();
+
+        Assert.assertNotNull(first.get(TIMEOUT, TimeUnit.SECONDS));
+
+        for (Future<Integer> future : batched) {
+            try {
+                future.get(TIMEOUT, TimeUnit.SECONDS);
+                Assert.fail("The id was created");
+            } catch (ExecutionException ex) {
+                Assert.assertTrue(ex.getCause() instanceof IllegalStateException);
+            }
+        }
+
+        Assert.assertEquals(2, backend.attempts);
+        Assert.assertEquals(3, backend.lastBatch.size());
+        Assert.assertNull(map.getId("b"));
+        Assert.assertNull(map.getId("c"));
+        Assert.assertNull(map.getId("d"));
+    }
+
+    private Callable<Integer> create(final String value) {
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return map.getOrCreateId(value);
+            }
+        };
+    }
+
+    /**
+     * The entity of a new id is created right before it is queued.
+     */
+    private void waitForQueued(final int entities) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT * 1000;
+
+        while (created.get() < entities) {
+            Assert.assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+
+        Thread.sleep(100);
+    }
+
+    /**
+     * A backend whose entity manager records the persisted entities, and
+     * whose commits can be held or failed.
+     */
+    private class FakeBackend extends DatabaseBackend {
+
+        private final List<List<Object>> commits = new ArrayList<List<Object>>();
+        private final CountDownLatch holding = new CountDownLatch(1);
+        private volatile CountDownLatch hold;
+        private volatile int failures;
+        private volatile int failFrom;
+        private volatile int attempts;
+        private volatile boolean rolledBack;
+        private volatile List<Object> lastBatch;
+        private List<Object> batch;
+        private boolean active;
+        private EntityManager em;
+
+        @Override
+        public void createEntityManager() {
+            batch = new ArrayList<Object>();
+            em = (EntityManager) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[]{EntityManager.class}, (proxy, method, args) -> {
+                        if ("getTransaction".equals(method.getName())) {
+                            return transaction();
+                        }
+
+                        if ("persist".equals(method.getName())) {
+                            batch.add(args[0]);
+                        }
+
+                        return null;
+                    });
+        }
+
+        @Override
+        public EntityManager getEM() {
+            return em;
+        }
+
+        @Override
+        public void closeEntityManager() {
+            em = null;
+        }
+
+        private EntityTransaction transaction() {
+            return (EntityTransaction) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[]{EntityTransaction.class}, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "begin":
+                                active = true;
+                                return null;
+                            case "isActive":
+                                return active;
+                            case "rollback":
+                                active = false;
+                                rolledBack = true;
+                                return null;
+                            case "commit":
+                                commit();
+                                return null;
+                            default:
+                                return null;
+                        }
+                    });
+        }
+
+        private void commit() throws InterruptedException {
+            final int attempt = attempts++;
+            lastBatch = batch;
+
+            if (hold != null && attempt == 0) {
+                holding.countDown();
+                hold.await(TIMEOUT, TimeUnit.SECONDS);
+            }
+
+            if (failures > 0 && attempt >= failFrom) {
+                failures--;
+                throw new PersistenceException("Commit failed");
+            }
+
+            active = false;
+            commits.add(batch);
+        }
+    }
+}
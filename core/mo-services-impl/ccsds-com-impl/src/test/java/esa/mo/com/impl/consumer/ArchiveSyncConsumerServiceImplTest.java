@@ -0,0 +1,121 @@
+package esa.mo.com.impl.consumer;
+
+import esa.mo.com.impl.sync.SyncCompression;
+import esa.mo.com.impl.util.COMObjectStructure;
+import java.util.ArrayList;
+import java.util.List;
+import org.ccsds.moims.mo.com.archivesync.consumer.ArchiveSyncAdapter;
+import org.ccsds.moims.mo.com.archivesync.consumer.ArchiveSyncStub;
+import org.ccsds.moims.mo.com.structures.ObjectTypeList;
+import org.ccsds.moims.mo.mal.MALHelper;
+import org.ccsds.moims.mo.mal.MALStandardError;
+import org.ccsds.moims.mo.mal.structures.Blob;
+import org.ccsds.moims.mo.mal.structures.FineTime;
+import org.ccsds.moims.mo.mal.structures.Identifier;
+import org.ccsds.moims.mo.mal.structures.UInteger;
+import org.ccsds.moims.mo.mal.structures.UIntegerList;
+import org.ccsds.moims.mo.mal.structures.Union;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks that the retrieval of a range ends when the provider reports that
+ * one of its stages failed, or when the missing chunks cannot be retrieved.
+ */
+public class ArchiveSyncConsumerServiceImplTest {
+
+    private static final long TIMEOUT = 10000; // ms, only reached on failure
+    private static final Long TICKET = 42L;
+
+    @Test(timeout = TIMEOUT)
+    public void testStageFailureEndsRetrieval() {
+        final FakeStub stub = new FakeStub(Stage.RESPONSE_ERROR);
+        Assert.assertEquals(-1, retrieve(stub));
+        Assert.assertTrue(stub.freed);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testUpdateErrorEndsRetrieval() {
+        final FakeStub stub = new FakeStub(Stage.UPDATE_ERROR);
+        Assert.assertEquals(-1, retrieve(stub));
+        Assert.assertTrue(stub.freed);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testMissingChunksEndRetrieval() {
+        final FakeStub stub = new FakeStub(Stage.MISSING_CHUNK);
+        Assert.assertEquals(-1, retrieve(stub));
+        Assert.assertTrue(stub.retrievedAgain > 0);
+        Assert.assertTrue(stub.freed);
+    }
+
+    private static int retrieve(final FakeStub stub) {
+        final ArchiveSyncConsumerServiceImpl consumer = new ArchiveSyncConsumerServiceImpl(null, stub);
+        final List<COMObjectStructure> objs = new ArrayList<COMObjectStructure>();
+        final int decoded = consumer.retrieveCOMObjects(new FineTime(0), new FineTime(1),
+                new ObjectTypeList(), SyncCompression.NONE, objs::add);
+        Assert.assertTrue(objs.isEmpty());
+        return decoded;
+    }
+
+    private enum Stage {
+        RESPONSE_ERROR, UPDATE_ERROR, MISSING_CHUNK
+    }
+
+    /**
+     * Delivers the messages of the provider from another thread, as the MAL
+     * does.
+     */
+    private static class FakeStub extends ArchiveSyncStub {
+
+        private final Stage stage;
+        private volatile boolean freed = false;
+        private volatile int retrievedAgain = 0;
+
+        FakeStub(final Stage stage) {
+            super(null);
+            this.stage = stage;
+        }
+
+        @Override
+        public Long retrieveRange(final FineTime from, final FineTime until,
+                final ObjectTypeList objectTypes, final Identifier compression,
+                final ArchiveSyncAdapter adapter) {
+            final MALStandardError error = new MALStandardError(MALHelper.INTERNAL_ERROR_NUMBER,
+                    new Union("Stage 2: The objects could not be encoded!"));
+
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    adapter.retrieveRangeUpdateReceived(null, new Blob(new byte[]{1}), new UInteger(0), null);
+
+                    switch (stage) {
+                        case RESPONSE_ERROR:
+                            adapter.retrieveRangeResponseErrorReceived(null, error, null);
+                            break;
+                        case UPDATE_ERROR:
+                            adapter.retrieveRangeUpdateErrorReceived(null, error, null);
+                            break;
+                        default:
+                            adapter.retrieveRangeResponseReceived(null, new UInteger(2), null);
+                    }
+                }
+            }).start();
+
+            return TICKET;
+        }
+
+        @Override
+        public void retrieveRangeAgain(final Long transactionTicket,
+                final UIntegerList missingIndexes, final ArchiveSyncAdapter adapter) {
+            Assert.assertEquals(TICKET, transactionTicket);
+            retrievedAgain++;
+        }
+
+        @Override
+        public void free(final Long transactionTicket) {
+            Assert.assertEquals(TICKET, transactionTicket);
+            freed = true;
+        }
+    }
+}
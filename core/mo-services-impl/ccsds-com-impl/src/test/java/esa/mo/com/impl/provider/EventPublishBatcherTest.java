@@ -0,0 +1,222 @@
+package esa.mo.com.impl.provider;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.ccsds.moims.mo.com.structures.ObjectId;
+import org.ccsds.moims.mo.com.structures.ObjectKey;
+import org.ccsds.moims.mo.com.structures.ObjectType;
+import org.ccsds.moims.mo.mal.structures.Identifier;
+import org.ccsds.moims.mo.mal.structures.IdentifierList;
+import org.ccsds.moims.mo.mal.structures.Time;
+import org.ccsds.moims.mo.mal.structures.UInteger;
+import org.ccsds.moims.mo.mal.structures.UIntegerList;
+import org.ccsds.moims.mo.mal.structures.UOctet;
+import org.ccsds.moims.mo.mal.structures.URI;
+import org.ccsds.moims.mo.mal.structures.UShort;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks the batching, the coalescing and the rate limit of the Events
+ * published by the Event service, through the sink of the batcher.
+ */
+public class EventPublishBatcherTest {
+
+    private static final long TIMEOUT = 10000; // ms
+
+    private static final ObjectType OBJ_TYPE = new ObjectType(new UShort(2),
+            new UShort(1), new UOctet((short) 1), new UShort(3));
+    private static final IdentifierList DOMAIN = new IdentifierList();
+
+    static {
+        DOMAIN.add(new Identifier("esa"));
+        DOMAIN.add(new Identifier("test"));
+    }
+
+    private final List<List<EventPublishBatcher.PendingEvent>> batches
+            = new ArrayList<List<EventPublishBatcher.PendingEvent>>();
+    private final EventPublishBatcher.Sink sink = new EventPublishBatcher.Sink() {
+        @Override
+        public void publish(final List<EventPublishBatcher.PendingEvent> events) {
+            synchronized (batches) {
+                batches.add(new ArrayList<EventPublishBatcher.PendingEvent>(events));
+                batches.notifyAll();
+            }
+        }
+    };
+
+    private EventPublishBatcher batcher;
+
+    @After
+    public void tearDown() {
+        if (batcher != null) {
+            batcher.close();
+        }
+
+        System.clearProperty(EventPublishBatcher.WINDOW_PROPERTY);
+        System.clearProperty(EventPublishBatcher.MAX_BATCH_PROPERTY);
+        System.clearProperty(EventPublishBatcher.COALESCE_WINDOW_PROPERTY);
+        System.clearProperty(EventPublishBatcher.RATE_LIMIT_PROPERTY);
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        batcher = new EventPublishBatcher(sink);
+
+        Assert.assertFalse(batcher.isBatching());
+        Assert.assertFalse(batcher.offer(event(1, 1L, 1)));
+
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(batcher.accept(event(i, 1L, 1)));
+        }
+
+        Assert.assertTrue(batches.isEmpty());
+    }
+
+    @Test
+    public void testWindowPublishesTheBatch() throws InterruptedException {
+        System.setProperty(EventPublishBatcher.WINDOW_PROPERTY, "50");
+        batcher = new EventPublishBatcher(sink);
+
+        for (int i = 1; i <= 3; i++) {
+            Assert.assertTrue(batcher.offer(event(i, 1L, 1)));
+        }
+
+        waitForBatches(1);
+        assertObjIds(batches.get(0), 1, 2, 3);
+
+        // The next Event starts a new window
+        Assert.assertTrue(batcher.offer(event(4, 1L, 1)));
+        waitForBatches(2);
+        assertObjIds(batches.get(1), 4);
+    }
+
+    @Test
+    public void testMaxBatchPublishesInOrder() {
+        System.setProperty(EventPublishBatcher.WINDOW_PROPERTY, "60000");
+        System.setProperty(EventPublishBatcher.MAX_BATCH_PROPERTY, "3");
+        batcher = new EventPublishBatcher(sink);
+
+        for (int i = 1; i <= 7; i++) {
+            Assert.assertTrue(batcher.offer(event(i, 1L, 1)));
+        }
+
+        // The full batches are published right away, without the window
+        Assert.assertEquals(2, batches.size());
+        assertObjIds(batches.get(0), 1, 2, 3);
+        assertObjIds(batches.get(1), 4, 5, 6);
+
+        batcher.flush();
+        Assert.assertEquals(3, batches.size());
+        assertObjIds(batches.get(2), 7);
+
+        batcher.flush(); // Nothing left
+        Assert.assertEquals(3, batches.size());
+    }
+
+    @Test
+    public void testMultiBodyEventBypassesTheBatch() {
+        System.setProperty(EventPublishBatcher.WINDOW_PROPERTY, "60000");
+        batcher = new EventPublishBatcher(sink);
+
+        Assert.assertTrue(batcher.offer(event(1, 1L, 1)));
+        Assert.assertTrue(batcher.offer(event(2, 1L, 1)));
+
+        // The batch is published before, so the Events keep their order
+        Assert.assertFalse(batcher.offer(event(3, 1L, 1, 2)));
+        Assert.assertEquals(1, batches.size());
+        assertObjIds(batches.get(0), 1, 2);
+
+        // Events without bodies are batched like a single body
+        Assert.assertTrue(batcher.offer(new EventPublishBatcher.PendingEvent(new URI("uri"), 4L,
+                OBJ_TYPE, null, null, null, new Time(0))));
+        batcher.flush();
+        assertObjIds(batches.get(1), 4);
+    }
+
+    @Test
+    public void testClosePublishesThePendingEvents() {
+        System.setProperty(EventPublishBatcher.WINDOW_PROPERTY, "60000");
+        batcher = new EventPublishBatcher(sink);
+
+        Assert.assertTrue(batcher.offer(event(1, 1L, 1)));
+        Assert.assertTrue(batcher.offer(event(2, 1L, 1)));
+        batcher.close();
+        Assert.assertEquals(1, batches.size());
+        assertObjIds(batches.get(0), 1, 2);
+
+        // Once closed, the Events are no longer held
+        Assert.assertTrue(batcher.offer(event(3, 1L, 1)));
+        Assert.assertEquals(2, batches.size());
+        assertObjIds(batches.get(1), 3);
+    }
+
+    @Test
+    public void testRepeatedEventsAreCoalesced() throws InterruptedException {
+        System.setProperty(EventPublishBatcher.COALESCE_WINDOW_PROPERTY, "200");
+        batcher = new EventPublishBatcher(sink);
+
+        Assert.assertTrue(batcher.accept(event(1, 1L, 1)));
+        Assert.assertFalse("Repeated", batcher.accept(event(2, 1L, 1)));
+        Assert.assertTrue("Other body", batcher.accept(event(3, 1L, 2)));
+        Assert.assertTrue("Other source", batcher.accept(event(4, 2L, 1)));
+
+        Thread.sleep(300);
+        Assert.assertTrue("Window over", batcher.accept(event(5, 1L, 1)));
+        Assert.assertFalse("Repeated", batcher.accept(event(6, 1L, 1)));
+    }
+
+    @Test
+    public void testRateLimitPerSource() throws InterruptedException {
+        System.setProperty(EventPublishBatcher.RATE_LIMIT_PROPERTY, "5");
+        batcher = new EventPublishBatcher(sink);
+
+        // A burst of one second worth of Events is accepted
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(batcher.accept(event(i, 1L, i)));
+        }
+
+        Assert.assertFalse("Rate limited", batcher.accept(event(5, 1L, 5)));
+        Assert.assertTrue("Other source", batcher.accept(event(6, 2L, 6)));
+
+        // The bucket is refilled at 5 Events per second
+        Thread.sleep(300);
+        Assert.assertTrue("Refilled", batcher.accept(event(7, 1L, 7)));
+        Assert.assertFalse("Rate limited", batcher.accept(event(8, 1L, 8)));
+    }
+
+    private void waitForBatches(final int count) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+
+        synchronized (batches) {
+            while (batches.size() < count) {
+                final long remaining = deadline - System.currentTimeMillis();
+                Assert.assertTrue("No batch published", remaining > 0);
+                batches.wait(remaining);
+            }
+        }
+    }
+
+    private static void assertObjIds(final List<EventPublishBatcher.PendingEvent> batch,
+            final long... objIds) {
+        Assert.assertEquals(objIds.length, batch.size());
+
+        for (int i = 0; i < objIds.length; i++) {
+            Assert.assertEquals(Long.valueOf(objIds[i]), batch.get(i).objId);
+        }
+    }
+
+    private static EventPublishBatcher.PendingEvent event(final long objId, final Long sourceObjId,
+            final long... bodies) {
+        final UIntegerList eventBodies = new UIntegerList();
+
+        for (long body : bodies) {
+            eventBodies.add(new UInteger(body));
+        }
+
+        return new EventPublishBatcher.PendingEvent(new URI("uri"), objId, OBJ_TYPE, null,
+                new ObjectId(OBJ_TYPE, new ObjectKey(DOMAIN, sourceObjId)), eventBodies,
+                new Time(System.currentTimeMillis()));
+    }
+}
@@ -0,0 +1,179 @@
+package esa.nmf.test;
+
+import esa.mo.com.impl.archive.db.ArchivePartitions;
+import esa.mo.com.impl.provider.ArchiveChangeListener;
+import esa.mo.com.impl.provider.ArchiveManager;
+import esa.mo.com.impl.provider.ArchiveProviderServiceImpl;
+import esa.mo.helpertools.helpers.HelperTime;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.ccsds.moims.mo.com.archive.structures.ArchiveDetails;
+import org.ccsds.moims.mo.com.archive.structures.ArchiveDetailsList;
+import org.ccsds.moims.mo.com.structures.ObjectDetails;
+import org.ccsds.moims.mo.com.structures.ObjectType;
+import org.ccsds.moims.mo.mal.structures.FineTime;
+import org.ccsds.moims.mo.mal.structures.Identifier;
+import org.ccsds.moims.mo.mal.structures.IdentifierList;
+import org.ccsds.moims.mo.mal.structures.LongList;
+import org.ccsds.moims.mo.mal.structures.UOctet;
+import org.ccsds.moims.mo.mal.structures.URI;
+import org.ccsds.moims.mo.mal.structures.UShort;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the change listeners of the Archive manager are notified when
+ * objects are stored, updated and removed, and when the rolling of the
+ * partitions deletes expired objects or drops an expired partition.
+ */
+public class ArchiveChangeListenerTest {
+
+    private static final String URL_PROPERTY = "esa.nmf.archive.persistence.jdbc.url";
+    private static final long HOUR = 3600L * 1000L * 1000L * 1000L;
+    private static final long TIMEOUT = 10000; // ms
+
+    private static final ObjectType PARTITIONED_TYPE = new ObjectType(new UShort(2),
+            new UShort(2), new UOctet((short) 1), new UShort(5));
+    private static final ObjectType EXPIRED_TYPE = new ObjectType(new UShort(2),
+            new UShort(2), new UOctet((short) 1), new UShort(6));
+    private static final IdentifierList DOMAIN = new IdentifierList();
+
+    static {
+        DOMAIN.add(new Identifier("esa"));
+        DOMAIN.add(new Identifier("test"));
+    }
+
+    private final List<ObjectType> changedTypes = new ArrayList<ObjectType>();
+    private final List<IdentifierList> changedDomains = new ArrayList<IdentifierList>();
+    private final ArchiveChangeListener listener = new ArchiveChangeListener() {
+        @Override
+        public void onObjectsChanged(final ObjectType objType, final IdentifierList domain) {
+            synchronized (changedTypes) {
+                changedTypes.add(objType);
+                changedDomains.add(domain);
+            }
+        }
+    };
+
+    private File file;
+    private ArchiveProviderServiceImpl archive;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("nmf-listener-test", ".db");
+        file.delete();
+        System.setProperty(URL_PROPERTY, "jdbc:sqlite:" + file.getAbsolutePath());
+        System.setProperty(ArchivePartitions.PERIOD_PROPERTY, "1");
+    }
+
+    @After
+    public void tearDown() {
+        if (archive != null) {
+            archive.close();
+        }
+
+        System.clearProperty(URL_PROPERTY);
+        System.clearProperty(ArchivePartitions.PERIOD_PROPERTY);
+        System.clearProperty(ArchivePartitions.RETENTION_PROPERTY);
+        new File(file.getAbsolutePath() + "-wal").delete();
+        new File(file.getAbsolutePath() + "-shm").delete();
+        file.delete();
+    }
+
+    @Test
+    public void testStoreUpdateAndRemoveAreNotified() {
+        final ArchiveManager manager = open("0");
+        final long now = HelperTime.getTimestamp().getValue();
+
+        final LongList objIds = manager.insertEntries(PARTITIONED_TYPE, DOMAIN,
+                details(0L, now), null, null);
+        assertNotified(PARTITIONED_TYPE);
+
+        clearNotifications();
+        manager.updateEntries(PARTITIONED_TYPE, DOMAIN, details(objIds.get(0), now), null, null);
+        assertNotified(PARTITIONED_TYPE);
+
+        clearNotifications();
+        manager.removeEntries(PARTITIONED_TYPE, DOMAIN, objIds, null);
+        assertNotified(PARTITIONED_TYPE);
+    }
+
+    @Test
+    public void testExpiredObjectsAndPartitionsAreNotified() throws InterruptedException {
+        // Moves an object to its partition while all the partitions are kept
+        ArchiveManager manager = open("0");
+        final long now = HelperTime.getTimestamp().getValue();
+        final LongList objIds = manager.insertEntries(PARTITIONED_TYPE, DOMAIN,
+                details(0L, now - 5 * HOUR), null, null);
+        manager.rollPartitions();
+        Assert.assertEquals(objIds, manager.getAllObjIds(PARTITIONED_TYPE, DOMAIN));
+
+        // This one stays in the main table until the next roll
+        manager.insertEntries(EXPIRED_TYPE, DOMAIN, details(0L, now - 10 * HOUR), null, null);
+        manager.removeChangeListener(listener);
+        archive.close();
+
+        // Reopened with a shorter retention, both objects are expired
+        manager = open("2");
+        waitForObjectTypes(manager);
+        clearNotifications();
+        manager.rollPartitions();
+
+        assertNotified(PARTITIONED_TYPE); // Dropped with its partition
+        assertNotified(EXPIRED_TYPE); // Deleted from the main table
+        Assert.assertTrue(manager.getAllObjIds(PARTITIONED_TYPE, DOMAIN).isEmpty());
+        Assert.assertTrue(manager.getAllObjIds(EXPIRED_TYPE, DOMAIN).isEmpty());
+    }
+
+    private ArchiveManager open(final String retention) {
+        System.setProperty(ArchivePartitions.RETENTION_PROPERTY, retention);
+        archive = new ArchiveProviderServiceImpl();
+        final ArchiveManager manager = archive.getArchiveManager();
+        manager.addChangeListener(listener);
+        manager.init();
+        return manager;
+    }
+
+    /**
+     * The object types of the archive are loaded in the background, and the
+     * notifications of the roll need them to report the type.
+     */
+    private static void waitForObjectTypes(final ArchiveManager manager) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+
+        while (manager.getFastObjectType().findObjectTypeId(EXPIRED_TYPE) == null) {
+            Assert.assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static ArchiveDetailsList details(final Long objId, final long timestamp) {
+        final ArchiveDetailsList list = new ArchiveDetailsList();
+        list.add(new ArchiveDetails(objId, new ObjectDetails(null, null), new Identifier("network"),
+                new FineTime(timestamp), new URI("provider")));
+        return list;
+    }
+
+    private void clearNotifications() {
+        synchronized (changedTypes) {
+            changedTypes.clear();
+            changedDomains.clear();
+        }
+    }
+
+    private void assertNotified(final ObjectType objType) {
+        synchronized (changedTypes) {
+            for (int i = 0; i < changedTypes.size(); i++) {
+                if (objType.equals(changedTypes.get(i)) && DOMAIN.equals(changedDomains.get(i))) {
+                    return;
+                }
+            }
+        }
+
+        Assert.fail("No notification for " + objType);
+    }
+}
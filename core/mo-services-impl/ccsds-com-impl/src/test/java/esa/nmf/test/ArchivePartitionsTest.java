@@ -0,0 +1,400 @@
+package esa.nmf.test;
+
+import esa.mo.com.impl.archive.db.ArchivePartitions;
+import esa.mo.com.impl.provider.ArchiveChangeListener;
+import esa.mo.com.impl.provider.ArchiveManager;
+import esa.mo.com.impl.provider.ArchiveProviderServiceImpl;
+import esa.mo.helpertools.helpers.HelperTime;
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.ccsds.moims.mo.com.COMHelper;
+import org.ccsds.moims.mo.com.archive.provider.QueryInteraction;
+import org.ccsds.moims.mo.com.archive.structures.ArchiveDetails;
+import org.ccsds.moims.mo.com.archive.structures.ArchiveDetailsList;
+import org.ccsds.moims.mo.com.archive.structures.ArchiveQuery;
+import org.ccsds.moims.mo.com.archive.structures.ArchiveQueryList;
+import org.ccsds.moims.mo.com.archive.structures.KeysetPaginationFilter;
+import org.ccsds.moims.mo.com.archive.structures.KeysetPaginationFilterList;
+import org.ccsds.moims.mo.com.structures.ObjectDetails;
+import org.ccsds.moims.mo.com.structures.ObjectType;
+import org.ccsds.moims.mo.mal.MALContextFactory;
+import org.ccsds.moims.mo.mal.MALException;
+import org.ccsds.moims.mo.mal.MALHelper;
+import org.ccsds.moims.mo.mal.MALInteractionException;
+import org.ccsds.moims.mo.mal.structures.Blob;
+import org.ccsds.moims.mo.mal.structures.ElementList;
+import org.ccsds.moims.mo.mal.structures.FineTime;
+import org.ccsds.moims.mo.mal.structures.Identifier;
+import org.ccsds.moims.mo.mal.structures.IdentifierList;
+import org.ccsds.moims.mo.mal.structures.LongList;
+import org.ccsds.moims.mo.mal.structures.UInteger;
+import org.ccsds.moims.mo.mal.structures.UOctet;
+import org.ccsds.moims.mo.mal.structures.URI;
+import org.ccsds.moims.mo.mal.structures.UShort;
+import org.ccsds.moims.mo.mal.transport.MALMessage;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks the time-partitioned layout of the archive on a temporary SQLite
+ * file, with buckets of one hour: the objects are moved to the partition of
+ * their bucket, the expired partitions are dropped and notified, the queries
+ * merge the partitions in order and the object ids keep growing once all the
+ * objects of a type were moved out of the main table.
+ */
+public class ArchivePartitionsTest {
+
+    private static final String URL_PROPERTY = "esa.nmf.archive.persistence.jdbc.url";
+    private static final long HOUR = 3600L * 1000L * 1000L * 1000L;
+    private static final long TIMEOUT = 10000; // ms
+    private static final int LIMIT = 3;
+
+    private static final ObjectType OBJ_TYPE = new ObjectType(new UShort(2),
+            new UShort(2), new UOctet((short) 1), new UShort(5));
+    private static final IdentifierList DOMAIN = new IdentifierList();
+
+    static {
+        DOMAIN.add(new Identifier("esa"));
+        DOMAIN.add(new Identifier("test"));
+    }
+
+    private final List<ObjectType> changedTypes = new ArrayList<ObjectType>();
+    private final ArchiveChangeListener listener = new ArchiveChangeListener() {
+        @Override
+        public void onObjectsChanged(final ObjectType objType, final IdentifierList domain) {
+            synchronized (changedTypes) {
+                if (DOMAIN.equals(domain)) {
+                    changedTypes.add(objType);
+                }
+            }
+        }
+    };
+
+    private File file;
+    private ArchiveProviderServiceImpl archive;
+
+    /**
+     * The Archive manager adds the Archive service to the COM area, so the
+     * area is registered first, as the COM services do.
+     */
+    @BeforeClass
+    public static void setUpAreas() throws MALException {
+        if (MALContextFactory.lookupArea(MALHelper.MAL_AREA_NAME, MALHelper.MAL_AREA_VERSION) == null) {
+            MALHelper.init(MALContextFactory.getElementFactoryRegistry());
+        }
+
+        if (MALContextFactory.lookupArea(COMHelper.COM_AREA_NAME, COMHelper.COM_AREA_VERSION) == null) {
+            COMHelper.init(MALContextFactory.getElementFactoryRegistry());
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("nmf-partitions-test", ".db");
+        file.delete();
+        System.setProperty(URL_PROPERTY, "jdbc:sqlite:" + file.getAbsolutePath());
+        System.setProperty(ArchivePartitions.PERIOD_PROPERTY, "1");
+    }
+
+    @After
+    public void tearDown() {
+        close();
+        System.clearProperty(URL_PROPERTY);
+        System.clearProperty(ArchivePartitions.PERIOD_PROPERTY);
+        System.clearProperty(ArchivePartitions.RETENTION_PROPERTY);
+        new File(file.getAbsolutePath() + "-wal").delete();
+        new File(file.getAbsolutePath() + "-shm").delete();
+        file.delete();
+    }
+
+    @Test
+    public void testRollAcrossBucketBoundary() throws SQLException {
+        final ArchiveManager manager = open("0");
+        final long now = now();
+        final long boundary = (Math.floorDiv(now, HOUR) - 3) * HOUR;
+
+        // The last nanosecond of a bucket and the first one of the next
+        final long before = insert(manager, boundary - 1);
+        final long after = insert(manager, boundary);
+        final long current = insert(manager, now);
+        manager.rollPartitions();
+
+        final LongList objIds = manager.getAllObjIds(OBJ_TYPE, DOMAIN);
+        Assert.assertEquals(3, objIds.size());
+        Assert.assertTrue(objIds.containsAll(ids(before, after, current)));
+        close();
+
+        final long bucket = Math.floorDiv(boundary, HOUR);
+        Assert.assertEquals(ids(before), readIds("COMObjectEntity_P" + (bucket - 1)));
+        Assert.assertEquals(ids(after), readIds("COMObjectEntity_P" + bucket));
+        Assert.assertEquals(ids(current), readIds("COMObjectEntity"));
+
+        // A second roll has nothing to move
+        final ArchiveManager reopened = open("0");
+        reopened.rollPartitions();
+        Assert.assertEquals(3, reopened.getAllObjIds(OBJ_TYPE, DOMAIN).size());
+        close();
+        Assert.assertEquals(ids(current), readIds("COMObjectEntity"));
+    }
+
+    @Test
+    public void testExpiredPartitionIsDroppedAndNotified() throws SQLException, InterruptedException {
+        // Moves the objects to their partitions while all the partitions are kept
+        ArchiveManager manager = open("0");
+        final long now = now();
+        final long bucket = Math.floorDiv(now, HOUR);
+        final long expired = insert(manager, now - 5 * HOUR);
+        final long kept = insert(manager, now - HOUR);
+        manager.rollPartitions();
+        close();
+        Assert.assertTrue(tableExists("COMObjectEntity_P" + (bucket - 5)));
+
+        // Reopened with a shorter retention, only the oldest partition has expired
+        manager = open("2");
+        waitForObjectType(manager);
+        clearNotifications();
+        manager.rollPartitions();
+
+        assertNotified();
+        Assert.assertEquals(ids(kept), manager.getAllObjIds(OBJ_TYPE, DOMAIN));
+        Assert.assertFalse(manager.objIdExists(OBJ_TYPE, DOMAIN, expired));
+        close();
+        Assert.assertFalse(tableExists("COMObjectEntity_P" + (bucket - 5)));
+        Assert.assertFalse(tableExists("COMObjectFieldEntity_P" + (bucket - 5)));
+        Assert.assertTrue(tableExists("COMObjectEntity_P" + (bucket - 1)));
+    }
+
+    @Test
+    public void testExpiredObjectsAreDeletedAndNotified() throws SQLException, InterruptedException {
+        ArchiveManager manager = open("2");
+        final long now = now();
+        final long kept = insert(manager, now);
+        insert(manager, now - 5 * HOUR);
+        waitForObjectType(manager);
+        clearNotifications();
+        manager.rollPartitions();
+
+        // Never moved to a partition, it was deleted from the main table
+        assertNotified();
+        Assert.assertEquals(ids(kept), manager.getAllObjIds(OBJ_TYPE, DOMAIN));
+        close();
+        Assert.assertFalse(tableExists("COMObjectEntity_P" + (Math.floorDiv(now, HOUR) - 5)));
+    }
+
+    @Test
+    public void testQueryMergesPartitions() throws MALException, MALInteractionException {
+        final ArchiveManager manager = open("0");
+        final long bucket = Math.floorDiv(now(), HOUR);
+
+        // The buckets hold a different number of objects, so the pages are
+        // cut across the partitions. The objects are not stored in timestamp
+        // order, so the object ids don't follow it.
+        final int[] counts = new int[]{1, 2, 4};
+        final List<Long> timestamps = new ArrayList<Long>();
+
+        for (int i = 0; i < counts.length; i++) {
+            for (int j = 0; j < counts[i]; j++) {
+                timestamps.add((bucket - counts.length + i) * HOUR + (counts[i] - j) * 1000L);
+            }
+        }
+
+        timestamps.add(now() - 1000L);
+        timestamps.add(now() - 2000L);
+        Collections.shuffle(timestamps);
+
+        for (Long timestamp : timestamps) {
+            insert(manager, timestamp);
+        }
+
+        manager.rollPartitions();
+        Collections.sort(timestamps);
+
+        Assert.assertEquals(timestamps, pageTimestamps(true));
+        Collections.reverse(timestamps);
+        Assert.assertEquals(timestamps, pageTimestamps(false));
+    }
+
+    @Test
+    public void testObjIdsGrowAfterAllObjectsWereMoved() throws InterruptedException {
+        ArchiveManager manager = open("0");
+        final long now = now();
+        long max = 0;
+
+        for (int i = 0; i < 5; i++) {
+            max = Math.max(max, insert(manager, now - (i + 2) * HOUR));
+        }
+
+        // The main table has no object of the type once they are moved
+        manager.rollPartitions();
+        close();
+
+        manager = open("0");
+        waitForObjectType(manager);
+        final long objId = insert(manager, now());
+        Assert.assertTrue("The id " + objId + " was reused", objId > max);
+        Assert.assertEquals(6, manager.getAllObjIds(OBJ_TYPE, DOMAIN).size());
+    }
+
+    private ArchiveManager open(final String retention) {
+        System.setProperty(ArchivePartitions.RETENTION_PROPERTY, retention);
+        archive = new ArchiveProviderServiceImpl();
+        final ArchiveManager manager = archive.getArchiveManager();
+        manager.addChangeListener(listener);
+        manager.init();
+        return manager;
+    }
+
+    private void close() {
+        if (archive != null) {
+            archive.close();
+            archive = null;
+        }
+    }
+
+    private List<Long> pageTimestamps(final boolean ascending)
+            throws MALException, MALInteractionException {
+        final List<Long> timestamps = new ArrayList<Long>();
+        Blob token = null;
+        int pages = 0;
+
+        do {
+            final ArchiveQueryList queries = new ArchiveQueryList();
+            queries.add(new ArchiveQuery(DOMAIN, null, null, 0L, null, null, null, ascending, null));
+            final KeysetPaginationFilterList filters = new KeysetPaginationFilterList();
+            filters.add(new KeysetPaginationFilter(new UInteger(LIMIT), token));
+
+            final Response response = new Response();
+            archive.query(false, OBJ_TYPE, queries, filters, response);
+            Assert.assertNotNull("No response", response.objDetails);
+            Assert.assertTrue(response.objDetails.size() <= LIMIT);
+
+            for (ArchiveDetails details : response.objDetails) {
+                timestamps.add(details.getTimestamp().getValue());
+            }
+
+            token = response.continuationToken;
+            pages++;
+            Assert.assertTrue("Too many pages", pages <= 10);
+        } while (token != null);
+
+        return timestamps;
+    }
+
+    private List<Long> readIds(final String table) throws SQLException {
+        final Connection c = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+
+        try {
+            final Statement stmt = c.createStatement();
+            final ResultSet rs = stmt.executeQuery("SELECT objId FROM " + table + " ORDER BY objId");
+            final List<Long> objIds = new ArrayList<Long>();
+
+            while (rs.next()) {
+                objIds.add(rs.getLong(1));
+            }
+
+            return objIds;
+        } finally {
+            c.close();
+        }
+    }
+
+    private boolean tableExists(final String table) throws SQLException {
+        final Connection c = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+
+        try {
+            final ResultSet rs = c.getMetaData().getTables(null, null, table, null);
+            return rs.next();
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * The object types of the archive are loaded in the background, and the
+     * notifications of the roll need them to report the type.
+     */
+    private static void waitForObjectType(final ArchiveManager manager) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+
+        while (manager.getFastObjectType().findObjectTypeId(OBJ_TYPE) == null) {
+            Assert.assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private void clearNotifications() {
+        synchronized (changedTypes) {
+            changedTypes.clear();
+        }
+    }
+
+    private void assertNotified() {
+        synchronized (changedTypes) {
+            Assert.assertTrue("No notification for the removed objects", changedTypes.contains(OBJ_TYPE));
+        }
+    }
+
+    private static long insert(final ArchiveManager manager, final long timestamp) {
+        final ArchiveDetailsList list = new ArchiveDetailsList();
+        list.add(new ArchiveDetails(0L, new ObjectDetails(null, null), new Identifier("network"),
+                new FineTime(timestamp), new URI("provider")));
+        return manager.insertEntries(OBJ_TYPE, DOMAIN, list, null, null).get(0);
+    }
+
+    private static List<Long> ids(final long... objIds) {
+        final List<Long> list = new ArrayList<Long>();
+
+        for (long objId : objIds) {
+            list.add(objId);
+        }
+
+        Collections.sort(list);
+        return list;
+    }
+
+    private static long now() {
+        return HelperTime.getTimestamp().getValue();
+    }
+
+    private static class Response extends QueryInteraction {
+
+        private ArchiveDetailsList objDetails;
+        private Blob continuationToken;
+
+        public Response() {
+            super(null);
+        }
+
+        @Override
+        public MALMessage sendAcknowledgement() {
+            return null;
+        }
+
+        @Override
+        public MALMessage sendUpdate(final ObjectType objType, final IdentifierList domain,
+                final ArchiveDetailsList objDetails, final ElementList objBodies) {
+            Assert.fail("Unexpected update");
+            return null;
+        }
+
+        @Override
+        public MALMessage sendResponse(final ObjectType objType, final IdentifierList domain,
+                final ArchiveDetailsList objDetails, final ElementList objBodies,
+                final Blob continuationToken) {
+            this.objDetails = (objDetails == null) ? new ArchiveDetailsList() : objDetails;
+            this.continuationToken = continuationToken;
+            return null;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package esa.nmf.test;
+
+import esa.mo.com.impl.sync.ChunkStore;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks that the chunks of the ChunkStore are served with their index both
+ * from memory and from the spill file, and that the spill file is deleted.
+ */
+public class ChunkStoreTest {
+
+    private static final String SPILL_FILE_PREFIX = "nmf-archivesync-";
+
+    @Test
+    public void testChunksInMemory() throws IOException {
+        final Set<String> before = spillFiles();
+        final ChunkStore store = new ChunkStore(1000);
+
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(i, store.append(chunk(i, 100)));
+        }
+
+        Assert.assertEquals(10, store.size());
+        Assert.assertTrue(newSpillFiles(before).isEmpty());
+
+        for (int i = 0; i < 10; i++) {
+            Assert.assertArrayEquals(chunk(i, 100), store.get(i));
+        }
+
+        store.close();
+    }
+
+    @Test
+    public void testChunksSpilledToFile() throws IOException {
+        final Set<String> before = spillFiles();
+        final ChunkStore store = new ChunkStore(250);
+
+        // The chunks have different sizes, the third one does not fit in memory
+        for (int i = 0; i < 20; i++) {
+            Assert.assertEquals(i, store.append(chunk(i, 100 + i)));
+        }
+
+        Assert.assertEquals(20, store.size());
+        Assert.assertEquals(1, newSpillFiles(before).size());
+
+        // Read in any order, as for the retransmissions
+        for (int i = 19; i >= 0; i--) {
+            Assert.assertArrayEquals(chunk(i, 100 + i), store.get(i));
+        }
+
+        Assert.assertArrayEquals(chunk(7, 107), store.get(7));
+
+        store.close();
+        Assert.assertTrue(newSpillFiles(before).isEmpty());
+    }
+
+    @Test
+    public void testUnknownIndex() throws IOException {
+        final ChunkStore store = new ChunkStore(1000);
+        store.append(chunk(0, 10));
+
+        assertGetFails(store, -1);
+        assertGetFails(store, 1);
+        store.close();
+    }
+
+    @Test
+    public void testClosedStore() throws IOException {
+        final ChunkStore store = new ChunkStore(0);
+        store.append(chunk(0, 10));
+        store.close();
+
+        assertGetFails(store, 0);
+
+        try {
+            store.append(chunk(1, 10));
+            Assert.fail("A chunk was stored after the close");
+        } catch (IOException ex) {
+            // Expected
+        }
+    }
+
+    private static void assertGetFails(final ChunkStore store, final int index) {
+        try {
+            store.get(index);
+            Assert.fail("The chunk " + index + " was returned");
+        } catch (IOException ex) {
+            // Expected
+        }
+    }
+
+    private static byte[] chunk(final int index, final int length) {
+        final byte[] chunk = new byte[length];
+        Arrays.fill(chunk, (byte) index);
+        chunk[0] = (byte) length;
+        return chunk;
+    }
+
+    private static Set<String> spillFiles() {
+        final Set<String> files = new HashSet<String>();
+        final File[] list = new File(System.getProperty("java.io.tmpdir")).listFiles();
+
+        if (list != null) {
+            for (File file : list) {
+                if (file.getName().startsWith(SPILL_FILE_PREFIX)) {
+                    files.add(file.getName());
+                }
+            }
+        }
+
+        return files;
+    }
+
+    private static Set<String> newSpillFiles(final Set<String> before) {
+        final Set<String> files = spillFiles();
+        files.removeAll(before);
+        return files;
+    }
+}
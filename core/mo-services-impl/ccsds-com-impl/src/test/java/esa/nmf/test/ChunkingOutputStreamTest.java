@@ -0,0 +1,78 @@
+package esa.nmf.test;
+
+import esa.mo.com.impl.sync.ChunkingOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks how the ChunkingOutputStream cuts the stream into chunks.
+ */
+public class ChunkingOutputStreamTest {
+
+    private final List<byte[]> chunks = new ArrayList<byte[]>();
+
+    @Test
+    public void testLastChunkIsTrimmed() throws IOException {
+        final ChunkingOutputStream out = new ChunkingOutputStream(4, chunks::add);
+        out.write(bytes(0, 6));
+        out.write(6);
+        out.write(bytes(7, 3), 1, 2); // 8 and 9
+        Assert.assertEquals(2, chunks.size());
+
+        out.close();
+        out.close();
+
+        Assert.assertEquals(3, chunks.size());
+        Assert.assertArrayEquals(new byte[]{0, 1, 2, 3}, chunks.get(0));
+        Assert.assertArrayEquals(new byte[]{4, 5, 6, 8}, chunks.get(1));
+        Assert.assertArrayEquals(new byte[]{9}, chunks.get(2));
+    }
+
+    @Test
+    public void testEmptyLastChunk() throws IOException {
+        final ChunkingOutputStream out = new ChunkingOutputStream(4, chunks::add);
+        out.write(bytes(0, 8));
+        out.close();
+
+        // The consumer always receives a last chunk
+        Assert.assertEquals(3, chunks.size());
+        Assert.assertEquals(0, chunks.get(2).length);
+    }
+
+    @Test
+    public void testChunksAreNotReused() throws IOException {
+        final ChunkingOutputStream out = new ChunkingOutputStream(2, chunks::add);
+        out.write(bytes(0, 4));
+        out.close();
+
+        Assert.assertArrayEquals(new byte[]{0, 1}, chunks.get(0));
+        Assert.assertArrayEquals(new byte[]{2, 3}, chunks.get(1));
+        Assert.assertNotSame(chunks.get(0), chunks.get(1));
+    }
+
+    @Test(expected = IOException.class)
+    public void testSinkFailure() throws IOException {
+        final ChunkingOutputStream out = new ChunkingOutputStream(2, chunk -> {
+            throw new IOException("Expected by the test");
+        });
+        out.write(bytes(0, 2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidChunkSize() {
+        new ChunkingOutputStream(0, chunks::add);
+    }
+
+    private static byte[] bytes(final int first, final int length) {
+        final byte[] bytes = new byte[length];
+
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (first + i);
+        }
+
+        return bytes;
+    }
+}
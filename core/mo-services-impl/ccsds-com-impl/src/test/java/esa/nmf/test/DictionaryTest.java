@@ -0,0 +1,104 @@
+package esa.nmf.test;
+
+import esa.mo.com.impl.sync.Dictionary;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the persistence of the Archive Sync dictionary, including the
+ * recovery of a file that was cut in the middle of an append.
+ */
+public class DictionaryTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("nmf-dictionary-test", ".dict");
+        Assert.assertTrue(file.delete());
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testWordsAndVersionSurviveRestart() throws Exception {
+        final Dictionary dictionary = new Dictionary(file);
+        final Integer id1 = dictionary.getWordId("network");
+        final Integer id2 = dictionary.getWordId("provider");
+        final String version = dictionary.getVersion();
+        dictionary.close();
+
+        final Dictionary reloaded = new Dictionary(file);
+        Assert.assertEquals(version, reloaded.getVersion());
+        Assert.assertEquals("network", reloaded.getWord(id1));
+        Assert.assertEquals("provider", reloaded.getWord(id2));
+        Assert.assertEquals(Integer.valueOf(id2 + 1), reloaded.getWordId("domain"));
+        reloaded.close();
+    }
+
+    @Test
+    public void testVersionIsNotAWord() throws Exception {
+        final Dictionary dictionary = new Dictionary();
+        Assert.assertNotNull(dictionary.getVersion());
+        Assert.assertFalse(dictionary.exists(0));
+        dictionary.defineWord(0, "zero");
+        Assert.assertEquals("zero", dictionary.getWord(0));
+    }
+
+    @Test
+    public void testTornRecordIsDropped() throws Exception {
+        final Dictionary dictionary = new Dictionary(file);
+        final Integer id1 = dictionary.getWordId("network");
+        final Integer id2 = dictionary.getWordId("provider");
+        final String version = dictionary.getVersion();
+        dictionary.close();
+        final long complete = file.length();
+
+        // Simulates a process that died in the middle of the next append
+        final Dictionary torn = new Dictionary(file);
+        torn.getWordId("a long word that will be cut");
+        torn.close();
+
+        for (long cut = complete + 1; cut < file.length(); cut++) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(cut);
+            }
+
+            final Dictionary reloaded = new Dictionary(file);
+            Assert.assertEquals(version, reloaded.getVersion());
+            Assert.assertEquals("network", reloaded.getWord(id1));
+            Assert.assertEquals("provider", reloaded.getWord(id2));
+            Assert.assertFalse(reloaded.exists(id2 + 1));
+            Assert.assertEquals(complete, file.length());
+
+            // The next append lands right after the last complete record
+            Assert.assertEquals(Integer.valueOf(id2 + 1), reloaded.getWordId("domain"));
+            reloaded.close();
+
+            final Dictionary again = new Dictionary(file);
+            Assert.assertEquals("domain", again.getWord(id2 + 1));
+            again.close();
+
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(complete);
+            }
+
+            final Dictionary refill = new Dictionary(file);
+            refill.getWordId("a long word that will be cut");
+            refill.close();
+        }
+    }
+
+    @Test(expected = Exception.class)
+    public void testUnknownWord() throws Exception {
+        new Dictionary().getWord(0);
+    }
+}
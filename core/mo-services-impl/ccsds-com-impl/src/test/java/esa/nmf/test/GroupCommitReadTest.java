@@ -0,0 +1,90 @@
+package esa.nmf.test;
+
+import esa.mo.com.impl.provider.ArchiveManager;
+import esa.mo.com.impl.provider.ArchiveProviderServiceImpl;
+import esa.mo.helpertools.helpers.HelperTime;
+import java.io.File;
+import java.io.IOException;
+import org.ccsds.moims.mo.com.archive.structures.ArchiveDetails;
+import org.ccsds.moims.mo.com.archive.structures.ArchiveDetailsList;
+import org.ccsds.moims.mo.com.structures.ObjectDetails;
+import org.ccsds.moims.mo.com.structures.ObjectType;
+import org.ccsds.moims.mo.mal.structures.FineTime;
+import org.ccsds.moims.mo.mal.structures.Identifier;
+import org.ccsds.moims.mo.mal.structures.IdentifierList;
+import org.ccsds.moims.mo.mal.structures.LongList;
+import org.ccsds.moims.mo.mal.structures.UOctet;
+import org.ccsds.moims.mo.mal.structures.URI;
+import org.ccsds.moims.mo.mal.structures.UShort;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that a read that must see the pending stores of the group-commit
+ * writer flushes them instead of waiting for the maximum delay.
+ */
+public class GroupCommitReadTest {
+
+    private static final String URL_PROPERTY = "esa.nmf.archive.persistence.jdbc.url";
+    private static final String MAX_DELAY_PROPERTY = "esa.nmf.archive.groupcommit.maxdelay";
+    private static final long MAX_DELAY = 5000; // ms
+
+    private static final ObjectType OBJ_TYPE = new ObjectType(new UShort(2),
+            new UShort(2), new UOctet((short) 1), new UShort(5));
+    private static final IdentifierList DOMAIN = new IdentifierList();
+
+    static {
+        DOMAIN.add(new Identifier("esa"));
+        DOMAIN.add(new Identifier("test"));
+    }
+
+    private File file;
+    private ArchiveProviderServiceImpl archive;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("nmf-groupcommit-test", ".db");
+        file.delete();
+        System.setProperty(URL_PROPERTY, "jdbc:sqlite:" + file.getAbsolutePath());
+        System.setProperty(MAX_DELAY_PROPERTY, String.valueOf(MAX_DELAY));
+    }
+
+    @After
+    public void tearDown() {
+        if (archive != null) {
+            archive.close();
+        }
+
+        System.clearProperty(URL_PROPERTY);
+        System.clearProperty(MAX_DELAY_PROPERTY);
+        new File(file.getAbsolutePath() + "-wal").delete();
+        new File(file.getAbsolutePath() + "-shm").delete();
+        file.delete();
+    }
+
+    @Test
+    public void testReadFlushesPendingStores() {
+        archive = new ArchiveProviderServiceImpl();
+        final ArchiveManager manager = archive.getArchiveManager();
+        manager.init();
+
+        for (int i = 0; i < 5; i++) {
+            final LongList objIds = manager.insertEntries(OBJ_TYPE, DOMAIN, details(), null, null);
+            final long start = System.currentTimeMillis();
+            final LongList stored = manager.getAllObjIds(OBJ_TYPE, DOMAIN);
+            final long elapsed = System.currentTimeMillis() - start;
+
+            Assert.assertTrue(stored.containsAll(objIds));
+            Assert.assertTrue("The read waited " + elapsed + " ms", elapsed < MAX_DELAY / 2);
+        }
+    }
+
+    private static ArchiveDetailsList details() {
+        final ArchiveDetailsList list = new ArchiveDetailsList();
+        list.add(new ArchiveDetails(0L, new ObjectDetails(null, null), new Identifier("network"),
+                new FineTime(HelperTime.getTimestamp().getValue()), new URI("provider")));
+        return list;
+    }
+}
@@ -0,0 +1,129 @@
+package esa.nmf.test;
+
+import esa.mo.com.impl.util.CompiledExpression;
+import esa.mo.com.impl.util.FieldAccessorCache;
+import esa.mo.com.impl.util.HelperCOM;
+import org.ccsds.moims.mo.com.archive.structures.ExpressionOperator;
+import org.ccsds.moims.mo.com.structures.ObjectId;
+import org.ccsds.moims.mo.com.structures.ObjectKey;
+import org.ccsds.moims.mo.com.structures.ObjectType;
+import org.ccsds.moims.mo.mal.structures.Attribute;
+import org.ccsds.moims.mo.mal.structures.Blob;
+import org.ccsds.moims.mo.mal.structures.Element;
+import org.ccsds.moims.mo.mal.structures.Identifier;
+import org.ccsds.moims.mo.mal.structures.IdentifierList;
+import org.ccsds.moims.mo.mal.structures.UInteger;
+import org.ccsds.moims.mo.mal.structures.UOctet;
+import org.ccsds.moims.mo.mal.structures.UShort;
+import org.ccsds.moims.mo.mal.structures.Union;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks that the compiled expressions and field accessors of HelperCOM
+ * behave like the interpreted evaluation and the reflection lookups.
+ */
+public class HelperCOMTest {
+
+    private static final ExpressionOperator[] OPERATORS = new ExpressionOperator[]{
+        ExpressionOperator.EQUAL, ExpressionOperator.DIFFER,
+        ExpressionOperator.GREATER, ExpressionOperator.GREATER_OR_EQUAL,
+        ExpressionOperator.LESS, ExpressionOperator.LESS_OR_EQUAL,
+        ExpressionOperator.CONTAINS, ExpressionOperator.ICONTAINS, null
+    };
+
+    private static final Attribute[] VALUES = new Attribute[]{
+        null, new UInteger(2), new UInteger(5), new Union(2), new Union(-3L),
+        new Union(2.5), new Union(2.0f), new Union((short) 7), new Union(true),
+        new Union("2"), new Union("abc"), new Union("ABCD"), new Identifier("ab"),
+        new Blob(new byte[]{1, 2}), new Blob(new byte[]{1, 2})
+    };
+
+    @Test
+    public void testCompiledExpressionMatchesEvaluateExpression() {
+        final Element[] leftHandSides = new Element[VALUES.length + 1];
+        System.arraycopy(VALUES, 0, leftHandSides, 0, VALUES.length);
+        leftHandSides[VALUES.length] = ExpressionOperator.GREATER; // An Enumeration with ordinal 2
+
+        for (ExpressionOperator operator : OPERATORS) {
+            for (Attribute rightHandSide : VALUES) {
+                final CompiledExpression expression = HelperCOM.compileExpression(operator, rightHandSide);
+
+                for (Element leftHandSide : leftHandSides) {
+                    final String message = leftHandSide + " " + operator + " " + rightHandSide;
+                    Assert.assertEquals(message,
+                            interpreted(leftHandSide, operator, rightHandSide),
+                            compiled(expression, leftHandSide));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEnumerationIsComparedByOrdinal() {
+        final CompiledExpression expression = HelperCOM.compileExpression(
+                ExpressionOperator.EQUAL, new UInteger(ExpressionOperator.GREATER.getOrdinal()));
+
+        Assert.assertEquals(Boolean.TRUE, expression.evaluate(ExpressionOperator.GREATER));
+        Assert.assertEquals(Boolean.FALSE, expression.evaluate(ExpressionOperator.LESS));
+    }
+
+    @Test
+    public void testNestedFieldsMatchReflection() throws Exception {
+        final ObjectType objType = new ObjectType(new UShort(4), new UShort(2), new UOctet((short) 1), new UShort(3));
+        final IdentifierList domain = new IdentifierList();
+        domain.add(new Identifier("esa"));
+        final ObjectId objId = new ObjectId(objType, new ObjectKey(domain, 42L));
+
+        Assert.assertEquals(42L, FieldAccessorCache.getNestedObject(objId, "key.instId"));
+        Assert.assertSame(domain, FieldAccessorCache.getNestedObject(objId, "key.domain"));
+        Assert.assertEquals(new UShort(3), FieldAccessorCache.getNestedObject(objId, "type.number"));
+        // The empty parts of the path are skipped
+        Assert.assertSame(objId, FieldAccessorCache.getNestedObject(objId, ""));
+        Assert.assertEquals(42L, FieldAccessorCache.getNestedObject(objId, ".key..instId"));
+        // The same path on a different class is resolved on its runtime class
+        Assert.assertEquals(7L, FieldAccessorCache.getNestedObject(new ObjectKey(domain, 7L), "instId"));
+    }
+
+    @Test(expected = NoSuchFieldException.class)
+    public void testMissingFieldThrows() throws Exception {
+        FieldAccessorCache.getNestedObject(new ObjectKey(new IdentifierList(), 1L), "missing");
+    }
+
+    @Test(expected = NoSuchFieldException.class)
+    public void testMissingFieldIsCachedAndStillThrows() throws Exception {
+        final ObjectKey key = new ObjectKey(new IdentifierList(), 1L);
+
+        try {
+            FieldAccessorCache.getNestedObject(key, "instId.missing");
+            Assert.fail("The field does not exist in a Long");
+        } catch (NoSuchFieldException ex) {
+            // Expected, the second lookup goes through the cache
+        }
+
+        FieldAccessorCache.getNestedObject(key, "instId.missing");
+    }
+
+    @Test(expected = NoSuchFieldException.class)
+    public void testNullInThePathThrows() throws Exception {
+        FieldAccessorCache.getNestedObject(new ObjectId(null, null), "key.instId");
+    }
+
+    private static String interpreted(final Element leftHandSide, final ExpressionOperator operator,
+            final Attribute rightHandSide) {
+        try {
+            return String.valueOf(HelperCOM.evaluateExpression(leftHandSide, operator, rightHandSide));
+        } catch (RuntimeException ex) {
+            return ex.getClass().getName();
+        }
+    }
+
+    private static String compiled(final CompiledExpression expression, final Element leftHandSide) {
+        try {
+            return String.valueOf(expression.evaluate(leftHandSide));
+        } catch (RuntimeException ex) {
+            return ex.getClass().getName();
+        }
+    }
+
+}
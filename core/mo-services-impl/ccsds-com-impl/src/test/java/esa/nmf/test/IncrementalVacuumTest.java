@@ -0,0 +1,121 @@
+package esa.nmf.test;
+
+import esa.mo.com.impl.archive.db.IncrementalVacuum;
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the free pages of an SQLite archive are reclaimed in steps, and
+ * that an archive with objects is only converted to incremental vacuum when
+ * asked to.
+ */
+public class IncrementalVacuumTest {
+
+    private File file;
+    private Connection c;
+
+    @Before
+    public void setUp() throws IOException, SQLException {
+        file = File.createTempFile("nmf-vacuum-test", ".db");
+        c = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+
+        try (Statement stmt = c.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE COMObjectEntity (objId INTEGER PRIMARY KEY, obj BLOB)");
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        c.close();
+        file.delete();
+    }
+
+    @Test
+    public void testEmptyDatabaseIsConverted() throws SQLException {
+        Assert.assertTrue(IncrementalVacuum.enable(c, false));
+        Assert.assertTrue(IncrementalVacuum.isEnabled(c));
+    }
+
+    @Test
+    public void testDatabaseWithObjectsIsOnlyConvertedOnRequest() throws SQLException {
+        insert(10);
+        Assert.assertFalse(IncrementalVacuum.enable(c, false));
+        Assert.assertFalse(IncrementalVacuum.isEnabled(c));
+        Assert.assertTrue(IncrementalVacuum.enable(c, true));
+        Assert.assertEquals(10, count());
+    }
+
+    @Test
+    public void testFreePagesAreReclaimedInSteps() throws SQLException {
+        Assert.assertTrue(IncrementalVacuum.enable(c, false));
+        insert(3000);
+
+        try (Statement stmt = c.createStatement()) {
+            stmt.executeUpdate("DELETE FROM COMObjectEntity WHERE objId > 500");
+        }
+
+        final long pagesBefore = pragma("page_count");
+        final long freeBefore = pragma("freelist_count");
+        Assert.assertTrue(freeBefore > 64);
+
+        Assert.assertTrue(IncrementalVacuum.step(c, 64));
+        Assert.assertEquals(freeBefore - 64, pragma("freelist_count"));
+
+        int steps = 1;
+        boolean more = true;
+
+        while (more) {
+            more = IncrementalVacuum.step(c, 64);
+            steps++;
+        }
+
+        Assert.assertEquals((freeBefore + 63) / 64, steps + 0L);
+        Assert.assertEquals(0, pragma("freelist_count"));
+        Assert.assertEquals(pagesBefore - freeBefore, pragma("page_count"));
+        Assert.assertEquals(500, count());
+    }
+
+    private void insert(final int n) throws SQLException {
+        c.setAutoCommit(false);
+
+        try (PreparedStatement stmt = c.prepareStatement(
+                "INSERT INTO COMObjectEntity (objId, obj) VALUES (?, ?)")) {
+            for (int i = 1; i <= n; i++) {
+                stmt.setInt(1, i);
+                stmt.setBytes(2, new byte[256]);
+                stmt.addBatch();
+            }
+
+            stmt.executeBatch();
+        }
+
+        c.commit();
+        c.setAutoCommit(true);
+    }
+
+    private long count() throws SQLException {
+        try (Statement stmt = c.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM COMObjectEntity")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private long pragma(final String name) throws SQLException {
+        try (Statement stmt = c.createStatement();
+                ResultSet rs = stmt.executeQuery("PRAGMA " + name)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package esa.nmf.test;
+
+import esa.mo.com.impl.provider.ArchiveManager;
+import esa.mo.com.impl.provider.ArchiveProviderServiceImpl;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.ccsds.moims.mo.com.COMHelper;
+import org.ccsds.moims.mo.com.archive.provider.QueryInteraction;
+import org.ccsds.moims.mo.com.archive.structures.ArchiveDetails;
+import org.ccsds.moims.mo.com.archive.structures.ArchiveDetailsList;
+import org.ccsds.moims.mo.com.archive.structures.ArchiveQuery;
+import org.ccsds.moims.mo.com.archive.structures.ArchiveQueryList;
+import org.ccsds.moims.mo.com.archive.structures.KeysetPaginationFilter;
+import org.ccsds.moims.mo.com.archive.structures.KeysetPaginationFilterList;
+import org.ccsds.moims.mo.com.structures.ObjectDetails;
+import org.ccsds.moims.mo.com.structures.ObjectType;
+import org.ccsds.moims.mo.mal.MALException;
+import org.ccsds.moims.mo.mal.MALInteractionException;
+import org.ccsds.moims.mo.mal.structures.Blob;
+import org.ccsds.moims.mo.mal.structures.ElementList;
+import org.ccsds.moims.mo.mal.structures.FineTime;
+import org.ccsds.moims.mo.mal.structures.Identifier;
+import org.ccsds.moims.mo.mal.structures.IdentifierList;
+import org.ccsds.moims.mo.mal.structures.UInteger;
+import org.ccsds.moims.mo.mal.structures.UOctet;
+import org.ccsds.moims.mo.mal.structures.URI;
+import org.ccsds.moims.mo.mal.structures.UShort;
+import org.ccsds.moims.mo.mal.transport.MALMessage;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Pages through the archive with the KeysetPaginationFilter, using the
+ * continuation tokens returned by the provider.
+ */
+public class KeysetPaginationTest {
+
+    private static final String URL_PROPERTY = "esa.nmf.archive.persistence.jdbc.url";
+    private static final int OBJECTS = 20;
+    private static final int LIMIT = 3;
+
+    private static final ObjectType OBJ_TYPE = new ObjectType(new UShort(2),
+            new UShort(2), new UOctet((short) 1), new UShort(5));
+    private static final IdentifierList DOMAIN = new IdentifierList();
+
+    static {
+        DOMAIN.add(new Identifier("esa"));
+        DOMAIN.add(new Identifier("test"));
+    }
+
+    private File file;
+    private ArchiveProviderServiceImpl archive;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("nmf-keyset-test", ".db");
+        file.delete();
+        System.setProperty(URL_PROPERTY, "jdbc:sqlite:" + file.getAbsolutePath());
+
+        archive = new ArchiveProviderServiceImpl();
+        final ArchiveManager manager = archive.getArchiveManager();
+        manager.init();
+
+        // Groups of objects share the same timestamp, so the pages are cut
+        // in the middle of a timestamp
+        final ArchiveDetailsList details = new ArchiveDetailsList();
+
+        for (int i = 0; i < OBJECTS; i++) {
+            details.add(new ArchiveDetails(0L, new ObjectDetails(null, null), new Identifier("network"),
+                    new FineTime(1000L * (OBJECTS - i) / 4), new URI("provider")));
+        }
+
+        manager.insertEntries(OBJ_TYPE, DOMAIN, details, null, null);
+    }
+
+    @After
+    public void tearDown() {
+        archive.close();
+        System.clearProperty(URL_PROPERTY);
+        new File(file.getAbsolutePath() + "-wal").delete();
+        new File(file.getAbsolutePath() + "-shm").delete();
+        file.delete();
+    }
+
+    @Test
+    public void testAscendingPages() throws MALException, MALInteractionException {
+        checkPages(null);
+        checkPages(true);
+    }
+
+    @Test
+    public void testDescendingPages() throws MALException, MALInteractionException {
+        checkPages(false);
+    }
+
+    @Test
+    public void testSortOnFieldIsRejected() throws MALException {
+        final ArchiveQuery query = query(true);
+        query.setSortFieldName("timestamp");
+        assertInvalid(query, new KeysetPaginationFilter(new UInteger(LIMIT), null));
+    }
+
+    @Test
+    public void testClientTokenIsRejected() throws MALException {
+        assertInvalid(query(null), new KeysetPaginationFilter(new UInteger(LIMIT),
+                new Blob(new byte[]{1, 2, 3})));
+    }
+
+    private void checkPages(final Boolean sortOrder) throws MALException, MALInteractionException {
+        final List<ArchiveDetails> all = new ArrayList<ArchiveDetails>();
+        Blob token = null;
+        int pages = 0;
+
+        do {
+            final Response response = query(query(sortOrder),
+                    new KeysetPaginationFilter(new UInteger(LIMIT), token));
+            all.addAll(response.objDetails);
+            token = response.continuationToken;
+            pages++;
+            Assert.assertTrue("Too many pages", pages <= OBJECTS);
+        } while (token != null);
+
+        Assert.assertEquals(OBJECTS, all.size());
+
+        for (int i = 1; i < all.size(); i++) {
+            final ArchiveDetails previous = all.get(i - 1);
+            final ArchiveDetails current = all.get(i);
+            final long order = (Boolean.FALSE.equals(sortOrder) ? -1 : 1)
+                    * Long.compare(current.getTimestamp().getValue(), previous.getTimestamp().getValue());
+
+            Assert.assertTrue(order > 0 || (order == 0
+                    && (Boolean.FALSE.equals(sortOrder) ? -1 : 1) * Long.compare(
+                            current.getInstId(), previous.getInstId()) > 0));
+        }
+    }
+
+    private void assertInvalid(final ArchiveQuery query, final KeysetPaginationFilter filter)
+            throws MALException {
+        try {
+            query(query, filter);
+            Assert.fail("The query was accepted");
+        } catch (MALInteractionException ex) {
+            Assert.assertEquals(COMHelper.INVALID_ERROR_NUMBER, ex.getStandardError().getErrorNumber());
+        }
+    }
+
+    private Response query(final ArchiveQuery query, final KeysetPaginationFilter filter)
+            throws MALException, MALInteractionException {
+        final ArchiveQueryList queries = new ArchiveQueryList();
+        queries.add(query);
+        final KeysetPaginationFilterList filters = new KeysetPaginationFilterList();
+        filters.add(filter);
+
+        final Response response = new Response();
+        archive.query(false, OBJ_TYPE, queries, filters, response);
+        Assert.assertNotNull("No response", response.objDetails);
+        return response;
+    }
+
+    private static ArchiveQuery query(final Boolean sortOrder) {
+        return new ArchiveQuery(DOMAIN, null, null, 0L, null, null, null, sortOrder, null);
+    }
+
+    private static class Response extends QueryInteraction {
+
+        private ArchiveDetailsList objDetails;
+        private Blob continuationToken;
+
+        public Response() {
+            super(null);
+        }
+
+        @Override
+        public MALMessage sendAcknowledgement() {
+            return null;
+        }
+
+        @Override
+        public MALMessage sendUpdate(final ObjectType objType, final IdentifierList domain,
+                final ArchiveDetailsList objDetails, final ElementList objBodies) {
+            Assert.fail("Unexpected update");
+            return null;
+        }
+
+        @Override
+        public MALMessage sendResponse(final ObjectType objType, final IdentifierList domain,
+                final ArchiveDetailsList objDetails, final ElementList objBodies,
+                final Blob continuationToken) {
+            this.objDetails = (objDetails == null) ? new ArchiveDetailsList() : objDetails;
+            this.continuationToken = continuationToken;
+            return null;
+        }
+    }
+}
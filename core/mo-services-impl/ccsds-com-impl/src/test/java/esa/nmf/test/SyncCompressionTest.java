@@ -0,0 +1,84 @@
+package esa.nmf.test;
+
+import esa.mo.com.impl.sync.SyncCompression;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import org.ccsds.moims.mo.mal.structures.Identifier;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks that the streams compressed by the Archive Sync provider are
+ * restored by the consumer, and the selection of the algorithms.
+ */
+public class SyncCompressionTest {
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        final byte[] data = new byte[100000];
+        final Random random = new Random(42);
+
+        // Half random, half repeated, so that the deflated stream has both
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (i < data.length / 2) ? (byte) random.nextInt() : (byte) (i % 7);
+        }
+
+        for (SyncCompression compression : SyncCompression.values()) {
+            final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+
+            try (OutputStream out = compression.compress(compressed)) {
+                out.write(data);
+            }
+
+            if (compression == SyncCompression.DEFLATE) {
+                Assert.assertTrue(compressed.size() < data.length);
+            }
+
+            final ByteArrayOutputStream restored = new ByteArrayOutputStream();
+
+            try (InputStream in = compression.decompress(new ByteArrayInputStream(compressed.toByteArray()))) {
+                final byte[] buffer = new byte[1000];
+                int n;
+
+                while ((n = in.read(buffer)) >= 0) {
+                    restored.write(buffer, 0, n);
+                }
+            }
+
+            Assert.assertArrayEquals(compression.name(), data, restored.toByteArray());
+        }
+    }
+
+    @Test
+    public void testClosedStreamCannotBeRead() throws IOException {
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+
+        try (OutputStream out = SyncCompression.DEFLATE.compress(compressed)) {
+            out.write(new byte[10]);
+        }
+
+        final InputStream in = SyncCompression.DEFLATE.decompress(
+                new ByteArrayInputStream(compressed.toByteArray()));
+        in.close();
+        in.close();
+
+        try {
+            in.read();
+            Assert.fail("The closed stream was read");
+        } catch (IOException ex) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testFromIdentifier() {
+        Assert.assertEquals(SyncCompression.NONE, SyncCompression.fromIdentifier(null));
+        Assert.assertEquals(SyncCompression.NONE, SyncCompression.fromIdentifier(new Identifier("")));
+        Assert.assertEquals(SyncCompression.DEFLATE, SyncCompression.fromIdentifier(new Identifier(" deflate ")));
+        Assert.assertNull(SyncCompression.fromIdentifier(new Identifier("LZ4")));
+    }
+}
@@ -0,0 +1,214 @@
+package esa.nmf.test;
+
+import esa.mo.com.impl.archive.encoding.BinaryEncoder;
+import esa.mo.com.impl.sync.ChunkingOutputStream;
+import esa.mo.com.impl.sync.ChunksInputStream;
+import esa.mo.com.impl.sync.Dictionary;
+import esa.mo.com.impl.sync.SyncCompression;
+import esa.mo.com.impl.sync.SyncDecoder;
+import esa.mo.com.impl.util.COMObjectStructure;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.ccsds.moims.mo.com.archivesync.consumer.ArchiveSyncStub;
+import org.ccsds.moims.mo.com.structures.ObjectType;
+import org.ccsds.moims.mo.mal.MALException;
+import org.ccsds.moims.mo.mal.structures.FineTime;
+import org.ccsds.moims.mo.mal.structures.Identifier;
+import org.ccsds.moims.mo.mal.structures.IdentifierList;
+import org.ccsds.moims.mo.mal.structures.IntegerList;
+import org.ccsds.moims.mo.mal.structures.StringList;
+import org.ccsds.moims.mo.mal.structures.UOctet;
+import org.ccsds.moims.mo.mal.structures.UShort;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Decodes Archive Sync streams with the SyncDecoder, checking that the objects
+ * are handed over while the stream is still being read and that the objects
+ * that cannot be decoded are reported.
+ */
+public class SyncDecoderTest {
+
+    private static final int OBJECTS = 20000;
+    private static final int CHUNK_SIZE = 1000;
+    private static final int UNKNOWN_WORD = 999999;
+
+    private static final ObjectType OBJ_TYPE = new ObjectType(new UShort(2),
+            new UShort(2), new UOctet((short) 1), new UShort(5));
+    private static final IdentifierList DOMAIN = new IdentifierList();
+
+    static {
+        DOMAIN.add(new Identifier("esa"));
+        DOMAIN.add(new Identifier("test"));
+    }
+
+    private final Dictionary providerDictionary = new Dictionary();
+    private final ProviderStub stub = new ProviderStub();
+
+    @Test
+    public void testObjectsAreStreamedInOrder() throws Exception {
+        for (SyncCompression compression : SyncCompression.values()) {
+            final byte[] stream = encode(compression, -1);
+            final CountingInputStream in = new CountingInputStream(
+                    compression.decompress(new ChunksInputStream(chunks(stream))));
+            final long[] readAtFirstObject = {-1};
+            final List<Long> objIds = new ArrayList<Long>();
+            final List<Long> failures = new ArrayList<Long>();
+
+            final int decoded = new SyncDecoder(new Dictionary(), stub, DOMAIN).decode(in, obj -> {
+                if (readAtFirstObject[0] < 0) {
+                    readAtFirstObject[0] = in.count;
+                }
+
+                Assert.assertEquals(new Identifier("network"), obj.getNetwork());
+                Assert.assertEquals(DOMAIN, obj.getDomain());
+                objIds.add(obj.getObjId());
+            }, (objId, cause) -> failures.add(objId));
+            in.close();
+
+            Assert.assertEquals(OBJECTS, decoded);
+            Assert.assertTrue(failures.isEmpty());
+
+            for (int i = 0; i < OBJECTS; i++) {
+                Assert.assertEquals(Long.valueOf(i + 1), objIds.get(i));
+            }
+
+            // The first objects were handed over before the end of the stream
+            Assert.assertTrue(readAtFirstObject[0] < in.count / 2);
+        }
+
+        // The words are requested once, the following batches know them
+        Assert.assertEquals(SyncCompression.values().length, stub.requests);
+    }
+
+    @Test
+    public void testFailedObjectIsReported() throws Exception {
+        final int failing = 100;
+        final List<Long> failures = new ArrayList<Long>();
+        final List<COMObjectStructure> objs = new ArrayList<COMObjectStructure>();
+
+        final int decoded = new SyncDecoder(new Dictionary(), stub, DOMAIN).decode(
+                new ChunksInputStream(chunks(encode(SyncCompression.NONE, failing))),
+                objs::add, (objId, cause) -> failures.add(objId));
+
+        Assert.assertEquals(OBJECTS - 1, decoded);
+        Assert.assertEquals(OBJECTS - 1, objs.size());
+        Assert.assertEquals(Arrays.asList(Long.valueOf(failing + 1)), failures);
+        Assert.assertEquals(Long.valueOf(failing), objs.get(failing - 1).getObjId());
+        Assert.assertEquals(Long.valueOf(failing + 2), objs.get(failing).getObjId());
+    }
+
+    @Test
+    public void testTruncatedStreamIsReported() throws Exception {
+        final byte[] stream = encode(SyncCompression.NONE, -1);
+        final List<Long> failures = new ArrayList<Long>();
+        final List<COMObjectStructure> objs = new ArrayList<COMObjectStructure>();
+
+        final int decoded = new SyncDecoder(new Dictionary(), stub, DOMAIN).decode(
+                new ChunksInputStream(chunks(Arrays.copyOf(stream, stream.length - 3))),
+                objs::add, (objId, cause) -> failures.add(objId));
+
+        Assert.assertEquals(OBJECTS - 1, decoded);
+        Assert.assertEquals(1, failures.size());
+        Assert.assertNull(failures.get(0));
+    }
+
+    /**
+     * Encodes the objects as the provider does, with the object ids 1 to
+     * OBJECTS.
+     *
+     * @param compression The compression of the stream.
+     * @param failing The index of the object that refers to a word that the
+     * provider does not know, or -1.
+     */
+    private byte[] encode(final SyncCompression compression, final int failing)
+            throws IOException, MALException {
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        final OutputStream out = compression.compress(compressed);
+        final BinaryEncoder be = new BinaryEncoder(out);
+
+        for (int i = 0; i < OBJECTS; i++) {
+            be.encodeInteger((i == failing) ? UNKNOWN_WORD : providerDictionary.getWordId("network"));
+            be.encodeInteger(providerDictionary.getWordId("provider"));
+            be.encodeElement(OBJ_TYPE);
+            be.encodeNullableInteger(null);
+            be.encodeNullableElement(null);
+            be.encodeNullableLong(null);
+            be.encodeNullableLong(null);
+            be.encodeNullableBlob(null);
+            be.encodeLong((long) i + 1);
+            be.encodeFineTime(new FineTime(1000L * i));
+        }
+
+        be.close();
+        out.close();
+        return compressed.toByteArray();
+    }
+
+    private static List<byte[]> chunks(final byte[] stream) throws IOException {
+        final List<byte[]> chunks = new ArrayList<byte[]>();
+        final ChunkingOutputStream out = new ChunkingOutputStream(CHUNK_SIZE, chunks::add);
+        out.write(stream);
+        out.close();
+        return chunks;
+    }
+
+    /**
+     * Serves the words of the dictionary of the provider, as the ArchiveSync
+     * provider does.
+     */
+    private class ProviderStub extends ArchiveSyncStub {
+
+        private int requests = 0;
+
+        ProviderStub() {
+            super(null);
+        }
+
+        @Override
+        public StringList getDictionary(final IntegerList wordIds) {
+            requests++;
+            final StringList words = new StringList();
+
+            for (Integer wordId : wordIds) {
+                try {
+                    words.add(providerDictionary.getWord(wordId));
+                } catch (Exception ex) {
+                    words.add(null);
+                }
+            }
+
+            words.add(providerDictionary.getVersion());
+            return words;
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+
+        private volatile long count = 0;
+
+        CountingInputStream(final InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = in.read();
+            count += (b < 0) ? 0 : 1;
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int n = in.read(b, off, len);
+            count += (n < 0) ? 0 : n;
+            return n;
+        }
+    }
+}
@@ -21,9 +21,12 @@
 package esa.mo.mc.impl.interfaces;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import org.ccsds.moims.mo.mal.structures.Attribute;
 import org.ccsds.moims.mo.mal.structures.Identifier;
 import org.ccsds.moims.mo.mal.structures.IdentifierList;
+import org.ccsds.moims.mo.mal.structures.LongList;
 import org.ccsds.moims.mo.mc.parameter.structures.ParameterDefinitionDetails;
 import org.ccsds.moims.mo.mc.parameter.structures.ParameterRawValueList;
 import org.ccsds.moims.mo.mc.parameter.structures.ParameterValue;
@@ -69,6 +72,27 @@ public interface ParameterStatusListener
     throw new UnsupportedOperationException("Not supported yet.");
   }
 
+  /**
+   * Called by the NMF core whenever the values of several parameters are needed at once, for
+   * example to sample the parameter set of an aggregation.
+   *
+   * The user can override it in order to acquire all the values with a single transaction in the
+   * application. By default, onGetValue is called for each parameter.
+   *
+   * @param parameterIDs the IDs of the parameters
+   * @return The values of the parameters, in the same order as the IDs. An entry is null if that
+   * value could not be acquired
+   * @throws java.io.IOException if the parameter values could not be acquired
+   */
+  public default List<Attribute> onGetValues(LongList parameterIDs) throws IOException
+  {
+    List<Attribute> values = new ArrayList<>(parameterIDs.size());
+    for (Long parameterID : parameterIDs) {
+      values.add(onGetValue(parameterID));
+    }
+    return values;
+  }
+
   /**
    * The user must implement this interface in order to set a collection of parameter values to a
    * set variables in the application logic.
@@ -25,8 +25,7 @@ import esa.mo.com.impl.util.HelperArchive;
 import esa.mo.helpertools.connections.ConfigurationProviderSingleton;
 import esa.mo.helpertools.connections.SingleConnectionDetails;
 import esa.mo.helpertools.helpers.HelperTime;
-import java.util.ArrayList;
-import java.util.HashMap;
+import esa.mo.helpertools.misc.CopyOnWriteLongMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.ccsds.moims.mo.com.structures.ObjectId;
@@ -39,7 +38,6 @@ import org.ccsds.moims.mo.mal.structures.Identifier;
 import org.ccsds.moims.mo.mal.structures.IdentifierList;
 import org.ccsds.moims.mo.mal.structures.LongList;
 import org.ccsds.moims.mo.mal.structures.Time;
-import org.ccsds.moims.mo.mal.structures.TimeList;
 import org.ccsds.moims.mo.mal.structures.UOctet;
 import org.ccsds.moims.mo.mal.structures.URI;
 import org.ccsds.moims.mo.mc.aggregation.AggregationHelper;
@@ -58,6 +56,7 @@ import org.ccsds.moims.mo.mc.aggregation.structures.ThresholdFilter;
 import org.ccsds.moims.mo.mc.aggregation.structures.ThresholdType;
 import org.ccsds.moims.mo.mc.parameter.structures.ParameterDefinitionDetails;
 import org.ccsds.moims.mo.mc.parameter.structures.ParameterValue;
+import org.ccsds.moims.mo.mc.parameter.structures.ParameterValueList;
 import org.ccsds.moims.mo.mc.parameter.structures.ValidityState;
 import org.ccsds.moims.mo.mc.structures.ObjectInstancePair;
 
@@ -67,11 +66,8 @@ import org.ccsds.moims.mo.mc.structures.ObjectInstancePair;
  */
 public final class AggregationManager extends MCManager {
 
-    private final HashMap<Long, Boolean> isFilterTriggered; // IdentityId, Boolean Value that determines if the filter was triggered
-    private final HashMap<Long, AggregationValue> periodicAggregationValuesLast; // IdentityId, Aggregation Value List per definition
-    private final HashMap<Long, AggregationValue> periodicAggregationValuesCurrent; // IdentityId, Aggregation Value List per definition
-    private final HashMap<Long, TimeList> latestSampleTimeList; // IdentityId, Time of the first sample of each ParameterSetValue
-    private final HashMap<Long, ArrayList<Integer>> sampleCountList; //IdentityId, Amount of samples per parameterSetValue
+    private static final Object NO_STATE_LOCK = new Object();
+    private final CopyOnWriteLongMap<AggregationState> states; // IdentityId, sampling state of the aggregation
 
     private long uniqueObjIdIdentity; // Unique objId Identity (different for every Identity)
     private Long uniqueObjIdDef; // Unique objId Definition (different for every Definition)
@@ -82,11 +78,7 @@ public final class AggregationManager extends MCManager {
         super(comServices);
         this.parameterManager = parameterManager;
 
-        this.isFilterTriggered = new HashMap<Long, Boolean>();
-        this.periodicAggregationValuesLast = new HashMap<Long, AggregationValue>();
-        this.periodicAggregationValuesCurrent = new HashMap<Long, AggregationValue>();
-        this.latestSampleTimeList = new HashMap<Long, TimeList>();
-        this.sampleCountList = new HashMap<Long, ArrayList<Integer>>();
+        this.states = new CopyOnWriteLongMap<AggregationState>();
 
         if (super.getArchiveService() == null) {  // No Archive?
             this.uniqueObjIdIdentity = new Long(0); // The zeroth value will not be used (reserved for the wildcard)
@@ -108,20 +100,14 @@ public final class AggregationManager extends MCManager {
      */
     protected void createAggregationValuesList(LongList identityIdList) {
         for (Long identityId : identityIdList) {
-            periodicAggregationValuesLast.put(identityId, new AggregationValue());
-            periodicAggregationValuesCurrent.put(identityId, new AggregationValue());
-            isFilterTriggered.put(identityId, false);
-            //initialize timList with the amount of parameterSets
-            //final int parameterSetsCount = getAggregationDefinition(identityId).getParameterSets().size();
-            latestSampleTimeList.put(identityId, new TimeList());
-            sampleCountList.put(identityId, new ArrayList<Integer>());
+            states.put(identityId, new AggregationState());
 
             this.populateAggregationValues(identityId);
         }
     }
 
     /**
-     * resets periodicAggregationValuesLast, periodicAggregationValuesCurrent,
+     * resets the last and current aggregation values, the
      * sampleCounter, latestSampleTimeList and the filterTriggered-variables.
      * this method will be called after an aggregation-definition was updated.
      *
@@ -132,21 +118,19 @@ public final class AggregationManager extends MCManager {
         AggregationSetValueList aggregationSetValueListCurrent = new AggregationSetValueList();
         AggregationDefinitionDetails definition = this.getAggregationDefinition(identityId);
         final int paramSetSize = definition.getParameterSets().size();
-        //reset the latest sample-time and the sample-counter
-        if (paramSetSize != 0) {
-            latestSampleTimeList.get(identityId).clear();
-            sampleCountList.get(identityId).clear();
-        }
-        //init the latest sample-time and the sample-counter, filtertriggered and latest and current aggregation-values
+        //init the latest and current aggregation-values
         for (int j = 0; j < paramSetSize; j++) {
-            latestSampleTimeList.get(identityId).add(j, null);
             aggregationSetValueListLast.add(j, new AggregationSetValue());
             aggregationSetValueListCurrent.add(j, new AggregationSetValue());
-            sampleCountList.get(identityId).add(j, 0);
         }
-        periodicAggregationValuesLast.get(identityId).setParameterSetValues(aggregationSetValueListLast);
-        periodicAggregationValuesCurrent.get(identityId).setParameterSetValues(aggregationSetValueListCurrent);
-        this.setFilterTriggered(identityId, false);  // Reset the filter state
+        final AggregationState state = this.states.get(identityId);
+        synchronized (state) {
+            //reset the latest sample-time and the sample-counter
+            state.resetSamples(paramSetSize);
+            state.last.setParameterSetValues(aggregationSetValueListLast);
+            state.current.setParameterSetValues(aggregationSetValueListCurrent);
+            state.filterTriggered = false;  // Reset the filter state
+        }
     }
 
     /**
@@ -163,17 +147,15 @@ public final class AggregationManager extends MCManager {
         }
         AggregationDefinitionDetails definition = this.getAggregationDefinition(identityId);
         final int paramSetSize = definition.getParameterSets().size();
-        //reset the latest sample-time and the sample-counter
-        if (paramSetSize != 0) {
-            latestSampleTimeList.get(identityId).clear();
-            sampleCountList.get(identityId).clear();
+        final AggregationState state = this.states.get(identityId);
+        if (state == null) {
+            return false;
         }
-        //init the latest sample-time and the sample-counter
-        for (int j = 0; j < paramSetSize; j++) {
-            latestSampleTimeList.get(identityId).add(j, null);
-            sampleCountList.get(identityId).add(j, 0);
+        synchronized (state) {
+            //reset the latest sample-time and the sample-counter
+            state.resetSamples(paramSetSize);
+            state.filterTriggered = false;  // Reset the filter state
         }
-        this.setFilterTriggered(identityId, false);  // Reset the filter state
         return true;
     }
 
@@ -184,11 +166,20 @@ public final class AggregationManager extends MCManager {
      * @param identityId The identity Id.
      */
     public void removeAggregationValues(Long identityId) {
-        periodicAggregationValuesLast.remove(identityId);
-        periodicAggregationValuesCurrent.remove(identityId);
-        latestSampleTimeList.remove(identityId);
-        isFilterTriggered.remove(identityId);
-        sampleCountList.remove(identityId);
+        states.remove(identityId);
+    }
+
+    /**
+     * Returns the monitor that guards the sampling state of the aggregation
+     * with the given id. It shall be held while a sequence of samplings and
+     * reports has to be atomic for that aggregation.
+     *
+     * @param identityId The identity Id.
+     * @return The monitor of the aggregation
+     */
+    public Object getAggregationLock(Long identityId) {
+        final AggregationState state = this.states.get(identityId);
+        return (state == null) ? NO_STATE_LOCK : state;
     }
 
     public Long storeAndGenerateAValobjId(AggregationValue aVal, Long related, ObjectId source, URI uri, FineTime timestamp) {
@@ -228,23 +219,6 @@ public final class AggregationManager extends MCManager {
 
     }
 
-    /**
-     *
-     * @param paramIdentityId the identity id of the parameter to be sampled
-     * @param aggrExpired should be set to true, if the aggregation that is
-     * sampling the parameter, is periodic and the update hasnt been received in
-     * the aggregation-period. if true, the validity-state of the new parameter
-     * will be expired.
-     * @return ParameterValue of the parameter, or an empty ParameterValue with INVALID state if parameter cannot be retrieved
-     */
-    private ParameterValue sampleParameter(Long paramIdentityId, boolean aggrExpired) {
-        try {
-            return parameterManager.getParameterValue(paramIdentityId, aggrExpired);
-        } catch (MALInteractionException ex) {
-            return new ParameterValue(new UOctet((short)ValidityState.INVALID_RAW_NUM_VALUE.getValue()), null, null);
-        }
-    }
-
     /**
      * This method is created for the field:
      * AggregationDefinitionDetails.sendDefinitions. If
@@ -261,9 +235,15 @@ public final class AggregationManager extends MCManager {
      */
     private AggregationParameterValueList sampleParameters(LongList paramIdentityIds, boolean aggrExpired, boolean sendDefinitions) {
         AggregationParameterValueList aggrPValList = new AggregationParameterValueList();
-        for (Long identityId : paramIdentityIds) {
+        // Sample the whole parameter set at once
+        final ParameterValueList paramValues = parameterManager.getParameterValues(paramIdentityIds, aggrExpired);
+        for (int i = 0; i < paramIdentityIds.size(); i++) {
+            final Long identityId = paramIdentityIds.get(i);
             final Long paramDefId = sendDefinitions ? parameterManager.getDefinitionId(identityId) : null;
-            final ParameterValue paramValue = sampleParameter(identityId, aggrExpired);
+            ParameterValue paramValue = paramValues.get(i);
+            if (paramValue == null) { // The Parameter does not exist
+                paramValue = new ParameterValue(new UOctet((short) ValidityState.INVALID_RAW_NUM_VALUE.getValue()), null, null);
+            }
             aggrPValList.add(new AggregationParameterValue(paramValue, paramDefId));
         }
 
@@ -328,14 +308,17 @@ public final class AggregationManager extends MCManager {
             //identifier in the AggregationParameterValue, if FALSE it will be set to NULL.
             newAggrParameterValueSamples = this.sampleParameters(parameters, aggrExpired, aggrDef.getSendDefinitions());
         }
-//        //check for expired values if the aggregation-period was expired
-        if (aggrExpired) {
-            newAggrParameterValueSamples = checkForExpiredValues(identityId, indexOfparameterSet,
-                    aggrDef.getParameterSets().get(indexOfparameterSet), newAggrParameterValueSamples);
+        final AggregationState state = this.states.get(identityId);
+        synchronized (state) {
+            //check for expired values if the aggregation-period was expired
+            if (aggrExpired) {
+                newAggrParameterValueSamples = checkForExpiredValues(identityId, indexOfparameterSet,
+                        aggrDef.getParameterSets().get(indexOfparameterSet), newAggrParameterValueSamples);
+            }
+            //increment the number of samples for this ParameterSet
+            state.sampleCounts[indexOfparameterSet]++;
+            this.setParameterSamplesInternally(identityId, indexOfparameterSet, newAggrParameterValueSamples);
         }
-        //increment the number of samples for this ParameterSet
-        this.sampleCountList.get(identityId).set(indexOfparameterSet, this.sampleCountList.get(identityId).get(indexOfparameterSet) + 1);
-        this.setParameterSamplesInternally(identityId, indexOfparameterSet, newAggrParameterValueSamples);
     }
 
     /**
@@ -367,38 +350,41 @@ public final class AggregationManager extends MCManager {
     public void sampleAndFilterParam(Long identityId, int indexOfparameterSet, boolean aggrExpired, AggregationParameterValueList newParameterValueSamples) {
         final AggregationDefinitionDetails aggrDef = this.getAggregationDefinition(identityId);
         final AggregationParameterSet aggrParamSet = aggrDef.getParameterSets().get(indexOfparameterSet);
-        // Add another sample on the AggregationValue that will be returned later:
-        final AggregationParameterValueList currentUpdateValues = this.getCurrentUpdateValue(identityId, indexOfparameterSet);
         if (newParameterValueSamples == null) {
             //not using the aggrExpired value here but the "false" value, is because the actual 
             //check for expired value will be done a bit furhter down this code. Ther ParameterService 
             //should still hold the "interface" to manually check for the expired value
             newParameterValueSamples = this.sampleParameters(aggrParamSet.getParameters(), false, aggrDef.getSendDefinitions());
         }
-        //increment the number of samples for this ParameterSet
-        this.sampleCountList.get(identityId).set(indexOfparameterSet, this.sampleCountList.get(identityId).get(indexOfparameterSet) + 1);
+        final AggregationState state = this.states.get(identityId);
+        synchronized (state) {
+            // Add another sample on the AggregationValue that will be returned later:
+            final AggregationParameterValueList currentUpdateValues = this.getCurrentUpdateValue(identityId, indexOfparameterSet);
+            //increment the number of samples for this ParameterSet
+            state.sampleCounts[indexOfparameterSet]++;
 
-//        //check for expired values if the aggregation-period was expired
-        if (aggrExpired) {
-            newParameterValueSamples = checkForExpiredValues(identityId, indexOfparameterSet, aggrParamSet, newParameterValueSamples);
-        }
-        //no samples saved yet
-        if (currentUpdateValues == null) {
-            //first sample, set internally and trigger filter
-            this.setParameterSamplesInternally(identityId, indexOfparameterSet, newParameterValueSamples);
-            this.setFilterTriggered(identityId, true);
-            return;
-        }
-        //requirement: 3.7.3.k
-        if (aggrDef.getFilterEnabled()) {
-            boolean filterIsTriggered = this.checkFilterIsTriggered(aggrParamSet, currentUpdateValues, newParameterValueSamples);
-            if (filterIsTriggered) {
+            //check for expired values if the aggregation-period was expired
+            if (aggrExpired) {
+                newParameterValueSamples = checkForExpiredValues(identityId, indexOfparameterSet, aggrParamSet, newParameterValueSamples);
+            }
+            //no samples saved yet
+            if (currentUpdateValues == null) {
+                //first sample, set internally and trigger filter
                 this.setParameterSamplesInternally(identityId, indexOfparameterSet, newParameterValueSamples);
-                this.setFilterTriggered(identityId, filterIsTriggered);
+                state.filterTriggered = true;
+                return;
+            }
+            //requirement: 3.7.3.k
+            if (aggrDef.getFilterEnabled()) {
+                boolean filterIsTriggered = this.checkFilterIsTriggered(aggrParamSet, currentUpdateValues, newParameterValueSamples);
+                if (filterIsTriggered) {
+                    this.setParameterSamplesInternally(identityId, indexOfparameterSet, newParameterValueSamples);
+                    state.filterTriggered = filterIsTriggered;
+                }
+            } else {
+                this.setParameterSamplesInternally(identityId, indexOfparameterSet, newParameterValueSamples);
+                state.filterTriggered = false;
             }
-        } else {
-            this.setParameterSamplesInternally(identityId, indexOfparameterSet, newParameterValueSamples);
-            this.setFilterTriggered(identityId, false);
         }
     }
 
@@ -415,7 +401,7 @@ public final class AggregationManager extends MCManager {
      */
     private AggregationParameterValueList checkForExpiredValues(Long identityId, int indexOfparameterSet,
             AggregationParameterSet aggrParamSet, AggregationParameterValueList newParameterValueSamples) {
-        final AggregationParameterValueList currentParamValues = this.periodicAggregationValuesCurrent.get(identityId).getParameterSetValues().get(indexOfparameterSet).getValues();
+        final AggregationParameterValueList currentParamValues = this.states.get(identityId).current.getParameterSetValues().get(indexOfparameterSet).getValues();
         //requirement: 3.3.3.i (ParameterService-requirement)
         //if sendUnchanged is true: replace validity-state with an EXPIRED state
         //todo: try to let the ParameterService set the EXPIRED state and not the AggregationService
@@ -497,27 +483,30 @@ public final class AggregationManager extends MCManager {
         AggregationParameterSetList parameterSets = aggrDef.getParameterSets();
         AggregationSetValueList parameterSetValues = new AggregationSetValueList();
 
-        //fill AggregationSetValue-objects for each parameterSet
-        for (int j = 0; j < parameterSets.size(); j++) {  //Cycle through the parameterSets (requirement: 3.7.3.r)
-            final Duration sampleInterval = parameterSets.get(j).getSampleInterval();
-            final Duration updateInterval = aggrDef.getReportInterval();
-            //calculate the the new aggregation-values interval times
-
-            AggregationParameterValueList val = evaluateSendUnchanged(aggrDef, identityId, j);
-
-            if (val != null) {
-                AggregationSetValue parameterSetValue = calcAggrSetValueTimes(generationMode, sampleInterval, updateInterval, identityId, j);
-                //requirement: 3.7.3.q if unchanged values should be sent with a value replaced by a null, then replace them 
-                //set the values of the parameter-set that will be published
-                parameterSetValue.setValues(val);
-                //add the current parameterSet to the current parameterSetList
-                parameterSetValues.add(parameterSetValue);
+        final AggregationState state = this.states.get(identityId);
+        synchronized (state) {
+            //fill AggregationSetValue-objects for each parameterSet
+            for (int j = 0; j < parameterSets.size(); j++) {  //Cycle through the parameterSets (requirement: 3.7.3.r)
+                final Duration sampleInterval = parameterSets.get(j).getSampleInterval();
+                final Duration updateInterval = aggrDef.getReportInterval();
+                //calculate the the new aggregation-values interval times
+
+                AggregationParameterValueList val = evaluateSendUnchanged(aggrDef, identityId, j);
+
+                if (val != null) {
+                    AggregationSetValue parameterSetValue = calcAggrSetValueTimes(generationMode, sampleInterval, updateInterval, identityId, j);
+                    //requirement: 3.7.3.q if unchanged values should be sent with a value replaced by a null, then replace them 
+                    //set the values of the parameter-set that will be published
+                    parameterSetValue.setValues(val);
+                    //add the current parameterSet to the current parameterSetList
+                    parameterSetValues.add(parameterSetValue);
+                }
             }
+            aVal.setFiltered(state.filterTriggered);
         }
         //set the current parameterSetList as the current aggregation vakues
         aVal.setParameterSetValues(parameterSetValues);
         aVal.setGenerationMode(generationMode);
-        aVal.setFiltered(isFilterTriggered(identityId));
         return aVal;
     }
 
@@ -544,15 +533,16 @@ public final class AggregationManager extends MCManager {
             Time currentTime = HelperTime.getTimestampMillis();
 //            Time AggTimeStamp = new Time(currentTime.getValue() - (long) updateInterval.getValue() * 1000);
 //            Time firstSampleTime = new Time(this.latestSampleTimeList.get(identityId).get(indexParameterSet).getValue());
+            final AggregationState state = this.states.get(identityId);
             Time previousSetTimeStamp;
             if (indexParameterSet == 0) { //if its the first Set, the reference-time is the start of this aggregation-update
                 previousSetTimeStamp = new Time(currentTime.getValue() - (long) (updateInterval.getValue() * 1000));
             } else { //otherwise its the time of the last value of the previous set
-                previousSetTimeStamp = new Time(this.latestSampleTimeList.get(identityId).get(indexParameterSet - 1).getValue());
+                previousSetTimeStamp = new Time(state.latestSampleTimes[indexParameterSet - 1].getValue());
             }
 
-            Time firstSampleTime = new Time(this.latestSampleTimeList.get(identityId).get(indexParameterSet).getValue()
-                    - (long) (sampleInterval.getValue() * 1000) * sampleCountList.get(identityId).get(indexParameterSet));
+            Time firstSampleTime = new Time(state.latestSampleTimes[indexParameterSet].getValue()
+                    - (long) (sampleInterval.getValue() * 1000) * state.sampleCounts[indexParameterSet]);
 
             // Delta-TIme =  firstSampleTime(Setx) - (firstSampleTime(Setx-1) + y*sampleInterval) | y = amount of updates.
             Duration deltaTime = new Duration(((float) (firstSampleTime.getValue() - previousSetTimeStamp.getValue())) / 1000);
@@ -599,7 +589,7 @@ public final class AggregationManager extends MCManager {
             Long identityId, int indexParameterSet, AggregationParameterValueList currentParamValues) { //requirement: 3.7.3.m
         AggregationParameterValueList retParamValues = new AggregationParameterValueList();
         if (currentParamValues == null) {
-            currentParamValues = this.periodicAggregationValuesCurrent.get(identityId).getParameterSetValues().get(indexParameterSet).getValues();
+            currentParamValues = this.states.get(identityId).current.getParameterSetValues().get(indexParameterSet).getValues();
         }
         final AggregationParameterValueList lastParamValues = getLastUpdateValue(identityId, indexParameterSet);
         if (!aggrDef.getSendUnchanged() && lastParamValues != null) {
@@ -680,14 +670,17 @@ public final class AggregationManager extends MCManager {
      * @return if a filter existed before
      */
     public Boolean setFilterTriggered(Long identityId, Boolean bool) {
-//        this.isFilterTriggered.replace(objId, bool);
-        boolean existed = (this.isFilterTriggered.remove(identityId) != null);
+        final AggregationState state = this.states.get(identityId);
 
-        if (existed) {
-            this.isFilterTriggered.put(identityId, bool);
+        if (state == null) {
+            return false;
         }
 
-        return existed;
+        synchronized (state) {
+            state.filterTriggered = bool;
+        }
+
+        return true;
     }
 
     /**
@@ -697,7 +690,15 @@ public final class AggregationManager extends MCManager {
      * @return
      */
     public Boolean isFilterTriggered(Long identityId) {
-        return this.isFilterTriggered.get(identityId);
+        final AggregationState state = this.states.get(identityId);
+
+        if (state == null) {
+            return null;
+        }
+
+        synchronized (state) {
+            return state.filterTriggered;
+        }
     }
 
     /**
@@ -709,17 +710,17 @@ public final class AggregationManager extends MCManager {
      * @return
      */
     private AggregationParameterValueList getLastUpdateValue(Long identityId, int indexOfparameterSet) {
-        if (this.periodicAggregationValuesLast.get(identityId).getParameterSetValues() == null) // It was never sampled before?
+        if (this.states.get(identityId).last.getParameterSetValues() == null) // It was never sampled before?
         {
             return null;
         }
 
-        if (this.periodicAggregationValuesLast.get(identityId).getParameterSetValues().get(indexOfparameterSet).getValues() == null) // It was never sampled before?
+        if (this.states.get(identityId).last.getParameterSetValues().get(indexOfparameterSet).getValues() == null) // It was never sampled before?
         {
             return null;
         }
 
-        AggregationParameterValueList currentPValLst = this.periodicAggregationValuesLast.get(identityId).getParameterSetValues().get(indexOfparameterSet).getValues();
+        AggregationParameterValueList currentPValLst = this.states.get(identityId).last.getParameterSetValues().get(indexOfparameterSet).getValues();
         return currentPValLst;
 
     }
@@ -732,17 +733,17 @@ public final class AggregationManager extends MCManager {
      * @return
      */
     private AggregationParameterValueList getCurrentUpdateValue(Long identityId, int indexOfparameterSet) {
-        if (this.periodicAggregationValuesCurrent.get(identityId).getParameterSetValues() == null) // It was never sampled before?
+        if (this.states.get(identityId).current.getParameterSetValues() == null) // It was never sampled before?
         {
             return null;
         }
 
-        if (this.periodicAggregationValuesCurrent.get(identityId).getParameterSetValues().get(indexOfparameterSet).getValues() == null) // It was never sampled before?
+        if (this.states.get(identityId).current.getParameterSetValues().get(indexOfparameterSet).getValues() == null) // It was never sampled before?
         {
             return null;
         }
 
-        AggregationParameterValueList currentPValLst = this.periodicAggregationValuesCurrent.get(identityId).getParameterSetValues().get(indexOfparameterSet).getValues();
+        AggregationParameterValueList currentPValLst = this.states.get(identityId).current.getParameterSetValues().get(indexOfparameterSet).getValues();
         return currentPValLst;
 
     }
@@ -760,13 +761,13 @@ public final class AggregationManager extends MCManager {
      */
     private AggregationParameterValueList setParameterSamplesInternally(Long identityId, int indexOfparameterSet, AggregationParameterValueList newParamSample) {
 
-        final AggregationParameterValueList currentParamValues = this.periodicAggregationValuesCurrent.get(identityId).getParameterSetValues().get(indexOfparameterSet).getValues();
-        this.periodicAggregationValuesLast.get(identityId).getParameterSetValues().get(indexOfparameterSet).setValues(currentParamValues);
+        final AggregationParameterValueList currentParamValues = this.states.get(identityId).current.getParameterSetValues().get(indexOfparameterSet).getValues();
+        this.states.get(identityId).last.getParameterSetValues().get(indexOfparameterSet).setValues(currentParamValues);
 
         //set the new ones to the current ones
-        this.periodicAggregationValuesCurrent.get(identityId).getParameterSetValues().get(indexOfparameterSet).setValues(newParamSample);
+        this.states.get(identityId).current.getParameterSetValues().get(indexOfparameterSet).setValues(newParamSample);
         //sets the timestamp of the latest value of the set. needed for the calculation of the delta-time
-        this.latestSampleTimeList.get(identityId).set(indexOfparameterSet, HelperTime.getTimestampMillis());
+        this.states.get(identityId).latestSampleTimes[indexOfparameterSet] = HelperTime.getTimestampMillis();
 
         return newParamSample;
     }
@@ -884,9 +885,7 @@ public final class AggregationManager extends MCManager {
             return false;
         }
 
-        periodicAggregationValuesLast.remove(identityId);
-        periodicAggregationValuesCurrent.remove(identityId);
-        latestSampleTimeList.remove(identityId);
+        states.remove(identityId);
 
         return true;
     }
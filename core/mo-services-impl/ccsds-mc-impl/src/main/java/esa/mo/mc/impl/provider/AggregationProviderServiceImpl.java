@@ -25,7 +25,7 @@ import esa.mo.com.impl.util.HelperArchive;
 import esa.mo.helpertools.connections.ConfigurationProviderSingleton;
 import esa.mo.helpertools.connections.ConnectionProvider;
 import esa.mo.helpertools.helpers.HelperTime;
-import esa.mo.helpertools.misc.TaskScheduler;
+import esa.mo.helpertools.misc.TimingWheelScheduler;
 import esa.mo.mc.impl.util.GroupRetrieval;
 import esa.mo.reconfigurable.service.ConfigurationChangeListener;
 import esa.mo.reconfigurable.service.ReconfigurableService;
@@ -918,13 +918,14 @@ public class AggregationProviderServiceImpl extends AggregationInheritanceSkelet
 
     private class PeriodicReportingManager { // requirement: 3.7.2.1a
 
-        private HashMap<Long, TaskScheduler> updateTimerList; // updateInterval Timers list
-        private HashMap<Long, TaskScheduler> filterTimeoutTimerList; // filterTimeout Timers list
+        private final TimingWheelScheduler scheduler = TimingWheelScheduler.getInstance();
+        private HashMap<Long, Integer> updateTimerList; // updateInterval scheduled tasks list
+        private HashMap<Long, Integer> filterTimeoutTimerList; // filterTimeout scheduled tasks list
         private boolean active = false; // Flag that determines if the Manager is on or off
 
         public PeriodicReportingManager() {
-            updateTimerList = new HashMap<Long, TaskScheduler>();
-            filterTimeoutTimerList = new HashMap<Long, TaskScheduler>();
+            updateTimerList = new HashMap<Long, Integer>();
+            filterTimeoutTimerList = new HashMap<Long, Integer>();
         }
 
         public void refreshAll() {
@@ -991,8 +992,6 @@ public class AggregationProviderServiceImpl extends AggregationInheritanceSkelet
         private void addPeriodicReporting(Long identityId) {
             //requirement: 3.7.9.2.12
             publishImmediatePeriodicUpdate(identityId);
-            TaskScheduler timer = new TaskScheduler(1);
-            updateTimerList.put(identityId, timer);
 
             final AggregationDefinitionDetails aggrDef = manager.getAggregationDefinition(identityId);
             this.startUpdatesTimer(identityId, aggrDef.getReportInterval());  // requirement 3.7.3.c
@@ -1008,8 +1007,6 @@ public class AggregationProviderServiceImpl extends AggregationInheritanceSkelet
             final AggregationDefinitionDetails aggrDef = manager.getAggregationDefinition(identityId);
             // Is the filter enabled? If so, do we have a filter Timeout set?
 //            if (aggrDef.getFilterEnabled() && aggrDef.getFilteredTimeout().getValue() != 0) { // requirement 3.7.2.12
-            TaskScheduler timer2 = new TaskScheduler(1);
-            filterTimeoutTimerList.put(identityId, timer2);
             this.startFilterTimeoutTimer(identityId, aggrDef.getFilteredTimeout());
 //            } else {
 //                filterTimeoutTimerList.put(identityId, null);
@@ -1028,7 +1025,7 @@ public class AggregationProviderServiceImpl extends AggregationInheritanceSkelet
         }
 
         private void startUpdatesTimer(final Long identityId, final Duration interval) {
-            updateTimerList.get(identityId).scheduleTask(new Thread() {
+            final int taskId = scheduler.scheduleTask(new Runnable() {
 
                 @Override
                 public void run() {  // requirement: 3.7.3.c
@@ -1036,8 +1033,8 @@ public class AggregationProviderServiceImpl extends AggregationInheritanceSkelet
                         AggregationDefinitionDetails def = manager.getAggregationDefinition(identityId);
                         checkSampleIntervalAndSampleParam(identityId, true);
                         
-                        // To prevent race conditions with the other timer
-                        synchronized (lock) {
+                        // To prevent race conditions with the other timers of this aggregation
+                        synchronized (manager.getAggregationLock(identityId)) {
                             if (!def.getFilterEnabled()) { // The Filter is not enabled? // requirement: 3.7.2.a.a, 
                                 publishPeriodicAggregationUpdate(identityId, 
                                         manager.getAggregationValue(identityId, GenerationMode.PERIODIC)); //requirement: 3.7.3.h
@@ -1055,10 +1052,16 @@ public class AggregationProviderServiceImpl extends AggregationInheritanceSkelet
                 } // the time is being converted to milliseconds by multiplying by 1000 
             }, (int) (interval.getValue() * 1000), (int) (interval.getValue() * 1000),
             TimeUnit.MILLISECONDS, true); // requirement: 3.7.3.g
+
+            updateTimerList.put(identityId, taskId);
         }
 
         private void stopUpdatesTimer(final Long objId) {
-            updateTimerList.get(objId).stopLast();
+            final Integer taskId = updateTimerList.get(objId);
+
+            if (taskId != null) {
+                scheduler.stopTask(taskId);
+            }
         }
 
         private void resetFilterTimeoutTimer(Long objId) {
@@ -1069,34 +1072,38 @@ public class AggregationProviderServiceImpl extends AggregationInheritanceSkelet
                 return;  // Get out if the timer was not set
             }
             this.stopFilterTimeoutTimer(objId);
-            // Should be unnecessary since the TaskScheduler does not need to be re-initialized to start the timer again.
-            //TaskScheduler timer2 = new TaskScheduler(1);
-            //filterTimeoutTimerList.put(objId, timer2);
             this.startFilterTimeoutTimer(objId, manager.getAggregationDefinition(objId).getFilteredTimeout());
         }
 
         private void startFilterTimeoutTimer(final Long identityId, final Duration interval) {
-            filterTimeoutTimerList.get(identityId).scheduleTask(new Thread() {
+            final int taskId = scheduler.scheduleTask(new Runnable() {
 
                 @Override
                 public void run() {  // requirement: 3.7.2.a.c, 3.7.3.n
                     if (active) {
-                        manager.setFilterTriggered(identityId, true);
-                        //get the new samples and update the aggregation in the internal list
-                        for (int index = 0; index < manager.getAggregationDefinition(identityId).getParameterSets().size(); index++) {
-                            manager.sampleParam(identityId, index);
+                        // To prevent race conditions with the other timers of this aggregation
+                        synchronized (manager.getAggregationLock(identityId)) {
+                            manager.setFilterTriggered(identityId, true);
+                            //get the new samples and update the aggregation in the internal list
+                            for (int index = 0; index < manager.getAggregationDefinition(identityId).getParameterSets().size(); index++) {
+                                manager.sampleParam(identityId, index);
+                            }
+                            //publish the values in the internal list
+                            publishPeriodicAggregationUpdate(identityId, manager.getAggregationValue(identityId, GenerationMode.FILTERED_TIMEOUT));
+                            manager.resetAggregationSampleHelperVariables(identityId);
                         }
-                        //publish the values in the internal list
-                        publishPeriodicAggregationUpdate(identityId, manager.getAggregationValue(identityId, GenerationMode.FILTERED_TIMEOUT));
-                        manager.resetAggregationSampleHelperVariables(identityId);
                     }
                 } // the time is being converted to milliseconds by multiplying by 1000
             }, 0, (int) (interval.getValue() * 1000), TimeUnit.MILLISECONDS, true);
+
+            filterTimeoutTimerList.put(identityId, taskId);
         }
 
         private void stopFilterTimeoutTimer(final Long objId) {
-            if (filterTimeoutTimerList.get(objId) != null) { // Does it exist?
-                filterTimeoutTimerList.get(objId).stopLast();
+            final Integer taskId = filterTimeoutTimerList.get(objId);
+
+            if (taskId != null) { // Does it exist?
+                scheduler.stopTask(taskId);
             }
         }
 
@@ -1117,13 +1124,14 @@ public class AggregationProviderServiceImpl extends AggregationInheritanceSkelet
      */
     private class PeriodicSamplingManager { // requirement: 3.7.2.1a
 
-        private List<TaskScheduler> sampleTimerList; // Timer List. One timer for each parameterSet of each aggregation that needs to be sampled
+        private final TimingWheelScheduler scheduler = TimingWheelScheduler.getInstance();
+        private List<Integer> sampleTimerList; // Scheduled tasks List. One timer for each parameterSet of each aggregation that needs to be sampled
         private LongList aggregationObjIdList; // ids of the aggregations whiches parameterSet started the timer above. first index here belongs to the first timer abode. 
         private List<Integer> parameterSetIndexList; // index of the parameter set in the aggregation above, that belongs to the timer. first index here belngs to the first  aggregation id above and belongs to the first timer above.
         private boolean active = false; // Flag that determines if the Manager is on or off
 
         public PeriodicSamplingManager() {
-            sampleTimerList = new ArrayList<TaskScheduler>();
+            sampleTimerList = new ArrayList<Integer>();
             aggregationObjIdList = new LongList();
             parameterSetIndexList = new ArrayList<Integer>();
         }
@@ -1189,9 +1197,7 @@ public class AggregationProviderServiceImpl extends AggregationInheritanceSkelet
                 if (sampleInterval.getValue() != 0) {
                     aggregationObjIdList.add(index, identityId);
                     parameterSetIndexList.add(index, indexOfParameterSet);
-                    TaskScheduler timer = new TaskScheduler(1);  // Take care of adding a new timer
-                    sampleTimerList.add(index, timer);
-                    startTimer(index, sampleInterval);
+                    sampleTimerList.add(index, startTimer(index, sampleInterval));
                     index++;
                 }
             }
@@ -1206,16 +1212,16 @@ public class AggregationProviderServiceImpl extends AggregationInheritanceSkelet
             }
         }
 
-        private void startTimer(final int index, Duration interval) {  // requirement: 3.7.2.11
+        private int startTimer(final int index, Duration interval) {  // requirement: 3.7.2.11
             final Long identityId = aggregationObjIdList.get(index);
             final int indexOfparameterSet = parameterSetIndexList.get(index);
 
-            sampleTimerList.get(index).scheduleTask(new Thread() {
+            return scheduler.scheduleTask(new Runnable() {
                 @Override
                 public void run() {
                     if (active) {
-                        // To prevent race conditions with the other timer
-                        synchronized (lock) {
+                        // To prevent race conditions with the other timers of this aggregation
+                        synchronized (manager.getAggregationLock(identityId)) {
                             //create the new paraemtersamples and set them if filter triggered or not enabled
                             manager.sampleAndFilterParam(identityId, indexOfparameterSet);
                         }
@@ -1225,7 +1231,11 @@ public class AggregationProviderServiceImpl extends AggregationInheritanceSkelet
         }
 
         private void stopTimer(int index) {
-            sampleTimerList.get(index).stopLast();
+            final Integer taskId = sampleTimerList.get(index);
+
+            if (taskId != null) {
+                scheduler.stopTask(taskId);
+            }
         }
 
     }
@@ -0,0 +1,51 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2021      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : ESA NanoSat MO Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.mc.impl.provider;
+
+import org.ccsds.moims.mo.mal.structures.Time;
+import org.ccsds.moims.mo.mc.aggregation.structures.AggregationValue;
+
+/**
+ * The sampling state of one aggregation identity. It holds the values of the
+ * current and of the previous update, and for each parameter set the time of
+ * its latest sample and the number of samples since the last update. The state
+ * is also the monitor that guards it, so independent aggregations can be
+ * sampled and reported in parallel.
+ */
+final class AggregationState {
+
+    final AggregationValue last = new AggregationValue(); // Values of the update published the time before the last time
+    final AggregationValue current = new AggregationValue(); // Values of the update published the last time
+    Time[] latestSampleTimes = new Time[0]; // Time of the latest sample of each parameter set
+    int[] sampleCounts = new int[0]; // Amount of samples per parameter set
+    boolean filterTriggered = false;
+
+    /**
+     * Resets the latest sample times and the sample counters.
+     *
+     * @param paramSetSize The number of parameter sets of the aggregation.
+     */
+    void resetSamples(final int paramSetSize) {
+        this.latestSampleTimes = new Time[paramSetSize];
+        this.sampleCounts = new int[paramSetSize];
+    }
+
+}
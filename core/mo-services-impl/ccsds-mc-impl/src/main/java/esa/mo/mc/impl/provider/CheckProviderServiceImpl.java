@@ -24,7 +24,7 @@ import esa.mo.com.impl.consumer.EventConsumerServiceImpl;
 import esa.mo.com.impl.util.COMServicesProvider;
 import esa.mo.helpertools.connections.ConfigurationProviderSingleton;
 import esa.mo.helpertools.connections.ConnectionProvider;
-import esa.mo.helpertools.misc.TaskScheduler;
+import esa.mo.helpertools.misc.TimingWheelScheduler;
 import esa.mo.mc.impl.provider.check.CheckLinkMonitorManager;
 import esa.mo.mc.impl.provider.check.ParameterMonitoringManager;
 import esa.mo.mc.impl.util.GroupRetrieval;
@@ -952,11 +952,12 @@ public class CheckProviderServiceImpl extends CheckInheritanceSkeleton {
 
     private class PeriodicCheckingManager { // requirement: 3.7.2.1a
 
-        private HashMap<Long, TaskScheduler> sampleTimerList; // Timers list
+        private final TimingWheelScheduler scheduler = TimingWheelScheduler.getInstance();
+        private HashMap<Long, Integer> sampleTimerList; // Scheduled tasks list
         private boolean active = false; // Flag that determines if the Manager is on or off
 
         public PeriodicCheckingManager() {
-            sampleTimerList = new HashMap<Long, TaskScheduler>();
+            sampleTimerList = new HashMap<Long, Integer>();
 
         }
 
@@ -1013,8 +1014,6 @@ public class CheckProviderServiceImpl extends CheckInheritanceSkeleton {
             }
 
             // Add to the Periodic Sampling Manager 
-            TaskScheduler timer = new TaskScheduler(1);  // Take care of adding a new timer
-            sampleTimerList.put(checkLinkId, timer);
             startTimer(checkLinkId, checkInterval);// requirement: 3.5.3.j
         }
 
@@ -1025,7 +1024,7 @@ public class CheckProviderServiceImpl extends CheckInheritanceSkeleton {
 
         private void startTimer(final Long checkLinkId, Duration interval) {  // requirement: 3.7.2.11
 
-            sampleTimerList.get(checkLinkId).scheduleTask(new Thread() {
+            final int taskId = scheduler.scheduleTask(new Runnable() {
                 @Override
                 public void run() { // Periodic Checking
                     if (active) {
@@ -1041,21 +1040,28 @@ public class CheckProviderServiceImpl extends CheckInheritanceSkeleton {
                     }
                 } // the time has to be converted to milliseconds by multiplying by 1000
             }, 0, (int) (interval.getValue() * 1000), TimeUnit.MILLISECONDS, true); // requirement: 3.6.2.g
+
+            sampleTimerList.put(checkLinkId, taskId);
         }
 
         private void stopTimer(Long objId) {
-            sampleTimerList.get(objId).stopLast();
+            final Integer taskId = sampleTimerList.get(objId);
+
+            if (taskId != null) {
+                scheduler.stopTask(taskId);
+            }
         }
 
     }
 
     private class PeriodicReportingMaxManager { // requirement: 3.7.2.1a
 
-        private HashMap<Long, TaskScheduler> updateTimerList; // updateInterval Timers list
+        private final TimingWheelScheduler scheduler = TimingWheelScheduler.getInstance();
+        private HashMap<Long, Integer> updateTimerList; // updateInterval scheduled tasks list
         private boolean active = false; // Flag that determines if the Manager is on or off
 
         public PeriodicReportingMaxManager() {
-            updateTimerList = new HashMap<Long, TaskScheduler>();
+            updateTimerList = new HashMap<Long, Integer>();
         }
 
         public void refreshAll() {
@@ -1106,8 +1112,6 @@ public class CheckProviderServiceImpl extends CheckInheritanceSkeleton {
         }
 
         private void addPeriodicReportingMax(Long checkLinkId, Duration maxReportingInterval) {
-            TaskScheduler timer = new TaskScheduler(1);
-            updateTimerList.put(checkLinkId, timer);
             this.startUpdatesTimer(checkLinkId, maxReportingInterval);
         }
 
@@ -1117,7 +1121,7 @@ public class CheckProviderServiceImpl extends CheckInheritanceSkeleton {
         }
 
         private void startUpdatesTimer(final Long checkLinkId, final Duration interval) {
-            updateTimerList.get(checkLinkId).scheduleTask(new Thread() {
+            final int taskId = scheduler.scheduleTask(new Runnable() {
 
                 @Override
                 public void run() {
@@ -1132,10 +1136,16 @@ public class CheckProviderServiceImpl extends CheckInheritanceSkeleton {
                 } // the time is being converted to milliseconds by multiplying by 1000  (starting delay included)
             }, (int) (interval.getValue() * 1000), (int) (interval.getValue() * 1000), TimeUnit.MILLISECONDS,
             true); // requirement: 3.5.3.ff
+
+            updateTimerList.put(checkLinkId, taskId);
         }
 
         private void stopUpdatesTimer(final Long objId) {
-            updateTimerList.get(objId).stopLast();
+            final Integer taskId = updateTimerList.get(objId);
+
+            if (taskId != null) {
+                scheduler.stopTask(taskId);
+            }
         }
 
     }
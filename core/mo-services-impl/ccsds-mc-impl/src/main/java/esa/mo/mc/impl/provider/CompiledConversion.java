@@ -0,0 +1,587 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2021      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : ESA NanoSat MO Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.mc.impl.provider;
+
+import esa.mo.com.impl.util.HelperCOM;
+import esa.mo.helpertools.helpers.HelperAttributes;
+import esa.mo.helpertools.helpers.HelperMisc;
+import java.util.Arrays;
+import java.util.Comparator;
+import org.ccsds.moims.mo.com.archive.structures.ExpressionOperator;
+import org.ccsds.moims.mo.mal.structures.Attribute;
+import org.ccsds.moims.mo.mal.structures.Element;
+import org.ccsds.moims.mo.mal.structures.Pair;
+import org.ccsds.moims.mo.mal.structures.PairList;
+import org.ccsds.moims.mo.mal.structures.Union;
+import org.ccsds.moims.mo.mc.conversion.structures.DiscreteConversionDetails;
+import org.ccsds.moims.mo.mc.conversion.structures.LineConversionDetails;
+import org.ccsds.moims.mo.mc.conversion.structures.PolyConversionDetails;
+import org.ccsds.moims.mo.mc.conversion.structures.RangeConversionDetails;
+
+/**
+ * A conversion definition compiled into a primitive form. The points of the
+ * line and range conversions are kept in sorted arrays that are searched with
+ * a binary search, and the polynomial conversions are evaluated with the
+ * Horner scheme. Definitions or values that cannot be handled as numbers are
+ * converted with the original algorithms, which scan the list of points.
+ */
+abstract class CompiledConversion {
+
+    /**
+     * The highest exponent that is evaluated with the Horner scheme.
+     */
+    private static final int MAX_HORNER_DEGREE = 64;
+
+    /**
+     * A conversion that always returns null. It represents an identity
+     * without a conversion definition.
+     */
+    static final CompiledConversion NONE = new CompiledConversion() {
+        @Override
+        Attribute convert(final Attribute value) {
+            return null;
+        }
+    };
+
+    /**
+     * Converts the value.
+     *
+     * @param value The raw value.
+     * @return The converted value or null if it cannot be converted.
+     */
+    abstract Attribute convert(Attribute value);
+
+    /**
+     * Compiles a conversion definition.
+     *
+     * @param details The conversion details object.
+     * @return The compiled conversion.
+     */
+    static CompiledConversion compile(final Element details) {
+        if (details instanceof DiscreteConversionDetails) {
+            return new Discrete((DiscreteConversionDetails) details);
+        }
+
+        if (details instanceof LineConversionDetails) {
+            final LineConversionDetails line = (LineConversionDetails) details;
+            final SortedPoints sorted = SortedPoints.compile(line.getPoints(), true);
+
+            if (sorted == null) {
+                return new GenericLine(line);
+            }
+
+            return new Line(sorted, line, line.getExtrapolate());
+        }
+
+        if (details instanceof PolyConversionDetails) {
+            final PolyConversionDetails poly = (PolyConversionDetails) details;
+            final CompiledConversion compiled = Poly.compile(poly.getPoints());
+            return (compiled == null) ? new GenericPoly(poly) : compiled;
+        }
+
+        if (details instanceof RangeConversionDetails) {
+            final RangeConversionDetails range = (RangeConversionDetails) details;
+            final SortedPoints sorted = SortedPoints.compile(range.getPoints(), false);
+            return (sorted == null) ? new GenericRange(range) : new Range(sorted, range);
+        }
+
+        // The object didn't match any type of Conversion
+        return NONE;
+    }
+
+    /**
+     * Converts the value into a double if it is compared as a number by
+     * HelperCOM.evaluateExpression.
+     *
+     * @param value The value.
+     * @return The double or null if the value is not compared as a number or
+     * is not a number.
+     */
+    private static Double numericValue(final Attribute value) {
+        if (value == null || HelperMisc.isStringAttribute(value)) {
+            return null;
+        }
+
+        final Double x = HelperAttributes.attribute2double(value);
+        return (x == null || x.isNaN()) ? null : x + 0.0;
+    }
+
+    /**
+     * The points of a line or range conversion sorted by their distinct
+     * first value. When several points share the same first value, the first
+     * one in the list is kept, like the list scan does.
+     */
+    private static final class SortedPoints {
+
+        private final double[] xs;
+        private final double[] ys;
+        private final Attribute[] seconds;
+
+        private SortedPoints(final double[] xs, final double[] ys, final Attribute[] seconds) {
+            this.xs = xs;
+            this.ys = ys;
+            this.seconds = seconds;
+        }
+
+        static SortedPoints compile(final PairList points, final boolean numericSeconds) {
+            if (points == null) {
+                return null;
+            }
+
+            final int n = points.size();
+            final Integer[] order = new Integer[n];
+            final double[] firsts = new double[n];
+
+            for (int i = 0; i < n; i++) {
+                final Pair point = points.get(i);
+
+                if (point == null || point.getFirst() == null
+                        || HelperMisc.isStringAttribute(point.getFirst())) {
+                    return null;
+                }
+
+                final Double x = HelperAttributes.attribute2double(point.getFirst());
+
+                if (x == null || x.isNaN()) {
+                    return null;
+                }
+
+                firsts[i] = x + 0.0;
+                order[i] = i;
+            }
+
+            // Stable sort, so the first point in the list comes first on ties
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(final Integer a, final Integer b) {
+                    return Double.compare(firsts[a], firsts[b]);
+                }
+            });
+
+            final double[] xs = new double[n];
+            final double[] ys = new double[n];
+            final Attribute[] seconds = new Attribute[n];
+            int size = 0;
+
+            for (int i = 0; i < n; i++) {
+                final int index = order[i];
+
+                if (size != 0 && xs[size - 1] == firsts[index]) {
+                    continue;
+                }
+
+                final Attribute second = points.get(index).getSecond();
+
+                if (numericSeconds) {
+                    final Double y = (second == null) ? null : HelperAttributes.attribute2double(second);
+
+                    if (y == null) {
+                        return null;
+                    }
+
+                    ys[size] = y;
+                }
+
+                xs[size] = firsts[index];
+                seconds[size] = second;
+                size++;
+            }
+
+            return new SortedPoints(Arrays.copyOf(xs, size), Arrays.copyOf(ys, size),
+                    Arrays.copyOf(seconds, size));
+        }
+
+        int size() {
+            return xs.length;
+        }
+
+        /**
+         * @return The index of the point, or (-(insertion point) - 1) if there
+         * is no point with that first value.
+         */
+        int search(final double x) {
+            return Arrays.binarySearch(xs, x);
+        }
+
+        Union interpolate(final double x, final int bottom, final int top) {
+            return new Union(ys[bottom] + (ys[top] - ys[bottom]) * (x - xs[bottom]) / (xs[top] - xs[bottom]));
+        }
+    }
+
+    private static final class Line extends CompiledConversion {
+
+        private final SortedPoints points;
+        private final GenericLine generic;
+        private final int listSize;
+        private final boolean extrapolate;
+
+        private Line(final SortedPoints points, final LineConversionDetails details, final boolean extrapolate) {
+            this.points = points;
+            this.generic = new GenericLine(details);
+            this.listSize = details.getPoints().size();
+            this.extrapolate = extrapolate;
+        }
+
+        @Override
+        Attribute convert(final Attribute value) {
+            //requirement: 3.8.3.d: Do we have at least 2 points?
+            if (listSize < 2) {
+                return null;
+            }
+
+            final Double x = numericValue(value);
+
+            if (x == null) { // Not a number, scan the list of points
+                return generic.convert(value);
+            }
+
+            final int index = points.search(x);
+
+            if (index >= 0) { // Direct hit
+                return points.seconds[index];
+            }
+
+            final int top = -index - 1;
+            final int size = points.size();
+
+            if (top > 0 && top < size) {
+                return points.interpolate(x, top - 1, top);
+            }
+
+            // It was not possible to interpolate. Are we allowed to extrapolate?
+            if (!extrapolate || size < 2) {
+                return null;
+            }
+
+            if (top == 0) { // The value is less than the minimum point
+                return points.interpolate(x, 0, 1);
+            }
+
+            // The value is greater than the maximum point
+            return points.interpolate(x, size - 2, size - 1);
+        }
+    }
+
+    private static final class Range extends CompiledConversion {
+
+        private final SortedPoints points;
+        private final GenericRange generic;
+
+        private Range(final SortedPoints points, final RangeConversionDetails details) {
+            this.points = points;
+            this.generic = new GenericRange(details);
+        }
+
+        @Override
+        Attribute convert(final Attribute value) {
+            //requirement: 3.8.3.f => no entry in the points-list returns null
+            final Double x = numericValue(value);
+
+            if (x == null) { // Not a number, scan the list of points
+                return generic.convert(value);
+            }
+
+            final int index = points.search(x);
+
+            if (index >= 0) { // Direct hit
+                return points.seconds[index];
+            }
+
+            final int bottom = -index - 2;
+            return (bottom < 0) ? null : points.seconds[bottom];
+        }
+    }
+
+    private static final class Poly extends CompiledConversion {
+
+        /**
+         * The coefficients indexed by their exponent, for the Horner scheme.
+         */
+        private final double[] coefficients;
+        private final int[] exponents;
+        private final double[] factors;
+
+        private Poly(final double[] coefficients, final int[] exponents, final double[] factors) {
+            this.coefficients = coefficients;
+            this.exponents = exponents;
+            this.factors = factors;
+        }
+
+        static CompiledConversion compile(final PairList points) {
+            //requirement: 3.8.3.e => no entry in the points-list returns null
+            if (points.isEmpty()) {
+                return NONE;
+            }
+
+            final int[] exponents = new int[points.size()];
+            final double[] factors = new double[points.size()];
+            boolean horner = true;
+            int degree = 0;
+
+            for (int i = 0; i < points.size(); i++) {
+                final Pair point = points.get(i);
+
+                if (!(point.getFirst() instanceof Union) || point.getSecond() == null) {
+                    return null;
+                }
+
+                final Double factor = HelperAttributes.attribute2double(point.getSecond());
+
+                if (factor == null) {
+                    return null;
+                }
+
+                exponents[i] = ((Union) point.getFirst()).getIntegerValue();
+                factors[i] = factor;
+                horner &= (exponents[i] >= 0 && exponents[i] <= MAX_HORNER_DEGREE);
+                degree = Math.max(degree, exponents[i]);
+            }
+
+            if (!horner) {
+                return new Poly(null, exponents, factors);
+            }
+
+            final double[] coefficients = new double[degree + 1];
+
+            for (int i = 0; i < exponents.length; i++) {
+                coefficients[exponents[i]] += factors[i];
+            }
+
+            return new Poly(coefficients, null, null);
+        }
+
+        @Override
+        Attribute convert(final Attribute value) {
+            final Double boxed = (value == null) ? null : HelperAttributes.attribute2double(value);
+
+            if (boxed == null) {
+                return null;
+            }
+
+            final double x = boxed;
+            double convertedValue = 0;
+
+            if (coefficients != null) {
+                for (int i = coefficients.length - 1; i >= 0; i--) {
+                    convertedValue = convertedValue * x + coefficients[i];
+                }
+            } else {
+                for (int i = 0; i < exponents.length; i++) {
+                    convertedValue += factors[i] * Math.pow(x, exponents[i]);
+                }
+            }
+
+            return new Union(convertedValue);
+        }
+    }
+
+    private static final class Discrete extends CompiledConversion {
+
+        private final Pair[] mapping;
+
+        private Discrete(final DiscreteConversionDetails details) {
+            this.mapping = details.getMapping().toArray(new Pair[0]);
+        }
+
+        @Override
+        Attribute convert(final Attribute value) {
+            //requirement: 3.8.3.c => no entry in the points-list returns null
+            for (Pair pair : mapping) {
+                if (pair.getFirst().equals(value)) {
+                    return pair.getSecond();
+                }
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * Line conversion of points or values that are not all numbers.
+     */
+    private static final class GenericLine extends CompiledConversion {
+
+        private final LineConversionDetails details;
+
+        private GenericLine(final LineConversionDetails details) {
+            this.details = details;
+        }
+
+        @Override
+        Attribute convert(final Attribute value) {
+            final PairList points = details.getPoints();
+
+            if (points == null) // Should never happen because the object is not nullable
+            {
+                return null;
+            }
+
+            //requirement: 3.8.3.d: Do we have at least 2 points?
+            if (points.size() < 2) {  // It is only possible to do a line conversion if there are at least 2 points
+                return null;
+            }
+
+            // Do we have a direct hit?
+            for (Pair point : points) {
+                if (HelperCOM.evaluateExpression(point.getFirst(), ExpressionOperator.EQUAL, value)) { // If we get a hit, then return it right away
+                    return point.getSecond();
+                }
+            }
+
+            Pair top = findTop(value, points);
+            Pair bottom = findBottom(value, points);
+
+            // Let's interpolate if we have the top and the bottom points
+            if (top != null && bottom != null) {
+                return linearInterpolation(value, top, bottom);
+            }
+
+            // It was not possible to interpolate. Are we allowed to extrapolate?
+            if (!details.getExtrapolate()) { // If not, then leave...
+                return null;
+            }
+
+            // So, we must extrapolate...
+            // The value is less than the minimum point
+            if (bottom == null && top != null) {
+                bottom = top;
+                top = findTop(bottom.getFirst(), points);
+
+                return (top == null) ? null : linearInterpolation(value, top, bottom);
+            }
+
+            // The value is greater than the maximum point
+            if (top == null && bottom != null) {
+                top = bottom;
+                bottom = findBottom(top.getFirst(), points);
+
+                return (bottom == null) ? null : linearInterpolation(value, top, bottom);
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * Range conversion of points or values that are not all numbers.
+     */
+    private static final class GenericRange extends CompiledConversion {
+
+        private final RangeConversionDetails details;
+
+        private GenericRange(final RangeConversionDetails details) {
+            this.details = details;
+        }
+
+        @Override
+        Attribute convert(final Attribute value) {
+            //requirement: 3.8.3.f => no entry in the points-list returns null
+            // Do we have a direct hit?
+            final PairList points = details.getPoints();
+            for (Pair point : points) {
+                if (HelperCOM.evaluateExpression(point.getFirst(), ExpressionOperator.EQUAL, value)) { // If we get a hit, then return it right away
+                    return point.getSecond();
+                }
+            }
+
+            Pair bottom = findBottom(value, points);
+            if (bottom == null) {
+                return null;
+            }
+            return bottom.getSecond();
+        }
+    }
+
+    /**
+     * Polynomial conversion of points that are not all numbers.
+     */
+    private static final class GenericPoly extends CompiledConversion {
+
+        private final PolyConversionDetails details;
+
+        private GenericPoly(final PolyConversionDetails details) {
+            this.details = details;
+        }
+
+        @Override
+        Attribute convert(final Attribute value) {
+            double convertedValue = 0;
+            for (Pair point : details.getPoints()) {
+                double midStep = Math.pow(HelperAttributes.attribute2double(value), ((Union) point.getFirst()).getIntegerValue());
+                convertedValue += HelperAttributes.attribute2double(point.getSecond()) * midStep;
+            }
+
+            return new Union(convertedValue);
+        }
+    }
+
+    private static Union linearInterpolation(final Attribute value, final Pair top, final Pair bottom) {
+        double x = HelperAttributes.attribute2double(value);
+        double x_0 = HelperAttributes.attribute2double(bottom.getFirst());
+        double y_0 = HelperAttributes.attribute2double(bottom.getSecond());
+        double x_1 = HelperAttributes.attribute2double(top.getFirst());
+        double y_1 = HelperAttributes.attribute2double(top.getSecond());
+
+        // From wikipedia: http://en.wikipedia.org/wiki/Linear_interpolation
+        return new Union(y_0 + (y_1 - y_0) * (x - x_0) / (x_1 - x_0));
+    }
+
+    private static Pair findTop(final Attribute value, final PairList points) {
+        Pair top = null;
+
+        for (Pair point : points) {
+            // Check if the point is after the value
+            if (HelperCOM.evaluateExpression(point.getFirst(), ExpressionOperator.GREATER, value)) {
+                if (top == null) {
+                    top = point;
+                    continue;
+                }
+
+                if (HelperCOM.evaluateExpression(point.getFirst(), ExpressionOperator.LESS, top.getFirst())) {
+                    top = point;
+                }
+            }
+        }
+
+        return top;
+    }
+
+    private static Pair findBottom(final Attribute value, final PairList points) {
+        Pair bottom = null;
+
+        for (Pair point : points) {
+            // Check if the point is NOT after the value
+            if (HelperCOM.evaluateExpression(point.getFirst(), ExpressionOperator.LESS, value)) {
+                if (bottom == null) {
+                    bottom = point;
+                    continue;
+                }
+
+                if (HelperCOM.evaluateExpression(point.getFirst(), ExpressionOperator.GREATER, bottom.getFirst())) {
+                    bottom = point;
+                }
+            }
+        }
+
+        return bottom;
+    }
+
+}
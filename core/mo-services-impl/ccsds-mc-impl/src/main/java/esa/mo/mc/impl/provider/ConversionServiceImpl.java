@@ -20,15 +20,16 @@
  */
 package esa.mo.mc.impl.provider;
 
+import esa.mo.com.impl.provider.ArchiveChangeListener;
 import esa.mo.com.impl.provider.ArchiveProviderServiceImpl;
 import esa.mo.com.impl.util.HelperCOM;
 import esa.mo.com.impl.util.HelperArchive;
-import esa.mo.helpertools.helpers.HelperAttributes;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import org.ccsds.moims.mo.com.COMHelper;
 import org.ccsds.moims.mo.com.archive.structures.ArchiveDetails;
 import org.ccsds.moims.mo.com.archive.structures.ArchiveDetailsList;
-import org.ccsds.moims.mo.com.archive.structures.ExpressionOperator;
-import org.ccsds.moims.mo.com.structures.ObjectId;
+import org.ccsds.moims.mo.com.structures.ObjectKey;
 import org.ccsds.moims.mo.com.structures.ObjectType;
 import org.ccsds.moims.mo.mal.MALContextFactory;
 import org.ccsds.moims.mo.mal.MALException;
@@ -39,16 +40,9 @@ import org.ccsds.moims.mo.mal.structures.Attribute;
 import org.ccsds.moims.mo.mal.structures.Element;
 import org.ccsds.moims.mo.mal.structures.IdentifierList;
 import org.ccsds.moims.mo.mal.structures.LongList;
-import org.ccsds.moims.mo.mal.structures.Pair;
-import org.ccsds.moims.mo.mal.structures.PairList;
-import org.ccsds.moims.mo.mal.structures.Union;
 import org.ccsds.moims.mo.mc.MCHelper;
 import org.ccsds.moims.mo.mc.conversion.ConversionHelper;
 import org.ccsds.moims.mo.mc.conversion.provider.ConversionInheritanceSkeleton;
-import org.ccsds.moims.mo.mc.conversion.structures.DiscreteConversionDetails;
-import org.ccsds.moims.mo.mc.conversion.structures.LineConversionDetails;
-import org.ccsds.moims.mo.mc.conversion.structures.PolyConversionDetails;
-import org.ccsds.moims.mo.mc.conversion.structures.RangeConversionDetails;
 import org.ccsds.moims.mo.mc.parameter.structures.ParameterConversion;
 import org.ccsds.moims.mo.mc.parameter.structures.ParameterValue;
 import org.ccsds.moims.mo.mc.structures.ConditionalConversionList;
@@ -64,13 +58,48 @@ public class ConversionServiceImpl extends ConversionInheritanceSkeleton {
     private ParameterManager manager;
     private boolean initialiased = false;
 
+    /**
+     * The compiled conversion definitions, keyed by the identity of the
+     * conversion. Identities without a definition are cached as
+     * CompiledConversion.NONE.
+     */
+    private final ConcurrentHashMap<ObjectKey, CompiledConversion> conversions
+            = new ConcurrentHashMap<ObjectKey, CompiledConversion>();
+
+    /**
+     * Incremented every time the cached conversions are invalidated.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    private final ArchiveChangeListener conversionsListener = new ArchiveChangeListener() {
+        @Override
+        public void onObjectsChanged(final ObjectType objType, final IdentifierList domain) {
+            if (objType == null
+                    || objType.equals(ConversionHelper.DISCRETECONVERSION_OBJECT_TYPE)
+                    || objType.equals(ConversionHelper.LINECONVERSION_OBJECT_TYPE)
+                    || objType.equals(ConversionHelper.POLYCONVERSION_OBJECT_TYPE)
+                    || objType.equals(ConversionHelper.RANGECONVERSION_OBJECT_TYPE)) {
+                invalidateConversions();
+            }
+        }
+    };
+
     /**
      *
      * @param archiveService
      * @throws org.ccsds.moims.mo.mal.MALException
      */
     protected synchronized void init(ArchiveProviderServiceImpl archiveService) throws MALException {
+        if (this.archiveService != null) {
+            this.archiveService.getArchiveManager().removeChangeListener(conversionsListener);
+        }
+
         this.archiveService = archiveService;
+        this.invalidateConversions();
+
+        if (archiveService != null) {
+            archiveService.getArchiveManager().addChangeListener(conversionsListener);
+        }
 
         if (!initialiased) {
             if (MALContextFactory.lookupArea(MALHelper.MAL_AREA_NAME, MALHelper.MAL_AREA_VERSION) == null) {
@@ -156,39 +185,51 @@ public class ConversionServiceImpl extends ConversionInheritanceSkeleton {
         /**
          * get the conversionDetails by the identityId *
          */
-        //TODO: use a query method here
-        final IdentifierList domain = conditionalRef.getConversionId().getDomain();
+        // Execute conversion...
+        return this.getCompiledConversion(conditionalRef.getConversionId()).convert(value);
+    }
 
-        Element conversionDetails = this.getConversionDefinition(domain, conditionalRef.getConversionId().getInstId());
+    /**
+     * Drops all the compiled conversions, so that they are loaded again from
+     * the Archive on the next conversion.
+     */
+    protected void invalidateConversions() {
+        generation.incrementAndGet();
+        conversions.clear();
+    }
 
-        if (conversionDetails == null) {
-            return null; // The Conversion object was not found in the Archive or Archive not available
-        }
+    /**
+     * Returns the compiled conversion definition of the identity. It is loaded
+     * from the Archive and compiled on the first use, and kept until a
+     * conversion definition is stored, updated or removed.
+     *
+     * @param conversionId The key of the conversion identity.
+     * @return The compiled conversion, or CompiledConversion.NONE if there is
+     * no definition or the Archive is not available.
+     */
+    private CompiledConversion getCompiledConversion(final ObjectKey conversionId) {
+        CompiledConversion compiled = conversions.get(conversionId);
 
-        // Execute conversion...
-        // Discrete Conversion:
-        if (conversionDetails instanceof DiscreteConversionDetails) {
-            return this.applyDiscreteConversion((DiscreteConversionDetails) conversionDetails, value);
+        if (compiled != null) {
+            return compiled;
         }
 
-        // Line Conversion:
-        if (conversionDetails instanceof LineConversionDetails) {
-            return this.applyLineConversion((LineConversionDetails) conversionDetails, value);
-        }
+        final long loadedGeneration = generation.get();
+        final Element conversionDetails = this.getConversionDefinition(conversionId.getDomain(),
+                conversionId.getInstId());
 
-        // Polynomial Conversion:
-        if (conversionDetails instanceof PolyConversionDetails) {
-            return this.applyPolyConversion((PolyConversionDetails) conversionDetails, value);
-        }
+        // The Conversion object was not found in the Archive or Archive not available
+        compiled = (conversionDetails == null) ? CompiledConversion.NONE
+                : CompiledConversion.compile(conversionDetails);
 
-        // Range Conversion:
-        if (conversionDetails instanceof RangeConversionDetails) {
-            return this.applyRangeConversion((RangeConversionDetails) conversionDetails, value);
-        }
+        conversions.put(conversionId, compiled);
 
-        // The object returned didn't match any type of Conversion
-        return null;
+        // A definition changed while loading? Then don't keep a stale one
+        if (generation.get() != loadedGeneration) {
+            conversions.remove(conversionId, compiled);
+        }
 
+        return compiled;
     }
 
     /**
@@ -201,7 +242,7 @@ public class ConversionServiceImpl extends ConversionInheritanceSkeleton {
      * @return The latest conversion-definition-details-object if one is found
      * with the given identityId, or null otherwise.
      */
-    private Element getConversionDefinition(final IdentifierList domain, final Long identityId) {
+    Element getConversionDefinition(final IdentifierList domain, final Long identityId) {
         Element conversionDetails;
         //Search in PolyConversions:
         ObjectType convType = ConversionHelper.POLYCONVERSION_OBJECT_TYPE;
@@ -273,165 +314,4 @@ public class ConversionServiceImpl extends ConversionInheritanceSkeleton {
         return null;
     }
 
-    private Attribute applyDiscreteConversion(final DiscreteConversionDetails conversionDetails, final Attribute value) {
-        //requirement: 3.8.3.c => no entry in the points-list returns null
-        for (Pair mapping : conversionDetails.getMapping()) {
-            if (mapping.getFirst().equals(value)) {
-                return mapping.getSecond();
-            }
-        }
-
-        return null;
-    }
-
-    private Attribute applyLineConversion(final LineConversionDetails conversionDetails, final Attribute value) {
-
-        PairList points = conversionDetails.getPoints();
-
-        if (points == null) // Should never happen because the object is not nullable
-        {
-            return null;
-        }
-
-        //requirement: 3.8.3.d: Do we have at least 2 points?
-        if (points.size() < 2) {  // It is only possible to do a line conversion if there are at least 2 points
-            return null;
-        }
-
-        Pair top = null;
-        Pair bottom = null;
-
-        // Do we have a direct hit?
-        for (Pair point : points) {
-            if (HelperCOM.evaluateExpression(point.getFirst(), ExpressionOperator.EQUAL, value)) { // If we get a hit, then return it right away
-                return point.getSecond();
-            }
-        }
-
-        top = findTop(value, points);
-        bottom = findBottom(value, points);
-
-        // Let's interpolate if we have the top and the bottom points
-        if (top != null && bottom != null) {
-            return linearInterpolation(value, top, bottom);
-        }
-
-        // It was not possible to interpolate. Are we allowed to extrapolate?
-        if (!conversionDetails.getExtrapolate()) { // If not, then leave...
-            return null;
-        }
-
-        // So, we must extrapolate...
-        // The value is less than the minimum point
-        if (bottom == null && top != null) {
-            bottom = top;
-            top = findTop(bottom.getFirst(), points);
-
-            return linearInterpolation(value, top, bottom);
-        }
-
-        // The value is greater than the maximum point
-        if (top == null && bottom != null) {
-            top = bottom;
-            bottom = findBottom(top.getFirst(), points);
-
-            return linearInterpolation(value, top, bottom);
-        }
-
-        return null;
-    }
-
-    private Attribute applyPolyConversion(final PolyConversionDetails conversionDetails, final Attribute value) {
-        //requirement: 3.8.3.e => no entry in the points-list returns null
-        final PairList points = conversionDetails.getPoints();
-        if (points.size() == 0) {
-            return null;
-        }
-
-        double convertedValue = 0;
-        for (Pair point : points) {
-            double midStep = Math.pow(HelperAttributes.attribute2double(value), ((Union) point.getFirst()).getIntegerValue());
-            convertedValue += HelperAttributes.attribute2double(point.getSecond()) * midStep;
-        }
-
-        return new Union(convertedValue);
-    }
-
-    private Attribute applyRangeConversion(final RangeConversionDetails conversionDetails, final Attribute value) {
-        //requirement: 3.8.3.f => no entry in the points-list returns null
-        // Do we have a direct hit?
-        final PairList points = conversionDetails.getPoints();
-        for (Pair point : points) {
-            if (HelperCOM.evaluateExpression(point.getFirst(), ExpressionOperator.EQUAL, value)) { // If we get a hit, then return it right away
-                return point.getSecond();
-            }
-        }
-
-        Pair bottom = findBottom(value, points);
-        if (bottom == null) {
-            return null;
-        }
-        return bottom.getSecond();
-    }
-
-    private double linearInterpolation(double x, double x_0, double y_0, double x_1, double y_1) {
-        // From wikipedia: http://en.wikipedia.org/wiki/Linear_interpolation
-        return (y_0 + (y_1 - y_0) * (x - x_0) / (x_1 - x_0));
-    }
-
-    private Union linearInterpolation(final Attribute value, final Pair top, final Pair bottom) {
-
-        double x = HelperAttributes.attribute2double(value);
-        double x_0 = HelperAttributes.attribute2double(bottom.getFirst());
-        double y_0 = HelperAttributes.attribute2double(bottom.getSecond());
-        double x_1 = HelperAttributes.attribute2double(top.getFirst());
-        double y_1 = HelperAttributes.attribute2double(top.getSecond());
-
-        return new Union(this.linearInterpolation(x, x_0, y_0, x_1, y_1));
-    }
-
-    private Pair findTop(final Attribute value, final PairList points) {
-
-        Pair top = null;
-
-        for (Pair point : points) {
-            // Check if the point is after the value
-            if (HelperCOM.evaluateExpression(point.getFirst(), ExpressionOperator.GREATER, value)) {
-                if (top == null) {
-                    top = point;
-                    continue;
-                }
-
-                if (HelperCOM.evaluateExpression(point.getFirst(), ExpressionOperator.LESS, top.getFirst())) {
-                    top = point;
-                }
-            }
-        }
-
-        return top;
-    }
-
-    private Pair findBottom(final Attribute value, final PairList points) {
-
-        Pair bottom = null;
-
-        for (Pair point : points) {
-
-            // Check if the point is NOT after the value
-            if (HelperCOM.evaluateExpression(point.getFirst(), ExpressionOperator.LESS, value)) {
-                if (bottom == null) {
-                    bottom = point;
-                    continue;
-                }
-
-                if (HelperCOM.evaluateExpression(point.getFirst(), ExpressionOperator.GREATER, bottom.getFirst())) {
-                    bottom = point;
-                }
-
-            }
-        }
-
-        return bottom;
-    }
-
 }
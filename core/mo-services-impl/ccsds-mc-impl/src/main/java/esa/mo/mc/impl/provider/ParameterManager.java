@@ -27,6 +27,9 @@ import esa.mo.helpertools.connections.ConfigurationProviderSingleton;
 import esa.mo.helpertools.connections.SingleConnectionDetails;
 import esa.mo.mc.impl.interfaces.ParameterStatusListener;
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.ccsds.moims.mo.com.archive.structures.ArchiveDetails;
@@ -64,12 +67,21 @@ import org.ccsds.moims.mo.mc.structures.ParameterExpression;
 public class ParameterManager extends MCManager
 {
 
+  /**
+   * The time in milliseconds during which a raw value acquired from the application is reused by
+   * other samplings of the same parameter. Zero disables the sharing.
+   */
+  public static final String SAMPLE_TOLERANCE_PROPERTY = "esa.mo.mc.impl.provider.ParameterManager.sampleTolerance";
+
   private final ConversionServiceImpl conversionService = new ConversionServiceImpl();
 
   private Long uniqueObjIdIdentity;
   private Long uniqueObjIdDef; // Counter (different for every Definition)
   private Long uniqueObjIdPVal;
   private final ParameterStatusListener parametersMonitoring;
+  private final boolean bulkGetValues;
+  private final long sampleToleranceNanos;
+  private final ConcurrentHashMap<Long, RawSample> rawSamples = new ConcurrentHashMap<>();
 
   public ParameterManager(COMServicesProvider comServices,
       ParameterStatusListener parametersMonitoring)
@@ -82,6 +94,8 @@ public class ParameterManager extends MCManager
     }
 
     this.parametersMonitoring = parametersMonitoring;
+    this.bulkGetValues = overridesOnGetValues(parametersMonitoring);
+    this.sampleToleranceNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong(SAMPLE_TOLERANCE_PROPERTY, 0));
 
     if (super.getArchiveService() == null) {  // No Archive?
       this.uniqueObjIdIdentity = new Long(0); // The zeroth value will not be used (reserved for the wildcard)
@@ -277,11 +291,42 @@ public class ParameterManager extends MCManager
   protected ParameterValueList getParameterValues(LongList identityIds, boolean aggrExpired)
   {
     ParameterValueList pValList = new ParameterValueList();
-    for (Long identityId : identityIds) {
-      try {
-        pValList.add(getParameterValue(identityId, aggrExpired));
-      } catch (MALInteractionException ex) {
+
+    if (!bulkGetValues) {
+      for (Long identityId : identityIds) {
+        try {
+          pValList.add(getParameterValue(identityId, aggrExpired));
+        } catch (MALInteractionException ex) {
+          pValList.add(null);
+        }
+      }
+
+      return pValList;
+    }
+
+    // Acquire all the raw values from the application at once
+    final ParameterDefinitionDetails[] pDefs = new ParameterDefinitionDetails[identityIds.size()];
+    for (int i = 0; i < identityIds.size(); i++) {
+      if (this.existsIdentity(identityIds.get(i))) {
+        pDefs[i] = this.getParameterDefinition(identityIds.get(i));
+      }
+    }
+
+    Attribute[] rawValues;
+    try {
+      rawValues = getRawValues(identityIds, pDefs);
+    } catch (IOException ex) {
+      rawValues = null;
+    }
+
+    for (int i = 0; i < identityIds.size(); i++) {
+      if (pDefs[i] == null) {  // The Parameter does not exist
         pValList.add(null);
+      } else if (rawValues == null) {
+        pValList.add(new ParameterValue(getAsUOctet(ValidityState.INVALID_RAW), null, null));
+      } else {
+        // Generate final Parameter Value
+        pValList.add(generateNewParameterValue(rawValues[i], pDefs[i], aggrExpired));
       }
     }
 
@@ -700,6 +745,7 @@ public class ParameterManager extends MCManager
     //each Raw Value shall be set
     for (ParameterRawValue newRawValue : newRawValues) {
       Long identityId = newRawValue.getParamInstId();
+      rawSamples.remove(identityId); // The shared sample is outdated
       //requirement 3.3.9.2.h: create a new ParameterValue
       //TODO: what happens with the newly crated value? only raw value will be saved in the parameterApplication -> issue #140 
 //            ParameterValue newValue = generateNewParameterValue(newRawValue.getRawValue(), getParameterDefinition(identityId), false);
@@ -782,17 +828,130 @@ public class ParameterManager extends MCManager
     if (parametersMonitoring == null) {
       return null;
     }
+    final Attribute sharedValue = getSharedRawValue(identityId);
+    if (sharedValue != null) {
+      return sharedValue;
+    }
+    Attribute rawValue = null;
+    boolean acquired = false;
     try {
       Class cla = parametersMonitoring.getClass().getMethod("onGetValue",
           Identifier.class, Byte.class).getDeclaringClass();
       if (cla == ParameterStatusListener.class) {
-        return parametersMonitoring.onGetValue(identityId);
+        rawValue = parametersMonitoring.onGetValue(identityId);
+        acquired = true;
       }
     } catch (NoSuchMethodException | SecurityException ex) {
       Logger.getLogger(ParameterManager.class.getName()).log(Level.SEVERE, null, ex);
     }
-    return parametersMonitoring.onGetValue(this.getName(identityId), pDef.getRawType());
+    if (!acquired) {
+      rawValue = parametersMonitoring.onGetValue(this.getName(identityId), pDef.getRawType());
+    }
+    shareRawValue(identityId, rawValue);
+    return rawValue;
+
+  }
+
+  /**
+   * gets the current raw values of the parameters with the given identity-Ids from the application
+   * with a single call to onGetValues. The values shared by recent samplings are not requested
+   * again.
+   *
+   * @param identityIds the identity-ids of the parameters
+   * @param pDefs       the definitions of the parameters, null for the parameters that do not exist
+   * @return the raw values, null entries for the parameters that do not exist or if there is no
+   * parametersMonitoring
+   */
+  private Attribute[] getRawValues(LongList identityIds, ParameterDefinitionDetails[] pDefs)
+      throws IOException
+  {
+    final Attribute[] rawValues = new Attribute[identityIds.size()];
+    if (parametersMonitoring == null) {
+      return rawValues;
+    }
+    final LongList requestedIds = new LongList(identityIds.size());
+    final int[] requestedIndexes = new int[identityIds.size()];
+    for (int i = 0; i < identityIds.size(); i++) {
+      if (pDefs[i] == null) {
+        continue;
+      }
+      rawValues[i] = getSharedRawValue(identityIds.get(i));
+      if (rawValues[i] == null) {
+        requestedIndexes[requestedIds.size()] = i;
+        requestedIds.add(identityIds.get(i));
+      }
+    }
+    if (!requestedIds.isEmpty()) {
+      final List<Attribute> values = parametersMonitoring.onGetValues(requestedIds);
+      for (int j = 0; j < requestedIds.size(); j++) {
+        rawValues[requestedIndexes[j]] = values.get(j);
+        shareRawValue(requestedIds.get(j), values.get(j));
+      }
+    }
+    return rawValues;
+  }
+
+  /**
+   * gets the raw value of the parameter that was acquired within the sample tolerance
+   *
+   * @param identityId the identity-id of the parameter
+   * @return the raw value, null if there is none
+   */
+  private Attribute getSharedRawValue(Long identityId)
+  {
+    if (sampleToleranceNanos == 0) {
+      return null;
+    }
+    final RawSample sample = rawSamples.get(identityId);
+    if (sample == null || System.nanoTime() - sample.time > sampleToleranceNanos) {
+      return null;
+    }
+    return sample.value;
+  }
+
+  private void shareRawValue(Long identityId, Attribute rawValue)
+  {
+    if (sampleToleranceNanos != 0 && rawValue != null) {
+      rawSamples.put(identityId, new RawSample(rawValue, System.nanoTime()));
+    }
+  }
+
+  /**
+   * checks if the application acquires the values with the current interface and provides its own
+   * bulk onGetValues method
+   *
+   * @param listener the application
+   * @return true if onGetValues shall be used to sample several parameters at once
+   */
+  private static boolean overridesOnGetValues(ParameterStatusListener listener)
+  {
+    if (listener == null) {
+      return false;
+    }
+    try {
+      return listener.getClass().getMethod("onGetValue",
+          Identifier.class, Byte.class).getDeclaringClass() == ParameterStatusListener.class
+          && listener.getClass().getMethod("onGetValues",
+              LongList.class).getDeclaringClass() != ParameterStatusListener.class;
+    } catch (NoSuchMethodException | SecurityException ex) {
+      return false;
+    }
+  }
 
+  /**
+   * A raw value acquired from the application, with the time of its acquisition.
+   */
+  private static final class RawSample
+  {
+
+    private final Attribute value;
+    private final long time;
+
+    private RawSample(Attribute value, long time)
+    {
+      this.value = value;
+      this.time = time;
+    }
   }
 
   /**
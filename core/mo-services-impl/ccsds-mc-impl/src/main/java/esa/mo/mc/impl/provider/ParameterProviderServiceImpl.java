@@ -25,7 +25,7 @@ import esa.mo.com.impl.util.HelperArchive;
 import esa.mo.helpertools.connections.ConfigurationProviderSingleton;
 import esa.mo.helpertools.connections.ConnectionProvider;
 import esa.mo.helpertools.helpers.HelperTime;
-import esa.mo.helpertools.misc.TaskScheduler;
+import esa.mo.helpertools.misc.TimingWheelScheduler;
 import esa.mo.mc.impl.util.GroupRetrieval;
 import esa.mo.reconfigurable.service.ConfigurationChangeListener;
 import esa.mo.reconfigurable.service.ReconfigurableService;
@@ -763,11 +763,12 @@ public class ParameterProviderServiceImpl extends ParameterInheritanceSkeleton i
 
     private class PeriodicReportingManager { // requirement: 3.3.2.a.a
 
-        private HashMap<Long, TaskScheduler> timerList; // Timers list
+        private final TimingWheelScheduler scheduler = TimingWheelScheduler.getInstance();
+        private HashMap<Long, Integer> timerList; // Scheduled tasks list
         boolean active = false; // Flag that determines if the Manager publishes or not
 
         public PeriodicReportingManager() {
-            timerList = new HashMap<Long, TaskScheduler>();
+            timerList = new HashMap<Long, Integer>();
         }
 
         public void start() {
@@ -826,8 +827,6 @@ public class ParameterProviderServiceImpl extends ParameterInheritanceSkeleton i
          * periodically
          */
         private void addPeriodicReporting(Long identityId) {
-            TaskScheduler timer = new TaskScheduler(1);
-            timerList.put(identityId, timer);
             publishPeriodicParameterUpdate(identityId);
             //requirement: 3.3.3.c
             startTimer(identityId, manager.getParameterDefinition(identityId).getReportInterval());
@@ -844,7 +843,7 @@ public class ParameterProviderServiceImpl extends ParameterInheritanceSkeleton i
          * @param interval
          */
         private void startTimer(final Long identityId, final Duration interval) {  // requirement: 3.3.3.c
-            timerList.get(identityId).scheduleTask(new Thread() {
+            final int taskId = scheduler.scheduleTask(new Runnable() {
                 @Override
                 public void run() {
                     if (active) {
@@ -857,10 +856,16 @@ public class ParameterProviderServiceImpl extends ParameterInheritanceSkeleton i
                     }
                 }
             }, 0, (int) (interval.getValue() * 1000), TimeUnit.MILLISECONDS, true); // the time has to be converted to milliseconds by multiplying by 1000
+
+            timerList.put(identityId, taskId);
         }
 
         private void stopTimer(final Long identityId) {
-            timerList.get(identityId).stopLast();
+            final Integer taskId = timerList.get(identityId);
+
+            if (taskId != null) {
+                scheduler.stopTask(taskId);
+            }
         }
 
     }
@@ -0,0 +1,408 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2021      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : ESA NanoSat MO Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.mc.impl.provider;
+
+import esa.mo.helpertools.helpers.HelperAttributes;
+import org.ccsds.moims.mo.mal.structures.Attribute;
+import org.ccsds.moims.mo.mal.structures.Time;
+import org.ccsds.moims.mo.mal.structures.TimeList;
+import org.ccsds.moims.mo.mc.structures.AttributeValue;
+import org.ccsds.moims.mo.mc.structures.AttributeValueList;
+
+/**
+ * Holds the samples of a statistic link inside its collection window and keeps
+ * the maximum, minimum, mean and standard deviation of the window up to date
+ * while samples are added and evicted.
+ *
+ * The samples are stored in a ring buffer of primitives. The mean and the
+ * variance are kept with Welford's algorithm and the maximum and minimum with
+ * monotonic deques of sample sequence numbers, so adding or evicting a sample
+ * costs amortised O(1) and generating a report does not rescan the window. The
+ * number of samples is bounded by the maxSamples value given on construction,
+ * when it is reached the oldest sample is evicted.
+ */
+public class StatisticAccumulator {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int maxSamples;
+
+    // Ring buffer, indexed by the sequence number of the sample
+    private double[] values; // NaN for null or non-numeric samples
+    private long[] times;
+    private Attribute[] attributes;
+    private int mask;
+    private long head = 0; // Sequence number of the oldest sample
+    private long tail = 0; // Sequence number of the next sample
+
+    // Welford's accumulators of the numeric samples
+    private int count = 0;
+    private double mean = 0;
+    private double m2 = 0;
+
+    // Monotonic deques of sequence numbers, the front is the first occurrence
+    private final SequenceDeque maxDeque;
+    private final SequenceDeque minDeque;
+
+    public StatisticAccumulator(final int maxSamples) {
+        if (maxSamples <= 0) {
+            throw new IllegalArgumentException("The maximum number of samples must be positive");
+        }
+
+        this.maxSamples = maxSamples;
+        final int capacity = Math.min(INITIAL_CAPACITY, ceilingPowerOfTwo(maxSamples));
+        this.values = new double[capacity];
+        this.times = new long[capacity];
+        this.attributes = new Attribute[capacity];
+        this.mask = capacity - 1;
+        this.maxDeque = new SequenceDeque(capacity);
+        this.minDeque = new SequenceDeque(capacity);
+    }
+
+    /**
+     * Adds a sample to the window.
+     *
+     * @param attribute The sampled value, or null if the sample failed.
+     * @param time The time of the sample in milliseconds.
+     */
+    public synchronized void add(final Attribute attribute, final long time) {
+        if (tail - head == maxSamples) {
+            this.evictOldest();
+        }
+
+        if (tail - head == values.length) {
+            this.grow();
+        }
+
+        final Double dou = (attribute == null) ? null : HelperAttributes.attribute2double(attribute);
+        final double value = (dou == null) ? Double.NaN : dou;
+        final int pos = (int) (tail & mask);
+        values[pos] = value;
+        times[pos] = time;
+        attributes[pos] = attribute;
+
+        if (!Double.isNaN(value)) {
+            count++;
+            final double delta = value - mean;
+            mean += delta / count;
+            m2 += delta * (value - mean);
+        }
+
+        if (attribute != null) {
+            // The earlier samples stay in front when equal: report the first occurrence
+            while (!maxDeque.isEmpty() && this.isGreater(tail, maxDeque.peekLast())) {
+                maxDeque.pollLast();
+            }
+            maxDeque.addLast(tail);
+
+            while (!minDeque.isEmpty() && this.isLess(tail, minDeque.peekLast())) {
+                minDeque.pollLast();
+            }
+            minDeque.addLast(tail);
+        }
+
+        tail++;
+    }
+
+    /**
+     * Evicts the samples that are older than the given time.
+     *
+     * @param oldestTime The time of the oldest sample to keep in milliseconds.
+     */
+    public synchronized void evictOlderThan(final double oldestTime) {
+        while (head != tail && times[(int) (head & mask)] < oldestTime) {
+            this.evictOldest();
+        }
+    }
+
+    public synchronized void clear() {
+        for (long seq = head; seq != tail; seq++) {
+            attributes[(int) (seq & mask)] = null;
+        }
+
+        head = tail;
+        count = 0;
+        mean = 0;
+        m2 = 0;
+        maxDeque.clear();
+        minDeque.clear();
+    }
+
+    public synchronized int size() {
+        return (int) (tail - head);
+    }
+
+    public synchronized Time getStartTime() {
+        return (head == tail) ? null : new Time(times[(int) (head & mask)]);
+    }
+
+    public synchronized Time getEndTime() {
+        return (head == tail) ? null : new Time(times[(int) ((tail - 1) & mask)]);
+    }
+
+    /**
+     * Returns the first occurrence of the maximum value of the window.
+     *
+     * @return The value and its time, or null if there are no values.
+     */
+    public synchronized Sample getMaximum() {
+        return maxDeque.isEmpty() ? null : this.sampleAt(maxDeque.peekFirst());
+    }
+
+    /**
+     * Returns the first occurrence of the minimum value of the window.
+     *
+     * @return The value and its time, or null if there are no values.
+     */
+    public synchronized Sample getMinimum() {
+        return minDeque.isEmpty() ? null : this.sampleAt(minDeque.peekFirst());
+    }
+
+    /**
+     * Returns the mean average of the numeric values of the window.
+     *
+     * @return The mean average, or null if there are no numeric values.
+     */
+    public synchronized Double getMean() {
+        return (count == 0) ? null : mean;
+    }
+
+    /**
+     * Returns the sample standard deviation of the numeric values of the
+     * window.
+     *
+     * @return The standard deviation, or null if there are no numeric values.
+     * A single numeric value has a standard deviation of 0.
+     */
+    public synchronized Double getStandardDeviation() {
+        if (count == 0) {
+            return null;
+        }
+
+        return (count == 1) ? 0.0 : Math.sqrt(m2 / (count - 1));
+    }
+
+    /**
+     * Returns the position of the oldest sample that is not older than the
+     * given time, counted from the oldest sample of the window.
+     *
+     * @param oldestTime The time in milliseconds.
+     * @return The position.
+     */
+    public synchronized int getOldestIndex(final double oldestTime) {
+        long low = head;
+        long high = tail;
+
+        while (low < high) {
+            final long mid = (low + high) >>> 1;
+
+            if (times[(int) (mid & mask)] < oldestTime) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return (int) (low - head);
+    }
+
+    public synchronized TimeList getTimes() {
+        final TimeList list = new TimeList((int) (tail - head));
+
+        for (long seq = head; seq != tail; seq++) {
+            list.add(new Time(times[(int) (seq & mask)]));
+        }
+
+        return list;
+    }
+
+    public synchronized AttributeValueList getValues() {
+        final AttributeValueList list = new AttributeValueList((int) (tail - head));
+
+        for (long seq = head; seq != tail; seq++) {
+            final Attribute attribute = attributes[(int) (seq & mask)];
+            list.add((attribute == null) ? null : new AttributeValue(attribute));
+        }
+
+        return list;
+    }
+
+    private Sample sampleAt(final long seq) {
+        final int pos = (int) (seq & mask);
+        return new Sample(attributes[pos], new Time(times[pos]));
+    }
+
+    private void evictOldest() {
+        final int pos = (int) (head & mask);
+        final double value = values[pos];
+
+        if (!Double.isNaN(value)) {
+            count--;
+
+            if (count == 0) {
+                mean = 0;
+                m2 = 0;
+            } else {
+                final double delta = value - mean;
+                mean -= delta / count;
+                m2 = Math.max(0, m2 - delta * (value - mean));
+            }
+        }
+
+        if (!maxDeque.isEmpty() && maxDeque.peekFirst() == head) {
+            maxDeque.pollFirst();
+        }
+
+        if (!minDeque.isEmpty() && minDeque.peekFirst() == head) {
+            minDeque.pollFirst();
+        }
+
+        attributes[pos] = null;
+        head++;
+    }
+
+    private void grow() {
+        final int capacity = values.length << 1;
+        final double[] newValues = new double[capacity];
+        final long[] newTimes = new long[capacity];
+        final Attribute[] newAttributes = new Attribute[capacity];
+        final int newMask = capacity - 1;
+
+        for (long seq = head; seq != tail; seq++) {
+            final int from = (int) (seq & mask);
+            final int to = (int) (seq & newMask);
+            newValues[to] = values[from];
+            newTimes[to] = times[from];
+            newAttributes[to] = attributes[from];
+        }
+
+        values = newValues;
+        times = newTimes;
+        attributes = newAttributes;
+        mask = newMask;
+        maxDeque.grow(capacity);
+        minDeque.grow(capacity);
+    }
+
+    private boolean isGreater(final long seq1, final long seq2) {
+        final int pos1 = (int) (seq1 & mask);
+        final int pos2 = (int) (seq2 & mask);
+
+        // The numeric strings are already converted, so a non-numeric sample
+        // cannot be ordered and the first occurrence is kept
+        return values[pos1] > values[pos2];
+    }
+
+    private boolean isLess(final long seq1, final long seq2) {
+        final int pos1 = (int) (seq1 & mask);
+        final int pos2 = (int) (seq2 & mask);
+
+        // The numeric strings are already converted, so a non-numeric sample
+        // cannot be ordered and the first occurrence is kept
+        return values[pos1] < values[pos2];
+    }
+
+    private static int ceilingPowerOfTwo(final int value) {
+        final int power = Integer.highestOneBit(value);
+        return (power == value || power == (1 << 30)) ? power : power << 1;
+    }
+
+    /**
+     * A value of the window together with its sampling time.
+     */
+    public static class Sample {
+
+        private final Attribute value;
+        private final Time time;
+
+        public Sample(final Attribute value, final Time time) {
+            this.value = value;
+            this.time = time;
+        }
+
+        public Attribute getValue() {
+            return value;
+        }
+
+        public Time getTime() {
+            return time;
+        }
+
+    }
+
+    /**
+     * A double-ended queue of sequence numbers on a growable ring of longs.
+     */
+    private static class SequenceDeque {
+
+        private long[] buffer;
+        private int first = 0;
+        private int size = 0;
+
+        SequenceDeque(final int capacity) {
+            this.buffer = new long[capacity];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void clear() {
+            first = 0;
+            size = 0;
+        }
+
+        long peekFirst() {
+            return buffer[first];
+        }
+
+        long peekLast() {
+            return buffer[(first + size - 1) & (buffer.length - 1)];
+        }
+
+        void pollFirst() {
+            first = (first + 1) & (buffer.length - 1);
+            size--;
+        }
+
+        void pollLast() {
+            size--;
+        }
+
+        void addLast(final long seq) {
+            buffer[(first + size) & (buffer.length - 1)] = seq;
+            size++;
+        }
+
+        void grow(final int capacity) {
+            final long[] newBuffer = new long[capacity];
+
+            for (int i = 0; i < size; i++) {
+                newBuffer[i] = buffer[(first + i) & (buffer.length - 1)];
+            }
+
+            buffer = newBuffer;
+            first = 0;
+        }
+
+    }
+
+}
@@ -22,17 +22,16 @@ package esa.mo.mc.impl.provider;
 
 import esa.mo.com.impl.util.COMServicesProvider;
 import esa.mo.com.impl.util.HelperArchive;
-import esa.mo.com.impl.util.HelperCOM;
 import esa.mo.helpertools.connections.ConfigurationProviderSingleton;
 import esa.mo.helpertools.connections.SingleConnectionDetails;
 import esa.mo.helpertools.helpers.HelperAttributes;
 import esa.mo.mc.impl.interfaces.ExternalStatisticFunctionsInterface;
 import java.util.HashMap;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Semaphore;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import org.ccsds.moims.mo.com.archive.structures.ExpressionOperator;
 import org.ccsds.moims.mo.com.structures.ObjectId;
 import org.ccsds.moims.mo.mal.MALException;
 import org.ccsds.moims.mo.mal.MALInteractionException;
@@ -55,7 +54,6 @@ import org.ccsds.moims.mo.mc.statistic.structures.StatisticFunctionDetailsList;
 import org.ccsds.moims.mo.mc.statistic.structures.StatisticLinkDetailsList;
 import org.ccsds.moims.mo.mc.statistic.structures.StatisticValue;
 import org.ccsds.moims.mo.mc.statistic.structures.StatisticValueList;
-import org.ccsds.moims.mo.mc.structures.AttributeValue;
 import org.ccsds.moims.mo.mc.structures.AttributeValueList;
 import org.ccsds.moims.mo.mc.structures.ObjectInstancePair;
 
@@ -70,6 +68,8 @@ public final class StatisticManager {
     private static final String STR_STAT_FUNC_NAME_MINIMUM = "MIN";
     private static final String STR_STAT_FUNC_NAME_MEAN_AVERAGE = "MEAN";
     private static final String STR_STAT_FUNC_NAME_STD_DEVIATION = "SD";
+    public static final String MAX_SAMPLES_PROPERTY = "esa.mo.mc.impl.provider.StatisticManager.maxSamples";
+    private static final int DEFAULT_MAX_SAMPLES = 65536; // Upper bound of the samples kept per statistic link
 
     private Long uniqueObjIdLink; // Unique objId Link (different for every Definition)
     private Long uniqueObjIdLinkDef; // Unique objId Definition (different for every Definition)
@@ -382,7 +382,7 @@ public final class StatisticManager {
         this.statEvaluationReports.remove(statLinkId);
     }
 
-    protected StatisticValue generateStatisticValue(Long statFuncId, long paramIdentityId, TimeList times, AttributeValueList values) {
+    protected StatisticValue generateStatisticValue(Long statFuncId, long paramIdentityId, StatisticAccumulator samples) {
         StatisticFunctionDetails statFunction = this.getStatisticFunction(statFuncId);
 
         if (statFunction == null) {
@@ -391,168 +391,102 @@ public final class StatisticManager {
 
         //requirment: 3.6.2.b, c
         if (statFunction.getName().toString().equals(STR_STAT_FUNC_NAME_MAXIMUM)) { // Maximum
-            return this.generateStatisticValueMaximum(paramIdentityId, times, values);
+            return this.generateStatisticValueMaximum(paramIdentityId, samples);
         }
 
         if (statFunction.getName().toString().equals(STR_STAT_FUNC_NAME_MINIMUM)) { // Minimum
-            return this.generateStatisticValueMinimum(paramIdentityId, times, values);
+            return this.generateStatisticValueMinimum(paramIdentityId, samples);
         }
 
         if (statFunction.getName().toString().equals(STR_STAT_FUNC_NAME_MEAN_AVERAGE)) { // Mean average
-            return this.generateStatisticValueMeanAverage(paramIdentityId, times, values);
+            return this.generateStatisticValueMeanAverage(paramIdentityId, samples);
         }
 
         if (statFunction.getName().toString().equals(STR_STAT_FUNC_NAME_STD_DEVIATION)) { // Standard deviation
-            return this.generateStatisticValueStandardDeviation(paramIdentityId, times, values);
+            return this.generateStatisticValueStandardDeviation(paramIdentityId, samples);
         }
 
         // Generate Statistic Value from external
         if (externalStatFunctions != null) {
-            return externalStatFunctions.generateCustomStatisticValue(statFuncId, times, values);
+            return externalStatFunctions.generateCustomStatisticValue(statFuncId,
+                    samples == null ? null : samples.getTimes(),
+                    samples == null ? null : samples.getValues());
         }
 
         return null;
     }
 
-    private StatisticValue generateStatisticValueMaximum(long paramIdentityId, TimeList times, AttributeValueList values) {
-        StatisticValue statValue = this.newStatisticValue(paramIdentityId, times, values);
+    private StatisticValue generateStatisticValueMaximum(long paramIdentityId, StatisticAccumulator samples) {
+        StatisticValue statValue = this.newStatisticValue(paramIdentityId, samples);
 
         if (statValue == null) {
             return null;
         }
 
-        int maximum = 0;
+        //requirement: 3.6.3.h report first occurance of max value
+        StatisticAccumulator.Sample maximum = samples.getMaximum();
 
-        // Go through all the data sets and find the maximum value...
-        for (int i = 0; i < values.size(); i++) {
-            if (values.get(i) == null) {
-                continue;
-            }
-
-            // Comparison must be done here
-            //requirement: 3.6.3.h report first occurance of max value
-            if (HelperCOM.evaluateExpression(values.get(i).getValue(), ExpressionOperator.GREATER, values.get(maximum).getValue())) {
-                maximum = i;
-            }
-        }
-
-        statValue.setValue(values.get(maximum).getValue());
-        statValue.setValueTime(times.get(maximum));
+        statValue.setValue(maximum == null ? null : maximum.getValue());
+        statValue.setValueTime(maximum == null ? null : maximum.getTime());
 
         return statValue;
     }
 
-    private StatisticValue generateStatisticValueMinimum(long paramIdentityId, TimeList times, AttributeValueList values) {
-        StatisticValue statValue = this.newStatisticValue(paramIdentityId, times, values);
+    private StatisticValue generateStatisticValueMinimum(long paramIdentityId, StatisticAccumulator samples) {
+        StatisticValue statValue = this.newStatisticValue(paramIdentityId, samples);
 
         if (statValue == null) {
             return null;
         }
 
-        int minimum = 0;
-
-        // Go through all the data sets and find the maximum value...
-        for (int i = 0; i < values.size(); i++) {
-            if (values.get(i) == null) {
-                continue;
-            }
-
-            // Comparison must be done here
-            //requirement: 3.6.3.i report first occurance of min value
-            if (HelperCOM.evaluateExpression(values.get(i).getValue(), ExpressionOperator.LESS, values.get(minimum).getValue())) {
-                minimum = i;
-            }
-        }
+        //requirement: 3.6.3.i report first occurance of min value
+        StatisticAccumulator.Sample minimum = samples.getMinimum();
 
-        statValue.setValue(values.get(minimum).getValue());
-        statValue.setValueTime(times.get(minimum));
+        statValue.setValue(minimum == null ? null : minimum.getValue());
+        statValue.setValueTime(minimum == null ? null : minimum.getTime());
 
         return statValue;
     }
 
-    private StatisticValue generateStatisticValueMeanAverage(long paramIdentityId, TimeList times, AttributeValueList values) {
-        StatisticValue statValue = this.newStatisticValue(paramIdentityId, times, values);
+    private StatisticValue generateStatisticValueMeanAverage(long paramIdentityId, StatisticAccumulator samples) {
+        StatisticValue statValue = this.newStatisticValue(paramIdentityId, samples);
 
         if (statValue == null) {
             return null;
         }
 
-        //----------------------Mean Calculation--------------------------
-        double mean = 0;
-
-        // Go through all the data sets and find the maximum value...
-        for (int i = 0; i < values.size(); i++) {
-            if (values.get(i) == null) {
-                continue;
-            }
-
-            mean += HelperAttributes.attribute2double(values.get(i).getValue());
-        }
-
-        mean = mean / ((double) values.size());
-        //----------------------------------------------------------------
-
         //requirement: 3.6.3.j report double value
-        statValue.setValue((Attribute) HelperAttributes.javaType2Attribute(new Double(mean)));
+        Double mean = samples.getMean();
+        statValue.setValue(mean == null ? null : (Attribute) HelperAttributes.javaType2Attribute(mean));
         statValue.setValueTime(null); // StatisticValue structure: "Shall be NULL if not applicable for cases such as 'mean average'."
 
         return statValue;
     }
 
-    private StatisticValue generateStatisticValueStandardDeviation(long paramIdentityId, TimeList times, AttributeValueList values) {
-        StatisticValue statValue = this.newStatisticValue(paramIdentityId, times, values);
+    private StatisticValue generateStatisticValueStandardDeviation(long paramIdentityId, StatisticAccumulator samples) {
+        StatisticValue statValue = this.newStatisticValue(paramIdentityId, samples);
 
         if (statValue == null) {
             return null;
         }
 
-        //----------------------Mean Calculation--------------------------
-        double mean = 0;
-
-        // Go through all the data sets and find the maximum value...
-        for (int i = 0; i < values.size(); i++) {
-            if (values.get(i) == null) {
-                continue;
-            }
-
-            mean += HelperAttributes.attribute2double(values.get(i).getValue());
-        }
-
-        mean = mean / ((double) values.size());
-        //----------------------------------------------------------------
-
-        double variance = 0;
-
-        // Go through all the data sets and find the maximum value...
-        for (int i = 0; i < values.size(); i++) {
-            double tmp = HelperAttributes.attribute2double(values.get(i).getValue()) - mean;
-            variance += Math.pow(tmp, 2);
-        }
-
-        variance = variance / ((double) (values.size() - 1));
-        variance = Math.sqrt(variance);
-
         //requirement: 3.6.3.k report double value
-        statValue.setValue((Attribute) HelperAttributes.javaType2Attribute(new Double(variance)));
+        Double deviation = samples.getStandardDeviation();
+        statValue.setValue(deviation == null ? null : (Attribute) HelperAttributes.javaType2Attribute(deviation));
         statValue.setValueTime(null); // StatisticValue structure: "Shall be NULL if not applicable for cases such as 'mean average'."
 
         return statValue;
     }
 
-    private StatisticValue newStatisticValue(long paramIdentityId, TimeList times, AttributeValueList values) {
-        if (times == null || values == null) { // Nothing to do here...
-            return null;
-        }
-
-        // Different list sizes or zero elements?
-        if (times.size() != values.size() || values.size() == 0) {
+    private StatisticValue newStatisticValue(long paramIdentityId, StatisticAccumulator samples) {
+        if (samples == null || samples.size() == 0) { // Nothing to do here...
             return null;
         }
 
         StatisticValue statValue = new StatisticValue();
-        statValue.setStartTime(times.get(0));
-        statValue.setEndTime(times.get(times.size() - 1)); // Last element
-        statValue.setSampleCount(new UInteger(times.size()));
+        statValue.setStartTime(samples.getStartTime());
+        statValue.setEndTime(samples.getEndTime()); // Last element
+        statValue.setSampleCount(new UInteger(samples.size()));
         long paramDefInstId = parameterManager.getDefinitionId(paramIdentityId);
         statValue.setParamDefInstId(paramDefInstId);
 
@@ -575,10 +509,16 @@ public final class StatisticManager {
         return parameterManager.existsIdentity(instId);
     }
 
+    /**
+     * Holds the samples of every statistic link. The samples older than the
+     * collection interval of the link are evicted while sampling, so the memory
+     * used by each link is bounded by its window, and never exceeds the number
+     * of samples set by the MAX_SAMPLES_PROPERTY property.
+     */
     public class DataSets {
 
-        private final HashMap<Long, AttributeValueList> dataSets = new HashMap<Long, AttributeValueList>();
-        private final HashMap<Long, TimeList> timeSets = new HashMap<Long, TimeList>();
+        private final ConcurrentHashMap<Long, StatisticAccumulator> dataSets = new ConcurrentHashMap<Long, StatisticAccumulator>();
+        private final int maxSamples = Integer.getInteger(MAX_SAMPLES_PROPERTY, DEFAULT_MAX_SAMPLES);
         private final Semaphore semaphore = new Semaphore(1);
 
         public void lock() {
@@ -593,35 +533,41 @@ public final class StatisticManager {
             this.semaphore.release();
         }
 
+        public StatisticAccumulator getSamples(Long objId) {
+            return this.dataSets.get(objId);
+        }
+
         public TimeList getTimeSet(Long objId) {
-            return this.timeSets.get(objId);
+            StatisticAccumulator samples = this.dataSets.get(objId);
+            return (samples == null) ? null : samples.getTimes();
         }
 
         public AttributeValueList getDataSet(Long objId) {
-            return this.dataSets.get(objId);
+            StatisticAccumulator samples = this.dataSets.get(objId);
+            return (samples == null) ? null : samples.getValues();
         }
 
         public void resetDataSet(Long objId) {
-            this.dataSets.put(objId, new AttributeValueList());
-            this.timeSets.put(objId, new TimeList());
+            this.dataSets.put(objId, new StatisticAccumulator(maxSamples));
         }
 
         public void addAttributeToDataSet(Long objId, Attribute attribute, Time time) {
             this.lock();
 
-            if (this.dataSets.get(objId) == null) {
-                this.dataSets.put(objId, new AttributeValueList());
-                this.timeSets.put(objId, new TimeList());
+            StatisticAccumulator samples = this.dataSets.get(objId);
+
+            if (samples == null) {
+                samples = new StatisticAccumulator(maxSamples);
+                this.dataSets.put(objId, samples);
             }
 
-            if (attribute == null) {
-                this.dataSets.get(objId).add(null);
-                this.timeSets.get(objId).add(time);
-            } else {
-                AttributeValue value = new AttributeValue();
-                value.setValue(attribute);
-                this.dataSets.get(objId).add(value);
-                this.timeSets.get(objId).add(time);
+            samples.add(attribute, time.getValue());
+
+            // Samples outside of the collection interval will never be reported again
+            StatisticCreationRequest link = statLinks.get(objId);
+
+            if (link != null) {
+                samples.evictOlderThan(time.getValue() - link.getLinkDetails().getCollectionInterval().getValue() * 1000.0);
             }
 
             this.unlock();
@@ -629,18 +575,15 @@ public final class StatisticManager {
 
         public void removeDataSet(Long objId) {
             this.dataSets.remove(objId);
-            this.timeSets.remove(objId);
         }
 
         public Integer getOldestIndex(Long objId, double oldestTimeInMs) {
             // get index of oldestTimeInMs (or the next higher index, if oldestTimeInMs not in list)
-            TimeList allTimes = timeSets.get(objId);
-            if (allTimes == null) {
+            StatisticAccumulator samples = this.dataSets.get(objId);
+            if (samples == null) {
                 return null;
             }
-            int i = 0;
-            for (; i < allTimes.size() && allTimes.get(i).getValue() < oldestTimeInMs; i++);
-            return i;
+            return samples.getOldestIndex(oldestTimeInMs);
         }
 
     }
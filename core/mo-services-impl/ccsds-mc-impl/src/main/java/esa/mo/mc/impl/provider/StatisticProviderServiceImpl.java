@@ -24,11 +24,10 @@ import esa.mo.com.impl.util.COMServicesProvider;
 import esa.mo.helpertools.connections.ConfigurationProviderSingleton;
 import esa.mo.helpertools.connections.ConnectionProvider;
 import esa.mo.helpertools.helpers.HelperTime;
-import esa.mo.helpertools.misc.TaskScheduler;
+import esa.mo.helpertools.misc.TimingWheelScheduler;
 import esa.mo.mc.impl.interfaces.ExternalStatisticFunctionsInterface;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
@@ -59,7 +58,6 @@ import org.ccsds.moims.mo.mal.structures.LongList;
 import org.ccsds.moims.mo.mal.structures.QoSLevel;
 import org.ccsds.moims.mo.mal.structures.SessionType;
 import org.ccsds.moims.mo.mal.structures.Time;
-import org.ccsds.moims.mo.mal.structures.TimeList;
 import org.ccsds.moims.mo.mal.structures.UInteger;
 import org.ccsds.moims.mo.mal.structures.UIntegerList;
 import org.ccsds.moims.mo.mal.structures.UpdateHeader;
@@ -86,8 +84,6 @@ import org.ccsds.moims.mo.mc.statistic.structures.StatisticLinkSummary;
 import org.ccsds.moims.mo.mc.statistic.structures.StatisticLinkSummaryList;
 import org.ccsds.moims.mo.mc.statistic.structures.StatisticValue;
 import org.ccsds.moims.mo.mc.statistic.structures.StatisticValueList;
-import org.ccsds.moims.mo.mc.structures.AttributeValue;
-import org.ccsds.moims.mo.mc.structures.AttributeValueList;
 import org.ccsds.moims.mo.mc.structures.ObjectInstancePair;
 import org.ccsds.moims.mo.mc.structures.ObjectInstancePairList;
 
@@ -441,25 +437,14 @@ public class StatisticProviderServiceImpl extends StatisticInheritanceSkeleton {
         if (link == null) {
             return null;
         }
-        // slice the times and values in order to only use those values gathered during the last collection period
+        // only use those values gathered during the last collection period
         double oldestTime = System.currentTimeMillis() - link.getLinkDetails().getCollectionInterval().getValue() * 1000.0;
-        Integer oldestIndex = manager.getDataSets().getOldestIndex(statLinkId, oldestTime);
-        // Retrieve the corresponding data set
-        TimeList times = new TimeList();
-        AttributeValueList values = new AttributeValueList();
-        TimeList allTimes = manager.getDataSets().getTimeSet(statLinkId);
-        AttributeValueList allValues = manager.getDataSets().getDataSet(statLinkId);
-        if (oldestIndex == null) {
-            times = allTimes;
-            values = allValues;
-        } else {
-            List<Time> timesArr = allTimes.subList(oldestIndex, allTimes.size());
-            times.addAll(timesArr);
-            List<AttributeValue> valuesArr = allValues.subList(oldestIndex, allValues.size());
-            values.addAll(valuesArr);
+        StatisticAccumulator samples = manager.getDataSets().getSamples(statLinkId);
+        if (samples != null) {
+            samples.evictOlderThan(oldestTime);
         }
         // Generate the Statistic Report
-        StatisticValue statValue = manager.generateStatisticValue(link.getStatFuncInstId(), link.getParameterId().getInstId(), times, values);
+        StatisticValue statValue = manager.generateStatisticValue(link.getStatFuncInstId(), link.getParameterId().getInstId(), samples);
         return statValue;
     }
 
@@ -972,13 +957,14 @@ public class StatisticProviderServiceImpl extends StatisticInheritanceSkeleton {
 
         /**
          * Key: the id of the ParameterIdentity, Value: the
-         * sample-reporting-timer
+         * sample-reporting-task
          */
-        private HashMap<Long, TaskScheduler> sampleTimerList; // Timers list
+        private final TimingWheelScheduler scheduler = TimingWheelScheduler.getInstance();
+        private HashMap<Long, Integer> sampleTimerList; // Scheduled tasks list
         private boolean active = false; // Flag that determines if the Manager is on or off
 
         public PeriodicSamplingManager() {
-            sampleTimerList = new HashMap<Long, TaskScheduler>();
+            sampleTimerList = new HashMap<Long, Integer>();
         }
 
         public void refreshAll() {
@@ -1057,15 +1043,13 @@ public class StatisticProviderServiceImpl extends StatisticInheritanceSkeleton {
             // NOTE: The standard says its "perfectly possible" to set a sampleInterval greater than a reporting or collection interval so no other checks of the sampleinterval necessary here
             Duration sampleInterval = statLink.getLinkDetails().getSamplingInterval();
             if (sampleInterval.getValue() != 0) {
-                TaskScheduler timer = new TaskScheduler(1, true);  // Take care of adding a new timer
-                sampleTimerList.put(identityId, timer);
                 startTimer(identityId, sampleInterval, statLink.getLinkDetails().getUseConverted());
             }
 
         }
 
         private void startTimer(final Long identityId, final Duration interval, final boolean useConverted) {  // requirement: 3.6.2.g
-            sampleTimerList.get(identityId).scheduleTask(new Thread() {
+            final int taskId = scheduler.scheduleTask(new Runnable() {
                 @Override
                 public void run() { // Periodic sampling
                     if (active) {
@@ -1073,6 +1057,8 @@ public class StatisticProviderServiceImpl extends StatisticInheritanceSkeleton {
                     }
                 } // the time has to be converted to milliseconds by multiplying by 1000
             }, 0, (int) (interval.getValue() * 1000), TimeUnit.MILLISECONDS, true); // requirement: 3.6.2.g
+
+            sampleTimerList.put(identityId, taskId);
         }
 
         private void sampleParamValue(final Long identityId, final boolean useConverted) {
@@ -1097,18 +1083,23 @@ public class StatisticProviderServiceImpl extends StatisticInheritanceSkeleton {
         }
 
         private void stopTimer(Long objId) {
-            sampleTimerList.get(objId).stopLast();
+            final Integer taskId = sampleTimerList.get(objId);
+
+            if (taskId != null) {
+                scheduler.stopTask(taskId);
+            }
         }
 
     }
 
     private class PeriodicCollectionManager {
 
-        private HashMap<Long, TaskScheduler> collectionTimerList; // Timers list
+        private final TimingWheelScheduler scheduler = TimingWheelScheduler.getInstance();
+        private HashMap<Long, Integer> collectionTimerList; // Scheduled tasks list
         private boolean active = false; // Flag that determines if the Manager is on or off
 
         public PeriodicCollectionManager() {
-            collectionTimerList = new HashMap<Long, TaskScheduler>();
+            collectionTimerList = new HashMap<Long, Integer>();
         }
 
         public void refreshAll() {
@@ -1160,8 +1151,6 @@ public class StatisticProviderServiceImpl extends StatisticInheritanceSkeleton {
 
             // Add to the Periodic Collection Manager
             if (collectionInterval.getValue() != 0) {
-                TaskScheduler timer = new TaskScheduler(1, true);  // Take care of adding a new timer
-                collectionTimerList.put(objId, timer);
                 startTimer(objId, collectionInterval);
             }
 
@@ -1174,7 +1163,7 @@ public class StatisticProviderServiceImpl extends StatisticInheritanceSkeleton {
 
         private void startTimer(final Long statLinkId, Duration interval) {
 
-            collectionTimerList.get(statLinkId).scheduleTask(new Thread() {
+            final int taskId = scheduler.scheduleTask(new Runnable() {
                 @Override
                 public void run() { // Periodic sampling
                     if (active) {
@@ -1206,21 +1195,28 @@ public class StatisticProviderServiceImpl extends StatisticInheritanceSkeleton {
 
                 // the time has to be converted to milliseconds by multiplying by 1000
             }, (int) (interval.getValue() * 1000), (int) (interval.getValue() * 1000), TimeUnit.MILLISECONDS, true);
+
+            collectionTimerList.put(statLinkId, taskId);
         }
 
         private void stopTimer(Long objId) {
-            collectionTimerList.get(objId).stopLast();
+            final Integer taskId = collectionTimerList.get(objId);
+
+            if (taskId != null) {
+                scheduler.stopTask(taskId);
+            }
         }
 
     }
 
     private class PeriodicReportingManager { // requirement: 3.7.2.1a
 
-        private HashMap<Long, TaskScheduler> updateTimerList; // updateInterval Timers list
+        private final TimingWheelScheduler scheduler = TimingWheelScheduler.getInstance();
+        private HashMap<Long, Integer> updateTimerList; // updateInterval scheduled tasks list
         private boolean active = false; // Flag that determines if the Manager is on or off
 
         public PeriodicReportingManager() {
-            updateTimerList = new HashMap<Long, TaskScheduler>();
+            updateTimerList = new HashMap<Long, Integer>();
         }
 
         public void refreshAll() {
@@ -1278,8 +1274,6 @@ public class StatisticProviderServiceImpl extends StatisticInheritanceSkeleton {
         }
 
         private void addPeriodicReporting(Long statLinkId, boolean immediateReport) {
-            TaskScheduler timer = new TaskScheduler(1, true);
-            updateTimerList.put(statLinkId, timer);
             this.startReportingTimer(statLinkId, manager.getStatisticLink(statLinkId).getLinkDetails().getReportingInterval(), immediateReport); //requirement: 3.6.2.h, 3.6.3.b
         }
 
@@ -1289,7 +1283,7 @@ public class StatisticProviderServiceImpl extends StatisticInheritanceSkeleton {
         }
 
         private void startReportingTimer(final Long statLinkId, final Duration interval, boolean immediateReport) {
-            updateTimerList.get(statLinkId).scheduleTask(new Thread() {
+            final int taskId = scheduler.scheduleTask(new Runnable() {
                 @Override
                 public void run() {  //requirement: 3.6.2.h, 3.6.3.b
                     if (active) {
@@ -1298,6 +1292,8 @@ public class StatisticProviderServiceImpl extends StatisticInheritanceSkeleton {
                 }
             }, immediateReport ? 0 : (int) (interval.getValue() * 1000), (int) (interval.getValue() * 1000),
             TimeUnit.MILLISECONDS, true); //requirement: 3.6.2.h, 3.6.3.b
+
+            updateTimerList.put(statLinkId, taskId);
         }
 
         private void reportStatistic(final Long statLinkId) {
@@ -1314,7 +1310,11 @@ public class StatisticProviderServiceImpl extends StatisticInheritanceSkeleton {
         }
 
         private void stopUpdatesTimer(final Long objId) {
-            updateTimerList.get(objId).stopLast();
+            final Integer taskId = updateTimerList.get(objId);
+
+            if (taskId != null) {
+                scheduler.stopTask(taskId);
+            }
         }
 
     }
@@ -0,0 +1,389 @@
+package esa.mo.mc.impl.provider;
+
+import esa.mo.com.impl.util.HelperCOM;
+import esa.mo.helpertools.helpers.HelperAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.ccsds.moims.mo.com.archive.structures.ExpressionOperator;
+import org.ccsds.moims.mo.mal.structures.Attribute;
+import org.ccsds.moims.mo.mal.structures.Pair;
+import org.ccsds.moims.mo.mal.structures.PairList;
+import org.ccsds.moims.mo.mal.structures.UInteger;
+import org.ccsds.moims.mo.mal.structures.Union;
+import org.ccsds.moims.mo.mc.conversion.structures.DiscreteConversionDetails;
+import org.ccsds.moims.mo.mc.conversion.structures.LineConversionDetails;
+import org.ccsds.moims.mo.mc.conversion.structures.PolyConversionDetails;
+import org.ccsds.moims.mo.mc.conversion.structures.RangeConversionDetails;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Compares the compiled conversions with the interpretive algorithms that the
+ * Conversion service used before, which are kept below as the reference. The
+ * definitions and the values are random, with unsorted and repeated points,
+ * different numeric types, and values below, between, on and above the
+ * points.
+ */
+public class CompiledConversionTest {
+
+    private static final int DEFINITIONS = 500;
+    private static final int VALUES = 40;
+
+    private final Random random = new Random(20211018L);
+
+    @Test
+    public void testDiscreteMatchesInterpretive() {
+        for (int i = 0; i < DEFINITIONS; i++) {
+            final PairList mapping = new PairList();
+            final int size = random.nextInt(6);
+
+            for (int j = 0; j < size; j++) {
+                mapping.add(new Pair(randomKey(), new Union("State " + j)));
+            }
+
+            final DiscreteConversionDetails details = new DiscreteConversionDetails(mapping);
+            final CompiledConversion compiled = CompiledConversion.compile(details);
+
+            for (Attribute value : values(mapping)) {
+                Assert.assertEquals(Interpretive.discrete(details, value), compiled.convert(value));
+            }
+        }
+    }
+
+    @Test
+    public void testLineMatchesInterpretive() {
+        for (int i = 0; i < DEFINITIONS; i++) {
+            final PairList points = randomPoints(random.nextInt(7), true);
+
+            // A single distinct point can't be extrapolated, see testLineWithOneDistinctPoint
+            if (distinctFirsts(points) < 2) {
+                continue;
+            }
+
+            final LineConversionDetails details = new LineConversionDetails(random.nextBoolean(), points);
+            final CompiledConversion compiled = CompiledConversion.compile(details);
+
+            for (Attribute value : values(points)) {
+                Assert.assertEquals(Interpretive.line(details, value), compiled.convert(value));
+            }
+        }
+    }
+
+    @Test
+    public void testLineOutOfRange() {
+        final PairList points = new PairList();
+        points.add(new Pair(new Union(100), new Union(212.0)));
+        points.add(new Pair(new Union(1), new Union(33.8)));
+        points.add(new Pair(new Union(50), new Union(122.0)));
+
+        final LineConversionDetails extrapolated = new LineConversionDetails(true, points);
+        final LineConversionDetails bounded = new LineConversionDetails(false, points);
+
+        for (double x : new double[]{-1.0e9, -1, 0.5, 1, 75, 100, 100.5, 1.0e9}) {
+            final Attribute value = new Union(x);
+            Assert.assertEquals(Interpretive.line(extrapolated, value),
+                    CompiledConversion.compile(extrapolated).convert(value));
+            Assert.assertEquals(Interpretive.line(bounded, value),
+                    CompiledConversion.compile(bounded).convert(value));
+        }
+
+        Assert.assertNull(CompiledConversion.compile(bounded).convert(new Union(0.5)));
+        Assert.assertNull(CompiledConversion.compile(bounded).convert(new Union(100.5)));
+        Assert.assertNotNull(CompiledConversion.compile(extrapolated).convert(new Union(100.5)));
+    }
+
+    @Test
+    public void testLineWithOneDistinctPoint() {
+        final PairList points = new PairList();
+        points.add(new Pair(new Union(5), new Union(1.0)));
+        points.add(new Pair(new Union(5.0), new Union(2.0)));
+        final CompiledConversion compiled = CompiledConversion.compile(
+                new LineConversionDetails(true, points));
+
+        // The interpretive path threw a NullPointerException here
+        Assert.assertNull(compiled.convert(new Union(10)));
+        Assert.assertEquals(new Union(1.0), compiled.convert(new Union(5)));
+    }
+
+    @Test
+    public void testPolyMatchesInterpretive() {
+        for (int i = 0; i < DEFINITIONS; i++) {
+            final PairList points = new PairList();
+            final int size = random.nextInt(5);
+            // Negative or high exponents are not evaluated with the Horner scheme
+            final boolean horner = random.nextInt(4) != 0;
+
+            for (int j = 0; j < size; j++) {
+                final int exponent = horner ? random.nextInt(6) : random.nextInt(140) - 70;
+                points.add(new Pair(new Union(exponent), randomNumber()));
+            }
+
+            final PolyConversionDetails details = new PolyConversionDetails(points);
+            final CompiledConversion compiled = CompiledConversion.compile(details);
+
+            for (int j = 0; j < VALUES; j++) {
+                final Attribute value = randomNumber();
+                final Union expected = (Union) Interpretive.poly(details, value);
+                final Attribute actual = compiled.convert(value);
+
+                if (expected == null) {
+                    Assert.assertNull(actual);
+                } else {
+                    // The Horner scheme differs from the pow() sum at rounding level
+                    final double x = HelperAttributes.attribute2double(value);
+                    final double tolerance = 1.0e-12 * magnitude(points, x);
+                    Assert.assertEquals(expected.getDoubleValue(),
+                            HelperAttributes.attribute2double(actual), tolerance);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRangeMatchesInterpretive() {
+        for (int i = 0; i < DEFINITIONS; i++) {
+            final PairList points = randomPoints(random.nextInt(7), false);
+            final RangeConversionDetails details = new RangeConversionDetails(points);
+            final CompiledConversion compiled = CompiledConversion.compile(details);
+
+            for (Attribute value : values(points)) {
+                Assert.assertEquals(Interpretive.range(details, value), compiled.convert(value));
+            }
+        }
+    }
+
+    @Test
+    public void testRangeOutOfRange() {
+        final PairList points = new PairList();
+        points.add(new Pair(new Union(100), new Union("High")));
+        points.add(new Pair(new Union(0), new Union("Low")));
+        final RangeConversionDetails details = new RangeConversionDetails(points);
+        final CompiledConversion compiled = CompiledConversion.compile(details);
+
+        Assert.assertNull(compiled.convert(new Union(-0.5)));
+        Assert.assertEquals(new Union("Low"), compiled.convert(new Union(0)));
+        Assert.assertEquals(new Union("Low"), compiled.convert(new UInteger(99)));
+        Assert.assertEquals(new Union("High"), compiled.convert(new Union(1.0e9)));
+        Assert.assertEquals(Interpretive.range(details, new Union(-0.5)),
+                compiled.convert(new Union(-0.5)));
+    }
+
+    private Attribute randomKey() {
+        switch (random.nextInt(3)) {
+            case 0:
+                return new Union(random.nextInt(5));
+            case 1:
+                return new UInteger(random.nextInt(5));
+            default:
+                return new Union("Key " + random.nextInt(5));
+        }
+    }
+
+    private Attribute randomNumber() {
+        switch (random.nextInt(3)) {
+            case 0:
+                return new Union(random.nextInt(41) - 20);
+            case 1:
+                return new UInteger(random.nextInt(20));
+            default:
+                return new Union((random.nextDouble() - 0.5) * 40);
+        }
+    }
+
+    private PairList randomPoints(final int size, final boolean numericSeconds) {
+        final PairList points = new PairList();
+
+        for (int j = 0; j < size; j++) {
+            // Few distinct first values, so that some of them are repeated
+            final Attribute first = random.nextBoolean() ? new Union(random.nextInt(10) - 5)
+                    : new Union((double) (random.nextInt(10) - 5));
+            final Attribute second = numericSeconds ? randomNumber() : new Union("Range " + j);
+            points.add(new Pair(first, second));
+        }
+
+        return points;
+    }
+
+    /**
+     * The points themselves and random values, some of them far outside of
+     * the points.
+     */
+    private List<Attribute> values(final PairList points) {
+        final List<Attribute> values = new ArrayList<Attribute>();
+
+        for (Pair point : points) {
+            values.add(point.getFirst());
+        }
+
+        for (int j = 0; j < VALUES; j++) {
+            values.add(randomNumber());
+        }
+
+        values.add(new Union(-1.0e9));
+        values.add(new Union(1.0e9));
+        values.add(new Union(Long.MAX_VALUE));
+        return values;
+    }
+
+    private static int distinctFirsts(final PairList points) {
+        final List<Double> firsts = new ArrayList<Double>();
+
+        for (Pair point : points) {
+            final Double x = HelperAttributes.attribute2double(point.getFirst());
+
+            if (!firsts.contains(x)) {
+                firsts.add(x);
+            }
+        }
+
+        return firsts.size();
+    }
+
+    private static double magnitude(final PairList points, final double x) {
+        double sum = 0;
+
+        for (Pair point : points) {
+            sum += Math.abs(HelperAttributes.attribute2double(point.getSecond())
+                    * Math.pow(x, ((Union) point.getFirst()).getIntegerValue()));
+        }
+
+        return sum;
+    }
+
+    /**
+     * The interpretive conversions of the Conversion service before the
+     * definitions were compiled.
+     */
+    private static final class Interpretive {
+
+        static Attribute discrete(final DiscreteConversionDetails conversionDetails, final Attribute value) {
+            for (Pair mapping : conversionDetails.getMapping()) {
+                if (mapping.getFirst().equals(value)) {
+                    return mapping.getSecond();
+                }
+            }
+
+            return null;
+        }
+
+        static Attribute line(final LineConversionDetails conversionDetails, final Attribute value) {
+            PairList points = conversionDetails.getPoints();
+
+            if (points == null || points.size() < 2) {
+                return null;
+            }
+
+            for (Pair point : points) {
+                if (HelperCOM.evaluateExpression(point.getFirst(), ExpressionOperator.EQUAL, value)) {
+                    return point.getSecond();
+                }
+            }
+
+            Pair top = findTop(value, points);
+            Pair bottom = findBottom(value, points);
+
+            if (top != null && bottom != null) {
+                return linearInterpolation(value, top, bottom);
+            }
+
+            if (!conversionDetails.getExtrapolate()) {
+                return null;
+            }
+
+            if (bottom == null && top != null) {
+                bottom = top;
+                top = findTop(bottom.getFirst(), points);
+
+                return linearInterpolation(value, top, bottom);
+            }
+
+            if (top == null && bottom != null) {
+                top = bottom;
+                bottom = findBottom(top.getFirst(), points);
+
+                return linearInterpolation(value, top, bottom);
+            }
+
+            return null;
+        }
+
+        static Attribute poly(final PolyConversionDetails conversionDetails, final Attribute value) {
+            final PairList points = conversionDetails.getPoints();
+            if (points.size() == 0) {
+                return null;
+            }
+
+            double convertedValue = 0;
+            for (Pair point : points) {
+                double midStep = Math.pow(HelperAttributes.attribute2double(value), ((Union) point.getFirst()).getIntegerValue());
+                convertedValue += HelperAttributes.attribute2double(point.getSecond()) * midStep;
+            }
+
+            return new Union(convertedValue);
+        }
+
+        static Attribute range(final RangeConversionDetails conversionDetails, final Attribute value) {
+            final PairList points = conversionDetails.getPoints();
+            for (Pair point : points) {
+                if (HelperCOM.evaluateExpression(point.getFirst(), ExpressionOperator.EQUAL, value)) {
+                    return point.getSecond();
+                }
+            }
+
+            Pair bottom = findBottom(value, points);
+            if (bottom == null) {
+                return null;
+            }
+            return bottom.getSecond();
+        }
+
+        private static Union linearInterpolation(final Attribute value, final Pair top, final Pair bottom) {
+            double x = HelperAttributes.attribute2double(value);
+            double x_0 = HelperAttributes.attribute2double(bottom.getFirst());
+            double y_0 = HelperAttributes.attribute2double(bottom.getSecond());
+            double x_1 = HelperAttributes.attribute2double(top.getFirst());
+            double y_1 = HelperAttributes.attribute2double(top.getSecond());
+
+            return new Union(y_0 + (y_1 - y_0) * (x - x_0) / (x_1 - x_0));
+        }
+
+        private static Pair findTop(final Attribute value, final PairList points) {
+            Pair top = null;
+
+            for (Pair point : points) {
+                if (HelperCOM.evaluateExpression(point.getFirst(), ExpressionOperator.GREATER, value)) {
+                    if (top == null) {
+                        top = point;
+                        continue;
+                    }
+
+                    if (HelperCOM.evaluateExpression(point.getFirst(), ExpressionOperator.LESS, top.getFirst())) {
+                        top = point;
+                    }
+                }
+            }
+
+            return top;
+        }
+
+        private static Pair findBottom(final Attribute value, final PairList points) {
+            Pair bottom = null;
+
+            for (Pair point : points) {
+                if (HelperCOM.evaluateExpression(point.getFirst(), ExpressionOperator.LESS, value)) {
+                    if (bottom == null) {
+                        bottom = point;
+                        continue;
+                    }
+
+                    if (HelperCOM.evaluateExpression(point.getFirst(), ExpressionOperator.GREATER, bottom.getFirst())) {
+                        bottom = point;
+                    }
+                }
+            }
+
+            return bottom;
+        }
+    }
+}
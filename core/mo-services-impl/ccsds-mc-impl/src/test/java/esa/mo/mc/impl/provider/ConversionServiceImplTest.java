@@ -0,0 +1,255 @@
+package esa.mo.mc.impl.provider;
+
+import esa.mo.com.impl.archive.db.ArchivePartitions;
+import esa.mo.com.impl.provider.ArchiveChangeListener;
+import esa.mo.com.impl.provider.ArchiveManager;
+import esa.mo.com.impl.provider.ArchiveProviderServiceImpl;
+import esa.mo.helpertools.helpers.HelperTime;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.ccsds.moims.mo.com.COMHelper;
+import org.ccsds.moims.mo.com.archive.structures.ArchiveDetails;
+import org.ccsds.moims.mo.com.archive.structures.ArchiveDetailsList;
+import org.ccsds.moims.mo.com.structures.ObjectDetails;
+import org.ccsds.moims.mo.com.structures.ObjectKey;
+import org.ccsds.moims.mo.com.structures.ObjectType;
+import org.ccsds.moims.mo.mal.MALContextFactory;
+import org.ccsds.moims.mo.mal.MALException;
+import org.ccsds.moims.mo.mal.MALHelper;
+import org.ccsds.moims.mo.mal.structures.Attribute;
+import org.ccsds.moims.mo.mal.structures.Element;
+import org.ccsds.moims.mo.mal.structures.FineTime;
+import org.ccsds.moims.mo.mal.structures.Identifier;
+import org.ccsds.moims.mo.mal.structures.IdentifierList;
+import org.ccsds.moims.mo.mal.structures.LongList;
+import org.ccsds.moims.mo.mal.structures.Pair;
+import org.ccsds.moims.mo.mal.structures.PairList;
+import org.ccsds.moims.mo.mal.structures.UOctet;
+import org.ccsds.moims.mo.mal.structures.URI;
+import org.ccsds.moims.mo.mal.structures.UShort;
+import org.ccsds.moims.mo.mal.structures.Union;
+import org.ccsds.moims.mo.mc.conversion.ConversionHelper;
+import org.ccsds.moims.mo.mc.conversion.structures.DiscreteConversionDetails;
+import org.ccsds.moims.mo.mc.parameter.structures.ParameterConversion;
+import org.ccsds.moims.mo.mc.structures.ConditionalConversion;
+import org.ccsds.moims.mo.mc.structures.ConditionalConversionList;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks that the compiled conversions of the Conversion service are cached,
+ * and that the cache is invalidated when a conversion definition is stored,
+ * updated or removed in the Archive, or dropped with an expired partition.
+ * The definitions are set by the test instead of being looked up in the
+ * Archive, so that the loads can be counted.
+ */
+public class ConversionServiceImplTest {
+
+    private static final String URL_PROPERTY = "esa.nmf.archive.persistence.jdbc.url";
+    private static final long HOUR = 3600L * 1000L * 1000L * 1000L;
+    private static final long TIMEOUT = 10000; // ms
+    private static final Long IDENTITY_ID = 7L;
+
+    private static final ObjectType UNRELATED_TYPE = new ObjectType(new UShort(2),
+            new UShort(2), new UOctet((short) 1), new UShort(5));
+    private static final IdentifierList DOMAIN = new IdentifierList();
+
+    static {
+        DOMAIN.add(new Identifier("esa"));
+        DOMAIN.add(new Identifier("test"));
+    }
+
+    private final AtomicInteger loads = new AtomicInteger();
+    private volatile Element definition;
+
+    private final ConversionServiceImpl service = new ConversionServiceImpl() {
+        @Override
+        Element getConversionDefinition(final IdentifierList domain, final Long identityId) {
+            loads.incrementAndGet();
+            return definition;
+        }
+    };
+
+    private final AtomicInteger notifications = new AtomicInteger();
+    private final ArchiveChangeListener listener = new ArchiveChangeListener() {
+        @Override
+        public void onObjectsChanged(final ObjectType objType, final IdentifierList domain) {
+            notifications.incrementAndGet();
+        }
+    };
+
+    private File file;
+    private ArchiveProviderServiceImpl archive;
+
+    /**
+     * The Archive manager adds the Archive service to the COM area, so the
+     * area is registered first, as the COM services do.
+     */
+    @BeforeClass
+    public static void setUpAreas() throws MALException {
+        if (MALContextFactory.lookupArea(MALHelper.MAL_AREA_NAME, MALHelper.MAL_AREA_VERSION) == null) {
+            MALHelper.init(MALContextFactory.getElementFactoryRegistry());
+        }
+
+        if (MALContextFactory.lookupArea(COMHelper.COM_AREA_NAME, COMHelper.COM_AREA_VERSION) == null) {
+            COMHelper.init(MALContextFactory.getElementFactoryRegistry());
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("nmf-conversion-test", ".db");
+        file.delete();
+        System.setProperty(URL_PROPERTY, "jdbc:sqlite:" + file.getAbsolutePath());
+        System.setProperty(ArchivePartitions.PERIOD_PROPERTY, "1");
+    }
+
+    @After
+    public void tearDown() {
+        if (archive != null) {
+            archive.close();
+        }
+
+        System.clearProperty(URL_PROPERTY);
+        System.clearProperty(ArchivePartitions.PERIOD_PROPERTY);
+        System.clearProperty(ArchivePartitions.RETENTION_PROPERTY);
+        new File(file.getAbsolutePath() + "-wal").delete();
+        new File(file.getAbsolutePath() + "-shm").delete();
+        file.delete();
+    }
+
+    @Test
+    public void testConversionIsCached() throws MALException, InterruptedException {
+        final ArchiveManager manager = open("0");
+        definition = discrete("A");
+
+        Assert.assertEquals(new Union("A"), convert());
+        Assert.assertEquals(new Union("A"), convert());
+        Assert.assertEquals(1, loads.get());
+
+        // Other object types don't drop the compiled conversions
+        notifications.set(0);
+        manager.insertEntries(UNRELATED_TYPE, DOMAIN, details(0L, now()), null, null);
+        waitForNotification();
+        Assert.assertEquals(new Union("A"), convert());
+        Assert.assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testStoreUpdateAndRemoveInvalidate() throws MALException, InterruptedException {
+        final ArchiveManager manager = open("0");
+        final ObjectType lineType = ConversionHelper.LINECONVERSION_OBJECT_TYPE;
+
+        // A missing definition is cached too, until one is stored
+        Assert.assertNull(convert());
+        definition = discrete("A");
+        Assert.assertNull(convert());
+        final LongList objIds = manager.insertEntries(lineType, DOMAIN, details(0L, now()), null, null);
+        waitForConversion(new Union("A"));
+
+        definition = discrete("B");
+        manager.updateEntries(lineType, DOMAIN, details(objIds.get(0), now()), null, null);
+        waitForConversion(new Union("B"));
+
+        definition = null;
+        manager.removeEntries(lineType, DOMAIN, objIds, null);
+        waitForConversion(null);
+    }
+
+    @Test
+    public void testDroppedPartitionInvalidates() throws MALException, InterruptedException {
+        // Stores a definition in its partition while all the partitions are kept
+        ArchiveManager manager = open("0");
+        final ObjectType lineType = ConversionHelper.LINECONVERSION_OBJECT_TYPE;
+        manager.insertEntries(lineType, DOMAIN, details(0L, now() - 5 * HOUR), null, null);
+        manager.rollPartitions();
+        archive.close();
+
+        // Reopened with a shorter retention, the partition has expired
+        manager = open("2");
+        waitForObjectType(manager, lineType);
+        definition = discrete("A");
+        Assert.assertEquals(new Union("A"), convert());
+
+        definition = null;
+        manager.rollPartitions();
+        waitForConversion(null);
+    }
+
+    private ArchiveManager open(final String retention) throws MALException {
+        System.setProperty(ArchivePartitions.RETENTION_PROPERTY, retention);
+        archive = new ArchiveProviderServiceImpl();
+        final ArchiveManager manager = archive.getArchiveManager();
+        manager.addChangeListener(listener);
+        manager.init();
+        service.init(archive);
+        return manager;
+    }
+
+    private Attribute convert() {
+        final ConditionalConversionList conditionalConversions = new ConditionalConversionList();
+        conditionalConversions.add(new ConditionalConversion(null, new ObjectKey(DOMAIN, IDENTITY_ID)));
+
+        return service.generateConvertedValue(new Union(1),
+                new ParameterConversion(null, null, conditionalConversions));
+    }
+
+    /**
+     * The notifications are delivered after the commit, so the conversion
+     * is checked until it changes.
+     */
+    private void waitForConversion(final Attribute expected) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+        Attribute converted = convert();
+
+        while (expected == null ? converted != null : !expected.equals(converted)) {
+            Assert.assertTrue("Still converted to " + converted, System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+            converted = convert();
+        }
+    }
+
+    private void waitForNotification() throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+
+        while (notifications.get() == 0) {
+            Assert.assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * The object types of the archive are loaded in the background, and the
+     * notifications of the roll need them to report the type.
+     */
+    private static void waitForObjectType(final ArchiveManager manager,
+            final ObjectType objType) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+
+        while (manager.getFastObjectType().findObjectTypeId(objType) == null) {
+            Assert.assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static DiscreteConversionDetails discrete(final String state) {
+        final PairList mapping = new PairList();
+        mapping.add(new Pair(new Union(1), new Union(state)));
+        return new DiscreteConversionDetails(mapping);
+    }
+
+    private static long now() {
+        return HelperTime.getTimestamp().getValue();
+    }
+
+    private static ArchiveDetailsList details(final Long objId, final long timestamp) {
+        final ArchiveDetailsList list = new ArchiveDetailsList();
+        list.add(new ArchiveDetails(objId, new ObjectDetails(IDENTITY_ID, null),
+                new Identifier("network"), new FineTime(timestamp), new URI("provider")));
+        return list;
+    }
+}
@@ -0,0 +1,54 @@
+package esa.mo.mc.impl.provider;
+
+import org.ccsds.moims.mo.mal.structures.Blob;
+import org.ccsds.moims.mo.mal.structures.Union;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks the statistics of the StatisticAccumulator for the corner cases of
+ * the window.
+ */
+public class StatisticAccumulatorTest {
+
+    @Test
+    public void testSingleValueHasNoDeviation() {
+        final StatisticAccumulator accumulator = new StatisticAccumulator(10);
+        Assert.assertNull(accumulator.getStandardDeviation());
+
+        accumulator.add(new Union(5.0), 1000);
+        Assert.assertEquals(0.0, accumulator.getStandardDeviation(), 0.0);
+        Assert.assertEquals(5.0, accumulator.getMean(), 0.0);
+
+        accumulator.add(new Union(7.0), 2000);
+        Assert.assertEquals(Math.sqrt(2.0), accumulator.getStandardDeviation(), 1e-9);
+    }
+
+    @Test
+    public void testSamplesThatCannotBeCompared() {
+        final StatisticAccumulator accumulator = new StatisticAccumulator(10);
+        accumulator.add(new Blob(new byte[]{1}), 1000);
+        accumulator.add(new Blob(new byte[]{2}), 2000);
+        accumulator.add(null, 3000);
+
+        // The first occurrence is kept when the values cannot be compared
+        Assert.assertEquals(3, accumulator.size());
+        Assert.assertEquals(1000, accumulator.getMaximum().getTime().getValue());
+        Assert.assertEquals(1000, accumulator.getMinimum().getTime().getValue());
+        Assert.assertNull(accumulator.getMean());
+    }
+
+    @Test
+    public void testMaximumAndMinimumAfterEviction() {
+        final StatisticAccumulator accumulator = new StatisticAccumulator(3);
+
+        for (int i = 0; i < 5; i++) {
+            accumulator.add(new Union((double) (i % 2 == 0 ? i : -i)), 1000 * i);
+        }
+
+        // The window keeps the samples 2, -3 and 4
+        Assert.assertEquals(new Union(4.0), accumulator.getMaximum().getValue());
+        Assert.assertEquals(new Union(-3.0), accumulator.getMinimum().getValue());
+        Assert.assertEquals(1.0, accumulator.getMean(), 1e-9);
+    }
+}
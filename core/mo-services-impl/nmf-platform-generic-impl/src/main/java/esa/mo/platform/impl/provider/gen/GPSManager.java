@@ -24,13 +24,16 @@ import esa.mo.com.impl.util.DefinitionsManager;
 import esa.mo.com.impl.util.COMServicesProvider;
 import esa.mo.com.impl.util.HelperArchive;
 import esa.mo.helpertools.connections.ConfigurationProviderSingleton;
+import esa.mo.platform.impl.util.NearbyPositionIndex;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.ccsds.moims.mo.com.structures.ObjectId;
 import org.ccsds.moims.mo.mal.MALException;
 import org.ccsds.moims.mo.mal.MALInteractionException;
 import org.ccsds.moims.mo.mal.structures.BooleanList;
+import org.ccsds.moims.mo.mal.structures.Element;
 import org.ccsds.moims.mo.mal.structures.ElementList;
 import org.ccsds.moims.mo.mal.structures.Identifier;
 import org.ccsds.moims.mo.mal.structures.LongList;
@@ -38,6 +41,7 @@ import org.ccsds.moims.mo.mal.structures.URI;
 import org.ccsds.moims.mo.platform.gps.GPSHelper;
 import org.ccsds.moims.mo.platform.gps.structures.NearbyPositionDefinition;
 import org.ccsds.moims.mo.platform.gps.structures.NearbyPositionDefinitionList;
+import org.ccsds.moims.mo.platform.gps.structures.Position;
 
 /**
  *
@@ -47,6 +51,10 @@ public final class GPSManager extends DefinitionsManager {
     
     private Long uniqueObjIdDef; // Unique objId Definition (different for every Definition)
     private final HashMap<Long, Boolean> previousIsInsideStatus;
+    private final NearbyPositionIndex index = new NearbyPositionIndex();
+    // The definitions that must be evaluated even when they are not near:
+    // the ones that are not evaluated yet and the ones the position is inside
+    private final HashSet<Long> watched = new HashSet<Long>();
     
     public GPSManager(COMServicesProvider comServices){
         super(comServices);
@@ -80,7 +88,61 @@ public final class GPSManager extends DefinitionsManager {
     }
 
     public synchronized boolean setPreviousStatus(final Long input, final boolean isInside) {
-        return previousIsInsideStatus.put(input, isInside);
+        if (isInside) {
+            watched.add(input);
+        } else {
+            watched.remove(input);
+        }
+
+        final Boolean previous = previousIsInsideStatus.put(input, isInside);
+        return (previous != null) ? previous : false;
+    }
+
+    /**
+     * Evaluates if a position is inside the definitions whose status could
+     * have changed: the ones near the position, the ones the position was
+     * inside of and the ones that were not evaluated yet. The position is not
+     * inside the definitions that are not returned.
+     *
+     * @param position The position.
+     * @return The evaluated definitions and if the position is inside them.
+     */
+    public synchronized HashMap<Long, Boolean> evaluate(final Position position) {
+        return index.evaluate(position, watched);
+    }
+
+    @Override
+    public synchronized Boolean addDef(Long objId, Element definition) {
+        final Boolean added = super.addDef(objId, definition);
+        index.put(objId, (NearbyPositionDefinition) definition);
+        watched.add(objId);
+        return added;
+    }
+
+    @Override
+    public synchronized boolean deleteDef(Long objId) {
+        index.remove(objId);
+        watched.remove(objId);
+        previousIsInsideStatus.remove(objId);
+        return super.deleteDef(objId);
+    }
+
+    @Override
+    public synchronized Boolean reconfigureDefinitions(LongList objIds, ElementList definitions) {
+        final Boolean reconfigured = super.reconfigureDefinitions(objIds, definitions);
+
+        if (reconfigured) {
+            index.clear();
+            watched.clear();
+            previousIsInsideStatus.clear();
+
+            for (Long objId : this.listAll()) {
+                index.put(objId, this.get(objId));
+                watched.add(objId);
+            }
+        }
+
+        return reconfigured;
     }
 
     public NearbyPositionDefinitionList getAll(){
@@ -28,7 +28,6 @@ import esa.mo.helpertools.helpers.HelperMisc;
 import esa.mo.helpertools.helpers.HelperTime;
 import esa.mo.helpertools.misc.TaskScheduler;
 import esa.mo.platform.impl.util.HelperGPS;
-import esa.mo.platform.impl.util.PositionsCalculator;
 import esa.mo.reconfigurable.service.ConfigurationChangeListener;
 import esa.mo.reconfigurable.service.ReconfigurableService;
 import java.io.IOException;
@@ -705,33 +704,28 @@ public class GPSProviderServiceImpl extends GPSInheritanceSkeleton
               timeOfCurrentPosition = System.currentTimeMillis();
             }
 
-            // Compare with all the available definitions and raise
-            // NearbyPositionAlerts in case something has changed
-            LongList ids = manager.listAll();
+            if (pos == null) {
+              Logger.getLogger(GPSProviderServiceImpl.class.getName()).log(Level.SEVERE,
+                  "Not a valid position. The current position is null");
+              return;
+            }
 
-            for (int i = 0; i < ids.size(); i++) {
-              Long objId = ids.get(i);
-              NearbyPositionDefinition def = manager.get(objId);
+            // Compare with the definitions that are near or whose status might
+            // have changed and raise NearbyPositionAlerts in case something has changed
+            for (Map.Entry<Long, Boolean> state : manager.evaluate(pos).entrySet()) {
+              Long objId = state.getKey();
+              boolean isInside = state.getValue();
               Boolean previousState = manager.getPreviousStatus(objId);
 
-              try {
-                double distance = PositionsCalculator.deltaDistanceFrom2Points(def.getPosition(),
-                    pos);
-                boolean isInside = (distance < def.getDistanceBoundary());
-
-                if (previousState == null) { // Maybe it's the first run...
-                  manager.setPreviousStatus(objId, isInside);
-                  continue;
-                }
-
-                // If the status changed, then publish a Nearby Event
-                if (previousState != isInside) {
-                  publishNearbyPositionUpdate(objId, isInside);
-                  manager.setPreviousStatus(objId, isInside);
-                }
-              } catch (IOException ex) {
-                Logger.getLogger(GPSProviderServiceImpl.class.getName()).log(Level.SEVERE,
-                    ex.getMessage());
+              if (previousState == null) { // Maybe it's the first run...
+                manager.setPreviousStatus(objId, isInside);
+                continue;
+              }
+
+              // If the status changed, then publish a Nearby Event
+              if (previousState != isInside) {
+                publishNearbyPositionUpdate(objId, isInside);
+                manager.setPreviousStatus(objId, isInside);
               }
             }
           }
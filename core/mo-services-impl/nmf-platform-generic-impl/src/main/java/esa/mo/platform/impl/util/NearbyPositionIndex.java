@@ -0,0 +1,225 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2021      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : ESA NanoSat MO Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.platform.impl.util;
+
+import esa.mo.platform.impl.util.PositionsCalculator.ECEFVector;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.ccsds.moims.mo.platform.gps.structures.NearbyPositionDefinition;
+import org.ccsds.moims.mo.platform.gps.structures.Position;
+
+/**
+ * A spatial index of the Nearby Position definitions. The ECEF vector of each
+ * definition is calculated once, when it is added, and the definitions are
+ * placed in a grid of cells on the ECEF x and y axes. There is one grid per
+ * level, with cells of 2^level, and each definition is placed in the grid whose
+ * cells are just larger than its distance boundary. A position can then only
+ * be inside the definitions of its own cell and of the 8 surrounding ones on
+ * each level, so only those are evaluated.
+ *
+ * The z axis is not indexed because the distance ignores it when one of the
+ * positions has no altitude.
+ */
+public class NearbyPositionIndex {
+
+    private static final int MIN_LEVEL = -10;
+    private static final int MAX_LEVEL = 30;
+
+    private final HashMap<Long, Entry> entries = new HashMap<Long, Entry>();
+    private final TreeMap<Integer, HashMap<Long, ArrayList<Entry>>> levels
+            = new TreeMap<Integer, HashMap<Long, ArrayList<Entry>>>();
+    // Definitions with a boundary too large to be indexed
+    private final ArrayList<Entry> unbounded = new ArrayList<Entry>();
+
+    /**
+     * Adds or replaces a definition.
+     *
+     * @param objId The object instance identifier of the definition.
+     * @param definition The definition.
+     */
+    public synchronized void put(final Long objId, final NearbyPositionDefinition definition) {
+        this.remove(objId);
+
+        if (definition.getPosition() == null || definition.getDistanceBoundary() == null) {
+            Logger.getLogger(NearbyPositionIndex.class.getName()).log(Level.WARNING,
+                    "The Nearby Position definition {0} has no position or boundary.", objId);
+            return;
+        }
+
+        final Position position = definition.getPosition();
+        final Entry entry = new Entry(objId, PositionsCalculator.LLA2ECEF(position),
+                position.getAltitude() == 0, definition.getDistanceBoundary());
+        entries.put(objId, entry);
+
+        if (entry.level > MAX_LEVEL) {
+            unbounded.add(entry);
+            return;
+        }
+
+        HashMap<Long, ArrayList<Entry>> cells = levels.get(entry.level);
+
+        if (cells == null) {
+            cells = new HashMap<Long, ArrayList<Entry>>();
+            levels.put(entry.level, cells);
+        }
+
+        ArrayList<Entry> cell = cells.get(entry.cell);
+
+        if (cell == null) {
+            cell = new ArrayList<Entry>(2);
+            cells.put(entry.cell, cell);
+        }
+
+        cell.add(entry);
+    }
+
+    /**
+     * Removes a definition.
+     *
+     * @param objId The object instance identifier of the definition.
+     */
+    public synchronized void remove(final Long objId) {
+        final Entry entry = entries.remove(objId);
+
+        if (entry == null) {
+            return;
+        }
+
+        if (entry.level > MAX_LEVEL) {
+            unbounded.remove(entry);
+            return;
+        }
+
+        final HashMap<Long, ArrayList<Entry>> cells = levels.get(entry.level);
+        final ArrayList<Entry> cell = cells.get(entry.cell);
+        cell.remove(entry);
+
+        if (cell.isEmpty()) {
+            cells.remove(entry.cell);
+
+            if (cells.isEmpty()) {
+                levels.remove(entry.level);
+            }
+        }
+    }
+
+    /**
+     * Removes all the definitions.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        levels.clear();
+        unbounded.clear();
+    }
+
+    /**
+     * Evaluates if a position is inside the definitions that are near it and
+     * inside the additional definitions given.
+     *
+     * @param position The position.
+     * @param alsoEvaluate Additional definitions to be evaluated, even if they
+     * are not near the position. For example, the ones the position was inside
+     * of.
+     * @return The evaluated definitions and if the position is inside them.
+     * The definitions that are not returned do not contain the position.
+     */
+    public synchronized HashMap<Long, Boolean> evaluate(final Position position,
+            final Collection<Long> alsoEvaluate) {
+        final HashMap<Long, Boolean> results = new HashMap<Long, Boolean>();
+        final ECEFVector ecef = PositionsCalculator.LLA2ECEF(position);
+        final boolean noAltitude = (position.getAltitude() == 0);
+
+        for (Map.Entry<Integer, HashMap<Long, ArrayList<Entry>>> level : levels.entrySet()) {
+            final double size = Math.scalb(1.0, level.getKey());
+            final long cx = (long) Math.floor(ecef.x / size);
+            final long cy = (long) Math.floor(ecef.y / size);
+
+            for (long i = cx - 1; i <= cx + 1; i++) {
+                for (long j = cy - 1; j <= cy + 1; j++) {
+                    final ArrayList<Entry> cell = level.getValue().get(cellKey(i, j));
+
+                    if (cell != null) {
+                        for (Entry entry : cell) {
+                            results.put(entry.objId, entry.contains(ecef, noAltitude));
+                        }
+                    }
+                }
+            }
+        }
+
+        for (Entry entry : unbounded) {
+            results.put(entry.objId, entry.contains(ecef, noAltitude));
+        }
+
+        for (Long objId : alsoEvaluate) {
+            final Entry entry = entries.get(objId);
+
+            if (entry != null && !results.containsKey(objId)) {
+                results.put(objId, entry.contains(ecef, noAltitude));
+            }
+        }
+
+        return results;
+    }
+
+    private static long cellKey(final long cx, final long cy) {
+        return (cx << 32) ^ (cy & 0xFFFFFFFFL);
+    }
+
+    private static class Entry {
+
+        private final Long objId;
+        private final ECEFVector ecef;
+        private final boolean noAltitude;
+        private final double boundary;
+        private final int level;
+        private final long cell;
+
+        Entry(final Long objId, final ECEFVector ecef, final boolean noAltitude,
+                final double boundary) {
+            this.objId = objId;
+            this.ecef = ecef;
+            this.noAltitude = noAltitude;
+            this.boundary = boundary;
+
+            if (Double.isNaN(boundary) || Double.isInfinite(boundary)) {
+                this.level = MAX_LEVEL + 1;
+            } else {
+                // The cells must be at least as large as the boundary
+                this.level = Math.max(MIN_LEVEL, Math.getExponent(boundary) + 1);
+            }
+
+            final double size = Math.scalb(1.0, Math.min(level, MAX_LEVEL));
+            this.cell = cellKey((long) Math.floor(ecef.x / size), (long) Math.floor(ecef.y / size));
+        }
+
+        boolean contains(final ECEFVector position, final boolean positionNoAltitude) {
+            return PositionsCalculator.deltaDistanceFrom2Points(ecef, noAltitude,
+                    position, positionNoAltitude) < boundary;
+        }
+    }
+
+}
@@ -63,11 +63,27 @@ public class PositionsCalculator {
         ECEFVector p1ECEF = PositionsCalculator.LLA2ECEF(p1);
         ECEFVector p2ECEF = PositionsCalculator.LLA2ECEF(p2);
 
+        return deltaDistanceFrom2Points(p1ECEF, p1.getAltitude() == 0, p2ECEF, p2.getAltitude() == 0);
+    }
+
+    /**
+     * Calculates the distance between 2 Positions that were already converted
+     * to ECEF vectors. If one of the Positions has no altitude, then the
+     * altitude won't be considered when calculating the distance.
+     *
+     * @param p1ECEF Position 1
+     * @param p1NoAltitude True if the altitude of Position 1 is 0
+     * @param p2ECEF Position 2
+     * @param p2NoAltitude True if the altitude of Position 2 is 0
+     * @return The distance
+     */
+    public static double deltaDistanceFrom2Points(ECEFVector p1ECEF, boolean p1NoAltitude,
+            ECEFVector p2ECEF, boolean p2NoAltitude) {
         double dx = Math.abs(p1ECEF.x - p2ECEF.x);
         double dy = Math.abs(p1ECEF.y - p2ECEF.y);
         double dz = Math.abs(p1ECEF.z - p2ECEF.z);
 
-        if (p1.getAltitude() == 0 || p2.getAltitude() == 0) {
+        if (p1NoAltitude || p2NoAltitude) {
             dz = 0;
         }
 
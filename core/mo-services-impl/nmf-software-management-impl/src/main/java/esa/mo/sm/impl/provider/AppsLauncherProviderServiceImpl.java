@@ -316,7 +316,9 @@ public class AppsLauncherProviderServiceImpl extends AppsLauncherInheritanceSkel
           directoryServiceURI
               = directoryService.getConnection().getConnectionDetails().getProviderURI().toString();
         }
-        manager.startAppProcess(new ProcessExecutionHandler(new CallbacksImpl(), appInstIds.get(i)),
+        // The output buffers never hold more than what is allowed in the archive
+        manager.startAppProcess(new ProcessExecutionHandler(new CallbacksImpl(), appInstIds.get(i),
+            Math.min(stdLimit, ProcessExecutionHandler.DEFAULT_BUFFER_SIZE)),
             interaction, directoryServiceURI);
       } catch (IOException ex) {
         UIntegerList intIndexList = new UIntegerList();
@@ -20,16 +20,14 @@
  */
 package esa.mo.sm.impl.provider;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.TimerTask;
-import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import esa.mo.helpertools.misc.TaskScheduler;
-
+/**
+ * Monitors the output and the exit of a launched process. The process is polled by the shared
+ * ProcessOutputReactor, so no thread is started per process.
+ */
 public class ProcessExecutionHandler
 {
 
@@ -61,20 +59,37 @@ public class ProcessExecutionHandler
     void processStopped(Long objId, int exitCode);
   };
 
-  private final TaskScheduler timer = new TaskScheduler(1);
-  private static final int PERIOD_PUB = 2 * 1000; // Publish every 2 seconds
+  /**
+   * The default size of the stdout and stderr buffers, which are flushed when full.
+   */
+  public static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+  private static final int MIN_BUFFER_SIZE = 1024;
   private final Long objId;
-  private Thread stdoutReader;
-  private Thread stderrReader;
+  private final int bufferSize;
   private Thread shutdownHook;
   private Process process = null;
   private Callbacks cb = null;
+  private ProcessOutputReactor.OutputBuffer stdout;
+  private ProcessOutputReactor.OutputBuffer stderr;
+  private volatile boolean closed = false;
+  private boolean finished = false;
   private static final Logger LOGGER = Logger.getLogger(ProcessExecutionHandler.class.getName());
 
   public ProcessExecutionHandler(final Callbacks cb, final Long objId)
+  {
+    this(cb, objId, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * @param cb         The callbacks
+   * @param objId      Associated object ID (meaningful in the callee context)
+   * @param bufferSize The maximum number of bytes of stdout and stderr buffered before a flush
+   */
+  public ProcessExecutionHandler(final Callbacks cb, final Long objId, final int bufferSize)
   {
     this.cb = cb;
     this.objId = objId;
+    this.bufferSize = Math.max(MIN_BUFFER_SIZE, bufferSize);
   }
 
   public Long getObjId()
@@ -89,7 +104,7 @@ public class ProcessExecutionHandler
 
   public void close()
   {
-    timer.stopLast();
+    closed = true; // Stop flushing the output
     process.destroyForcibly();
     removeShutdownHook();
   }
@@ -115,95 +130,97 @@ public class ProcessExecutionHandler
   {
     this.process = process;
     installShutdownHook();
-    final StringBuffer stdoutBuf = new StringBuffer();
-    final StringBuffer stderrBuf = new StringBuffer();
-    // Every PERIOD_PUB seconds, publish the String data
-    timer.scheduleTask(new TimerTaskImpl(stdoutBuf, stderrBuf), 0, PERIOD_PUB, TimeUnit.MILLISECONDS, false);
-    stdoutReader = createReaderThread(stdoutBuf, new BufferedReader(new InputStreamReader(
-        process.getInputStream())));
-    stderrReader = createReaderThread(stderrBuf, new BufferedReader(new InputStreamReader(
-        process.getErrorStream())));
-    stdoutReader.start();
-    stderrReader.start();
-    new Thread()
-    {
-      @Override
-      public void run()
-      {
-        try {
-          int exitCode = process.waitFor();
-          cb.processStopped(objId, exitCode);
-        } catch (InterruptedException ex) {
-          // Thread interrupted, pretend the application exited succesfully
-          cb.processStopped(objId, 0);
-        }
-      }
-    }.start();
+    stdout = new ProcessOutputReactor.OutputBuffer(process.getInputStream(), bufferSize);
+    stderr = new ProcessOutputReactor.OutputBuffer(process.getErrorStream(), bufferSize);
+    ProcessOutputReactor.register(this);
   }
 
-  private Thread createReaderThread(final StringBuffer buf, final BufferedReader br)
+  /**
+   * Reads the available output of the process, flushes it when the buffers are full or every
+   * PERIOD_PUB, and reports the exit of the process. Called by the reactor thread only, which
+   * delivers the callbacks to the callbacks thread.
+   *
+   * @param now The current time
+   * @return True if some output was read
+   */
+  boolean poll(final long now)
   {
-    return new Thread()
-    {
-      @Override
-      public void run()
-      {
-        this.setName("ProcessExecutionHandler_ReaderThread");
-        try {
-          String line;
-          while ((line = br.readLine()) != null) {
-            buf.append(line);
-            buf.append("\n");
-          }
-        } catch (IOException ex) {
-          LOGGER.log(Level.INFO,
-              "The stream of the process (objId: {0}) has been closed.", new Object[]{
-                objId});
-          close();
-        }
-      }
-    };
+    boolean exited = !process.isAlive();
+    int read = 0;
+    try {
+      read += stdout.read();
+      read += stderr.read();
+    } catch (IOException ex) {
+      LOGGER.log(Level.INFO,
+          "The stream of the process (objId: {0}) has been closed.", new Object[]{
+            objId});
+      stdout.close();
+      stderr.close();
+      close();
+    }
+
+    // The exit is reported once all the output has been read
+    boolean endOfInput = exited && read == 0;
+    if (endOfInput || stdout.isFull() || stdout.isFlushDue(now)) {
+      flush(stdout.drain(now, endOfInput), true);
+    }
+    if (endOfInput || stderr.isFull() || stderr.isFlushDue(now)) {
+      flush(stderr.drain(now, endOfInput), false);
+    }
+
+    if (endOfInput) {
+      stdout.close();
+      stderr.close();
+      final int exitCode = process.exitValue();
+      finished = true;
+      ProcessOutputReactor.deliver(this, () -> cb.processStopped(objId, exitCode));
+    }
+    return read != 0;
   }
 
-  private class TimerTaskImpl extends Thread
+  /**
+   * Stops monitoring the process after its output could not be processed. The process is killed,
+   * as its pipes are not read anymore, and its exit is reported. Called by the reactor thread only.
+   */
+  void abort()
   {
+    if (finished) {
+      return; // Already reported
+    }
+    stdout.close();
+    stderr.close();
+    finished = true;
+    close();
+    ProcessOutputReactor.deliver(this, () -> {
+      try {
+        cb.processStopped(objId, process.waitFor());
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    });
+  }
 
-    private final StringBuffer stdoutBuf;
-    private final StringBuffer stderrBuf;
+  boolean isFinished()
+  {
+    return finished;
+  }
 
-    public TimerTaskImpl(StringBuffer stdoutBuf, StringBuffer stderrBuf)
-    {
-      this.stdoutBuf = stdoutBuf;
-      this.stderrBuf = stderrBuf;
+  private void flush(final String data, final boolean isStdout)
+  {
+    if (data == null || closed) {
+      return;
     }
-
-    @Override
-    public void run()
-    {
-      String data = getBufferData(stdoutBuf);
-      if (data != null) {
-        cb.flushStdout(objId, data);
-        LOGGER.log(Level.FINE, data);
+    ProcessOutputReactor.deliver(this, () -> {
+      if (closed) {
+        return;
       }
-      data = getBufferData(stderrBuf);
-      if (data != null) {
+      if (isStdout) {
+        cb.flushStdout(objId, data);
+      } else {
         cb.flushStderr(objId, data);
-        LOGGER.log(Level.FINE, data);
       }
-
-    }
-
-    private String getBufferData(StringBuffer buffer)
-    {
-      // Change the buffer position
-      int bufSize = buffer.length();
-      if (bufSize != 0) {
-        String dataToPropagate = buffer.substring(0, bufSize);
-        buffer.delete(0, bufSize);
-        return dataToPropagate;
-      }
-      return null;
-    }
+      LOGGER.log(Level.FINE, data);
+    });
   }
 
 }
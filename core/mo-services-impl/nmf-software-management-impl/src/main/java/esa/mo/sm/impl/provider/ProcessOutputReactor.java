@@ -0,0 +1,298 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2021      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : ESA NanoSat MO Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.sm.impl.provider;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reads the stdout and stderr of all the monitored processes with a single thread. The pipes of a
+ * Process are not selectable channels, so the reactor polls them and reads only the bytes that are
+ * available, which never blocks. The output of each stream is kept in a bounded byte buffer that
+ * is flushed when it is full or periodically. The thread also detects the exit of the processes.
+ * The callbacks are called in order on a separate thread, so a slow callback doesn't stop the
+ * pipes from being read.
+ */
+final class ProcessOutputReactor implements Runnable
+{
+
+  private static final Logger LOGGER = Logger.getLogger(ProcessOutputReactor.class.getName());
+  private static final long PERIOD_PUB = 2 * 1000; // Publish every 2 seconds
+  private static final long POLL_INTERVAL = 20; // Poll the pipes every 20 ms when they are idle
+  private static final ExecutorService CALLBACKS = Executors.newSingleThreadExecutor(r -> {
+    Thread thread = new Thread(r, "ProcessOutputCallbacks");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private static ProcessOutputReactor instance;
+
+  private final ArrayList<ProcessExecutionHandler> handlers = new ArrayList<>();
+  private final ArrayList<ProcessExecutionHandler> added = new ArrayList<>();
+  private boolean stopped = false;
+
+  private ProcessOutputReactor()
+  {
+  }
+
+  /**
+   * @return The reactor shared by all the handlers. Its thread is started on the first call, and
+   * again after it was interrupted.
+   */
+  private static synchronized ProcessOutputReactor getInstance()
+  {
+    if (instance == null) {
+      instance = new ProcessOutputReactor();
+      Thread thread = new Thread(instance, "ProcessOutputReactor");
+      thread.setDaemon(true);
+      thread.start();
+    }
+    return instance;
+  }
+
+  /**
+   * Starts monitoring the output and the exit of the process of the handler.
+   *
+   * @param handler The handler
+   */
+  static void register(final ProcessExecutionHandler handler)
+  {
+    // A stopped reactor has been replaced by a new one
+    while (!getInstance().add(handler)) {
+    }
+  }
+
+  /**
+   * Calls a callback of a handler on the callbacks thread. The callbacks are called in the order
+   * they are delivered.
+   *
+   * @param handler  The handler
+   * @param callback The callback
+   */
+  static void deliver(final ProcessExecutionHandler handler, final Runnable callback)
+  {
+    CALLBACKS.execute(() -> {
+      try {
+        callback.run();
+      } catch (RuntimeException ex) {
+        LOGGER.log(Level.WARNING, "The callback of the process (objId: " + handler.getObjId()
+            + ") failed!", ex);
+      }
+    });
+  }
+
+  private boolean add(final ProcessExecutionHandler handler)
+  {
+    synchronized (added) {
+      if (stopped) {
+        return false;
+      }
+      added.add(handler);
+      added.notifyAll();
+      return true;
+    }
+  }
+
+  @Override
+  public void run()
+  {
+    try {
+      while (true) {
+        synchronized (added) {
+          handlers.addAll(added);
+          added.clear();
+        }
+
+        boolean idle = true;
+        final long now = System.currentTimeMillis();
+
+        for (Iterator<ProcessExecutionHandler> it = handlers.iterator(); it.hasNext();) {
+          ProcessExecutionHandler handler = it.next();
+          try {
+            if (handler.poll(now)) {
+              idle = false;
+            }
+            if (handler.isFinished()) {
+              it.remove();
+            }
+          } catch (RuntimeException ex) {
+            LOGGER.log(Level.WARNING, "The output of the process (objId: " + handler.getObjId()
+                + ") could not be processed!", ex);
+            it.remove();
+            handler.abort();
+          }
+        }
+
+        if (idle) {
+          synchronized (added) {
+            if (handlers.isEmpty()) {
+              while (added.isEmpty()) {
+                added.wait();
+              }
+            } else if (added.isEmpty()) {
+              added.wait(POLL_INTERVAL);
+            }
+          }
+        }
+      }
+    } catch (InterruptedException ex) {
+      handOver();
+    }
+  }
+
+  /**
+   * Stops this reactor and moves its handlers to a new one.
+   */
+  private void handOver()
+  {
+    synchronized (ProcessOutputReactor.class) {
+      if (instance == this) {
+        instance = null;
+      }
+    }
+    synchronized (added) {
+      stopped = true;
+      handlers.addAll(added);
+      added.clear();
+    }
+    LOGGER.log(Level.WARNING, "The ProcessOutputReactor thread was interrupted. Its {0} processes "
+        + "are moved to a new thread.", handlers.size());
+    for (ProcessExecutionHandler handler : handlers) {
+      register(handler);
+    }
+  }
+
+  /**
+   * The output of one stream of a process, kept as bytes in a bounded buffer. The bytes are decoded
+   * only when they are flushed; an incomplete character stays in the buffer for the next flush.
+   */
+  static final class OutputBuffer
+  {
+
+    private final InputStream in;
+    private final byte[] buffer;
+    private final CharsetDecoder decoder;
+    private int count = 0;
+    private long lastFlush = System.currentTimeMillis();
+    private boolean closed = false;
+
+    OutputBuffer(final InputStream in, final int capacity)
+    {
+      this(in, capacity, Charset.defaultCharset());
+    }
+
+    /**
+     * @param in       The stream
+     * @param capacity The maximum number of buffered bytes
+     * @param charset  The charset of the output
+     */
+    OutputBuffer(final InputStream in, final int capacity, final Charset charset)
+    {
+      this.in = in;
+      this.buffer = new byte[capacity];
+      this.decoder = charset.newDecoder()
+          .onMalformedInput(CodingErrorAction.REPLACE)
+          .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Reads the available bytes.
+     *
+     * @return The number of bytes read
+     * @throws IOException If the stream is closed
+     */
+    int read() throws IOException
+    {
+      if (closed) {
+        return 0;
+      }
+      int available = Math.min(in.available(), buffer.length - count);
+      if (available <= 0) {
+        return 0;
+      }
+      int n = in.read(buffer, count, available);
+      if (n < 0) {
+        closed = true;
+        return 0;
+      }
+      count += n;
+      return n;
+    }
+
+    boolean isFull()
+    {
+      return count == buffer.length;
+    }
+
+    boolean isFlushDue(final long now)
+    {
+      return now - lastFlush >= PERIOD_PUB;
+    }
+
+    /**
+     * Decodes and removes the buffered bytes.
+     *
+     * @param now The current time
+     * @param endOfInput True if no more bytes will be read
+     * @return The data, or null if there is none
+     */
+    String drain(final long now, final boolean endOfInput)
+    {
+      lastFlush = now;
+      if (count == 0) {
+        return null;
+      }
+      ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, count);
+      CharBuffer chars = CharBuffer.allocate(count + 1);
+      decoder.decode(bytes, chars, endOfInput);
+      if (endOfInput) {
+        decoder.flush(chars);
+        decoder.reset();
+      }
+      int remaining = bytes.remaining();
+      System.arraycopy(buffer, bytes.position(), buffer, 0, remaining);
+      count = remaining;
+      chars.flip();
+      return (chars.length() == 0) ? null : chars.toString();
+    }
+
+    void close()
+    {
+      closed = true;
+      try {
+        in.close();
+      } catch (IOException ex) {
+        // Already closed
+      }
+    }
+  }
+
+}
@@ -0,0 +1,227 @@
+package esa.mo.sm.impl.provider;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Runs shell commands through the ProcessExecutionHandler and checks the output and the exit
+ * reported by the shared ProcessOutputReactor, and the decoding of the output buffers.
+ */
+public class ProcessOutputReactorTest
+{
+
+  private static final long TIMEOUT = 30; // s
+  private static final int BUFFER_SIZE = 1024;
+
+  @BeforeClass
+  public static void checkShell()
+  {
+    Assume.assumeTrue("The tests need a POSIX shell", new java.io.File("/bin/sh").canExecute());
+  }
+
+  @Test
+  public void testOutputLargerThanTheBuffer() throws Exception
+  {
+    final int size = 200 * BUFFER_SIZE;
+    Recorder recorder = run("head -c " + size + " /dev/zero | tr '\\0' 'a'");
+
+    Assert.assertEquals(0, recorder.waitForExit());
+    String stdout = recorder.getStdout();
+    Assert.assertEquals(size, stdout.length());
+    Assert.assertTrue(stdout.matches("a*"));
+    // Flushed whenever the buffer was full
+    Assert.assertTrue(recorder.getStdoutFlushes() >= size / BUFFER_SIZE);
+    Assert.assertTrue(recorder.getMaxFlushLength() <= BUFFER_SIZE);
+  }
+
+  @Test
+  public void testOutputInThePipeWhenTheProcessExits() throws Exception
+  {
+    // The process exits right away, while most of its output is still in the pipes
+    final int size = 48 * BUFFER_SIZE;
+    Recorder recorder = run("head -c " + size + " /dev/zero | tr '\\0' 'b'; "
+        + "head -c " + size + " /dev/zero | tr '\\0' 'c' >&2; exit 3");
+
+    Assert.assertEquals(3, recorder.waitForExit());
+    Assert.assertEquals(size, recorder.getStdout().length());
+    Assert.assertEquals(size, recorder.getStderr().length());
+    Assert.assertTrue(recorder.getStdout().matches("b*"));
+    Assert.assertTrue(recorder.getStderr().matches("c*"));
+    Assert.assertFalse("Output flushed after the exit", recorder.isOutputAfterExit());
+  }
+
+  @Test
+  public void testCloseWhileAFlushIsWaiting() throws Exception
+  {
+    final CountDownLatch blocked = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+
+    // The first flush blocks the callbacks thread, so the next ones wait behind it
+    Recorder recorder = new Recorder()
+    {
+      @Override
+      public void flushStdout(Long objId, String data)
+      {
+        super.flushStdout(objId, data);
+        if (blocked.getCount() != 0) {
+          blocked.countDown();
+          try {
+            release.await(TIMEOUT, TimeUnit.SECONDS);
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      }
+    };
+    ProcessExecutionHandler handler = new ProcessExecutionHandler(recorder, 1L, BUFFER_SIZE);
+    handler.monitorProcess(new ProcessBuilder("/bin/sh", "-c", "yes").start());
+
+    Assert.assertTrue(blocked.await(TIMEOUT, TimeUnit.SECONDS));
+    Thread.sleep(200); // More flushes are queued meanwhile
+    handler.close();
+    release.countDown();
+
+    recorder.waitForExit();
+    Assert.assertEquals("Flushed after close", 1, recorder.getStdoutFlushes());
+  }
+
+  @Test
+  public void testMultibyteCharactersSplitAcrossFlushes()
+  {
+    String text = "h\u00e9llo \u20ac \ud83d\ude80 w\u00f6rld";
+    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+
+    // Every size of the buffer cuts the characters at a different byte
+    for (int capacity = 4; capacity <= 8; capacity++) {
+      ProcessOutputReactor.OutputBuffer buffer = new ProcessOutputReactor.OutputBuffer(
+          new ByteArrayInputStream(bytes), capacity, StandardCharsets.UTF_8);
+      StringBuilder decoded = new StringBuilder();
+      int read;
+      do {
+        read = readQuietly(buffer);
+        String data = buffer.drain(0, read == 0);
+        if (data != null) {
+          decoded.append(data);
+        }
+      } while (read != 0);
+
+      Assert.assertEquals("Capacity " + capacity, text, decoded.toString());
+    }
+  }
+
+  @Test
+  public void testIncompleteCharacterAtTheEndOfInput()
+  {
+    byte[] bytes = "\u20ac".getBytes(StandardCharsets.UTF_8);
+    ProcessOutputReactor.OutputBuffer buffer = new ProcessOutputReactor.OutputBuffer(
+        new ByteArrayInputStream(bytes, 0, 2), 16, StandardCharsets.UTF_8);
+
+    Assert.assertEquals(2, readQuietly(buffer));
+    Assert.assertNull("Waits for the rest of the character", buffer.drain(0, false));
+    Assert.assertEquals("\ufffd", buffer.drain(0, true));
+    Assert.assertNull(buffer.drain(0, true));
+  }
+
+  private static int readQuietly(ProcessOutputReactor.OutputBuffer buffer)
+  {
+    try {
+      return buffer.read();
+    } catch (IOException ex) {
+      throw new AssertionError(ex);
+    }
+  }
+
+  private static Recorder run(String command) throws IOException
+  {
+    Recorder recorder = new Recorder();
+    ProcessExecutionHandler handler = new ProcessExecutionHandler(recorder, 1L, BUFFER_SIZE);
+    ProcessBuilder builder = new ProcessBuilder("/bin/sh", "-c", command);
+    builder.environment().put("LC_ALL", "C");
+    handler.monitorProcess(builder.start());
+    return recorder;
+  }
+
+  /**
+   * Records the callbacks, which are all called on the callbacks thread.
+   */
+  private static class Recorder implements ProcessExecutionHandler.Callbacks
+  {
+
+    private final StringBuilder stdout = new StringBuilder();
+    private final StringBuilder stderr = new StringBuilder();
+    private final List<Integer> flushLengths = new ArrayList<>();
+    private final CountDownLatch exited = new CountDownLatch(1);
+    private volatile int exitCode;
+    private volatile boolean outputAfterExit = false;
+    private int stdoutFlushes = 0;
+
+    @Override
+    public synchronized void flushStdout(Long objId, String data)
+    {
+      outputAfterExit |= exited.getCount() == 0;
+      stdout.append(data);
+      stdoutFlushes++;
+      flushLengths.add(data.length());
+    }
+
+    @Override
+    public synchronized void flushStderr(Long objId, String data)
+    {
+      outputAfterExit |= exited.getCount() == 0;
+      stderr.append(data);
+      flushLengths.add(data.length());
+    }
+
+    @Override
+    public void processStopped(Long objId, int exitCode)
+    {
+      this.exitCode = exitCode;
+      exited.countDown();
+    }
+
+    int waitForExit() throws InterruptedException
+    {
+      Assert.assertTrue("The exit was not reported", exited.await(TIMEOUT, TimeUnit.SECONDS));
+      return exitCode;
+    }
+
+    synchronized String getStdout()
+    {
+      return stdout.toString();
+    }
+
+    synchronized String getStderr()
+    {
+      return stderr.toString();
+    }
+
+    synchronized int getStdoutFlushes()
+    {
+      return stdoutFlushes;
+    }
+
+    synchronized int getMaxFlushLength()
+    {
+      int max = 0;
+      for (int length : flushLengths) {
+        max = Math.max(max, length);
+      }
+      return max;
+    }
+
+    boolean isOutputAfterExit()
+    {
+      return outputAfterExit;
+    }
+  }
+
+}
@@ -32,10 +32,13 @@ import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.ccsds.moims.mo.mal.provider.MALInteraction;
@@ -77,7 +80,7 @@ import org.ccsds.moims.mo.mc.structures.ParameterExpression;
 public abstract class MonitorAndControlNMFAdapter implements ActionInvocationListener,
     ParameterStatusListener
 {
-  private final HashMap<Long, Field> parameterMapping = new HashMap<>();
+  private final HashMap<Long, ParameterAccessor> parameterMapping = new HashMap<>();
   private final HashMap<Long, Method> actionMapping = new HashMap<>();
   private final HashMap<String, Long> actionNameMapping = new HashMap<>();
 
@@ -184,9 +187,14 @@ public abstract class MonitorAndControlNMFAdapter implements ActionInvocationLis
 
       LongList idList = registration.registerParameters(parameterNames, definitions);
 
-      // save mapping (id -> Field) in map
+      // save mapping (id -> compiled accessors of the Field) in map
       for (int i = 0; i < idList.size(); i++) {
-        parameterMapping.put(idList.get(i), parameters.get(i));
+        try {
+          parameterMapping.put(idList.get(i), new ParameterAccessor(this, parameters.get(i)));
+        } catch (IllegalAccessException ex) {
+          Logger.getLogger(MonitorAndControlNMFAdapter.class.getName()).log(Level.SEVERE,
+              "Unable to access the Parameter field " + parameters.get(i).getName(), ex);
+        }
         for (String aggregation : ((Parameter) parameters.get(i).getAnnotation(Parameter.class)).aggregations()) {
           if (!aggregationMapping.containsKey(aggregation)) {
             aggregationMapping.put(aggregation, new LongList());
@@ -439,34 +447,16 @@ public abstract class MonitorAndControlNMFAdapter implements ActionInvocationLis
   @Override
   public Attribute onGetValue(Long parameterID) throws IOException
   {
-
-    Field field = parameterMapping.get(parameterID);
-    if (field == null) {
+    ParameterAccessor accessor = parameterMapping.get(parameterID);
+    if (accessor == null) {
       Logger.getLogger(MonitorAndControlNMFAdapter.class.getName()).log(Level.SEVERE,
           "no parameter with ID {0} exists!", parameterID);
       return null;
     }
-      Parameter param = field.getAnnotation(Parameter.class);
-    if (param == null) {
-      Logger.getLogger(MonitorAndControlNMFAdapter.class.getName()).log(Level.SEVERE,
-          "Parameter with ID {0} and name {1} is not Annotated!",
-          new Object[]{parameterID, field.getName()});
-        return null;
-      } else {
-        try {
-        String onGet = param.onGetFunction();
-      if (!onGet.equals("")) {
-        Method onGetMethod = this.getClass().getMethod(onGet);
-        onGetMethod.setAccessible(true);
-        onGetMethod.invoke(this);
-      }
-      return (Attribute) HelperAttributes.javaType2Attribute(field.get(
-          this));
-    } catch (IllegalArgumentException | IllegalAccessException ex) {
-      Logger.getLogger(MonitorAndControlNMFAdapter.class.getName()).log(Level.SEVERE, null,
-          ex);
-      throw new IOException("Unable to get Parameter Mapping");
-    } catch (NoSuchMethodException | SecurityException ex) {
+    try {
+      accessor.callOnGet();
+      return accessor.getValue();
+    } catch (NoSuchMethodException ex) {
       Logger.getLogger(MonitorAndControlNMFAdapter.class.getName()).log(Level.SEVERE, null,
           ex);
       throw new IOException("Unable to call onGet Method");
@@ -474,33 +464,55 @@ public abstract class MonitorAndControlNMFAdapter implements ActionInvocationLis
       Logger.getLogger(MonitorAndControlNMFAdapter.class.getName()).log(Level.SEVERE, null,
           ex);
     }
-    }
     return null;
   }
 
+  /**
+   * Gets the values of several parameters. The onGetFunction of the parameters is called only once
+   * for the whole list, so the parameters that are refreshed by the same function are read with a
+   * single call to it. A value that cannot be acquired is returned as null.
+   *
+   * @param parameterIDs the IDs of the parameters
+   * @return The values of the parameters, in the same order as the IDs
+   * @throws IOException never, the failures are reported per parameter
+   */
+  @Override
+  public List<Attribute> onGetValues(LongList parameterIDs) throws IOException
+  {
+    List<Attribute> values = new ArrayList<>(parameterIDs.size());
+    Set<String> calledOnGets = new HashSet<>();
+    for (Long parameterID : parameterIDs) {
+      ParameterAccessor accessor = parameterMapping.get(parameterID);
+      if (accessor == null) {
+        values.add(onGetValue(parameterID)); // Logs the missing mapping
+        continue;
+      }
+      try {
+        if (calledOnGets.add(accessor.getOnGetFunction())) {
+          accessor.callOnGet();
+        }
+        values.add(accessor.getValue());
+      } catch (RuntimeException | NoSuchMethodException | InvocationTargetException ex) {
+        Logger.getLogger(MonitorAndControlNMFAdapter.class.getName()).log(Level.SEVERE,
+            "Unable to get the Parameter with ID " + parameterID, ex);
+        values.add(null);
+      }
+    }
+    return values;
+  }
+
   @Override
   public Boolean onSetValue(ParameterRawValueList newRawValues)
   {
     boolean result = true;
     for (ParameterRawValue newRawValue : newRawValues) {
-
-      Object value;
       if (isReadOnly(newRawValue.getParamInstId())) {
         result = false;
         continue;
       }
-      Field param = parameterMapping.get(newRawValue.getParamInstId());
-
-      if (param.getType() == double.class) {
-        value = HelperAttributes.attribute2double(newRawValue.getRawValue());
-      } else if (param.getType() == String.class) {
-        value = HelperAttributes.attribute2string(newRawValue.getRawValue());
-      } else {
-        value = HelperAttributes.attribute2JavaType(newRawValue.getRawValue());
-      }
       try {
-        param.set(this, value);
-      } catch (IllegalArgumentException | IllegalAccessException ex) {
+        parameterMapping.get(newRawValue.getParamInstId()).setValue(newRawValue.getRawValue());
+      } catch (IllegalArgumentException ex) {
         Logger.getLogger(MonitorAndControlNMFAdapter.class.getName()).log(Level.SEVERE,
             null, ex);
         result = false;
@@ -512,8 +524,7 @@ public abstract class MonitorAndControlNMFAdapter implements ActionInvocationLis
   @Override
   public boolean isReadOnly(Long parameterID)
   {
-    Field field = parameterMapping.get(parameterID);
-    return field.getAnnotation(Parameter.class).readOnly() || (field.getModifiers() & Modifier.FINAL) == Modifier.FINAL;
+    return parameterMapping.get(parameterID).isReadOnly();
   }
 
   @Override
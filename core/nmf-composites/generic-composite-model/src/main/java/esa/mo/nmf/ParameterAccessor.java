@@ -0,0 +1,264 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2021      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : ESA NanoSat MO Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.nmf;
+
+import esa.mo.helpertools.helpers.HelperAttributes;
+import esa.mo.nmf.annotations.Parameter;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.ccsds.moims.mo.mal.structures.Attribute;
+import org.ccsds.moims.mo.mal.structures.Union;
+
+/**
+ * The compiled accessors of a field with the @Parameter annotation. The getter, the setter and the
+ * onGet function are resolved once, when the parameter is registered, into method handles bound
+ * to the adapter. The getter is combined with a converter specialised for the type of the field,
+ * so reading the value of the parameter is a single handle invocation.
+ */
+final class ParameterAccessor
+{
+
+  private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+  private static final MethodType GETTER_TYPE = MethodType.methodType(Attribute.class);
+
+  /**
+   * The converters of the Java types that are wrapped in a Union, indexed by the boxed type.
+   */
+  private static final HashMap<Class<?>, MethodHandle> CONVERTERS = new HashMap<>();
+
+  private static final MethodHandle GENERIC_CONVERTER;
+
+  static {
+    try {
+      for (Class<?> type : new Class<?>[]{Boolean.class, Integer.class, Long.class, String.class,
+        Double.class, Float.class, Byte.class, Short.class}) {
+        CONVERTERS.put(type, LOOKUP.findStatic(ParameterAccessor.class, "toUnion",
+            MethodType.methodType(Attribute.class, type)));
+      }
+      GENERIC_CONVERTER = LOOKUP.findStatic(ParameterAccessor.class, "toAttribute",
+          MethodType.methodType(Attribute.class, Object.class));
+    } catch (NoSuchMethodException | IllegalAccessException ex) {
+      throw new ExceptionInInitializerError(ex);
+    }
+  }
+
+  private final Field field;
+  private final Parameter annotation;
+  private final boolean readOnly;
+  private final MethodHandle getter;
+  private final MethodHandle setter;
+  private final String onGetFunction;
+  private final MethodHandle onGet;
+  private final NoSuchMethodException onGetMissing;
+
+  /**
+   * Compiles the accessors of a parameter field.
+   *
+   * @param adapter The adapter that holds the field
+   * @param field The field, already made accessible
+   * @throws IllegalAccessException if the field cannot be accessed
+   */
+  ParameterAccessor(MonitorAndControlNMFAdapter adapter, Field field) throws IllegalAccessException
+  {
+    this.field = field;
+    this.annotation = field.getAnnotation(Parameter.class);
+    this.readOnly = annotation.readOnly()
+        || (field.getModifiers() & Modifier.FINAL) == Modifier.FINAL;
+
+    Class<?> type = field.getType();
+    MethodHandle converter = CONVERTERS.get(MethodType.methodType(type).wrap().returnType());
+    if (converter == null) {
+      converter = GENERIC_CONVERTER;
+    }
+    MethodHandle fieldGetter = LOOKUP.unreflectGetter(field).bindTo(adapter);
+    this.getter = MethodHandles.filterReturnValue(fieldGetter,
+        converter.asType(MethodType.methodType(Attribute.class, type)));
+
+    this.setter = ((field.getModifiers() & Modifier.FINAL) == Modifier.FINAL) ? null
+        : LOOKUP.unreflectSetter(field).bindTo(adapter)
+            .asType(MethodType.methodType(void.class, Object.class));
+
+    this.onGetFunction = annotation.onGetFunction();
+    MethodHandle onGetHandle = null;
+    NoSuchMethodException missing = null;
+    if (!onGetFunction.equals("")) {
+      try {
+        Method onGetMethod = adapter.getClass().getMethod(onGetFunction);
+        onGetMethod.setAccessible(true);
+        onGetHandle = LOOKUP.unreflect(onGetMethod).bindTo(adapter)
+            .asType(MethodType.methodType(void.class));
+      } catch (NoSuchMethodException ex) {
+        Logger.getLogger(ParameterAccessor.class.getName()).log(Level.SEVERE,
+            "The onGet function {0} of the Parameter {1} does not exist!",
+            new Object[]{onGetFunction, field.getName()});
+        missing = ex;
+      }
+    }
+    this.onGet = onGetHandle;
+    this.onGetMissing = missing;
+  }
+
+  Field getField()
+  {
+    return field;
+  }
+
+  Parameter getAnnotation()
+  {
+    return annotation;
+  }
+
+  boolean isReadOnly()
+  {
+    return readOnly;
+  }
+
+  /**
+   * @return The name of the onGet function, or "" if there is none
+   */
+  String getOnGetFunction()
+  {
+    return onGetFunction;
+  }
+
+  /**
+   * Calls the onGet function of the parameter, if there is one.
+   *
+   * @throws NoSuchMethodException if the onGet function does not exist
+   * @throws InvocationTargetException if the onGet function threw an exception
+   */
+  void callOnGet() throws NoSuchMethodException, InvocationTargetException
+  {
+    if (onGetMissing != null) {
+      throw onGetMissing;
+    }
+    if (onGet != null) {
+      try {
+        onGet.invokeExact();
+      } catch (Throwable ex) {
+        throw new InvocationTargetException(ex);
+      }
+    }
+  }
+
+  /**
+   * Reads the value of the field, converted into a MAL Attribute.
+   *
+   * @return The value
+   */
+  Attribute getValue()
+  {
+    try {
+      return (Attribute) getter.invokeExact();
+    } catch (RuntimeException | Error ex) {
+      throw ex;
+    } catch (Throwable ex) {
+      throw new IllegalStateException(ex); // Field getters do not throw checked exceptions
+    }
+  }
+
+  /**
+   * Sets the value of the field from a raw MAL Attribute.
+   *
+   * @param rawValue The new raw value
+   * @throws IllegalArgumentException if the value cannot be set into the field
+   */
+  void setValue(Attribute rawValue) throws IllegalArgumentException
+  {
+    if (setter == null) {
+      throw new IllegalArgumentException("The field " + field.getName() + " is final!");
+    }
+
+    Object value;
+    if (field.getType() == double.class) {
+      value = HelperAttributes.attribute2double(rawValue);
+    } else if (field.getType() == String.class) {
+      value = HelperAttributes.attribute2string(rawValue);
+    } else {
+      value = HelperAttributes.attribute2JavaType(rawValue);
+    }
+    try {
+      setter.invokeExact(value);
+    } catch (ClassCastException | NullPointerException ex) {
+      throw new IllegalArgumentException("Cannot set the field " + field.getName() + " to "
+          + value, ex);
+    } catch (RuntimeException | Error ex) {
+      throw ex;
+    } catch (Throwable ex) {
+      throw new IllegalStateException(ex); // Field setters do not throw checked exceptions
+    }
+  }
+
+  private static Attribute toUnion(Boolean value)
+  {
+    return (value == null) ? null : new Union(value);
+  }
+
+  private static Attribute toUnion(Integer value)
+  {
+    return (value == null) ? null : new Union(value);
+  }
+
+  private static Attribute toUnion(Long value)
+  {
+    return (value == null) ? null : new Union(value);
+  }
+
+  private static Attribute toUnion(String value)
+  {
+    return (value == null) ? null : new Union(value);
+  }
+
+  private static Attribute toUnion(Double value)
+  {
+    return (value == null) ? null : new Union(value);
+  }
+
+  private static Attribute toUnion(Float value)
+  {
+    return (value == null) ? null : new Union(value);
+  }
+
+  private static Attribute toUnion(Byte value)
+  {
+    return (value == null) ? null : new Union(value);
+  }
+
+  private static Attribute toUnion(Short value)
+  {
+    return (value == null) ? null : new Union(value);
+  }
+
+  private static Attribute toAttribute(Object value)
+  {
+    return (Attribute) HelperAttributes.javaType2Attribute(value);
+  }
+
+}
@@ -25,6 +25,7 @@ import esa.mo.nmf.MCRegistration;
 import esa.mo.nmf.MonitorAndControlNMFAdapter;
 import esa.mo.nmf.annotations.Parameter;
 import java.io.IOException;
+import java.util.List;
 import org.ccsds.moims.mo.mal.structures.Attribute;
 import org.ccsds.moims.mo.mal.structures.IdentifierList;
 import org.ccsds.moims.mo.mal.structures.LongList;
@@ -64,9 +65,12 @@ public class ParameterTest
     @Parameter(name = "Parameter with onGet", onGetFunction = "getTest")
     public String onGetParameter = "some String";
 
+    private int onGetCalls = 0;
+
     public void getTest()
     {
       onGetParameter = "new";
+      onGetCalls++;
     }
 
     public int getPrivateParameter()
@@ -139,4 +143,24 @@ public class ParameterTest
     org.junit.Assert.assertTrue("'" + v5 + "' != '" + "new" + "'", v5.equals("new"));
 
   }
+
+  @Test
+  public void testOnGetValues() throws IOException
+  {
+    automationAdapterTester test = new automationAdapterTester();
+    test.initialRegistrations(new registrationTester());
+
+    LongList ids = new LongList();
+    ids.add(ID5);
+    ids.add(ID2);
+    ids.add(ID5);
+    List<Attribute> values = test.onGetValues(ids);
+
+    org.junit.Assert.assertEquals(3, values.size());
+    org.junit.Assert.assertEquals("new", HelperAttributes.attribute2JavaType(values.get(0)));
+    org.junit.Assert.assertEquals(0.5f, HelperAttributes.attribute2JavaType(values.get(1)));
+    org.junit.Assert.assertEquals("new", HelperAttributes.attribute2JavaType(values.get(2)));
+    // The onGet function is called once for the whole list
+    org.junit.Assert.assertEquals(1, test.onGetCalls);
+  }
 }
@@ -20,11 +20,12 @@
  */
 package esa.mo.nmf.nmfpackage;
 
-import java.io.BufferedInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
 
 /**
  *
@@ -37,22 +38,52 @@ public class HelperNMFPackage {
     public static final String PRIVATE_KEY_FILENAME = "privateKey.key";
     public static final String NMF_PACKAGE_DESCRIPTOR_VERSION = "NMFPackageDescriptorVersion=";
 
+    /**
+     * The size of the buffer used to read and copy the files of a package.
+     */
+    public static final int BUFFER_SIZE = 64 * 1024;
+
     public static long calculateCRCFromFile(final String filepath) throws IOException {
-        InputStream inputStream = new BufferedInputStream(new FileInputStream(filepath));
-        long crc = calculateCRCFromInputStream(inputStream);
-        inputStream.close();
-        return crc;
+        InputStream inputStream = new FileInputStream(filepath);
+        try {
+            return calculateCRCFromInputStream(inputStream);
+        } finally {
+            inputStream.close();
+        }
     }
 
     public static long calculateCRCFromInputStream(final InputStream inputStream) throws IOException {
         CRC32 crc = new CRC32();
-        int cnt;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int len;
 
-        while ((cnt = inputStream.read()) != -1) {
-            crc.update(cnt);
+        while ((len = inputStream.read(buffer)) != -1) {
+            crc.update(buffer, 0, len);
         }
 
         return crc.getValue();
     }
 
+    /**
+     * Copies the stream and calculates the CRC of the copied bytes in a
+     * single pass.
+     *
+     * @param inputStream The stream to be copied.
+     * @param outputStream The destination of the bytes.
+     * @return The CRC of the copied bytes.
+     * @throws IOException If the stream could not be read or written.
+     */
+    public static long copyAndCalculateCRC(final InputStream inputStream,
+            final OutputStream outputStream) throws IOException {
+        CheckedInputStream checked = new CheckedInputStream(inputStream, new CRC32());
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int len;
+
+        while ((len = checked.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, len);
+        }
+
+        return checked.getChecksum().getValue();
+    }
+
 }
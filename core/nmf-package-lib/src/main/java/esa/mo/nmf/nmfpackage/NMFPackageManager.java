@@ -28,6 +28,8 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
@@ -106,17 +108,7 @@ public class NMFPackageManager {
         new File(receiptFile.getParent()).mkdirs();
         // -----------------
 
-        final FileOutputStream fos = new FileOutputStream(receiptFile);
-        final InputStream zis = zipFile.getInputStream(receipt);
-        byte[] buffer = new byte[1024];
-        int len;
-
-        while ((len = zis.read(buffer)) > 0) {
-            fos.write(buffer, 0, len);
-        }
-
-        fos.close();
-        zis.close();
+        copyReceipt(zipFile, receipt, receiptFile);
         // ---------------------------------------
 
         Logger.getLogger(NMFPackageManager.class.getName()).log(Level.INFO, 
@@ -215,17 +207,7 @@ public class NMFPackageManager {
         new File(receiptFile.getParent()).mkdirs();
         // -----------------
 
-        final FileOutputStream fos = new FileOutputStream(receiptFile);
-        final InputStream zis = zipFile.getInputStream(receipt);
-        byte[] buffer = new byte[1024];
-        int len;
-
-        while ((len = zis.read(buffer)) > 0) {
-            fos.write(buffer, 0, len);
-        }
-
-        fos.close();
-        zis.close();
+        copyReceipt(zipFile, receipt, receiptFile);
         // ---------------------------------------
 
         Logger.getLogger(NMFPackageManager.class.getName()).log(Level.INFO,
@@ -363,7 +345,6 @@ public class NMFPackageManager {
     private static void installFiles(final NMFPackageDescriptor descriptor,
             final ZipFile zipFile, File installationFolder) throws IOException {
         File newFile;
-        byte[] buffer = new byte[1024];
 
         // Iterate through the files, unpack them into the right folders
         for (int i = 0; i < descriptor.getFiles().size(); i++) {
@@ -376,27 +357,54 @@ public class NMFPackageManager {
 
             System.out.println(" >> Installing file: " + newFile.getCanonicalPath());
 
-            final FileOutputStream fos = new FileOutputStream(newFile);
+            final long crc;
 
-            int len;
-            final InputStream zis = zipFile.getInputStream(entry);
-
-            while ((len = zis.read(buffer)) > 0) {
-                fos.write(buffer, 0, len);
+            // Write the file and calculate the CRC of the written bytes in the same pass
+            try (InputStream zis = zipFile.getInputStream(entry);
+                    FileOutputStream fos = new FileOutputStream(newFile)) {
+                crc = HelperNMFPackage.copyAndCalculateCRC(zis, fos);
+            } catch (IOException ex) {
+                deleteInstalledFile(newFile);
+                throw ex;
             }
 
-            fos.close();
-
-            final long crc = HelperNMFPackage.calculateCRCFromFile(newFile.getCanonicalPath());
-
-            // We will also need to double check the CRCs again against the real files!
+            // We will also need to double check the CRCs again against the written bytes!
             // Just to double-check.. better safe than sorry!
             if (file.getCRC() != crc) {
+                deleteInstalledFile(newFile);
                 throw new IOException("The CRC does not match!");
             }
         }
     }
 
+    /**
+     * Removes a file that was not written correctly.
+     *
+     * @param file The file.
+     * @throws IOException If the path of the file could not be resolved.
+     */
+    private static void deleteInstalledFile(final File file) throws IOException {
+        if (file.exists() && !file.delete()) {
+            Logger.getLogger(NMFPackageManager.class.getName()).log(Level.WARNING,
+                    "The file could not be deleted: " + file.getCanonicalPath());
+        }
+    }
+
+    /**
+     * Stores a copy of the receipt of the package.
+     *
+     * @param zipFile The package.
+     * @param receipt The receipt entry of the package.
+     * @param receiptFile The destination of the copy.
+     * @throws IOException If the receipt could not be copied.
+     */
+    private static void copyReceipt(final ZipFile zipFile, final ZipEntry receipt,
+            final File receiptFile) throws IOException {
+        try (InputStream zis = zipFile.getInputStream(receipt)) {
+            Files.copy(zis, receiptFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
     private static void removeFiles(final NMFPackageDescriptor descriptor) throws IOException {
         File folder = getInstallationFolder();
         File file;
@@ -0,0 +1,248 @@
+/*
+ *  ----------------------------------------------------------------------------
+ *  Copyright (C) 2021      European Space Agency
+ *                          European Space Operations Centre
+ *                          Darmstadt
+ *                          Germany
+ *  ----------------------------------------------------------------------------
+ *  System                : ESA NanoSat MO Framework
+ *  ----------------------------------------------------------------------------
+ *  Licensed under the European Space Agency Public License, Version 2.0
+ *  You may not use this file except in compliance with the License.
+ * 
+ *  Except as expressly set forth in this License, the Software is provided to
+ *  You on an "as is" basis and without warranties of any kind, including without
+ *  limitation merchantability, fitness for a particular purpose, absence of
+ *  defects or errors, accuracy or non-infringement of intellectual property rights.
+ *  
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *  ----------------------------------------------------------------------------
+ */
+package opssat.simulator.orekit;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.hipparchus.geometry.euclidean.threed.Vector3D;
+import org.hipparchus.util.FastMath;
+import org.hipparchus.util.MathUtils;
+import org.orekit.bodies.BodyShape;
+import org.orekit.bodies.GeodeticPoint;
+import org.orekit.errors.OrekitException;
+import org.orekit.frames.Frame;
+import org.orekit.frames.Transform;
+import org.orekit.propagation.SpacecraftState;
+import org.orekit.time.AbsoluteDate;
+
+/**
+ * Propagates the GPS constellation in parallel, one fork-join task per group
+ * of satellites. The tasks run on the common fork-join pool unless a pool is
+ * given, in which case the caller owns it and shuts it down.
+ *
+ * The positions are converted to the topocentric frame of the observer
+ * without building a TopocentricFrame: a single transform to the Earth frame
+ * is shared by all the satellites, and only recomputed when the date changes,
+ * and the east, north and zenith components are then projected with
+ * primitive arithmetic. The distances, elevations and azimuths are kept in
+ * primitive arrays that are reused between steps.
+ */
+public class GPSConstellationPropagator
+{
+
+  /**
+   * Satellites further away than this distance (in meters) are not in view.
+   */
+  public static final double MAX_DISTANCE = 25000000.0;
+
+  // Number of satellites propagated by a single task
+  private static final int SATELLITES_PER_TASK = 4;
+
+  private final GPSSatellite[] satellites;
+  private final BodyShape earth;
+  private final Frame bodyFrame;
+  private final ForkJoinPool pool;
+
+  // Transform from the frame of the satellites to the Earth frame at a date
+  private AbsoluteDate transformDate;
+  private Transform toBody;
+
+  // Position of the observer in the Earth frame and its topocentric axes
+  private double originX;
+  private double originY;
+  private double originZ;
+  private final double[] east = new double[3];
+  private final double[] north = new double[3];
+  private final double[] zenith = new double[3];
+
+  // Position of the satellites in the topocentric frame of the observer
+  private final double[] x;
+  private final double[] y;
+  private final double[] z;
+  private final double[] distances;
+  private final double[] elevations;
+  private final double[] azimuths;
+
+  public GPSConstellationPropagator(List<GPSSatellite> satellites, BodyShape earth)
+  {
+    this(satellites, earth, ForkJoinPool.commonPool());
+  }
+
+  public GPSConstellationPropagator(List<GPSSatellite> satellites, BodyShape earth,
+      ForkJoinPool pool)
+  {
+    this.satellites = satellites.toArray(new GPSSatellite[satellites.size()]);
+    this.earth = earth;
+    this.bodyFrame = earth.getBodyFrame();
+    this.pool = pool;
+    this.x = new double[this.satellites.length];
+    this.y = new double[this.satellites.length];
+    this.z = new double[this.satellites.length];
+    this.distances = new double[this.satellites.length];
+    this.elevations = new double[this.satellites.length];
+    this.azimuths = new double[this.satellites.length];
+  }
+
+  /**
+   * Propagates all the satellites to a date and calculates their distance,
+   * elevation and azimuth as seen from an observer.
+   *
+   * @param date The date
+   * @param observer The position of the observer
+   */
+  public synchronized void propagate(AbsoluteDate date, GeodeticPoint observer)
+  {
+    if (satellites.length == 0) {
+      return;
+    }
+
+    // All the TLE propagators use the same frame, so a single transform is needed
+    Frame satellitesFrame = satellites[0].propagator.getFrame();
+    if (!date.equals(transformDate)) {
+      toBody = satellitesFrame.getTransformTo(bodyFrame, date);
+      transformDate = date;
+    }
+
+    Vector3D origin = earth.transform(observer);
+    originX = origin.getX();
+    originY = origin.getY();
+    originZ = origin.getZ();
+    setAxis(east, observer.getEast());
+    setAxis(north, observer.getNorth());
+    setAxis(zenith, observer.getZenith());
+
+    pool.invoke(new PropagateTask(0, satellites.length, date, satellitesFrame));
+
+    for (int i = 0; i < satellites.length; i++) {
+      double norm = FastMath.sqrt(x[i] * x[i] + y[i] * y[i] + z[i] * z[i]);
+      double azimuth = FastMath.atan2(x[i], y[i]);
+      distances[i] = norm;
+      elevations[i] = FastMath.toDegrees(FastMath.asin(z[i] / norm));
+      azimuths[i] = FastMath.toDegrees(azimuth < 0 ? azimuth + MathUtils.TWO_PI : azimuth);
+    }
+  }
+
+  private static void setAxis(double[] axis, Vector3D direction)
+  {
+    axis[0] = direction.getX();
+    axis[1] = direction.getY();
+    axis[2] = direction.getZ();
+  }
+
+  public int size()
+  {
+    return satellites.length;
+  }
+
+  public GPSSatellite getSatellite(int index)
+  {
+    return satellites[index];
+  }
+
+  /**
+   * @param index The index of the satellite
+   * @return The distance to the observer, in meters, or NaN if the satellite
+   * could not be propagated
+   */
+  public synchronized double getDistance(int index)
+  {
+    return distances[index];
+  }
+
+  /**
+   * @param index The index of the satellite
+   * @return The elevation above the observer horizon, in degrees
+   */
+  public synchronized double getElevation(int index)
+  {
+    return elevations[index];
+  }
+
+  /**
+   * @param index The index of the satellite
+   * @return The azimuth from the observer north, in degrees
+   */
+  public synchronized double getAzimuth(int index)
+  {
+    return azimuths[index];
+  }
+
+  public synchronized boolean isInView(int index)
+  {
+    return distances[index] < MAX_DISTANCE;
+  }
+
+  private class PropagateTask extends RecursiveAction
+  {
+
+    private final int from;
+    private final int to;
+    private final AbsoluteDate date;
+    private final Frame satellitesFrame;
+
+    PropagateTask(int from, int to, AbsoluteDate date, Frame satellitesFrame)
+    {
+      this.from = from;
+      this.to = to;
+      this.date = date;
+      this.satellitesFrame = satellitesFrame;
+    }
+
+    @Override
+    protected void compute()
+    {
+      if (to - from > SATELLITES_PER_TASK) {
+        int middle = (from + to) >>> 1;
+        invokeAll(new PropagateTask(from, middle, date, satellitesFrame),
+            new PropagateTask(middle, to, date, satellitesFrame));
+        return;
+      }
+
+      for (int i = from; i < to; i++) {
+        GPSSatellite satellite = satellites[i];
+        try {
+          SpacecraftState state = satellite.propagator.propagate(date);
+          satellite.setState(state);
+          Vector3D position = state.getPVCoordinates().getPosition();
+          Transform transform = (state.getFrame() == satellitesFrame) ? toBody
+              : state.getFrame().getTransformTo(bodyFrame, date);
+          Vector3D inBody = transform.transformPosition(position);
+          double dx = inBody.getX() - originX;
+          double dy = inBody.getY() - originY;
+          double dz = inBody.getZ() - originZ;
+          x[i] = dx * east[0] + dy * east[1] + dz * east[2];
+          y[i] = dx * north[0] + dy * north[1] + dz * north[2];
+          z[i] = dx * zenith[0] + dy * zenith[1] + dz * zenith[2];
+        } catch (OrekitException ex) {
+          Logger.getLogger(GPSConstellationPropagator.class.getName()).log(Level.SEVERE, null, ex);
+          x[i] = Double.NaN;
+          y[i] = Double.NaN;
+          z[i] = Double.NaN;
+        }
+      }
+    }
+  }
+
+}
@@ -35,7 +35,7 @@ import java.util.LinkedList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.Timer;
@@ -70,7 +70,6 @@ import org.orekit.frames.LocalOrbitalFrame;
 import org.orekit.frames.TopocentricFrame;
 import org.orekit.frames.Transform;
 import org.orekit.models.earth.GeoMagneticField;
-import org.orekit.models.earth.GeoMagneticFieldFactory;
 import org.orekit.orbits.KeplerianOrbit;
 import org.orekit.orbits.Orbit;
 import org.orekit.orbits.OrbitType;
@@ -165,8 +164,6 @@ public class OrekitCore
     public abstract double getDoubleValue();
   }
 
-  private AbsoluteDate gpsExtrapDate;
-  private SpacecraftState gpsCurrentSCState;
   private boolean gpsOneShotDistances;
 
   private ATTITUDE_MODE attitudeMode;
@@ -176,6 +173,8 @@ public class OrekitCore
   private final double DARMSTADT_LONGITUDE = 8.622481;
   private final double DARMSTADT_ALTITUDE = 0;
   private final double DARMSTADT_MIN_ELEVATION = 5;
+  // How far ahead the passes and node crossings are predicted, in seconds
+  private static final double PASS_PREDICTION_WINDOW = 24 * 3600;
 
   TLE initialTLE;
   // Keplerian orbits elements
@@ -203,11 +202,8 @@ public class OrekitCore
   SpinStabilized spinStabilized;
   GeodeticPoint targetGeo;
   AttitudesSequence attitudesSequence;
-  boolean hasAnx, hasDnx, hasAOS, hasLOS;// Ascending and descending nodes valid calculations exist
-  AbsoluteDate nextAnx, nextDnx, nextAOS, nextLOS;
-  GeodeticPoint lastPosition;
-  boolean lastInView;
   TopocentricFrame staESOCFrame;
+  private final PassPredictor passPredictor;
   GeodeticPoint stationESOC;
   private final boolean debug1 = false;
   Orbit initialOrbit;
@@ -219,17 +215,30 @@ public class OrekitCore
 
   // Magnetic field
   GeoMagneticField geoMagneticField;
+  private final MagneticFieldModel magneticFieldModel;
   private final Object magneticFieldVectorLock = new Object();
   private double[] magneticFieldVector;
 
   // GPS constellation
-  private boolean propagatingConstellation;
   private LinkedList<GPSSatellite> gpsConstellation;
+  private final GPSConstellationPropagator gpsConstellationPropagator;
+  // The newest step that the constellation has not been propagated to yet
+  private final AtomicReference<ConstellationStep> pendingConstellationStep =
+      new AtomicReference<ConstellationStep>();
+  private final ExecutorService constellationExecutor = Executors
+      .newSingleThreadExecutor(new ThreadFactory()
+      {
+        @Override
+        public Thread newThread(Runnable r)
+        {
+          Thread t = new Thread(r, "SimConstellationPropagator");
+          t.setDaemon(true);
+          return t;
+        }
+      });
   final LinkedList<GPSSatInView> gpsSatsInView;
   private final Object constellationPropagationCounterMutex = new Object();
   private int constellationPropagationCounter;
-  private ExecutorService executor = Executors
-      .newCachedThreadPool(new SimThreadFactory("SimProcessorOrekit"));
 
   private byte stateTarget = 0;
   private long delayPeriod = 2*60*1000; // 2 minutes delay expressed in milliseconds.
@@ -486,22 +495,26 @@ public class OrekitCore
     double decimalYear = getDecimalYear(this.extrapDate);
     extrapDate.toDate(utc);
     logger.log(Level.FINE, "Decimal year is [" + decimalYear + "]");
-    this.geoMagneticField = GeoMagneticFieldFactory.getIGRF(decimalYear);
+    this.magneticFieldModel = new MagneticFieldModel(
+        getMagneticFieldProperty(simulatorNode, "magneticfield.grid.resolution", 0),
+        getMagneticFieldProperty(simulatorNode, "magneticfield.grid.altitudestep", 50));
+    this.geoMagneticField = this.magneticFieldModel.setEpoch(decimalYear);
     logger.log(Level.FINE, "Magnetic model loaded: [" + this.geoMagneticField.getModelName() + "]");
+    if (this.magneticFieldModel.isInterpolated()) {
+      logger.log(Level.FINE, "Magnetic field interpolated with a maximum error of ["
+          + this.magneticFieldModel.estimateMaxError(1000) + "] nT");
+    }
     magneticFieldVector = new double[3];
 
     logger.log(Level.INFO, "Orekit module created with start date [" + this.initialDate + "]");
 
-    hasAnx = false;
-    hasDnx = false;
-    lastInView = false;
-    hasAOS = false;
-    hasLOS = false;
-
     // Station
     this.stationESOC = new GeodeticPoint(FastMath.toRadians(DARMSTADT_LATITUDE),
         FastMath.toRadians(DARMSTADT_LONGITUDE), DARMSTADT_ALTITUDE);
     this.staESOCFrame = new TopocentricFrame(this.earth, stationESOC, "ESOC");
+    this.passPredictor = new PassPredictor((OneAxisEllipsoid) this.earth, this.staESOCFrame,
+        DARMSTADT_MIN_ELEVATION, PASS_PREDICTION_WINDOW);
+    this.passPredictor.reset(getNewPropagator(), this.extrapDate);
     this.sunVector = new double[3];
 
     BufferedReader in;
@@ -588,6 +601,7 @@ public class OrekitCore
       logger.log(Level.SEVERE, ex.toString());
       // No internet connection available and no file saved
     }
+    this.gpsConstellationPropagator = new GPSConstellationPropagator(gpsConstellation, earth);
     logger.log(Level.FINE,
         "GPS Constellation has [" + this.gpsConstellation.size() + "] satellites!");
   }
@@ -720,6 +734,7 @@ public class OrekitCore
       TLEPropagator tlePropagator = TLEPropagator.selectExtrapolator(initialTLE, attitudesSequence,
           6.0);
       this.runningPropagator = tlePropagator;
+      this.passPredictor.reset(getNewPropagator(), this.extrapDate);
     } catch (OrekitException ex) {
       Logger.getLogger(OrekitCore.class.getName()).log(Level.SEVERE, null, ex);
     }
@@ -753,6 +768,7 @@ public class OrekitCore
 
   public String getNextAnx()
   {
+    AbsoluteDate nextAnx = passPredictor.getNext(PassPredictor.EventType.ANX, this.extrapDate);
     if (nextAnx != null) {
       return getETAFromAbsDate(nextAnx);
     } else {
@@ -762,6 +778,7 @@ public class OrekitCore
 
   public String getNextDnx()
   {
+    AbsoluteDate nextDnx = passPredictor.getNext(PassPredictor.EventType.DNX, this.extrapDate);
     if (nextDnx != null) {
       return getETAFromAbsDate(nextDnx);
     } else {
@@ -771,6 +788,7 @@ public class OrekitCore
 
   public String getNextAOS()
   {
+    AbsoluteDate nextAOS = passPredictor.getNext(PassPredictor.EventType.AOS, this.extrapDate);
     if (nextAOS != null) {
       return getETAFromAbsDate(nextAOS);
     } else {
@@ -780,6 +798,7 @@ public class OrekitCore
 
   public String getNextLOS()
   {
+    AbsoluteDate nextLOS = passPredictor.getNext(PassPredictor.EventType.LOS, this.extrapDate);
     if (nextLOS != null) {
       return getETAFromAbsDate(nextLOS);
     } else {
@@ -787,6 +806,11 @@ public class OrekitCore
     }
   }
 
+  public PassPredictor getPassPredictor()
+  {
+    return passPredictor;
+  }
+
   public void changeAttitudeLof(double x, double y, double z, double rate)
   {
     double x_rad = FastMath.toRadians(x);
@@ -877,6 +901,22 @@ public class OrekitCore
     path.append(SimulatorNode.getResourcesPath() + directory);
   }
 
+  private static double getMagneticFieldProperty(SimulatorNode simulatorNode, String key,
+      double defaultValue)
+  {
+    String value = simulatorNode.getPlatformProperties().getProperty(key);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Double.parseDouble(value);
+    } catch (NumberFormatException ex) {
+      Logger.getLogger(OrekitCore.class.getName()).log(Level.WARNING,
+          "Invalid value [" + value + "] for the property [" + key + "]");
+      return defaultValue;
+    }
+  }
+
   public double[] getMagneticField()
   {
     synchronized (magneticFieldVectorLock) {
@@ -921,11 +961,6 @@ public class OrekitCore
 
   }
 
-  private boolean isInGSView(SpacecraftState s)
-  {
-    return getGSElevation(s) >= 0;
-  }
-
   public double getCurrentGSElevation()
   {
     return getGSElevation(this.spacecraftState);
@@ -966,174 +1001,68 @@ public class OrekitCore
     return 0;
   }
 
-  private AbsoluteDate findNextSignalEvent(boolean isAOS)
+  /**
+   * The date and position of OPS-SAT of a step, for the constellation.
+   */
+  private static final class ConstellationStep
   {
-    if (isAOS) {
-      this.hasAOS = true;
-    } else {
-      this.hasLOS = true;
-    }
-    int timeStep = 1;
-    String nodeDetectStr = (isAOS ? "AOS" : "LOS");
-    if (debug1) {
-      logger.log(Level.INFO, nodeDetectStr + ".. Timestep is [" + timeStep + "]");
-    }
-    int maxSteps = 10000;
-    int speedFactor = 10;
-    int i = 0;
-    boolean localDebug = false;
-    AbsoluteDate tempExtrapDate = new AbsoluteDate(extrapDate, 0);
-    AbstractPropagator tempPropagator = getNewPropagator();
-    SpacecraftState tempSpacecraftState = null;
-    GeodeticPoint positionThen;
-    boolean allowCrossingLock = false;
-    while (++i < maxSteps) {
-      tempExtrapDate = tempExtrapDate.shiftedBy(timeStep * speedFactor);
-      tempSpacecraftState = tempPropagator.propagate(tempExtrapDate);
-
-      positionThen = getGeodeticPoint(tempSpacecraftState);
-
-      // logger.log(Level.INFO,"Step ["+i+"], time
-      // ["+tempExtrapDate.toString()+"],"+positionThen.toString()+"
-      // elevation["+getGSElevation(tempSpacecraftState)+"]");
-      boolean tempInViewRange = isInGSView(tempSpacecraftState);
-      if ((!tempInViewRange && isAOS) || (tempInViewRange && !isAOS)) {
-        allowCrossingLock = true;
-      }
-      if (allowCrossingLock) {
-        if ((tempInViewRange && isAOS) || (!tempInViewRange && !isAOS)) {
-          if (debug1 || localDebug) {
-            logger.log(Level.INFO,
-                nodeDetectStr + " found @ [" + tempExtrapDate.toString() + "], step [" + i + "]");
-          }
-          return tempExtrapDate;
-        }
-      }
-    }
-    if (debug1) {
-      logger.log(Level.INFO, "Failed to find " + nodeDetectStr + " after [" + i + "] steps!");
-    }
-    return null;
-  }
 
-  private AbsoluteDate findNextCrossing(boolean isAnx)
-  {
-    if (isAnx) {
-      this.hasAnx = true;
-    } else {
-      this.hasDnx = true;
-    }
-    // Propagate until anx is found
-    int timeStep = 1;
-    String nodeDetectStr = (isAnx ? "ANX" : "DNX");
-    // logger.log(Level.INFO,nodeDetectStr+".. Timestep is ["+timeStep+"]");
-    int maxSteps = 100;
-    int speedFactor = 100;
-    int i = 0;
-    AbsoluteDate tempExtrapDate = new AbsoluteDate(extrapDate, 0);
-    SpacecraftState tempSpacecraftState = null;
-    GeodeticPoint positionThen;
-    boolean allowCrossingLock = false;
-    AbstractPropagator tempPropagator = getNewPropagator();
-    while (++i < maxSteps) {
-      tempExtrapDate = tempExtrapDate.shiftedBy(timeStep * speedFactor);
-      tempSpacecraftState = tempPropagator.propagate(tempExtrapDate);
-
-      positionThen = getGeodeticPoint(tempSpacecraftState);
-      // logger.log(Level.INFO,positionThen.toString());
-      if ((positionThen.getLatitude() < 0 && isAnx) || (positionThen.getLatitude() > 0 && !isAnx)) {
-        allowCrossingLock = true;
-      }
-      if (allowCrossingLock) {
-        if ((positionThen.getLatitude() > 0 && isAnx)
-            || (positionThen.getLatitude() < 0 && !isAnx)) {
-          allowCrossingLock = true;
-          if (debug1) {
-            logger.log(Level.INFO,
-                nodeDetectStr + " found @ [" + tempExtrapDate.toString() + "], step [" + i + "]");
-          }
-          return tempExtrapDate;
-        }
-      }
-    }
-    if (debug1) {
-      logger.log(Level.INFO, "Failed to find " + nodeDetectStr + " after [" + i + "] steps!");
+    private final AbsoluteDate date;
+    private final GeodeticPoint position;
+
+    private ConstellationStep(AbsoluteDate date, GeodeticPoint position)
+    {
+      this.date = date;
+      this.position = position;
     }
-    return null;
   }
 
-  private void checkAOSLOS()
+  private void processGPSConstellationPropagateStep(final GeodeticPoint opsSatGeoDPoint)
   {
-    if (this.nextAOS == null) {
-      this.hasAOS = false;
-      if (debug1) {
-        logger.log(Level.INFO, "Resetting AOS");
-      }
+    if (opsSatGeoDPoint == null) {
+      return;
     }
-    if (this.nextLOS == null) {
-      this.hasLOS = false;
-      if (debug1) {
-        logger.log(Level.INFO, "Resetting LOS");
-      }
-    }
-  }
 
-  private void processGPSConstellationPropagateStep()
-  {
-    this.propagatingConstellation = true;
-    this.gpsExtrapDate = this.extrapDate;
-    this.gpsCurrentSCState = this.spacecraftState;
+    // While a pass is running, the step waiting for it is replaced by the newer one, so the
+    // next pass starts as soon as the running one is over and propagates to the newest step
+    ConstellationStep waiting = pendingConstellationStep.getAndSet(
+        new ConstellationStep(this.extrapDate, opsSatGeoDPoint));
+    if (waiting != null) {
+      return; // Already submitted
+    }
 
-    executor.submit(new Runnable()
+    constellationExecutor.submit(new Runnable()
     {
       @Override
       public void run()
       {
-        // logger.log(Level.INFO,"Propagating constellation..");
-
-        GeodeticPoint opsSatGeoDPoint = getGeodeticPoint(gpsCurrentSCState);
-        TopocentricFrame opsSatCurrentFrame = new TopocentricFrame(earth, opsSatGeoDPoint,
-            "OPS-SAT");
-
-        LinkedList<GPSSatInView> tempSatsInView = new LinkedList<GPSSatInView>();
-
-        for (GPSSatellite t : gpsConstellation) {
-          t.setState(t.propagator.propagate(gpsExtrapDate));
-
-          //
-          double distance = Vector3D.distance(gpsCurrentSCState.getPVCoordinates().getPosition(),
-              t.getState().getPVCoordinates().getPosition());
-
-          GPSSatInView tempGPSSatInView = new GPSSatInView(t.name, distance);
-          double elevation = 0, azimuth = 0;
-          try {
-            elevation = opsSatCurrentFrame.getElevation(
-                t.getState().getPVCoordinates().getPosition(), t.getState().getFrame(),
-                t.getState().getDate());
-            azimuth = opsSatCurrentFrame.getAzimuth(t.getState().getPVCoordinates().getPosition(),
-                t.getState().getFrame(), t.getState().getDate());
-          } catch (OrekitException ex) {
-            Logger.getLogger(OrekitCore.class.getName()).log(Level.SEVERE, null, ex);
-          }
-          tempGPSSatInView.setElevation(FastMath.toDegrees(elevation));
-          tempGPSSatInView.setAzimuth(FastMath.toDegrees(azimuth));
-          if (distance < 25000000.0) {
-            tempSatsInView.add(tempGPSSatInView);
-            if (gpsOneShotDistances) {
-              System.out.println(tempGPSSatInView.toString());
+        ConstellationStep step = pendingConstellationStep.getAndSet(null);
+        try {
+          gpsConstellationPropagator.propagate(step.date, step.position);
+
+          synchronized (gpsSatsInView) {
+            gpsSatsInView.clear();
+            for (int i = 0; i < gpsConstellationPropagator.size(); i++) {
+              if (gpsConstellationPropagator.isInView(i)) {
+                GPSSatInView tempGPSSatInView = new GPSSatInView(
+                    gpsConstellationPropagator.getSatellite(i).name,
+                    gpsConstellationPropagator.getDistance(i));
+                tempGPSSatInView.setElevation(gpsConstellationPropagator.getElevation(i));
+                tempGPSSatInView.setAzimuth(gpsConstellationPropagator.getAzimuth(i));
+                gpsSatsInView.add(tempGPSSatInView);
+                if (gpsOneShotDistances) {
+                  System.out.println(tempGPSSatInView.toString());
+                }
+              }
             }
           }
+          synchronized (constellationPropagationCounterMutex) {
+            constellationPropagationCounter++;
+          }
+          gpsOneShotDistances = false;
+        } catch (RuntimeException ex) {
+          Logger.getLogger(OrekitCore.class.getName()).log(Level.SEVERE, null, ex);
         }
-
-        synchronized (gpsSatsInView) {
-          gpsSatsInView.clear();
-          gpsSatsInView.addAll(tempSatsInView);
-        }
-        synchronized (constellationPropagationCounterMutex) {
-          constellationPropagationCounter++;
-        }
-        gpsOneShotDistances = false;
-        propagatingConstellation = false;
       }
     });
   }
@@ -1247,9 +1176,6 @@ public class OrekitCore
       this.attitudeState.setSwitched(active);
       this.spacecraftState = this.runningPropagator.propagate(extrapDate);
     }
-    if (!propagatingConstellation) {
-      processGPSConstellationPropagateStep();
-    }
     Transform inertToSpacecraft = this.spacecraftState.toTransform();
     final PVCoordinatesProvider sunPVProvider = CelestialBodyFactory.getSun();
     Vector3D sunInert = sunPVProvider
@@ -1262,61 +1188,17 @@ public class OrekitCore
     this.sunVector[1] = sunY;
     this.sunVector[2] = sunZ;
     GeodeticPoint newPosition = this.getGeodeticPoint();
+    processGPSConstellationPropagateStep(newPosition);
+    GeoMagneticField newGeoMagneticField = this.magneticFieldModel
+        .setEpoch(getDecimalYear(extrapDate));
+    double[] newMagneticFieldVector = this.magneticFieldModel.calculateField(
+        FastMath.toDegrees(newPosition.getLatitude()),
+        FastMath.toDegrees(newPosition.getLongitude()), newPosition.getAltitude() / 1000.0);
     synchronized (magneticFieldVectorLock) {
-      this.geoMagneticField = GeoMagneticFieldFactory.getIGRF(getDecimalYear(extrapDate));
-      this.magneticFieldVector = this.geoMagneticField
-          .calculateField(FastMath.toDegrees(newPosition.getLatitude()),
-              FastMath.toDegrees(newPosition.getLongitude()), newPosition.getAltitude() / 1000.0)
-          .getFieldVector().toArray();
-    }
-    if (this.lastPosition != null) {
-      boolean isInView = isInGSView(this.spacecraftState);
-      if (this.lastPosition.getLatitude() < 0 && newPosition.getLatitude() >= 0) {
-        this.hasAnx = false;
-        checkAOSLOS();
-
-      }
-      if (this.lastPosition.getLatitude() > 0 && newPosition.getLatitude() <= 0) {
-        this.hasDnx = false;
-        checkAOSLOS();
-      }
-      boolean AOSPassed = false;
-      boolean LOSPassed = false;
-      if (this.nextAOS != null) {
-        AOSPassed = this.nextAOS.compareTo(this.extrapDate) < 0;
-      }
-      if (this.nextLOS != null) {
-        LOSPassed = this.nextLOS.compareTo(this.extrapDate) < 0;
-      }
-      if (AOSPassed) {
-        this.nextAOS = null;
-        this.hasAOS = false;
-      }
-      if (LOSPassed) {
-        this.nextLOS = null;
-        this.hasLOS = false;
-      }
+      this.geoMagneticField = newGeoMagneticField;
+      this.magneticFieldVector = newMagneticFieldVector;
     }
-    this.lastPosition = newPosition;
-
-    if (!hasAnx) {
-      this.nextAnx = findNextCrossing(true);
-    }
-    if (!hasDnx) {
-      this.nextDnx = findNextCrossing(false);
-    }
-
-    // The code below was eating the CPU, it was commented because it it
-    // unnecessary functionality for the NMF.
-    /*
-     * if (!hasAOS) { //this.hasAOS=true; new Thread() {
-     * 
-     * @Override public void run() { nextAOS = findNextSignalEvent(true); }
-     * }.start(); } if (!hasLOS) { //this.hasLOS=true; new Thread() {
-     * 
-     * @Override public void run() { nextLOS = findNextSignalEvent(false); }
-     * }.start(); }
-     */
+    this.passPredictor.update(extrapDate);
     this.isInitialized = true;
 
   }
@@ -1491,35 +1373,4 @@ public class OrekitCore
     return stateTarget;
   };
 
-  /**
-   * The database backend thread factory
-   */
-  static class SimThreadFactory implements ThreadFactory
-  {
-
-    private final ThreadGroup group;
-    private final AtomicInteger threadNumber = new AtomicInteger(1);
-    private final String namePrefix;
-
-    SimThreadFactory(String prefix)
-    {
-      SecurityManager s = System.getSecurityManager();
-      group = (s != null) ? s.getThreadGroup() : Thread.currentThread().getThreadGroup();
-      namePrefix = prefix + "-thread-";
-    }
-
-    @Override
-    public Thread newThread(Runnable r)
-    {
-      Thread t = new Thread(group, r, namePrefix + threadNumber.getAndIncrement(), 0);
-      if (t.isDaemon()) {
-        t.setDaemon(false);
-      }
-      if (t.getPriority() != Thread.NORM_PRIORITY) {
-        t.setPriority(Thread.NORM_PRIORITY);
-      }
-      return t;
-    }
-  }
-
 }
@@ -0,0 +1,271 @@
+/*
+ *  ----------------------------------------------------------------------------
+ *  Copyright (C) 2021      European Space Agency
+ *                          European Space Operations Centre
+ *                          Darmstadt
+ *                          Germany
+ *  ----------------------------------------------------------------------------
+ *  System                : ESA NanoSat MO Framework
+ *  ----------------------------------------------------------------------------
+ *  Licensed under the European Space Agency Public License, Version 2.0
+ *  You may not use this file except in compliance with the License.
+ * 
+ *  Except as expressly set forth in this License, the Software is provided to
+ *  You on an "as is" basis and without warranties of any kind, including without
+ *  limitation merchantability, fitness for a particular purpose, absence of
+ *  defects or errors, accuracy or non-infringement of intellectual property rights.
+ *  
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *  ----------------------------------------------------------------------------
+ */
+package opssat.simulator.orekit;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.hipparchus.ode.events.Action;
+import org.hipparchus.util.FastMath;
+import org.orekit.bodies.OneAxisEllipsoid;
+import org.orekit.errors.OrekitException;
+import org.orekit.frames.TopocentricFrame;
+import org.orekit.propagation.Propagator;
+import org.orekit.propagation.SpacecraftState;
+import org.orekit.propagation.events.ElevationDetector;
+import org.orekit.propagation.events.EventDetector;
+import org.orekit.propagation.events.LatitudeCrossingDetector;
+import org.orekit.propagation.events.handlers.EventHandler;
+import org.orekit.time.AbsoluteDate;
+
+/**
+ * Predicts the node crossings and the passes over a ground station.
+ *
+ * The events of a rolling window ahead of the simulation date are found with
+ * Orekit event detectors on a background thread, and are kept in a sorted
+ * timeline per event type. The window is extended in the background when the
+ * simulation gets close to its end, so the simulation steps never wait for a
+ * prediction.
+ */
+public class PassPredictor
+{
+
+  public enum EventType
+  {
+    ANX, DNX, AOS, LOS
+  }
+
+  private static final double MAX_CHECK = 60; // s
+  private static final double THRESHOLD = 1.0e-3; // s
+
+  private final OneAxisEllipsoid earth;
+  private final TopocentricFrame station;
+  private final double minElevation; // rad
+  private final double window; // s
+  private final EnumMap<EventType, ConcurrentSkipListSet<AbsoluteDate>> timeline;
+  private final ExecutorService executor;
+
+  // All the fields below are guarded by this
+  private Propagator propagator;
+  private int generation;
+  private boolean predicting;
+  private AbsoluteDate predictedFrom;
+  private AbsoluteDate predictedUntil;
+  private AbsoluteDate lastDate;
+
+  /**
+   * @param earth The Earth
+   * @param station The frame of the ground station
+   * @param minElevation The minimum elevation for a pass, in degrees
+   * @param window How far ahead the events are predicted, in seconds
+   */
+  public PassPredictor(OneAxisEllipsoid earth, TopocentricFrame station, double minElevation,
+      double window)
+  {
+    this.earth = earth;
+    this.station = station;
+    this.minElevation = FastMath.toRadians(minElevation);
+    this.window = window;
+    this.timeline = new EnumMap<EventType, ConcurrentSkipListSet<AbsoluteDate>>(EventType.class);
+    for (EventType type : EventType.values()) {
+      this.timeline.put(type, new ConcurrentSkipListSet<AbsoluteDate>());
+    }
+    this.executor = Executors.newSingleThreadExecutor(new ThreadFactory()
+    {
+      @Override
+      public Thread newThread(Runnable r)
+      {
+        Thread t = new Thread(r, "SimPassPredictor");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+
+  /**
+   * Discards the predicted events and starts predicting them with a new orbit.
+   *
+   * @param propagator A propagator of the orbit, used only by the predictor
+   * @param date The current simulation date
+   */
+  public synchronized void reset(Propagator propagator, AbsoluteDate date)
+  {
+    this.propagator = propagator;
+    this.generation++;
+    for (ConcurrentSkipListSet<AbsoluteDate> events : timeline.values()) {
+      events.clear();
+    }
+    this.predictedFrom = date;
+    this.predictedUntil = date;
+    this.lastDate = date;
+    predictIfNeeded();
+  }
+
+  /**
+   * Moves the predictor to the current simulation date. It discards the past
+   * events and extends the window in the background when needed.
+   *
+   * @param date The current simulation date
+   */
+  public synchronized void update(AbsoluteDate date)
+  {
+    if (propagator == null) {
+      return;
+    }
+    if (date.compareTo(predictedFrom) < 0) {
+      // The simulation went back in time
+      reset(propagator, date);
+      return;
+    }
+    this.lastDate = date;
+    for (ConcurrentSkipListSet<AbsoluteDate> events : timeline.values()) {
+      events.headSet(date).clear();
+    }
+    predictIfNeeded();
+  }
+
+  /**
+   * @param type The type of the event
+   * @param date The date
+   * @return The first event of the type after the date, or null if none is
+   * predicted yet
+   */
+  public AbsoluteDate getNext(EventType type, AbsoluteDate date)
+  {
+    return timeline.get(type).higher(date);
+  }
+
+  /**
+   * @param type The type of the event
+   * @param from The start date, inclusive
+   * @param to The end date, exclusive
+   * @return The predicted events of the type between both dates
+   */
+  public List<AbsoluteDate> getEvents(EventType type, AbsoluteDate from, AbsoluteDate to)
+  {
+    return new ArrayList<AbsoluteDate>(timeline.get(type).subSet(from, to));
+  }
+
+  public void shutdown()
+  {
+    executor.shutdownNow();
+  }
+
+  private void predictIfNeeded()
+  {
+    if (propagator == null || predicting || predictedUntil.durationFrom(lastDate) > window / 2) {
+      return;
+    }
+    final Propagator currentPropagator = this.propagator;
+    final int currentGeneration = this.generation;
+    final AbsoluteDate from = (predictedUntil.compareTo(lastDate) > 0) ? predictedUntil : lastDate;
+    final AbsoluteDate to = lastDate.shiftedBy(window);
+    predicting = true;
+    executor.submit(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        predict(currentPropagator, currentGeneration, from, to);
+      }
+    });
+  }
+
+  private void predict(Propagator currentPropagator, int currentGeneration, AbsoluteDate from,
+      AbsoluteDate to)
+  {
+    EnumMap<EventType, List<AbsoluteDate>> found = new EnumMap<EventType, List<AbsoluteDate>>(
+        EventType.class);
+    for (EventType type : EventType.values()) {
+      found.put(type, new ArrayList<AbsoluteDate>());
+    }
+    boolean success = false;
+    try {
+      currentPropagator.clearEventsDetectors();
+      currentPropagator.addEventDetector(new LatitudeCrossingDetector(MAX_CHECK, THRESHOLD, earth, 0)
+          .withHandler(new Recorder<LatitudeCrossingDetector>(found, from, EventType.ANX,
+              EventType.DNX)));
+      currentPropagator.addEventDetector(new ElevationDetector(MAX_CHECK, THRESHOLD, station)
+          .withConstantElevation(minElevation)
+          .withHandler(new Recorder<ElevationDetector>(found, from, EventType.AOS,
+              EventType.LOS)));
+      currentPropagator.propagate(from, to);
+      success = true;
+    } catch (OrekitException ex) {
+      Logger.getLogger(PassPredictor.class.getName()).log(Level.SEVERE, null, ex);
+    }
+
+    synchronized (this) {
+      predicting = false;
+      if (currentGeneration != generation) {
+        // The orbit changed in the meantime
+        predictIfNeeded();
+        return;
+      }
+      if (success) {
+        for (EventType type : EventType.values()) {
+          timeline.get(type).addAll(found.get(type));
+        }
+        predictedUntil = to;
+        predictIfNeeded();
+      }
+    }
+  }
+
+  /**
+   * Records the events of a detector, increasing or decreasing.
+   */
+  private static class Recorder<T extends EventDetector> implements EventHandler<T>
+  {
+
+    private final EnumMap<EventType, List<AbsoluteDate>> found;
+    private final AbsoluteDate from;
+    private final EventType increasingType;
+    private final EventType decreasingType;
+
+    Recorder(EnumMap<EventType, List<AbsoluteDate>> found, AbsoluteDate from,
+        EventType increasingType, EventType decreasingType)
+    {
+      this.found = found;
+      this.from = from;
+      this.increasingType = increasingType;
+      this.decreasingType = decreasingType;
+    }
+
+    @Override
+    public Action eventOccurred(SpacecraftState s, T detector, boolean increasing)
+    {
+      // The events at the start were found by the previous prediction
+      if (s.getDate().durationFrom(from) > THRESHOLD) {
+        found.get(increasing ? increasingType : decreasingType).add(s.getDate());
+      }
+      return Action.CONTINUE;
+    }
+  }
+
+}
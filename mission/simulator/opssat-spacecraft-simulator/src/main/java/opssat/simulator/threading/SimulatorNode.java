@@ -844,6 +844,11 @@ public class SimulatorNode extends TaskNode
     return result;
   }
 
+  public Properties getPlatformProperties()
+  {
+    return platformProperties;
+  }
+
   public File getGPSOpsFile()
   {
     return getFileFromDirAndPath(getResourcesPath(), "gps-ops.txt");
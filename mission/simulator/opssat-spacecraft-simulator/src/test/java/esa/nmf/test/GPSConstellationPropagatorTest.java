@@ -0,0 +1,233 @@
+/*
+ *  ----------------------------------------------------------------------------
+ *  Copyright (C) 2021      European Space Agency
+ *                          European Space Operations Centre
+ *                          Darmstadt
+ *                          Germany
+ *  ----------------------------------------------------------------------------
+ *  System                : ESA NanoSat MO Framework
+ *  ----------------------------------------------------------------------------
+ *  Licensed under the European Space Agency Public License, Version 2.0
+ *  You may not use this file except in compliance with the License.
+ *
+ *  Except as expressly set forth in this License, the Software is provided to
+ *  You on an "as is" basis and without warranties of any kind, including without
+ *  limitation merchantability, fitness for a particular purpose, absence of
+ *  defects or errors, accuracy or non-infringement of intellectual property rights.
+ *
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ----------------------------------------------------------------------------
+ */
+package esa.nmf.test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.util.LinkedList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import opssat.simulator.orekit.GPSConstellationPropagator;
+import opssat.simulator.orekit.GPSSatellite;
+import org.hipparchus.geometry.euclidean.threed.Vector3D;
+import org.hipparchus.util.FastMath;
+import org.hipparchus.util.MathUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.orekit.bodies.GeodeticPoint;
+import org.orekit.bodies.OneAxisEllipsoid;
+import org.orekit.data.DataProvidersManager;
+import org.orekit.frames.FramesFactory;
+import org.orekit.frames.TopocentricFrame;
+import org.orekit.propagation.SpacecraftState;
+import org.orekit.propagation.analytical.tle.TLE;
+import org.orekit.propagation.analytical.tle.TLEPropagator;
+import org.orekit.time.AbsoluteDate;
+import org.orekit.time.TimeScalesFactory;
+import org.orekit.utils.Constants;
+import org.orekit.utils.IERSConventions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Compares the distances, elevations and azimuths of the GPS constellation
+ * propagator with the ones of TopocentricFrame, for the satellites of
+ * gps-ops.txt, and reports its propagation rate. The test only needs the
+ * UTC-TAI offsets of the TLE epochs, so it writes them to a temporary Orekit
+ * data folder.
+ */
+public class GPSConstellationPropagatorTest
+{
+
+  private static final int STEPS = 200;
+  private static final int RATE_STEPS = 500;
+  private static final double STEP = 60; // s
+  private static final double ANGLE_TOLERANCE = 1.0e-9; // deg
+  private static final double DISTANCE_TOLERANCE = 1.0e-6; // m
+
+  @ClassRule
+  public static final TemporaryFolder folder = new TemporaryFolder();
+
+  private static String previousDataPath;
+
+  @BeforeClass
+  public static void setUpOrekitData() throws IOException
+  {
+    File history = folder.newFile("UTC-TAI.history");
+    Writer out = new FileWriter(history);
+    try {
+      out.write(" 2015  Jul  1 - 2017  Jan  1     36s\n");
+      out.write(" 2017  Jan  1 -                  37s\n");
+    } finally {
+      out.close();
+    }
+    previousDataPath = System.getProperty(DataProvidersManager.OREKIT_DATA_PATH);
+    System.setProperty(DataProvidersManager.OREKIT_DATA_PATH, folder.getRoot().getAbsolutePath());
+    DataProvidersManager.getInstance().clearProviders();
+  }
+
+  @AfterClass
+  public static void restoreOrekitData()
+  {
+    if (previousDataPath == null) {
+      System.clearProperty(DataProvidersManager.OREKIT_DATA_PATH);
+    } else {
+      System.setProperty(DataProvidersManager.OREKIT_DATA_PATH, previousDataPath);
+    }
+    DataProvidersManager.getInstance().clearProviders();
+    DataProvidersManager.getInstance().clearLoadedDataNames();
+  }
+
+  @Test
+  public void testMatchesTopocentricFrame() throws IOException
+  {
+    ForkJoinPool pool = new ForkJoinPool(2);
+    try {
+      checkAgainstTopocentricFrame(pool);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testMatchesTopocentricFrameOnCommonPool() throws IOException
+  {
+    checkAgainstTopocentricFrame(null);
+  }
+
+  private static void checkAgainstTopocentricFrame(ForkJoinPool pool) throws IOException
+  {
+    LinkedList<GPSSatellite> satellites = loadSatellites();
+    OneAxisEllipsoid earth = new OneAxisEllipsoid(Constants.WGS84_EARTH_EQUATORIAL_RADIUS,
+        Constants.WGS84_EARTH_FLATTENING, FramesFactory.getITRF(IERSConventions.IERS_2010, true));
+    GPSConstellationPropagator constellation = (pool == null)
+        ? new GPSConstellationPropagator(satellites, earth)
+        : new GPSConstellationPropagator(satellites, earth, pool);
+    AbsoluteDate date = new AbsoluteDate(2021, 3, 23, 0, 0, 0, TimeScalesFactory.getUTC());
+    int inView = 0;
+    int outOfView = 0;
+
+    for (int step = 0; step < STEPS; step++) {
+      date = date.shiftedBy(STEP);
+      // The observer moves like a low orbit would, to sweep the whole sky
+      GeodeticPoint observer = new GeodeticPoint(FastMath.toRadians(50 * FastMath.sin(step * 0.1)),
+          FastMath.toRadians(step * 7.3 - 180), 515000);
+      TopocentricFrame observerFrame = new TopocentricFrame(earth, observer, "observer");
+      if (step % 2 == 0) {
+        // The transform of the date is reused for another observer
+        constellation.propagate(date, new GeodeticPoint(0, 0, 0));
+      }
+      constellation.propagate(date, observer);
+
+      for (int i = 0; i < constellation.size(); i++) {
+        SpacecraftState state = constellation.getSatellite(i).getState();
+        assertEquals(date, state.getDate());
+        Vector3D position = state.getPVCoordinates().getPosition();
+        double distance = observerFrame.getRange(position, state.getFrame(), date);
+        double elevation = FastMath.toDegrees(
+            observerFrame.getElevation(position, state.getFrame(), date));
+        double azimuth = FastMath.toDegrees(
+            observerFrame.getAzimuth(position, state.getFrame(), date));
+
+        assertEquals(distance, constellation.getDistance(i), DISTANCE_TOLERANCE);
+        assertEquals(elevation, constellation.getElevation(i), ANGLE_TOLERANCE);
+        assertEquals(0, MathUtils.normalizeAngle(FastMath.toRadians(azimuth
+            - constellation.getAzimuth(i)), 0), FastMath.toRadians(ANGLE_TOLERANCE));
+        assertEquals(distance < GPSConstellationPropagator.MAX_DISTANCE,
+            constellation.isInView(i));
+        if (constellation.isInView(i)) {
+          inView++;
+        } else {
+          outOfView++;
+        }
+      }
+    }
+
+    // Both branches of the in view check are exercised
+    assertFalse(inView == 0);
+    assertFalse(outOfView == 0);
+  }
+
+  /**
+   * Reports the number of satellite propagations per second at several
+   * simulator time factors, with steps of 0.1 s of real time.
+   */
+  @Test
+  public void testReportsPropagationRate() throws IOException
+  {
+    LinkedList<GPSSatellite> satellites = loadSatellites();
+    OneAxisEllipsoid earth = new OneAxisEllipsoid(Constants.WGS84_EARTH_EQUATORIAL_RADIUS,
+        Constants.WGS84_EARTH_FLATTENING, FramesFactory.getITRF(IERSConventions.IERS_2010, true));
+    GPSConstellationPropagator constellation = new GPSConstellationPropagator(satellites, earth);
+    GeodeticPoint observer = new GeodeticPoint(FastMath.toRadians(49.87), FastMath.toRadians(8.62),
+        515000);
+    AbsoluteDate date = new AbsoluteDate(2021, 3, 23, 0, 0, 0, TimeScalesFactory.getUTC());
+
+    for (int timeFactor : new int[]{1, 10, 100, 1000}) {
+      long start = System.nanoTime();
+      for (int step = 0; step < RATE_STEPS; step++) {
+        date = date.shiftedBy(0.1 * timeFactor);
+        constellation.propagate(date, observer);
+        assertFalse(Double.isNaN(constellation.getDistance(0)));
+      }
+      double seconds = (System.nanoTime() - start) / 1.0e9;
+      Logger.getLogger(GPSConstellationPropagatorTest.class.getName()).log(Level.INFO,
+          "Time factor {0,number,#}: {1,number,#} propagations per second", new Object[]{timeFactor,
+            (long) (RATE_STEPS * constellation.size() / seconds)});
+    }
+  }
+
+  private static LinkedList<GPSSatellite> loadSatellites() throws IOException
+  {
+    LinkedList<GPSSatellite> satellites = new LinkedList<GPSSatellite>();
+    BufferedReader in = new BufferedReader(new InputStreamReader(
+        GPSConstellationPropagatorTest.class.getClassLoader().getResourceAsStream("gps-ops.txt")));
+    try {
+      String line;
+      String name = null, tle1 = null;
+      while ((line = in.readLine()) != null) {
+        if (line.startsWith("1")) {
+          tle1 = line;
+        } else if (line.startsWith("2")) {
+          TLEPropagator propagator = TLEPropagator.selectExtrapolator(new TLE(tle1, line));
+          propagator.setSlaveMode();
+          satellites.add(new GPSSatellite(name, propagator));
+        } else {
+          name = line;
+        }
+      }
+    } finally {
+      in.close();
+    }
+    return satellites;
+  }
+
+}
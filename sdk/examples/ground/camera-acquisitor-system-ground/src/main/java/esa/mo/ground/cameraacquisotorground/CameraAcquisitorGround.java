@@ -61,6 +61,7 @@ import org.ccsds.moims.mo.common.directory.structures.ProviderSummaryList;
 import org.ccsds.moims.mo.mal.MALException;
 import org.ccsds.moims.mo.mal.MALInteractionException;
 import org.ccsds.moims.mo.mal.structures.Attribute;
+import org.ccsds.moims.mo.mal.structures.Blob;
 import org.ccsds.moims.mo.mal.structures.ElementList;
 import org.ccsds.moims.mo.mal.structures.Identifier;
 import org.ccsds.moims.mo.mal.structures.IdentifierList;
@@ -591,7 +592,7 @@ public class CameraAcquisitorGround
     @Override
     public void queryResponseReceived(MALMessageHeader msgHeader, ObjectType objType,
         IdentifierList domain, ArchiveDetailsList objDetails, ElementList objBodies,
-        Map qosProperties)
+        Blob continuationToken, Map qosProperties)
     {
       if (objBodies != null) {
         int i = 0;
@@ -638,7 +639,7 @@ public class CameraAcquisitorGround
         ElementList objBodies,
         Map qosProperties)
     {
-      queryResponseReceived(msgHeader, objType, domain, objDetails, objBodies, qosProperties);
+      queryResponseReceived(msgHeader, objType, domain, objDetails, objBodies, null, qosProperties);
     }
 
   }
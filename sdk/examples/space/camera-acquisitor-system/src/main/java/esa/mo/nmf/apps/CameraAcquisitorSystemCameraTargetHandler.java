@@ -35,6 +35,7 @@ import org.ccsds.moims.mo.com.structures.ObjectType;
 import org.ccsds.moims.mo.mal.MALException;
 import org.ccsds.moims.mo.mal.MALInteractionException;
 import org.ccsds.moims.mo.mal.provider.MALInteraction;
+import org.ccsds.moims.mo.mal.structures.Blob;
 import org.ccsds.moims.mo.mal.structures.Duration;
 import org.ccsds.moims.mo.mal.structures.ElementList;
 import org.ccsds.moims.mo.mal.structures.IdentifierList;
@@ -248,8 +249,8 @@ public class CameraAcquisitorSystemCameraTargetHandler
 
     @Override
     public MALMessage sendResponse(ObjectType objType, IdentifierList domain,
-        ArchiveDetailsList objDetails, ElementList objBodies) throws MALInteractionException,
-        MALException
+        ArchiveDetailsList objDetails, ElementList objBodies, Blob continuationToken)
+        throws MALInteractionException, MALException
     {
       if (objBodies != null) {
         int i = 0;